@@ -0,0 +1,167 @@
+package com.moon.backend.config;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.service.AdmissionGate;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * 准入控制：按接口类别与账本获取并发许可后才进入控制器，拿不到许可返回 429 与 Retry-After。
+ * 账本取 bookGuid 查询参数；写请求多把 bookGuid 放在 JSON 请求体中，此时读入请求体取顶层 bookGuid 字段
+ * （请求体缓存在内存中，控制器照常读取）；都没有时按用户归组。排在分片路由之后，冻结账本的写请求不占用许可。
+ * 同时为受控请求建立 QueryScope（该类别的语句超时与取消），异步请求超时或连接出错时取消正在执行的语句；
+ * 取消不向响应写任何内容，状态码仍由控制器的超时与异常处理决定。
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 7)
+@RequiredArgsConstructor
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    /**
+     * 超过该大小（或长度未知的分块上传）的请求体不读入内存，按用户归组
+     */
+    private static final long MAX_BODY_PEEK_BYTES = 1024 * 1024;
+
+    private final AdmissionGate admissionGate;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !admissionGate.isEnabled()
+                || HttpMethod.OPTIONS.matches(request.getMethod())
+                || !path.startsWith("/api/")
+                || path.startsWith("/api/auth/");
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain chain) throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        AdmissionGate.RequestClass requestClass = admissionGate.classify(path, ShardRoutingFilter.isWrite(request));
+        if (requestClass == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest admitted = request;
+        String bookGuid = request.getParameter("bookGuid");
+        if ((bookGuid == null || bookGuid.isBlank()) && hasJsonBody(request)) {
+            CachedBodyRequest cached = CachedBodyRequest.of(request);
+            bookGuid = bodyBookGuid(cached.body());
+            admitted = cached;
+        }
+        AdmissionGate.Permit permit = admissionGate.acquire(requestClass, bookKey(request, bookGuid));
+        if (permit == null) {
+            reject(response, admissionGate.retryAfterSeconds(requestClass));
+            return;
+        }
+        QueryScope scope = new QueryScope(requestClass.name().toLowerCase(Locale.ROOT), admissionGate.queryTimeoutSeconds(requestClass), permit);
+        request.setAttribute(QueryScope.ATTR, scope);
+        QueryScope previous = QueryScope.attach(scope);
+        try {
+            chain.doFilter(admitted, response);
+        } finally {
+            QueryScope.restore(previous);
+            if (request.isAsyncStarted()) {
+                // 异步请求在工作线程中继续执行，许可保留到请求结束；超时或连接出错时取消正在执行的语句
+                request.getAsyncContext().addListener(new Release(permit, scope));
+            } else {
+                permit.release();
+            }
+        }
+    }
+
+    private static boolean hasJsonBody(HttpServletRequest request) {
+        long length = request.getContentLengthLong();
+        if (!ShardRoutingFilter.isWrite(request) || length <= 0 || length > MAX_BODY_PEEK_BYTES || request.getContentType() == null) {
+            return false;
+        }
+        try {
+            return MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+        } catch (InvalidMediaTypeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * 只扫描顶层字段，不构建对象；请求体不是合法 JSON 时返回 null，由控制器报参数错误
+     */
+    private String bodyBookGuid(byte[] body) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("bookGuid".equals(name) && value == JsonToken.VALUE_STRING) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+        return null;
+    }
+
+    private static String bookKey(HttpServletRequest request, String bookGuid) {
+        if (bookGuid != null && !bookGuid.isBlank()) {
+            return bookGuid;
+        }
+        Object userId = request.getAttribute(TokenAuthFilter.USER_ID_ATTR);
+        return userId == null ? "-" : "user:" + userId;
+    }
+
+    private record Release(AdmissionGate.Permit permit, QueryScope scope) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            scope.cancel();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            scope.cancel();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    private void reject(HttpServletResponse response, long retryAfterSeconds) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getWriter(), ApiResponse.fail("系统繁忙，请稍后重试"));
+    }
+}
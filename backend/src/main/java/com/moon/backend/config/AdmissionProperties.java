@@ -0,0 +1,54 @@
+package com.moon.backend.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 准入控制配置：按接口类别（过账写入 / 报表 / 导出分析）分别限制总并发与单账本并发。
+ * 报表与导出的总并发之和应明显小于主库连接池，留出连接给过账。
+ */
+@Data
+@Component
+@ConfigurationProperties("ees.admission")
+public class AdmissionProperties {
+
+    private boolean enabled = true;
+
+    /** 非 GET 的 /api 请求中未归入报表或导出的部分 */
+    private Limit posting = new Limit(32, 8, 200, 2000, 0, new ArrayList<>());
+
+    private Limit reporting = new Limit(8, 2, 100, 5000, 30, new ArrayList<>(List.of(
+            "/api/reports/pl", "/api/reports/bs", "/api/reports/cf",
+            "/api/dashboard/summary", "/api/accounts/tree", "/api/aging",
+            "/api/balance/check", "/api/tax/report"
+    )));
+
+    private Limit export = new Limit(2, 1, 20, 10000, 120, new ArrayList<>(List.of(
+            "/api/analysis/", "/api/tax/report/lines"
+    )));
+
+    /** 账本权重（默认 1），权重越高在公平队列中分到的份额越大 */
+    private Map<String, Double> bookWeights = new LinkedHashMap<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+        private int permits;
+        private int perBook;
+        private int maxQueue;
+        private long maxWaitMs;
+        /** 单条语句超时（秒），0 为不限制 */
+        private int queryTimeoutSeconds;
+        /** 路径前缀 */
+        private List<String> paths;
+    }
+}
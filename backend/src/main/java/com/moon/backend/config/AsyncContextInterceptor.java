@@ -0,0 +1,52 @@
+package com.moon.backend.config;
+
+import org.springframework.lang.NonNull;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 控制器返回 Callable 时把请求线程上的分片、强制主库与 QueryScope 带到异步工作线程，执行完恢复。
+ */
+public class AsyncContextInterceptor implements CallableProcessingInterceptor {
+
+    private static final String SHARD_ATTR = "ees.async.shard";
+    private static final String PRIMARY_ATTR = "ees.async.primary";
+    private static final String PREVIOUS_ATTR = "ees.async.previous";
+
+    @Override
+    public <T> void beforeConcurrentHandling(@NonNull NativeWebRequest request, @NonNull Callable<T> task) {
+        request.setAttribute(SHARD_ATTR, ShardContext.current(), RequestAttributes.SCOPE_REQUEST);
+        request.setAttribute(PRIMARY_ATTR, ReadRouting.isPrimaryForced(), RequestAttributes.SCOPE_REQUEST);
+    }
+
+    @Override
+    public <T> void preProcess(@NonNull NativeWebRequest request, @NonNull Callable<T> task) {
+        String shard = (String) request.getAttribute(SHARD_ATTR, RequestAttributes.SCOPE_REQUEST);
+        boolean primary = Boolean.TRUE.equals(request.getAttribute(PRIMARY_ATTR, RequestAttributes.SCOPE_REQUEST));
+        QueryScope scope = (QueryScope) request.getAttribute(QueryScope.ATTR, RequestAttributes.SCOPE_REQUEST);
+        Previous previous = new Previous(
+                ShardContext.switchTo(shard == null ? ShardContext.MAIN : shard),
+                primary ? ReadRouting.forcePrimary() : ReadRouting.isPrimaryForced(),
+                QueryScope.attach(scope)
+        );
+        request.setAttribute(PREVIOUS_ATTR, previous, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    @Override
+    public <T> void postProcess(@NonNull NativeWebRequest request, @NonNull Callable<T> task, Object result) {
+        Previous previous = (Previous) request.getAttribute(PREVIOUS_ATTR, RequestAttributes.SCOPE_REQUEST);
+        if (previous == null) {
+            return;
+        }
+        request.removeAttribute(PREVIOUS_ATTR, RequestAttributes.SCOPE_REQUEST);
+        QueryScope.restore(previous.scope());
+        ReadRouting.restore(previous.primary());
+        ShardContext.restore(previous.shard());
+    }
+
+    private record Previous(String shard, boolean primary, QueryScope scope) {
+    }
+}
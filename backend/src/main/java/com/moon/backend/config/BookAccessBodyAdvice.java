@@ -0,0 +1,61 @@
+package com.moon.backend.config;
+
+import com.moon.backend.service.BookAccessCache;
+import com.moon.backend.service.ShardDirectory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+
+/**
+ * 请求体带 bookGuid 字段时，校验其属于令牌对应的用户（无令牌的请求由 TokenAuthFilter 决定是否放行），
+ * 开启分片时把本次请求切换到该账本所在分片（由 ShardRoutingFilter 在请求结束时复原）。
+ */
+@ControllerAdvice
+@RequiredArgsConstructor
+public class BookAccessBodyAdvice extends RequestBodyAdviceAdapter {
+
+    private final BookAccessCache bookAccessCache;
+    private final ShardDirectory shardDirectory;
+
+    @Override
+    public boolean supports(@NonNull MethodParameter methodParameter, @NonNull Type targetType,
+                            @NonNull Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    @NonNull
+    public Object afterBodyRead(@NonNull Object body, @NonNull HttpInputMessage inputMessage, @NonNull MethodParameter parameter,
+                                @NonNull Type targetType, @NonNull Class<? extends HttpMessageConverter<?>> converterType) {
+        BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(body);
+        if (!wrapper.isReadableProperty("bookGuid")
+                || !(wrapper.getPropertyValue("bookGuid") instanceof String bookGuid)
+                || bookGuid.isBlank()) {
+            return body;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object userId = attributes == null ? null : attributes.getAttribute(TokenAuthFilter.USER_ID_ATTR, RequestAttributes.SCOPE_REQUEST);
+        if (userId != null && !bookAccessCache.canAccess((Long) userId, bookGuid)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "无权访问该账本");
+        }
+        if (shardDirectory.isEnabled()) {
+            if (shardDirectory.isFrozen(bookGuid)) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "账本迁移中，请稍后重试");
+            }
+            ShardContext.switchTo(shardDirectory.shardOf(bookGuid));
+        }
+        return body;
+    }
+}
@@ -0,0 +1,59 @@
+package com.moon.backend.config;
+
+import com.moon.backend.service.BookAccessCache;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按单据 guid 寻址、请求中没有 bookGuid 的接口：查出单据所属账本，再做与 bookGuid 参数相同的归属校验。
+ * 无令牌请求的放行规则与 TokenAuthFilter 一致；单据不存在时不拦截，由业务层报错。
+ */
+@Component
+@RequiredArgsConstructor
+public class BookAccessGuard {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BookAccessCache bookAccessCache;
+
+    public void requireAccount(String accountGuid) {
+        require(jdbcTemplate.queryForList("SELECT book_guid FROM accounts WHERE guid = ?", String.class, accountGuid));
+    }
+
+    public void requireTaxTable(String taxTableGuid) {
+        require(jdbcTemplate.queryForList("SELECT book_guid FROM taxtables WHERE guid = ?", String.class, taxTableGuid));
+    }
+
+    public void requireSplits(Collection<String> splitGuids) {
+        if (splitGuids == null || splitGuids.isEmpty()) {
+            return;
+        }
+        require(jdbcTemplate.queryForList(
+                "SELECT DISTINCT t.book_guid FROM splits s JOIN transactions t ON s.tx_guid = t.guid WHERE s.guid IN ("
+                        + String.join(", ", Collections.nCopies(splitGuids.size(), "?")) + ")",
+                String.class,
+                splitGuids.toArray()
+        ));
+    }
+
+    private void require(List<String> bookGuids) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Object userId = attributes == null ? null : attributes.getAttribute(TokenAuthFilter.USER_ID_ATTR, RequestAttributes.SCOPE_REQUEST);
+        if (userId == null) {
+            return;
+        }
+        for (String bookGuid : bookGuids) {
+            if (!bookAccessCache.canAccess((Long) userId, bookGuid)) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "无权访问该账本");
+            }
+        }
+    }
+}
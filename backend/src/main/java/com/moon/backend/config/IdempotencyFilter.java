@@ -0,0 +1,140 @@
+package com.moon.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.service.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BindException;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 写接口幂等：POST 请求携带 Idempotency-Key 时，同一键的重复请求直接返回首次响应，不再执行。
+ * 键按用户隔离；同一键配不同请求内容返回 422。在 TokenAuthFilter 之后、ShardRoutingFilter 之前执行，幂等键统一存放在 main。
+ * 只保存确定性的结果：成功响应（202 处理中除外）与请求参数校验错误；其余（5xx、并发冲突、排队超时等）释放键，重试时重新执行。
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 9)
+@RequiredArgsConstructor
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !HttpMethod.POST.matches(request.getMethod())
+                || request.getHeader(HEADER) == null
+                || !path.startsWith("/api/")
+                || path.startsWith("/api/auth/");
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain chain) throws ServletException, IOException {
+        String header = request.getHeader(HEADER).trim();
+        if (header.isEmpty() || header.length() > MAX_KEY_LENGTH) {
+            reject(response, HttpStatus.BAD_REQUEST, "Idempotency-Key 长度应为 1-" + MAX_KEY_LENGTH);
+            return;
+        }
+        Object userId = request.getAttribute(TokenAuthFilter.USER_ID_ATTR);
+        String key = (userId == null ? "-" : userId) + ":" + header;
+        CachedBodyRequest cached = CachedBodyRequest.of(request);
+
+        IdempotencyService.Claim claim = idempotencyService.begin(key, fingerprint(cached));
+        switch (claim.type()) {
+            case REPLAY -> replay(response, claim.response());
+            case MISMATCH -> reject(response, HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key 已用于不同的请求");
+            case IN_PROGRESS -> reject(response, HttpStatus.CONFLICT, "相同 Idempotency-Key 的请求正在处理中");
+            case OWNER -> execute(key, claim, cached, response, chain);
+        }
+    }
+
+    private void execute(String key, IdempotencyService.Claim claim, CachedBodyRequest request, HttpServletResponse response,
+                         FilterChain chain) throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            chain.doFilter(request, wrapper);
+            if (!request.isAsyncStarted() && isReplayable(wrapper.getStatus(), request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE))) {
+                idempotencyService.complete(key, claim, new IdempotencyService.StoredResponse(
+                        wrapper.getStatus(), wrapper.getContentType(), wrapper.getContentAsByteArray()));
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                idempotencyService.abandon(key, claim);
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    /**
+     * 成功（202 表示结果待定，除外）或由请求内容本身决定的校验错误，重试必然得到相同结果
+     */
+    private boolean isReplayable(int status, Object handledException) {
+        if (status >= 200 && status < 300) {
+            return status != HttpStatus.ACCEPTED.value();
+        }
+        return status == HttpStatus.BAD_REQUEST.value()
+                && (handledException instanceof IllegalArgumentException
+                || handledException instanceof BindException
+                || handledException instanceof HttpMessageNotReadableException);
+    }
+
+    private void replay(HttpServletResponse response, IdempotencyService.StoredResponse stored) throws IOException {
+        response.setStatus(stored.status());
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        response.setHeader("Idempotent-Replayed", "true");
+        if (stored.body() != null) {
+            response.getOutputStream().write(stored.body());
+        }
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getWriter(), ApiResponse.fail(message));
+    }
+
+    private String fingerprint(CachedBodyRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(request.getRequestURI().getBytes(StandardCharsets.UTF_8));
+            if (request.getQueryString() != null) {
+                digest.update(request.getQueryString().getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update(request.body());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
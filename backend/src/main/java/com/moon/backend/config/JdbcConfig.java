@@ -0,0 +1,27 @@
+package com.moon.backend.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 替换默认 JdbcTemplate，按请求类别应用语句超时并支持取消（见 QueryScope）。
+ */
+@Configuration
+public class JdbcConfig {
+
+    @Bean
+    public ScopedJdbcTemplate jdbcTemplate(DataSource dataSource, JdbcProperties properties, MeterRegistry registry) {
+        ScopedJdbcTemplate template = new ScopedJdbcTemplate(dataSource, registry);
+        JdbcProperties.Template settings = properties.getTemplate();
+        template.setFetchSize(settings.getFetchSize());
+        template.setMaxRows(settings.getMaxRows());
+        if (settings.getQueryTimeout() != null) {
+            template.setQueryTimeout((int) settings.getQueryTimeout().getSeconds());
+        }
+        return template;
+    }
+}
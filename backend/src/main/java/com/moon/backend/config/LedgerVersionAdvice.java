@@ -0,0 +1,42 @@
+package com.moon.backend.config;
+
+import com.moon.backend.service.LedgerChangeService;
+import com.moon.backend.service.ReplicaPositionTracker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 开启副本时，写请求的响应附带 X-Ledger-Version（主库当前最大变更序号，已覆盖本次写入），
+ * 客户端在后续读请求中回传，由 ReadYourWritesFilter 判断副本是否已追上。
+ */
+@ControllerAdvice
+@RequiredArgsConstructor
+public class LedgerVersionAdvice implements ResponseBodyAdvice<Object> {
+
+    private final ReplicaPositionTracker replicaPositionTracker;
+    private final LedgerChangeService ledgerChangeService;
+
+    @Override
+    public boolean supports(@NonNull MethodParameter returnType,
+                            @NonNull Class<? extends HttpMessageConverter<?>> converterType) {
+        return replicaPositionTracker.isEnabled();
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, @NonNull MethodParameter returnType, @NonNull MediaType selectedContentType,
+                                  @NonNull Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  @NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response) {
+        if (!HttpMethod.GET.equals(request.getMethod()) && !HttpMethod.OPTIONS.equals(request.getMethod())) {
+            response.getHeaders().set(ReadYourWritesFilter.VERSION_HEADER, Long.toString(ledgerChangeService.latestSeq()));
+        }
+        return body;
+    }
+}
@@ -0,0 +1,23 @@
+package com.moon.backend.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+
+/**
+ * 组提交过账（ees.posting.group-commit.enabled）开启时生效：过账服务的 @Transactional 方法在管道的批事务中以 REQUIRED 加入，
+ * 默认情况下加入方抛出异常会把整个批事务标记为只回滚，同批其他过账在提交时一并丢失。
+ * 关闭该标记后由事务发起方决定回滚范围：管道按保存点回滚失败的单条过账，其余过账照常提交；
+ * 其他调用链中异常照常向外抛出并由外层整体回滚；只有外层捕获内层异常后继续执行时，内层已写入的数据才会随外层提交。
+ */
+@Configuration
+@ConditionalOnProperty(name = "ees.posting.group-commit.enabled", havingValue = "true")
+public class PostingTransactionConfig {
+
+    @Bean
+    public TransactionManagerCustomizer<AbstractPlatformTransactionManager> participationFailureCustomizer() {
+        return transactionManager -> transactionManager.setGlobalRollbackOnParticipationFailure(false);
+    }
+}
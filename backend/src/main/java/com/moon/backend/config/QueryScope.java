@@ -0,0 +1,107 @@
+package com.moon.backend.config;
+
+import com.moon.backend.service.AdmissionGate;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 一次请求的查询范围：该类接口的语句超时、占用的准入许可，以及当前正在执行的语句。
+ * 由 AdmissionFilter 创建，异步请求由 AsyncContextInterceptor 带到工作线程；
+ * 客户端断开或异步超时时 cancel 取消正在执行的语句，之后的语句不再执行。
+ */
+public final class QueryScope {
+
+    public static final String ATTR = "ees.queryScope";
+
+    private static final ThreadLocal<QueryScope> CURRENT = new ThreadLocal<>();
+
+    private final String requestClass;
+    private final int timeoutSeconds;
+    private final AdmissionGate.Permit permit;
+    private Statement running;
+    private boolean cancelled;
+
+    public QueryScope(String requestClass, int timeoutSeconds, AdmissionGate.Permit permit) {
+        this.requestClass = requestClass;
+        this.timeoutSeconds = timeoutSeconds;
+        this.permit = permit;
+    }
+
+    public static QueryScope current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 绑定到当前线程并返回之前的范围，调用方须在 finally 中 restore
+     */
+    public static QueryScope attach(QueryScope scope) {
+        QueryScope previous = CURRENT.get();
+        CURRENT.set(scope);
+        return previous;
+    }
+
+    public static void restore(QueryScope previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public String requestClass() {
+        return requestClass;
+    }
+
+    public int timeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public AdmissionGate.Permit permit() {
+        return permit;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 登记即将执行的语句；已取消时直接报错。JdbcTemplate 在同一线程内顺序执行，只需记住最近一条
+     */
+    synchronized void register(Statement statement) {
+        if (cancelled) {
+            throw new Cancelled();
+        }
+        running = statement;
+    }
+
+    public void cancel() {
+        Statement statement;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            statement = running;
+            running = null;
+        }
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.cancel();
+        } catch (SQLException ignored) {
+            // 语句已结束或已关闭
+        }
+    }
+
+    /**
+     * 请求已放弃（客户端断开或超时），查询被取消
+     */
+    public static final class Cancelled extends TransientDataAccessResourceException {
+        public Cancelled() {
+            super("查询已取消");
+        }
+    }
+}
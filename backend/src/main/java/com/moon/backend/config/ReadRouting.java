@@ -0,0 +1,44 @@
+package com.moon.backend.config;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的读路由提示：强制走主库时，只读事务也不会路由到副本（读己之写、需要最新数据的后台任务）。
+ */
+public final class ReadRouting {
+
+    private static final ThreadLocal<Boolean> FORCE_PRIMARY = new ThreadLocal<>();
+
+    private ReadRouting() {
+    }
+
+    public static boolean isPrimaryForced() {
+        return Boolean.TRUE.equals(FORCE_PRIMARY.get());
+    }
+
+    public static <T> T onPrimary(Supplier<T> action) {
+        boolean previous = forcePrimary();
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * 强制主库并返回之前的状态，调用方须在 finally 中 restore
+     */
+    public static boolean forcePrimary() {
+        boolean previous = isPrimaryForced();
+        FORCE_PRIMARY.set(Boolean.TRUE);
+        return previous;
+    }
+
+    public static void restore(boolean previous) {
+        if (previous) {
+            FORCE_PRIMARY.set(Boolean.TRUE);
+        } else {
+            FORCE_PRIMARY.remove();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.moon.backend.config;
+
+import com.moon.backend.service.ReplicaPositionTracker;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 读己之写：客户端回传写请求响应中的 X-Ledger-Version，副本尚未应用到该版本时，本次请求的只读事务改走主库。
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 5)
+@RequiredArgsConstructor
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String VERSION_HEADER = "X-Ledger-Version";
+
+    private final ReplicaPositionTracker replicaPositionTracker;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !replicaPositionTracker.isEnabled() || !path.startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain chain) throws ServletException, IOException {
+        long version = parseVersion(request.getHeader(VERSION_HEADER));
+        if (version <= 0 || replicaPositionTracker.covers(version)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        boolean previous = ReadRouting.forcePrimary();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReadRouting.restore(previous);
+        }
+    }
+
+    private long parseVersion(String header) {
+        if (header == null || header.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.moon.backend.config;
+
+import com.moon.backend.service.ReplicaPositionTracker;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 只读事务路由到副本，其余（写事务、无事务的语句、强制主库）走主库；副本不可用或位置过旧时回退主库。
+ * 外层需包一层 LazyConnectionDataSourceProxy，使取连接推迟到事务的只读标记设置之后。
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Target {
+        PRIMARY, REPLICA
+    }
+
+    private final ReplicaPositionTracker tracker;
+
+    public ReplicaRoutingDataSource(ReplicaPositionTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!ReadRouting.isPrimaryForced()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && tracker.isReplicaHealthy()) {
+            return Target.REPLICA;
+        }
+        return Target.PRIMARY;
+    }
+}
@@ -0,0 +1,85 @@
+package com.moon.backend.config;
+
+import com.moon.backend.service.ReplicaPositionTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 数据源路由（ees.replica.enabled 或 ees.shards.enabled 开启时生效），未开启时沿用 Spring Boot 默认的单数据源。
+ * <ul>
+ *     <li>读写分离：主库与报表副本各自独立的 Hikari 连接池（舱壁隔离），月末大报表占满副本池也不影响过账；</li>
+ *     <li>分片：按 ShardContext 选择账本所在库，main 即 spring.datasource（同时承载目录与登录数据），副本只对 main 生效。</li>
+ * </ul>
+ */
+@Configuration
+@ConditionalOnExpression("${ees.replica.enabled:false} or ${ees.shards.enabled:false}")
+public class RoutingDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("ees-primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ees.replica.enabled", havingValue = "true")
+    @ConfigurationProperties("ees.replica.datasource")
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("ees-replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ShardDataSources shardDataSources(@Qualifier("primaryDataSource") DataSource primary, ShardProperties properties) {
+        return new ShardDataSources(primary, properties.isEnabled() ? properties : new ShardProperties());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") ObjectProvider<DataSource> replica,
+                                 ReplicaPositionTracker tracker,
+                                 ShardDataSources shards) {
+        DataSource main = primary;
+        DataSource replicaDataSource = replica.getIfAvailable();
+        if (replicaDataSource != null) {
+            ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(tracker);
+            routing.setTargetDataSources(Map.of(
+                    ReplicaRoutingDataSource.Target.PRIMARY, primary,
+                    ReplicaRoutingDataSource.Target.REPLICA, replicaDataSource
+            ));
+            routing.setDefaultTargetDataSource(primary);
+            routing.afterPropertiesSet();
+            main = routing;
+        }
+        if (shards.all().size() > 1) {
+            Map<Object, Object> targets = new HashMap<>(shards.all());
+            targets.put(ShardContext.MAIN, main);
+            ShardRoutingDataSource routing = new ShardRoutingDataSource();
+            routing.setTargetDataSources(targets);
+            routing.setDefaultTargetDataSource(main);
+            // 未知分片名直接报错，不回退 main
+            routing.setLenientFallback(false);
+            routing.afterPropertiesSet();
+            main = routing;
+        }
+        return new LazyConnectionDataSourceProxy(main);
+    }
+}
@@ -0,0 +1,53 @@
+package com.moon.backend.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 按当前 QueryScope 设置语句超时并登记语句以便取消；超时与取消分别计数（ees.query.timeouts / ees.query.cancelled）。
+ * 事务超时或全局 query-timeout 更短时保留更短的值。没有 QueryScope 的调用（后台任务等）行为与 JdbcTemplate 相同。
+ */
+public class ScopedJdbcTemplate extends JdbcTemplate {
+
+    private final MeterRegistry registry;
+
+    public ScopedJdbcTemplate(DataSource dataSource, MeterRegistry registry) {
+        super(dataSource);
+        this.registry = registry;
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        QueryScope scope = QueryScope.current();
+        if (scope == null) {
+            return;
+        }
+        int timeout = scope.timeoutSeconds();
+        if (timeout > 0 && (stmt.getQueryTimeout() == 0 || stmt.getQueryTimeout() > timeout)) {
+            stmt.setQueryTimeout(timeout);
+        }
+        scope.register(stmt);
+    }
+
+    @Override
+    protected DataAccessException translateException(String task, @Nullable String sql, SQLException ex) {
+        QueryScope scope = QueryScope.current();
+        if (scope != null && scope.isCancelled()) {
+            registry.counter("ees.query.cancelled", "class", scope.requestClass()).increment();
+            return new QueryScope.Cancelled();
+        }
+        DataAccessException translated = super.translateException(task, sql, ex);
+        if (translated instanceof QueryTimeoutException) {
+            registry.counter("ees.query.timeouts", "class", scope == null ? "none" : scope.requestClass()).increment();
+        }
+        return translated;
+    }
+}
@@ -0,0 +1,55 @@
+package com.moon.backend.config;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程操作的分片（账本所在数据库），由 ShardRoutingFilter 按请求中的 bookGuid 设置，
+ * 后台任务按分片逐个设置。未设置时为 main。连接在事务开始时绑定，切换分片须在事务之外进行。
+ */
+public final class ShardContext {
+
+    public static final String MAIN = "main";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static String current() {
+        String shard = CURRENT.get();
+        return shard == null ? MAIN : shard;
+    }
+
+    public static void run(String shard, Runnable action) {
+        call(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public static <T> T call(String shard, Supplier<T> action) {
+        String previous = switchTo(shard);
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * 切换分片并返回之前的设置，调用方须在 finally 中 restore
+     */
+    public static String switchTo(String shard) {
+        String previous = CURRENT.get();
+        CURRENT.set(shard);
+        return previous;
+    }
+
+    public static void restore(String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
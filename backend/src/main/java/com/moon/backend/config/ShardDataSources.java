@@ -0,0 +1,56 @@
+package com.moon.backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 各分片的主库连接池（不经过路由与副本），供分片目录与账本迁移直接访问指定分片。
+ */
+public class ShardDataSources implements AutoCloseable {
+
+    private final Map<String, DataSource> dataSources = new LinkedHashMap<>();
+    private final List<HikariDataSource> owned;
+
+    public ShardDataSources(DataSource main, ShardProperties properties) {
+        dataSources.put(ShardContext.MAIN, main);
+        properties.getNodes().forEach((key, node) -> {
+            if (ShardContext.MAIN.equals(key)) {
+                throw new IllegalStateException("分片名 main 保留给 spring.datasource");
+            }
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("ees-shard-" + key);
+            dataSource.setJdbcUrl(node.getJdbcUrl());
+            dataSource.setUsername(node.getUsername());
+            dataSource.setPassword(node.getPassword());
+            dataSource.setDriverClassName(node.getDriverClassName());
+            dataSource.setMaximumPoolSize(node.getMaximumPoolSize());
+            dataSources.put(key, dataSource);
+        });
+        this.owned = dataSources.values().stream()
+                .filter(ds -> ds != main)
+                .map(HikariDataSource.class::cast)
+                .toList();
+    }
+
+    public Map<String, DataSource> all() {
+        return Collections.unmodifiableMap(dataSources);
+    }
+
+    public DataSource get(String shard) {
+        DataSource dataSource = dataSources.get(shard);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("分片不存在: " + shard);
+        }
+        return dataSource;
+    }
+
+    @Override
+    public void close() {
+        owned.forEach(HikariDataSource::close);
+    }
+}
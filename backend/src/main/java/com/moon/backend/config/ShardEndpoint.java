@@ -0,0 +1,34 @@
+package com.moon.backend.config;
+
+import com.moon.backend.service.BookMoveService;
+import com.moon.backend.service.ShardDirectory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 运维端点 /actuator/shards：查看各分片负载，迁移账本（POST {"bookGuid": "...", "target": "shard1"}）。
+ * 默认不通过 HTTP 暴露，需在 management.endpoints.web.exposure.include 中显式开启。
+ */
+@Component
+@Endpoint(id = "shards")
+@RequiredArgsConstructor
+public class ShardEndpoint {
+
+    private final ShardDirectory shardDirectory;
+    private final BookMoveService bookMoveService;
+
+    @ReadOperation
+    public List<ShardDirectory.ShardLoad> loads() {
+        return shardDirectory.loads();
+    }
+
+    @WriteOperation
+    public BookMoveService.MoveResult move(String bookGuid, String target) {
+        return bookMoveService.move(bookGuid, target);
+    }
+}
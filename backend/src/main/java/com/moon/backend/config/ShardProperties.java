@@ -0,0 +1,30 @@
+package com.moon.backend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 分片配置：main 即 spring.datasource，nodes 为其余分片（键为分片名）。
+ */
+@Data
+@Component
+@ConfigurationProperties("ees.shards")
+public class ShardProperties {
+
+    private boolean enabled;
+
+    private Map<String, Node> nodes = new LinkedHashMap<>();
+
+    @Data
+    public static class Node {
+        private String jdbcUrl;
+        private String username;
+        private String password;
+        private String driverClassName = "com.mysql.cj.jdbc.Driver";
+        private int maximumPoolSize = 10;
+    }
+}
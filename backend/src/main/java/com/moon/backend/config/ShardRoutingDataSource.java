@@ -0,0 +1,14 @@
+package com.moon.backend.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * 按 ShardContext 选择分片；main 分片的目标可以是读写分离的 ReplicaRoutingDataSource。
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
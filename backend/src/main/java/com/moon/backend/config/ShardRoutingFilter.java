@@ -0,0 +1,73 @@
+package com.moon.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.service.ShardDirectory;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 按 bookGuid 查询参数把本次请求路由到账本所在分片（请求体中的 bookGuid 由 BookAccessBodyAdvice 补充设置）。
+ * 排在 TokenAuthFilter 之后，令牌与账本归属校验仍在 main 上完成；账本迁移冻结期间拒绝写请求。
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 8)
+@RequiredArgsConstructor
+public class ShardRoutingFilter extends OncePerRequestFilter {
+
+    private final ShardDirectory shardDirectory;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !shardDirectory.isEnabled() || !path.startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain chain) throws ServletException, IOException {
+        String bookGuid = request.getParameter("bookGuid");
+        String shard = ShardContext.MAIN;
+        if (bookGuid != null && !bookGuid.isBlank()) {
+            if (isWrite(request) && shardDirectory.isFrozen(bookGuid)) {
+                rejectMoving(response);
+                return;
+            }
+            shard = shardDirectory.shardOf(bookGuid);
+        }
+        String previous = ShardContext.switchTo(shard);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    static boolean isWrite(HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod()) && !HttpMethod.OPTIONS.matches(request.getMethod());
+    }
+
+    private void rejectMoving(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "5");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getWriter(), ApiResponse.fail("账本迁移中，请稍后重试"));
+    }
+}
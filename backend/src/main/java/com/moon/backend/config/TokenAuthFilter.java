@@ -0,0 +1,86 @@
+package com.moon.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.service.BookAccessCache;
+import com.moon.backend.service.TokenService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 校验 Authorization: Bearer 令牌并检查 bookGuid 查询参数是否属于当前用户；请求体中的 bookGuid 由 BookAccessBodyAdvice 检查，
+ * 只按单据 guid 寻址的接口由 BookAccessGuard 查出所属账本后检查。
+ * 默认要求令牌；ees.auth.enforce=false 时允许无令牌请求（仅供本地排查），但携带的令牌仍会被校验。
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 10)
+@RequiredArgsConstructor
+public class TokenAuthFilter extends OncePerRequestFilter {
+
+    public static final String USER_ID_ATTR = "ees.userId";
+
+    private static final String BEARER = "Bearer ";
+
+    private final TokenService tokenService;
+    private final BookAccessCache bookAccessCache;
+    private final ObjectMapper objectMapper;
+
+    @Value("${ees.auth.enforce:true}")
+    private boolean enforce;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith("/api/")
+                || path.startsWith("/api/auth/")
+                || HttpMethod.OPTIONS.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain chain) throws ServletException, IOException {
+        String header = request.getHeader("Authorization");
+        if (header == null || !header.startsWith(BEARER)) {
+            if (enforce) {
+                reject(response, HttpStatus.UNAUTHORIZED, "未登录或令牌缺失");
+                return;
+            }
+            chain.doFilter(request, response);
+            return;
+        }
+        Long userId = tokenService.verify(header.substring(BEARER.length()).trim());
+        if (userId == null) {
+            reject(response, HttpStatus.UNAUTHORIZED, "令牌无效或已过期");
+            return;
+        }
+        String bookGuid = request.getParameter("bookGuid");
+        if (bookGuid != null && !bookGuid.isBlank() && !bookAccessCache.canAccess(userId, bookGuid)) {
+            reject(response, HttpStatus.FORBIDDEN, "无权访问该账本");
+            return;
+        }
+        request.setAttribute(USER_ID_ATTR, userId);
+        chain.doFilter(request, response);
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getWriter(), ApiResponse.fail(message));
+    }
+}
@@ -0,0 +1,27 @@
+package com.moon.backend.config;
+
+import com.moon.backend.service.CacheWarmupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动预热未完成时报告 OUT_OF_SERVICE；加入 readiness 组后，负载均衡在热点账本预热完成前不转发流量。
+ */
+@Component("warmup")
+@RequiredArgsConstructor
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    private final CacheWarmupService cacheWarmupService;
+
+    @Override
+    public Health health() {
+        Health.Builder builder = cacheWarmupService.isReady() ? Health.up() : Health.outOfService();
+        return builder
+                .withDetail("warmedBooks", cacheWarmupService.warmedBooks())
+                .withDetail("targetBooks", cacheWarmupService.targetBooks())
+                .withDetail("lastDurationMs", cacheWarmupService.lastDurationMillis())
+                .build();
+    }
+}
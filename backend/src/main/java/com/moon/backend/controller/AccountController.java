@@ -1,14 +1,23 @@
 package com.moon.backend.controller;
 
+import com.moon.backend.config.BookAccessGuard;
+import com.moon.backend.config.QueryScope;
 import com.moon.backend.dto.AccountNodeResponse;
 import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.dto.ChartTemplateResponse;
 import com.moon.backend.dto.CreateAccountRequest;
 import com.moon.backend.dto.UpdateAccountRequest;
-import com.moon.backend.dto.RelatedDocResponse;
+import com.moon.backend.dto.RelatedDocPage;
 import com.moon.backend.entity.Account;
 import com.moon.backend.service.AccountService;
+import com.moon.backend.service.ChartTemplateService;
+import com.moon.backend.service.ReadCoalescer;
+import com.moon.backend.service.SingleFlight;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -22,6 +31,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @RestController
 @RequestMapping("/api/accounts")
@@ -29,19 +39,31 @@ import java.util.List;
 public class AccountController {
 
     private final AccountService accountService;
+    private final ReadCoalescer readCoalescer;
+    private final ChartTemplateService chartTemplateService;
+    private final BookAccessGuard bookAccessGuard;
 
+    /**
+     * 科目树在异步线程中计算，客户端断开或超时时取消正在执行的语句
+     */
     @GetMapping("/tree")
-    public ResponseEntity<ApiResponse<List<AccountNodeResponse>>> getTree(@RequestParam String bookGuid) {
-        List<AccountNodeResponse> tree = accountService.getAccountTree(bookGuid);
-        return ResponseEntity.ok(ApiResponse.ok("查询成功", tree));
+    public Callable<ResponseEntity<ApiResponse<List<AccountNodeResponse>>>> getTree(@RequestParam String bookGuid) {
+        return () -> ResponseEntity.ok(ApiResponse.ok("查询成功", readCoalescer.accountTree(bookGuid)));
+    }
+
+    @GetMapping("/templates")
+    public ResponseEntity<ApiResponse<List<ChartTemplateResponse>>> templates() {
+        return ResponseEntity.ok(ApiResponse.ok("查询成功", chartTemplateService.listTemplates()));
     }
 
     @GetMapping("/{guid}/related")
-    public ResponseEntity<ApiResponse<List<RelatedDocResponse>>> relatedDocs(@PathVariable String guid,
-                                                                             @RequestParam String bookGuid,
-                                                                             @RequestParam(defaultValue = "false") boolean includeChildren) {
-        List<RelatedDocResponse> docs = accountService.listRelatedDocs(bookGuid, guid, includeChildren);
-        return ResponseEntity.ok(ApiResponse.ok("查询成功", docs));
+    public ResponseEntity<ApiResponse<RelatedDocPage>> relatedDocs(@PathVariable String guid,
+                                                                   @RequestParam String bookGuid,
+                                                                   @RequestParam(defaultValue = "false") boolean includeChildren,
+                                                                   @RequestParam(required = false) String cursor,
+                                                                   @RequestParam(defaultValue = "50") int limit) {
+        RelatedDocPage page = accountService.listRelatedDocs(bookGuid, guid, includeChildren, cursor, limit);
+        return ResponseEntity.ok(ApiResponse.ok("查询成功", page));
     }
 
     @PostMapping
@@ -52,6 +74,7 @@ public class AccountController {
 
     @PutMapping("/{guid}")
     public ResponseEntity<ApiResponse<Account>> update(@PathVariable String guid, @Valid @RequestBody UpdateAccountRequest request) {
+        bookAccessGuard.requireAccount(guid);
         request.setGuid(guid);
         Account updated = accountService.updateAccount(request);
         return ResponseEntity.ok(ApiResponse.ok("更新成功", updated));
@@ -59,10 +82,23 @@ public class AccountController {
 
     @DeleteMapping("/{guid}")
     public ResponseEntity<ApiResponse<Void>> delete(@PathVariable String guid) {
+        bookAccessGuard.requireAccount(guid);
         accountService.deleteAccount(guid);
         return ResponseEntity.ok(ApiResponse.ok("删除成功", null));
     }
 
+    @ExceptionHandler({QueryTimeoutException.class, QueryScope.Cancelled.class})
+    public ResponseEntity<ApiResponse<Void>> handleTimeout(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ApiResponse.fail("查询超时，请缩小查询范围后重试"));
+    }
+
+    @ExceptionHandler(SingleFlight.Busy.class)
+    public ResponseEntity<ApiResponse<Void>> handleBusy(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ApiResponse.fail(ex.getMessage()));
+    }
+
     @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
     public ResponseEntity<ApiResponse<Void>> handleBadRequest(RuntimeException ex) {
         return ResponseEntity.badRequest().body(ApiResponse.fail(ex.getMessage()));
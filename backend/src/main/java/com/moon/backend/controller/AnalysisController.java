@@ -0,0 +1,47 @@
+package com.moon.backend.controller;
+
+import com.moon.backend.config.QueryScope;
+import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.dto.LedgerPivotRequest;
+import com.moon.backend.dto.LedgerPivotResponse;
+import com.moon.backend.service.LedgerColumnStore;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.Callable;
+
+@RestController
+@RequestMapping("/api/analysis")
+@RequiredArgsConstructor
+public class AnalysisController {
+
+    private final LedgerColumnStore ledgerColumnStore;
+
+    /**
+     * 即席汇总：按科目/期间/来源/往来单位/项目过滤并分组求和，
+     * 可支撑试算平衡（ACCOUNT）、损益（accountTypes=INCOME,EXPENSE）、现金流（银行科目按 MONTH）及透视表。
+     * 在异步线程中执行，客户端断开或超时时取消正在执行的语句。
+     */
+    @PostMapping("/pivot")
+    public Callable<ResponseEntity<ApiResponse<LedgerPivotResponse>>> pivot(@Valid @RequestBody LedgerPivotRequest request) {
+        return () -> ResponseEntity.ok(ApiResponse.ok("查询成功", ledgerColumnStore.pivot(request)));
+    }
+
+    @ExceptionHandler({QueryTimeoutException.class, QueryScope.Cancelled.class})
+    public ResponseEntity<ApiResponse<Void>> handleTimeout(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ApiResponse.fail("查询超时，请缩小查询范围后重试"));
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
+    public ResponseEntity<ApiResponse<Void>> handleBadRequest(RuntimeException ex) {
+        return ResponseEntity.badRequest().body(ApiResponse.fail(ex.getMessage()));
+    }
+}
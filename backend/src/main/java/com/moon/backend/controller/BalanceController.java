@@ -1,9 +1,13 @@
 package com.moon.backend.controller;
 
+import com.moon.backend.config.QueryScope;
 import com.moon.backend.dto.ApiResponse;
 import com.moon.backend.service.AccountService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -11,6 +15,8 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * 快速平衡性校验：资产-负债=所有者权益，资产+费用=负债+所有者权益+收入
@@ -22,9 +28,15 @@ public class BalanceController {
 
     private final AccountService accountService;
 
+    /**
+     * 在异步线程中按科目类型汇总，客户端断开或超时时取消正在执行的语句
+     */
     @GetMapping("/check")
-    public ResponseEntity<ApiResponse<String>> check(@RequestParam String bookGuid) {
-        var sums = accountService.sumByType(bookGuid);
+    public Callable<ResponseEntity<ApiResponse<String>>> check(@RequestParam String bookGuid) {
+        return () -> check(accountService.sumByType(bookGuid));
+    }
+
+    private ResponseEntity<ApiResponse<String>> check(Map<String, BigDecimal> sums) {
         BigDecimal asset = sums.getOrDefault("ASSET", BigDecimal.ZERO);
         BigDecimal liability = sums.getOrDefault("LIABILITY", BigDecimal.ZERO);
         BigDecimal equity = sums.getOrDefault("EQUITY", BigDecimal.ZERO);
@@ -38,4 +50,9 @@ public class BalanceController {
         boolean ok = staticDiff.compareTo(BigDecimal.ZERO) == 0 && dynamicDiff.compareTo(BigDecimal.ZERO) == 0;
         return ResponseEntity.ok(ok ? ApiResponse.ok("平衡", msg) : ApiResponse.fail(msg));
     }
+
+    @ExceptionHandler({QueryTimeoutException.class, QueryScope.Cancelled.class})
+    public ResponseEntity<ApiResponse<Void>> handleTimeout(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ApiResponse.fail("查询超时，请缩小查询范围后重试"));
+    }
 }
@@ -1,12 +1,15 @@
 package com.moon.backend.controller;
 
+import com.moon.backend.config.BookAccessGuard;
 import com.moon.backend.dto.ApiResponse;
 import com.moon.backend.dto.BankReconcileRequest;
 import com.moon.backend.dto.BankStatementItemRequest;
+import com.moon.backend.service.PeriodCloseService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -23,11 +26,26 @@ import java.util.UUID;
 public class BankController {
 
     private final JdbcTemplate jdbcTemplate;
+    private final PeriodCloseService periodCloseService;
+    private final BookAccessGuard bookAccessGuard;
 
     @PostMapping("/statement/import")
+    @Transactional
     public ResponseEntity<ApiResponse<String>> importStatement(@Valid @RequestBody BankStatementItemRequest request) {
+        periodCloseService.assertOpen(request.getBookGuid(), request.getPostDate().atStartOfDay());
+        // 先确认科目再写入，避免留下没有分录的凭证
+        String bankAccountGuid = jdbcTemplate.query(
+                "SELECT guid FROM accounts WHERE book_guid = ? AND name = '银行存款' LIMIT 1",
+                rs -> rs.next() ? rs.getString("guid") : null,
+                request.getBookGuid()
+        );
+        if (bankAccountGuid == null) {
+            return ResponseEntity.badRequest().body(ApiResponse.fail("未找到银行存款科目"));
+        }
+
         String txGuid = UUID.randomUUID().toString();
         LocalDateTime now = LocalDateTime.now();
+        LocalDateTime postDate = request.getPostDate().atStartOfDay();
 
         jdbcTemplate.update(
                 "INSERT INTO transactions (guid, book_guid, num, post_date, enter_date, description, doc_status, source_type, source_guid) " +
@@ -35,26 +53,18 @@ public class BankController {
                 txGuid,
                 request.getBookGuid(),
                 request.getRefNo(),
-                request.getPostDate().atStartOfDay(),
+                postDate,
                 now,
                 request.getDescription(),
                 request.getRefNo()
         );
 
-        String bankAccountGuid = jdbcTemplate.query(
-                "SELECT guid FROM accounts WHERE book_guid = ? AND name = '银行存款' LIMIT 1",
-                rs -> rs.next() ? rs.getString("guid") : null,
-                request.getBookGuid()
-        );
-        if (bankAccountGuid == null) {
-            return ResponseEntity.badRequest().body(ApiResponse.fail("未找到银行存款科目"));
-        }
-
         jdbcTemplate.update(
-                "INSERT INTO splits (guid, tx_guid, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
-                        "VALUES (?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, NULL)",
+                "INSERT INTO splits (guid, tx_guid, post_date, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
+                        "VALUES (?, ?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, NULL)",
                 UUID.randomUUID().toString(),
                 txGuid,
+                postDate,
                 bankAccountGuid,
                 request.getAmountCent(),
                 request.getAmountCent(),
@@ -68,6 +78,9 @@ public class BankController {
     public ResponseEntity<ApiResponse<Void>> reconcile(@Valid @RequestBody BankReconcileRequest request) {
         LocalDate date = request.getReconcileDate() != null ? request.getReconcileDate() : LocalDate.now();
 
+        bookAccessGuard.requireSplits(request.getBankSplitGuids());
+        bookAccessGuard.requireSplits(request.getBizSplitGuids());
+
         // 将银行流水分录和业务分录都标记对账
         request.getBankSplitGuids().forEach(guid -> markReconciled(guid, date));
         request.getBizSplitGuids().forEach(guid -> markReconciled(guid, date));
@@ -0,0 +1,35 @@
+package com.moon.backend.controller;
+
+import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.dto.ChangeFeedResponse;
+import com.moon.backend.service.LedgerChangeService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/changes")
+@RequiredArgsConstructor
+public class ChangeController {
+
+    private final LedgerChangeService ledgerChangeService;
+
+    /**
+     * 增量拉取账本变更，首次同步传 since=0，之后传上次返回的 nextSince
+     */
+    @GetMapping
+    public ResponseEntity<ApiResponse<ChangeFeedResponse>> changes(@RequestParam String bookGuid,
+                                                                   @RequestParam(defaultValue = "0") long since,
+                                                                   @RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(ApiResponse.ok("查询成功", ledgerChangeService.changes(bookGuid, since, limit)));
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
+    public ResponseEntity<ApiResponse<Void>> handleBadRequest(RuntimeException ex) {
+        return ResponseEntity.badRequest().body(ApiResponse.fail(ex.getMessage()));
+    }
+}
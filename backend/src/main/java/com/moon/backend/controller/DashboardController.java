@@ -1,27 +1,60 @@
 package com.moon.backend.controller;
 
+import com.moon.backend.config.QueryScope;
 import com.moon.backend.dto.ApiResponse;
 import com.moon.backend.dto.DashboardSummary;
-import com.moon.backend.service.DashboardService;
+import com.moon.backend.service.DashboardPushService;
+import com.moon.backend.service.ReadCoalescer;
+import com.moon.backend.service.SingleFlight;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.Callable;
 
 @RestController
 @RequestMapping("/api/dashboard")
 @RequiredArgsConstructor
 public class DashboardController {
 
-    private final DashboardService dashboardService;
+    private final ReadCoalescer readCoalescer;
+    private final DashboardPushService dashboardPushService;
 
+    /**
+     * 在异步线程中汇总，客户端断开或超时时取消正在执行的语句
+     */
     @GetMapping("/summary")
-    public ResponseEntity<ApiResponse<DashboardSummary>> summary(@RequestParam String bookGuid) {
-        DashboardSummary summary = dashboardService.buildSummary(bookGuid);
-        return ResponseEntity.ok(ApiResponse.ok("查询成功", summary));
+    public Callable<ResponseEntity<ApiResponse<DashboardSummary>>> summary(@RequestParam String bookGuid) {
+        return () -> ResponseEntity.ok(ApiResponse.ok("查询成功", readCoalescer.dashboardSummary(bookGuid)));
+    }
+
+    /**
+     * SSE 订阅：先推送 snapshot 事件，之后过账提交时推送 delta 事件（仅含变化的指标与单据状态）
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam String bookGuid) {
+        return dashboardPushService.subscribe(bookGuid);
+    }
+
+    @ExceptionHandler({QueryTimeoutException.class, QueryScope.Cancelled.class})
+    public ResponseEntity<ApiResponse<Void>> handleTimeout(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ApiResponse.fail("查询超时，请缩小查询范围后重试"));
+    }
+
+    @ExceptionHandler(SingleFlight.Busy.class)
+    public ResponseEntity<ApiResponse<Void>> handleBusy(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ApiResponse.fail(ex.getMessage()));
     }
 
     @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
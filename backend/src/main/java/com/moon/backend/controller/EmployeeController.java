@@ -6,8 +6,11 @@ import com.moon.backend.dto.EmployeePayRequest;
 import com.moon.backend.dto.EmployeeRequest;
 import com.moon.backend.dto.NameIdResponse;
 import com.moon.backend.service.EmployeeService;
+import com.moon.backend.service.PostingPipeline;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -23,6 +26,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class EmployeeController {
 
     private final EmployeeService employeeService;
+    private final PostingPipeline postingPipeline;
 
     @PostMapping
     public ResponseEntity<ApiResponse<String>> create(@Valid @RequestBody EmployeeRequest request) {
@@ -32,13 +36,13 @@ public class EmployeeController {
 
     @PostMapping("/expense/post")
     public ResponseEntity<ApiResponse<Void>> postExpense(@Valid @RequestBody EmployeeExpensePostRequest request) {
-        employeeService.postExpense(request);
+        postingPipeline.post(request.getBookGuid(), () -> employeeService.postExpense(request));
         return ResponseEntity.ok(ApiResponse.ok("员工费用过账成功", null));
     }
 
     @PostMapping("/pay/post")
     public ResponseEntity<ApiResponse<Void>> postPay(@Valid @RequestBody EmployeePayRequest request) {
-        employeeService.postPay(request);
+        postingPipeline.post(request.getBookGuid(), () -> employeeService.postPay(request));
         return ResponseEntity.ok(ApiResponse.ok("员工付款过账成功", null));
     }
 
@@ -47,6 +51,18 @@ public class EmployeeController {
         return ResponseEntity.ok(ApiResponse.ok("查询成功", employeeService.listPostedExpenses(bookGuid)));
     }
 
+    @ExceptionHandler(PostingPipeline.QueueTimeout.class)
+    public ResponseEntity<ApiResponse<Void>> handleQueueTimeout(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ApiResponse.fail(ex.getMessage()));
+    }
+
+    @ExceptionHandler(PostingPipeline.InDoubt.class)
+    public ResponseEntity<ApiResponse<Void>> handleInDoubt(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ApiResponse.fail(ex.getMessage()));
+    }
+
     @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
     public ResponseEntity<ApiResponse<Void>> handleBadRequest(RuntimeException ex) {
         return ResponseEntity.badRequest().body(ApiResponse.fail(ex.getMessage()));
@@ -0,0 +1,42 @@
+package com.moon.backend.controller;
+
+import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.dto.PeriodCloseResponse;
+import com.moon.backend.dto.YearCloseRequest;
+import com.moon.backend.service.PeriodCloseService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/periods")
+@RequiredArgsConstructor
+public class PeriodController {
+
+    private final PeriodCloseService periodCloseService;
+
+    @PostMapping("/close")
+    public ResponseEntity<ApiResponse<PeriodCloseResponse>> close(@Valid @RequestBody YearCloseRequest request) {
+        PeriodCloseResponse resp = periodCloseService.closeFiscalYear(request.getBookGuid(), request.getFiscalYear());
+        return ResponseEntity.ok(ApiResponse.ok("年度结账成功", resp));
+    }
+
+    @GetMapping("/closes")
+    public ResponseEntity<ApiResponse<List<PeriodCloseResponse>>> list(@RequestParam String bookGuid) {
+        return ResponseEntity.ok(ApiResponse.ok("查询成功", periodCloseService.listCloses(bookGuid)));
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
+    public ResponseEntity<ApiResponse<Void>> handleBadRequest(RuntimeException ex) {
+        return ResponseEntity.badRequest().body(ApiResponse.fail(ex.getMessage()));
+    }
+}
@@ -1,5 +1,6 @@
 package com.moon.backend.controller;
 
+import com.moon.backend.config.BookAccessGuard;
 import com.moon.backend.dto.ApiResponse;
 import com.moon.backend.dto.ReconcileAccountItem;
 import com.moon.backend.dto.ReconcileAccountResponse;
@@ -27,9 +28,11 @@ import java.util.List;
 public class ReconcileController {
 
     private final JdbcTemplate jdbcTemplate;
+    private final BookAccessGuard bookAccessGuard;
 
     @PostMapping("/splits")
     public ResponseEntity<ApiResponse<Void>> reconcileSplits(@RequestBody ReconcileRequest request) {
+        bookAccessGuard.requireSplits(request.getSplitGuids());
         LocalDate date = request.getReconcileDate() != null ? request.getReconcileDate() : LocalDate.now();
         for (String guid : request.getSplitGuids()) {
             jdbcTemplate.update(
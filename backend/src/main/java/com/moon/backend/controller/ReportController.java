@@ -1,57 +1,112 @@
 package com.moon.backend.controller;
 
+import com.moon.backend.config.QueryScope;
 import com.moon.backend.dto.ApiResponse;
 import com.moon.backend.dto.BalanceSheetResponse;
 import com.moon.backend.dto.CashFlowResponse;
 import com.moon.backend.dto.ProfitLossResponse;
-import com.moon.backend.service.ReportService;
+import com.moon.backend.dto.ReportJobRequest;
+import com.moon.backend.dto.ReportJobResponse;
+import com.moon.backend.service.ReadCoalescer;
+import com.moon.backend.service.ReportJobService;
+import com.moon.backend.service.SingleFlight;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDate;
+import java.util.concurrent.Callable;
 
 @RestController
 @RequestMapping("/api/reports")
 @RequiredArgsConstructor
 public class ReportController {
 
-    private final ReportService reportService;
+    private final ReadCoalescer readCoalescer;
+    private final ReportJobService reportJobService;
 
+    /**
+     * 报表查询在异步线程中执行，客户端断开或超时时取消正在执行的语句
+     */
     @GetMapping("/pl")
-    public ResponseEntity<ApiResponse<ProfitLossResponse>> profitLoss(
+    public Callable<ResponseEntity<ApiResponse<ProfitLossResponse>>> profitLoss(
             @RequestParam String bookGuid,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end
     ) {
-        ProfitLossResponse resp = reportService.profitLoss(bookGuid, start, end);
-        return ResponseEntity.ok(ApiResponse.ok("查询成功", resp));
+        return () -> ResponseEntity.ok(ApiResponse.ok("查询成功", readCoalescer.profitLoss(bookGuid, start, end)));
     }
 
     @GetMapping("/bs")
-    public ResponseEntity<ApiResponse<BalanceSheetResponse>> balanceSheet(
+    public Callable<ResponseEntity<ApiResponse<BalanceSheetResponse>>> balanceSheet(
             @RequestParam String bookGuid,
             @RequestParam("asOf") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf
     ) {
-        BalanceSheetResponse resp = reportService.balanceSheet(bookGuid, asOf);
-        return ResponseEntity.ok(ApiResponse.ok("查询成功", resp));
+        return () -> ResponseEntity.ok(ApiResponse.ok("查询成功", readCoalescer.balanceSheet(bookGuid, asOf)));
     }
 
     @GetMapping("/cf")
-    public ResponseEntity<ApiResponse<CashFlowResponse>> cashFlow(
+    public Callable<ResponseEntity<ApiResponse<CashFlowResponse>>> cashFlow(
             @RequestParam String bookGuid,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate start,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end
     ) {
-        CashFlowResponse resp = reportService.cashFlowNet(bookGuid, start, end);
+        return () -> ResponseEntity.ok(ApiResponse.ok("查询成功", readCoalescer.cashFlowNet(bookGuid, start, end)));
+    }
+
+    /**
+     * 提交异步报表任务，相同参数的任务未结束时返回同一任务
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<ApiResponse<ReportJobResponse>> submitJob(@Valid @RequestBody ReportJobRequest request) {
+        ReportJobResponse resp = reportJobService.submit(request);
+        return ResponseEntity.accepted().body(ApiResponse.ok("已提交", resp));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<ReportJobResponse>> getJob(@PathVariable String jobId, @RequestParam String bookGuid) {
+        ReportJobResponse resp = reportJobService.get(jobId, bookGuid);
         return ResponseEntity.ok(ApiResponse.ok("查询成功", resp));
     }
 
+    @DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<ReportJobResponse>> cancelJob(@PathVariable String jobId, @RequestParam String bookGuid) {
+        ReportJobResponse resp = reportJobService.cancel(jobId, bookGuid);
+        return ResponseEntity.ok(ApiResponse.ok("已取消", resp));
+    }
+
+    @ExceptionHandler({QueryTimeoutException.class, QueryScope.Cancelled.class})
+    public ResponseEntity<ApiResponse<Void>> handleTimeout(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ApiResponse.fail("查询超时，请缩小查询范围后重试"));
+    }
+
+    @ExceptionHandler(ReportJobService.Rejected.class)
+    public ResponseEntity<ApiResponse<Void>> handleRejected(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(ApiResponse.fail(ex.getMessage()));
+    }
+
+    @ExceptionHandler(SingleFlight.Busy.class)
+    public ResponseEntity<ApiResponse<Void>> handleBusy(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ApiResponse.fail(ex.getMessage()));
+    }
+
     @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
     public ResponseEntity<ApiResponse<Void>> handleBadRequest(RuntimeException ex) {
         return ResponseEntity.badRequest().body(ApiResponse.fail(ex.getMessage()));
@@ -3,9 +3,12 @@ package com.moon.backend.controller;
 import com.moon.backend.dto.ApiResponse;
 import com.moon.backend.dto.SalesInvoicePostRequest;
 import com.moon.backend.dto.SalesReceiptRequest;
+import com.moon.backend.service.PostingPipeline;
 import com.moon.backend.service.SalesService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -19,19 +22,32 @@ import org.springframework.web.bind.annotation.RestController;
 public class SalesController {
 
     private final SalesService salesService;
+    private final PostingPipeline postingPipeline;
 
     @PostMapping("/invoice/post")
     public ResponseEntity<ApiResponse<Void>> postInvoice(@Valid @RequestBody SalesInvoicePostRequest request) {
-        salesService.postInvoice(request);
+        postingPipeline.post(request.getBookGuid(), () -> salesService.postInvoice(request));
         return ResponseEntity.ok(ApiResponse.ok("销售发票过账成功", null));
     }
 
     @PostMapping("/receipt/post")
     public ResponseEntity<ApiResponse<Void>> postReceipt(@Valid @RequestBody SalesReceiptRequest request) {
-        salesService.postReceipt(request);
+        postingPipeline.post(request.getBookGuid(), () -> salesService.postReceipt(request));
         return ResponseEntity.ok(ApiResponse.ok("收款过账成功", null));
     }
 
+    @ExceptionHandler(PostingPipeline.QueueTimeout.class)
+    public ResponseEntity<ApiResponse<Void>> handleQueueTimeout(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ApiResponse.fail(ex.getMessage()));
+    }
+
+    @ExceptionHandler(PostingPipeline.InDoubt.class)
+    public ResponseEntity<ApiResponse<Void>> handleInDoubt(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ApiResponse.fail(ex.getMessage()));
+    }
+
     @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
     public ResponseEntity<ApiResponse<Void>> handleBadRequest(RuntimeException ex) {
         return ResponseEntity.badRequest().body(ApiResponse.fail(ex.getMessage()));
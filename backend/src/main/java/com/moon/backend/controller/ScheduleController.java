@@ -0,0 +1,52 @@
+package com.moon.backend.controller;
+
+import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.dto.ScheduleRequest;
+import com.moon.backend.dto.ScheduleResponse;
+import com.moon.backend.service.ScheduledTransactionService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/schedules")
+@RequiredArgsConstructor
+public class ScheduleController {
+
+    private final ScheduledTransactionService scheduledTransactionService;
+
+    @PostMapping
+    public ResponseEntity<ApiResponse<ScheduleResponse>> create(@Valid @RequestBody ScheduleRequest request) {
+        return ResponseEntity.ok(ApiResponse.ok("创建成功", scheduledTransactionService.createSchedule(request)));
+    }
+
+    @GetMapping
+    public ResponseEntity<ApiResponse<List<ScheduleResponse>>> list(@RequestParam String bookGuid) {
+        return ResponseEntity.ok(ApiResponse.ok("查询成功", scheduledTransactionService.listSchedules(bookGuid)));
+    }
+
+    /**
+     * 立即处理到期计划（不等待定时任务），返回生成的凭证数
+     */
+    /**
+     * 手动触发指定账本的到期计划；全部账本由后台定时任务处理
+     */
+    @PostMapping("/run")
+    public ResponseEntity<ApiResponse<Integer>> runDue(@RequestParam String bookGuid) {
+        return ResponseEntity.ok(ApiResponse.ok("执行成功", scheduledTransactionService.runDueForBook(bookGuid)));
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
+    public ResponseEntity<ApiResponse<Void>> handleBadRequest(RuntimeException ex) {
+        return ResponseEntity.badRequest().body(ApiResponse.fail(ex.getMessage()));
+    }
+}
@@ -1,24 +1,37 @@
 package com.moon.backend.controller;
 
+import com.moon.backend.config.BookAccessGuard;
+import com.moon.backend.config.QueryScope;
 import com.moon.backend.dto.ApiResponse;
+import com.moon.backend.dto.TaxBatchCalcRequest;
+import com.moon.backend.dto.TaxBatchCalcResponse;
 import com.moon.backend.dto.TaxCalcRequest;
 import com.moon.backend.dto.TaxCalcResponse;
+import com.moon.backend.dto.TaxLedgerLineResponse;
 import com.moon.backend.dto.TaxPostRequest;
 import com.moon.backend.dto.TaxRateRequest;
 import com.moon.backend.dto.TaxRateResponse;
+import com.moon.backend.dto.TaxReportResponse;
+import com.moon.backend.service.TaxLedgerService;
 import com.moon.backend.service.TaxService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.YearMonth;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @RestController
 @RequestMapping("/api/tax")
@@ -26,6 +39,8 @@ import java.util.List;
 public class TaxController {
 
     private final TaxService taxService;
+    private final TaxLedgerService taxLedgerService;
+    private final BookAccessGuard bookAccessGuard;
 
     @GetMapping("/rates")
     public ResponseEntity<ApiResponse<List<TaxRateResponse>>> list(@RequestParam String bookGuid) {
@@ -38,17 +53,69 @@ public class TaxController {
         return ResponseEntity.ok(ApiResponse.ok("税率创建成功", guid));
     }
 
+    @PutMapping("/rates/{guid}")
+    public ResponseEntity<ApiResponse<Integer>> update(@PathVariable String guid, @Valid @RequestBody TaxRateRequest request) {
+        return ResponseEntity.ok(ApiResponse.ok("税率修改成功", taxService.updateRate(guid, request)));
+    }
+
     @PostMapping("/calc")
     public ResponseEntity<ApiResponse<TaxCalcResponse>> calc(@Valid @RequestBody TaxCalcRequest request) {
+        if (request.getTaxTableGuid() != null) {
+            bookAccessGuard.requireTaxTable(request.getTaxTableGuid());
+        }
         return ResponseEntity.ok(ApiResponse.ok("计算成功", taxService.calculate(request)));
     }
 
+    @PostMapping("/calc/batch")
+    public ResponseEntity<ApiResponse<TaxBatchCalcResponse>> calcBatch(@Valid @RequestBody TaxBatchCalcRequest request) {
+        return ResponseEntity.ok(ApiResponse.ok("计算成功", taxService.calculateBatch(request)));
+    }
+
     @PostMapping("/post")
     public ResponseEntity<ApiResponse<String>> post(@Valid @RequestBody TaxPostRequest request) {
+        bookAccessGuard.requireTaxTable(request.getTaxTableGuid());
+        bookAccessGuard.requireAccount(request.getBaseAccountGuid());
         String txGuid = taxService.postTax(request);
         return ResponseEntity.ok(ApiResponse.ok("过账成功", txGuid));
     }
 
+    /**
+     * 增值税申报汇总：按月份 × 税表，groupBy=OWNER 时再按往来单位展开。
+     * 汇总与明细在异步线程中执行，客户端断开或超时时取消正在执行的语句
+     */
+    @GetMapping("/report")
+    public Callable<ResponseEntity<ApiResponse<TaxReportResponse>>> report(
+            @RequestParam String bookGuid,
+            @RequestParam YearMonth from,
+            @RequestParam YearMonth to,
+            @RequestParam(defaultValue = "TABLE") String groupBy
+    ) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("结束月份不能早于开始月份");
+        }
+        boolean byOwner = "OWNER".equalsIgnoreCase(groupBy);
+        return () -> ResponseEntity.ok(ApiResponse.ok("查询成功", taxLedgerService.report(bookGuid, toPeriod(from), toPeriod(to), byOwner)));
+    }
+
+    @GetMapping("/report/lines")
+    public Callable<ResponseEntity<ApiResponse<List<TaxLedgerLineResponse>>>> reportLines(
+            @RequestParam String bookGuid,
+            @RequestParam YearMonth period,
+            @RequestParam(required = false) String taxTableGuid,
+            @RequestParam(required = false) String ownerGuid
+    ) {
+        return () -> ResponseEntity.ok(ApiResponse.ok("查询成功", taxLedgerService.lines(bookGuid, toPeriod(period), taxTableGuid, ownerGuid)));
+    }
+
+    private int toPeriod(YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+
+    @ExceptionHandler({QueryTimeoutException.class, QueryScope.Cancelled.class})
+    public ResponseEntity<ApiResponse<Void>> handleTimeout(RuntimeException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ApiResponse.fail("查询超时，请缩小查询范围后重试"));
+    }
+
     @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
     public ResponseEntity<ApiResponse<Void>> handleBadRequest(RuntimeException ex) {
         return ResponseEntity.badRequest().body(ApiResponse.fail(ex.getMessage()));
@@ -3,11 +3,15 @@ package com.moon.backend.dto;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.time.Instant;
+
 @Data
 @AllArgsConstructor
 public class AuthResponse {
     private Long id;
     private String username;
     private String bookGuid;
+    private String token;        // 访问令牌，请求时放入 Authorization: Bearer
+    private Instant expiresAt;
 }
 
@@ -0,0 +1,14 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ChangeFeedResponse {
+    private List<LedgerChangeResponse> changes;
+    private Long nextSince;     // 下次请求的 since
+    private Boolean hasMore;    // 为 true 时可立即继续拉取
+}
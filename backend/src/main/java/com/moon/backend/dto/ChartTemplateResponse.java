@@ -0,0 +1,13 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ChartTemplateResponse {
+    private String code;
+    private String name;
+    private String description;
+    private Integer accountCount; // 不含根账户
+}
@@ -0,0 +1,30 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 仪表盘推送增量：只包含发生变化的指标和单据状态
+ */
+@Data
+@AllArgsConstructor
+public class DashboardDelta {
+    private Long seq;                   // 已包含的最大变更序号，可作为 /api/changes 的 since
+    private Map<String, Object> kpis;   // 字段名同 DashboardSummary
+    private List<DocumentStatus> documents;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DocumentStatus {
+        private String type;   // INVOICE / ORDER
+        private String guid;
+        private String no;
+        private String docType; // invoice_type / order_type
+        private String status;
+    }
+}
@@ -21,7 +21,12 @@ public class EntryItemRequest {
     private Long amountCent;
 
     /**
-     * 税率（百分比，可选，示例 13 表示 13%），仅用于保留，暂不计算税额
+     * 税表 GUID（可选），优先于 taxRatePercent
+     */
+    private String taxTableGuid;
+
+    /**
+     * 税率（百分比，可选，示例 13 表示 13%），未指定税表时按税率匹配本账本同方向的启用税表
      */
     private Double taxRatePercent;
 
@@ -0,0 +1,16 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class LedgerChangeResponse {
+    private Long seq;
+    private String entity;      // TRANSACTION / SPLIT / ACCOUNT / INVOICE / ORDER / OWNER
+    private String entityGuid;
+    private String op;          // I 新增 / U 修改 / D 删除
+    private LocalDateTime changedAt;
+}
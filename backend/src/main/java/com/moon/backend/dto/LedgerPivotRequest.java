@@ -0,0 +1,44 @@
+package com.moon.backend.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 列式快照上的即席汇总：按条件过滤分录后按维度分组求和。
+ * 各过滤条件为空表示不过滤。
+ */
+@Data
+public class LedgerPivotRequest {
+    @NotBlank
+    private String bookGuid;
+
+    private LocalDate startDate;
+
+    private LocalDate endDate;
+
+    private List<String> accountGuids;
+
+    /**
+     * 科目类别，如 INCOME / EXPENSE
+     */
+    private List<String> accountTypes;
+
+    /**
+     * 凭证来源类型，如 SALES_INVOICE / PURCHASE_PAYMENT
+     */
+    private List<String> sourceTypes;
+
+    private List<String> ownerGuids;
+
+    private List<String> jobGuids;
+
+    /**
+     * 分组维度（最多 3 个）：ACCOUNT / ACCOUNT_TYPE / YEAR / MONTH / DAY / SOURCE_TYPE / OWNER / JOB
+     */
+    @Size(max = 3)
+    private List<String> groupBy;
+}
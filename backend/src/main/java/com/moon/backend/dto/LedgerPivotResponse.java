@@ -0,0 +1,24 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class LedgerPivotResponse {
+    private List<String> dimensions;
+    private List<Row> rows;
+    private Long rowsScanned;    // 快照中的分录行数
+    private Long snapshotSeq;    // 快照已包含的变更序号
+
+    @Data
+    @AllArgsConstructor
+    public static class Row {
+        private List<String> keys;      // 与 dimensions 一一对应
+        private BigDecimal amount;
+        private Long count;
+    }
+}
@@ -0,0 +1,22 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class OpenItemResponse {
+    private String lotGuid;
+    private String invoiceGuid;
+    private String invoiceNo;
+    private String ownerGuid;
+    private String ownerName;
+    private LocalDateTime datePosted;
+    private LocalDateTime dueDate;
+    private Long originalCent; // 发票原始金额（分）
+    private Long openCent;     // 未清金额（分）
+    private Long daysOverdue;
+    private String agingBucket; // CURRENT / 1-30 / 31-60 / 61-90 / 90+
+}
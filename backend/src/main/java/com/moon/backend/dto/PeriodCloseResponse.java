@@ -0,0 +1,22 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PeriodCloseResponse {
+    private Integer fiscalYear;
+    private LocalDate periodStart;
+    private LocalDate periodEnd;
+    /**
+     * 结转损益凭证（无损益发生额时为空）
+     */
+    private String closingTxGuid;
+    private LocalDateTime closedAt;
+}
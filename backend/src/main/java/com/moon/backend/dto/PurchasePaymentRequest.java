@@ -30,6 +30,11 @@ public class PurchasePaymentRequest {
      */
     private String invoiceNo;
 
+    /**
+     * 供应商 GUID（可选），未指定发票或有剩余金额时按先进先出核销该供应商的未清发票
+     */
+    private String vendorGuid;
+
     /**
      * 付款金额，人民币元（含税）
      */
@@ -44,5 +44,10 @@ public class RegisterRequest {
      */
     private Integer fiscalYearStartMonth;
     private Integer fiscalYearStartDay;
+
+    /**
+     * 科目表模板编码（可选），默认 SMALL_BUSINESS
+     */
+    private String chartTemplate;
 }
 
@@ -0,0 +1,14 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class RelatedDocPage {
+    private List<RelatedDocResponse> items;
+    private String nextCursor;  // 下一页的 cursor，无更多时为 null
+    private Boolean hasMore;
+}
@@ -0,0 +1,34 @@
+package com.moon.backend.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * 异步报表任务：相同参数的任务在执行中时直接复用。
+ */
+@Data
+public class ReportJobRequest {
+    @NotBlank
+    private String bookGuid;
+
+    /**
+     * PL（利润表）/ BS（资产负债表）/ CF（现金流量）/ TRIAL_BALANCE（科目余额）/ OPEN_ITEMS（未清项账龄明细）/ AGING（往来账龄汇总，同 /api/aging）
+     */
+    @NotBlank
+    private String type;
+
+    private LocalDate start;
+
+    private LocalDate end;
+
+    private LocalDate asOf;
+
+    /**
+     * OPEN_ITEMS / AGING：CUSTOMER / VENDOR
+     */
+    private String ownerType;
+
+    private String ownerGuid;
+}
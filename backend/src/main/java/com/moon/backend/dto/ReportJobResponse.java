@@ -0,0 +1,25 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class ReportJobResponse {
+    private String jobId;
+    private String type;
+    /**
+     * QUEUED / RUNNING / SUCCEEDED / FAILED / CANCELLED
+     */
+    private String status;
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+    /**
+     * 仅 SUCCEEDED 时有值，结构与对应的同步报表接口一致
+     */
+    private Object result;
+}
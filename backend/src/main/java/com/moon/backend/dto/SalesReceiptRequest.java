@@ -24,6 +24,11 @@ public class SalesReceiptRequest {
      */
     private String invoiceNo;
 
+    /**
+     * 客户 GUID（可选），未指定发票或有剩余金额时按先进先出核销该客户的未清发票
+     */
+    private String customerGuid;
+
     @NotNull
     @Min(1)
     private Long amountCent;
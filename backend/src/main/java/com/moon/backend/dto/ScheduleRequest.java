@@ -0,0 +1,60 @@
+package com.moon.backend.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+public class ScheduleRequest {
+    @NotBlank
+    private String bookGuid;
+
+    @NotBlank
+    private String name;
+
+    /**
+     * 首次发生时间
+     */
+    @NotNull
+    private LocalDateTime startDate;
+
+    /**
+     * 截止时间（可选），之后自动停用
+     */
+    private LocalDateTime endDate;
+
+    /**
+     * 频率：ONCE / DAILY / WEEKLY / MONTHLY / YEARLY
+     */
+    @NotBlank
+    private String freq;
+
+    /**
+     * 间隔，默认 1
+     */
+    @Min(1)
+    private Integer interval;
+
+    /**
+     * 按月固定日（可选，MONTHLY 有效），1-31 或 -1 表示月末
+     */
+    private String byMonthDay;
+
+    /**
+     * 生成凭证的摘要
+     */
+    private String description;
+
+    private String notes;
+
+    @Valid
+    @NotNull
+    @Size(min = 2)
+    private List<ScheduleSplitRequest> splits;
+}
@@ -0,0 +1,21 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class ScheduleResponse {
+    private String guid;
+    private String name;
+    private Boolean enabled;
+    private String freq;
+    private Integer interval;
+    private String byMonthDay;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+    private LocalDateTime lastOccur;
+    private LocalDateTime nextOccur;
+}
@@ -0,0 +1,19 @@
+package com.moon.backend.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class ScheduleSplitRequest {
+    @NotBlank
+    private String accountGuid;
+
+    /**
+     * 金额（分），借方为正、贷方为负，所有分录合计须为 0
+     */
+    @NotNull
+    private Long amountCent;
+
+    private String memo;
+}
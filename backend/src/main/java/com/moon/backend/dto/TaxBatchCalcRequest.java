@@ -0,0 +1,37 @@
+package com.moon.backend.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+/**
+ * 批量税额计算（列式）：各数组按下标对应同一行，长度须与 amountCent 一致。
+ */
+@Data
+public class TaxBatchCalcRequest {
+    @NotBlank
+    private String bookGuid;
+
+    /**
+     * 金额，单位分
+     */
+    @NotNull
+    @Size(min = 1, max = 100000)
+    private long[] amountCent;
+
+    /**
+     * 每行税率 GUID（可选，优先），为空的行使用 ratePercent
+     */
+    private String[] taxTableGuid;
+
+    /**
+     * 每行税率百分比（可选）
+     */
+    private double[] ratePercent;
+
+    /**
+     * 每行金额是否含税（可选，默认不含税）
+     */
+    private boolean[] taxIncluded;
+}
@@ -0,0 +1,18 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 批量税额计算结果（列式），下标与请求一致
+ */
+@Data
+@AllArgsConstructor
+public class TaxBatchCalcResponse {
+    private long[] baseCent;
+    private long[] taxCent;
+    private long[] totalCent;
+    private Long sumBaseCent;
+    private Long sumTaxCent;
+    private Long sumTotalCent;
+}
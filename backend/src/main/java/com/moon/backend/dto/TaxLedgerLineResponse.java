@@ -0,0 +1,20 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class TaxLedgerLineResponse {
+    private String txGuid;
+    private String num;
+    private String description;
+    private LocalDateTime postDate;
+    private String taxTableName;
+    private String direction;
+    private String ownerName;
+    private Long baseCent;
+    private Long taxCent;
+}
@@ -0,0 +1,46 @@
+package com.moon.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaxReportResponse {
+    private List<Row> rows;
+    private List<PeriodTotal> totals;
+
+    /**
+     * 汇总行：期间 × 税表（× 往来单位）
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Row {
+        private Integer period; // yyyyMM
+        private String taxTableGuid;
+        private String taxTableName;
+        private String direction; // OUTPUT / INPUT
+        private String ownerGuid;
+        private String ownerName;
+        private Long baseCent;
+        private Long taxCent;
+        private Integer txCount;
+    }
+
+    /**
+     * 期间合计：销项、进项、应纳税额（分）
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PeriodTotal {
+        private Integer period;
+        private Long outputTax;
+        private Long inputTax;
+        private Long netPayable;
+    }
+}
@@ -0,0 +1,17 @@
+package com.moon.backend.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+@Data
+public class YearCloseRequest {
+    @NotBlank
+    private String bookGuid;
+
+    /**
+     * 待结账的会计年度（按年度起始日所在公历年计）
+     */
+    @NotNull
+    private Integer fiscalYear;
+}
@@ -29,7 +29,7 @@ public class Book {
     @Column(name = "registered_capital_denom")
     private Long registeredCapitalDenom;
 
-    @Column(name = "root_account_guid", nullable = false)
+    @Column(name = "root_account_guid")
     private String rootAccountGuid;
 
     @Column(name = "fiscal_year_start_month")
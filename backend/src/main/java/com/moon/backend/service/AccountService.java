@@ -2,6 +2,8 @@ package com.moon.backend.service;
 
 import com.moon.backend.dto.AccountNodeResponse;
 import com.moon.backend.dto.CreateAccountRequest;
+import com.moon.backend.dto.RelatedDocPage;
+import com.moon.backend.dto.RelatedDocResponse;
 import com.moon.backend.dto.UpdateAccountRequest;
 import com.moon.backend.entity.Account;
 import com.moon.backend.entity.Book;
@@ -11,17 +13,23 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -29,13 +37,49 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AccountService {
 
+    private static final int MAX_RELATED_PAGE = 200;
+
+    private static final String RELATED_INVOICES_SQL = """
+            SELECT e.guid AS row_key, e.doc_date, i.id AS doc_id, COALESCE(i.notes,'') AS description
+              FROM entries e
+              JOIN invoices i ON e.invoice_guid = i.guid
+             WHERE e.account_guid = ? AND e.book_guid = ?%s
+            """;
+
+    private static final String RELATED_ORDERS_SQL = """
+            SELECT e.guid AS row_key, e.doc_date, o.id AS doc_id, COALESCE(o.notes,'') AS description
+              FROM entries e
+              JOIN orders o ON e.order_guid = o.guid
+             WHERE e.account_guid = ? AND e.book_guid = ?%s
+            """;
+
+    /** 参数：分录表、凭证表（热表或归档表） */
+    private static final String RELATED_SPLITS_SQL = """
+            SELECT s.guid AS row_key, s.post_date AS doc_date, COALESCE(t.num, t.guid) AS doc_id, COALESCE(t.description,'') AS description
+              FROM %s s
+              JOIN %s t ON s.tx_guid = t.guid AND s.post_date = t.post_date
+             WHERE s.account_guid = ? AND t.book_guid = ?%%s
+            """;
+
+    /** keyset 条件，参数：日期列、行键列 */
+    private static final String RELATED_AFTER_SQL = " AND (%1$s < ? OR (%1$s = ? AND %2$s < ?))";
+
     private final AccountRepository accountRepository;
     private final BookRepository bookRepository;
     private final JdbcTemplate jdbcTemplate;
+    private final PeriodCloseService periodCloseService;
+    private final ChartTemplateService chartTemplateService;
+    private final LedgerPartitionService ledgerPartitionService;
+    private final BookMetadataCache bookMetadataCache;
+    private final LedgerColumnStore ledgerColumnStore;
 
     public List<AccountNodeResponse> getAccountTree(String bookGuid) {
         List<Account> accounts = accountRepository.findByBookGuid(bookGuid);
         if (accounts.isEmpty()) {
+            if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                // 只读事务（可能在副本上）不做兜底建账，交给下一次普通请求
+                return List.of();
+            }
             // 兜底：账本存在但没有科目时，自动创建根账户和默认科目
             createDefaultAccountsIfMissing(bookGuid);
             accounts = accountRepository.findByBookGuid(bookGuid);
@@ -101,22 +145,45 @@ public class AccountService {
         return sum;
     }
 
+    /**
+     * 科目余额：已结账时从最近一次结账的期初余额出发，只汇总之后的分录。
+     */
     private Map<String, BigDecimal> loadBaseBalances(String bookGuid) {
-        String sql = """
+        Optional<PeriodCloseService.ClosedPeriod> lastClose = periodCloseService.lastClose(bookGuid);
+        Map<String, BigDecimal> map = new HashMap<>();
+        if (lastClose.isPresent()) {
+            periodCloseService.openingBalances(bookGuid, lastClose.get().fiscalYear() + 1)
+                    .forEach((guid, cents) -> map.put(guid, BigDecimal.valueOf(cents, 2)));
+        }
+        LocalDate openFrom = lastClose.map(close -> close.periodEnd().plusDays(1)).orElse(null);
+        // 列式快照已驻留（含启动时从快照文件恢复）时直接在内存中汇总
+        Optional<Map<String, Long>> cached = ledgerColumnStore.accountTotals(bookGuid, openFrom);
+        if (cached.isPresent()) {
+            cached.get().forEach((guid, cents) -> map.merge(guid, BigDecimal.valueOf(cents, 2), BigDecimal::add));
+            return map;
+        }
+        StringBuilder sql = new StringBuilder("""
                 SELECT s.account_guid AS guid,
                        SUM(CAST(s.value_num AS DECIMAL(18,4)) / NULLIF(s.value_denom, 0)) AS balance
                   FROM splits s
                   JOIN transactions t ON s.tx_guid = t.guid
                  WHERE t.book_guid = ?
-                 GROUP BY s.account_guid
-                """;
-        Map<String, BigDecimal> map = new HashMap<>();
-        jdbcTemplate.query(sql, rs -> {
+                """);
+        List<Object> args = new ArrayList<>();
+        args.add(bookGuid);
+        if (openFrom != null) {
+            // s.post_date 冗余条件用于分区裁剪
+            sql.append(" AND t.post_date >= ? AND s.post_date >= ? ");
+            args.add(openFrom.atStartOfDay());
+            args.add(openFrom.atStartOfDay());
+        }
+        sql.append(" GROUP BY s.account_guid");
+        jdbcTemplate.query(sql.toString(), rs -> {
             BigDecimal balance = rs.getBigDecimal("balance");
             if (balance != null) {
-                map.put(rs.getString("guid"), balance.setScale(2, RoundingMode.HALF_UP));
+                map.merge(rs.getString("guid"), balance.setScale(2, RoundingMode.HALF_UP), BigDecimal::add);
             }
-        }, bookGuid);
+        }, args.toArray());
         return map;
     }
 
@@ -124,25 +191,31 @@ public class AccountService {
      * 如果账本配置了注册资本，则将金额挂到“实收资本”和“银行存款”科目上（用于初始展示）。
      */
     private void applyRegisteredCapital(String bookGuid, Map<String, BigDecimal> baseBalances) {
-        bookRepository.findById(bookGuid).ifPresent(book -> {
-            Long num = book.getRegisteredCapitalNum();
-            Long denom = book.getRegisteredCapitalDenom();
-            if (num == null || num == 0) {
-                return;
-            }
-            // 默认按元为单位；历史版本分母默认为 100，这里按 1 处理以避免显示被缩小 100 倍
-            if (denom == null || denom <= 0 || denom == 100L) {
-                denom = 1L;
-            }
-            BigDecimal value = BigDecimal.valueOf(num)
-                    .divide(BigDecimal.valueOf(denom), 2, RoundingMode.HALF_UP);
-
-            accountRepository.findFirstByBookGuidAndName(bookGuid, "实收资本")
-                    .ifPresent(account -> baseBalances.merge(account.getGuid(), value, BigDecimal::add));
-            // 同时放入银行存款，便于资产负债表平衡展示
-            accountRepository.findFirstByBookGuidAndName(bookGuid, "银行存款")
-                    .ifPresent(account -> baseBalances.merge(account.getGuid(), value, BigDecimal::add));
-        });
+        BookMetadataCache.BookMetadata book = bookMetadataCache.get(bookGuid);
+        if (book == null) {
+            return;
+        }
+        Long num = book.registeredCapitalNum();
+        Long denom = book.registeredCapitalDenom();
+        if (num == null || num == 0) {
+            return;
+        }
+        // 默认按元为单位；历史版本分母默认为 100，这里按 1 处理以避免显示被缩小 100 倍
+        if (denom == null || denom <= 0 || denom == 100L) {
+            denom = 1L;
+        }
+        BigDecimal value = BigDecimal.valueOf(num)
+                .divide(BigDecimal.valueOf(denom), 2, RoundingMode.HALF_UP);
+
+        String paidInCapital = book.accountGuid("实收资本");
+        if (paidInCapital != null) {
+            baseBalances.merge(paidInCapital, value, BigDecimal::add);
+        }
+        // 同时放入银行存款，便于资产负债表平衡展示
+        String bankDeposit = book.accountGuid("银行存款");
+        if (bankDeposit != null) {
+            baseBalances.merge(bankDeposit, value, BigDecimal::add);
+        }
     }
 
     @Transactional
@@ -168,6 +241,7 @@ public class AccountService {
         account.setPlaceholder(false);
         account.setCreatedAt(LocalDateTime.now());
         account.setUpdatedAt(LocalDateTime.now());
+        bookMetadataCache.invalidate(request.getBookGuid());
         return accountRepository.save(account);
     }
 
@@ -185,6 +259,7 @@ public class AccountService {
             account.setDescription(request.getDescription());
         }
         account.setUpdatedAt(LocalDateTime.now());
+        bookMetadataCache.invalidate(account.getBookGuid());
         return accountRepository.save(account);
     }
 
@@ -223,75 +298,113 @@ public class AccountService {
         }
 
         accountRepository.delete(account);
+        bookMetadataCache.invalidate(account.getBookGuid());
     }
 
     /**
-     * 查询科目关联的订单/发票/交易（按日期倒序）。
+     * 查询科目关联的订单/发票/交易（按日期倒序，keyset 分页）。
+     * 每个来源按 (account_guid, 日期) 索引逆序各取一页，再按日期多路归并，只读一页所需的行。
      */
-    public List<com.moon.backend.dto.RelatedDocResponse> listRelatedDocs(String bookGuid, String accountGuid, boolean includeChildren) {
+    @Transactional(readOnly = true)
+    public RelatedDocPage listRelatedDocs(String bookGuid, String accountGuid, boolean includeChildren, String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_RELATED_PAGE));
+        RelatedCursor after = RelatedCursor.decode(cursor);
         List<String> guids = resolveAccountAndChildren(bookGuid, accountGuid, includeChildren);
         if (guids.isEmpty()) {
-            return List.of();
+            return new RelatedDocPage(List.of(), null, false);
         }
-        String placeholders = guids.stream().map(g -> "?").collect(Collectors.joining(","));
-        String sql = """
-                SELECT doc_type, doc_id, doc_date, description FROM (
-                  SELECT 'INVOICE' AS doc_type, i.id AS doc_id, i.date_opened AS doc_date, COALESCE(i.notes,'') AS description
-                    FROM entries e
-                    JOIN invoices i ON e.invoice_guid = i.guid
-                   WHERE e.book_guid = ? AND e.account_guid IN (%s)
-                  UNION ALL
-                  SELECT 'ORDER' AS doc_type, o.id AS doc_id, o.date_opened AS doc_date, COALESCE(o.notes,'') AS description
-                    FROM entries e
-                    JOIN orders o ON e.order_guid = o.guid
-                   WHERE e.book_guid = ? AND e.account_guid IN (%s)
-                  UNION ALL
-                  SELECT 'TRANSACTION' AS doc_type, COALESCE(t.num, t.guid) AS doc_id, t.post_date AS doc_date, COALESCE(t.description,'') AS description
-                    FROM splits s
-                    JOIN transactions t ON s.tx_guid = t.guid
-                   WHERE t.book_guid = ? AND s.account_guid IN (%s)
-                ) AS doc
-                ORDER BY doc_date DESC
-                """.formatted(placeholders, placeholders, placeholders);
-        List<Object> args = new ArrayList<>();
-        args.add(bookGuid);
-        args.addAll(guids);
-        args.add(bookGuid);
-        args.addAll(guids);
-        args.add(bookGuid);
-        args.addAll(guids);
-
-        List<com.moon.backend.dto.RelatedDocResponse> list = jdbcTemplate.query(sql, (rs, i) -> new com.moon.backend.dto.RelatedDocResponse(
-                rs.getString("doc_type"),
-                rs.getString("doc_id"),
-                rs.getTimestamp("doc_date") != null ? rs.getTimestamp("doc_date").toLocalDateTime() : null,
-                rs.getString("description")
-        ), args.toArray());
-
-        // 附加注册资本提示：资产/所有者权益时
-        bookRepository.findById(bookGuid).ifPresent(book -> {
-            boolean isAssetOrEquityRoot = guids.contains(resolveByName(bookGuid, "资产").map(Account::getGuid).orElse("___"))
-                    || guids.contains(resolveByName(bookGuid, "所有者权益").map(Account::getGuid).orElse("___"));
-            if (isAssetOrEquityRoot) {
-                Long num = book.getRegisteredCapitalNum();
-                Long denom = book.getRegisteredCapitalDenom();
-                if (num != null && num > 0) {
-                    long safeDenom = denom == null || denom <= 0 ? 1L : denom;
-                    BigDecimal capital = BigDecimal.valueOf(num).divide(BigDecimal.valueOf(safeDenom), 2, RoundingMode.HALF_UP);
-                    list.add(0, new com.moon.backend.dto.RelatedDocResponse(
-                            "REGISTERED_CAPITAL",
-                            "注册资本",
-                            null,
-                            "注册资本金额：¥" + capital
-                    ));
-                }
+
+        List<List<RelatedRow>> sources = new ArrayList<>();
+        String entryAfter = RELATED_AFTER_SQL.formatted("e.doc_date", "e.guid");
+        String splitAfter = RELATED_AFTER_SQL.formatted("s.post_date", "s.guid");
+        sources.add(queryRelated(RELATED_INVOICES_SQL, entryAfter, "INVOICE", bookGuid, guids, after, size + 1));
+        sources.add(queryRelated(RELATED_ORDERS_SQL, entryAfter, "ORDER", bookGuid, guids, after, size + 1));
+        sources.add(queryRelated(RELATED_SPLITS_SQL.formatted("splits", "transactions"), splitAfter, "TRANSACTION", bookGuid, guids, after, size + 1));
+        if (ledgerPartitionService.archivedThrough(bookGuid).isPresent()) {
+            sources.add(queryRelated(RELATED_SPLITS_SQL.formatted("splits_archive", "transactions_archive"), splitAfter, "TRANSACTION", bookGuid, guids, after, size + 1));
+        }
+
+        // 多路归并：每个来源已按 (日期, 行键) 逆序
+        PriorityQueue<RelatedHead> heads = new PriorityQueue<>();
+        for (List<RelatedRow> rows : sources) {
+            if (!rows.isEmpty()) {
+                heads.add(new RelatedHead(rows, 0));
             }
-        });
-        return list;
+        }
+        List<RelatedDocResponse> items = new ArrayList<>();
+        RelatedRow last = null;
+        while (!heads.isEmpty() && items.size() < size) {
+            RelatedHead head = heads.poll();
+            last = head.row();
+            items.add(last.doc());
+            if (head.index() + 1 < head.rows().size()) {
+                heads.add(new RelatedHead(head.rows(), head.index() + 1));
+            }
+        }
+        boolean hasMore = !heads.isEmpty();
+        String nextCursor = hasMore ? new RelatedCursor(last.date(), last.key()).encode() : null;
+
+        if (after == null) {
+            registeredCapitalDoc(bookGuid, guids).ifPresent(doc -> items.add(0, doc));
+        }
+        return new RelatedDocPage(items, nextCursor, hasMore);
     }
 
-    private Optional<Account> resolveByName(String bookGuid, String name) {
-        return accountRepository.findFirstByBookGuidAndName(bookGuid, name);
+    /**
+     * 附加注册资本提示：查询资产/所有者权益一级科目时
+     */
+    private Optional<RelatedDocResponse> registeredCapitalDoc(String bookGuid, List<String> guids) {
+        BookMetadataCache.BookMetadata book = bookMetadataCache.get(bookGuid);
+        if (book == null) {
+            return Optional.empty();
+        }
+        boolean isAssetOrEquityRoot = guids.contains(book.accountGuid("资产")) || guids.contains(book.accountGuid("所有者权益"));
+        Long num = book.registeredCapitalNum();
+        if (!isAssetOrEquityRoot || num == null || num <= 0) {
+            return Optional.empty();
+        }
+        Long denom = book.registeredCapitalDenom();
+        long safeDenom = denom == null || denom <= 0 ? 1L : denom;
+        BigDecimal capital = BigDecimal.valueOf(num).divide(BigDecimal.valueOf(safeDenom), 2, RoundingMode.HALF_UP);
+        return Optional.of(new RelatedDocResponse(
+                "REGISTERED_CAPITAL",
+                "注册资本",
+                null,
+                "注册资本金额：¥" + capital
+        ));
+    }
+
+    /**
+     * 单个来源的一页：每个科目一个按索引逆序的有界子查询，外层再按日期取前 limit 行。
+     */
+    private List<RelatedRow> queryRelated(String branchSql, String afterSql, String docType, String bookGuid, List<String> accountGuids,
+                                          RelatedCursor after, int limit) {
+        String branch = "(" + branchSql.formatted(after == null ? "" : afterSql).strip() + " ORDER BY doc_date DESC, row_key DESC LIMIT ?)";
+        String sql = String.join(" UNION ALL ", Collections.nCopies(accountGuids.size(), branch))
+                + (accountGuids.size() > 1 ? " ORDER BY doc_date DESC, row_key DESC LIMIT ?" : "");
+        List<Object> args = new ArrayList<>();
+        for (String accountGuid : accountGuids) {
+            args.add(accountGuid);
+            args.add(bookGuid);
+            if (after != null) {
+                args.add(after.date());
+                args.add(after.date());
+                args.add(after.key());
+            }
+            args.add(limit);
+        }
+        if (accountGuids.size() > 1) {
+            args.add(limit);
+        }
+        return jdbcTemplate.query(sql, (rs, i) -> {
+            LocalDateTime date = rs.getTimestamp("doc_date").toLocalDateTime();
+            return new RelatedRow(date, rs.getString("row_key"), new RelatedDocResponse(
+                    docType,
+                    rs.getString("doc_id"),
+                    date,
+                    rs.getString("description")
+            ));
+        }, args.toArray());
     }
 
     private List<String> resolveAccountAndChildren(String bookGuid, String guid, boolean includeChildren) {
@@ -317,100 +430,15 @@ public class AccountService {
         );
     }
 
-    @Transactional
     protected void createDefaultAccountsIfMissing(String bookGuid) {
         Book book = bookRepository.findById(bookGuid)
                 .orElseThrow(() -> new IllegalArgumentException("账本不存在"));
 
         String rootGuid = book.getRootAccountGuid();
         if (rootGuid == null || !accountRepository.existsById(rootGuid)) {
-            rootGuid = UUID.randomUUID().toString();
-            jdbcTemplate.update("UPDATE books SET root_account_guid = ? WHERE guid = ?", rootGuid, bookGuid);
-            insertAccount(rootGuid, bookGuid, "根账户", "0", "ASSET", null, true, "系统自动创建的根账户", LocalDateTime.now());
-        }
-
-        boolean hasChildren = accountRepository.existsByParentGuid(rootGuid);
-        if (!hasChildren) {
-            seedDefaultAccounts(bookGuid, rootGuid, LocalDateTime.now());
-        }
-    }
-
-    private void seedDefaultAccounts(String bookGuid, String rootGuid, LocalDateTime now) {
-        String assetGuid = UUID.randomUUID().toString();
-        String liabilityGuid = UUID.randomUUID().toString();
-        String equityGuid = UUID.randomUUID().toString();
-        String incomeGuid = UUID.randomUUID().toString();
-        String expenseGuid = UUID.randomUUID().toString();
-
-        insertAccount(assetGuid, bookGuid, "资产", "1", "ASSET", rootGuid, true, "资产类科目", now);
-        insertAccount(liabilityGuid, bookGuid, "负债", "2", "LIABILITY", rootGuid, true, "负债类科目", now);
-        insertAccount(equityGuid, bookGuid, "所有者权益", "3", "EQUITY", rootGuid, true, "权益类科目", now);
-        insertAccount(incomeGuid, bookGuid, "收入", "4", "INCOME", rootGuid, true, "收入类科目", now);
-        insertAccount(expenseGuid, bookGuid, "费用", "5", "EXPENSE", rootGuid, true, "费用类科目", now);
-
-        List<AccountSeed> seeds = new ArrayList<>();
-        seeds.add(new AccountSeed("现金", "1001", "ASSET", assetGuid, false, "库存现金"));
-        seeds.add(new AccountSeed("银行存款", "1002", "ASSET", assetGuid, false, "银行账户余额"));
-        seeds.add(new AccountSeed("应收账款", "1122", "ASSET", assetGuid, false, "客户应收"));
-        seeds.add(new AccountSeed("预付账款", "1123", "ASSET", assetGuid, false, "供应商预付款"));
-        seeds.add(new AccountSeed("存货", "1401", "ASSET", assetGuid, false, "原材料/库存商品"));
-        seeds.add(new AccountSeed("固定资产", "1601", "ASSET", assetGuid, false, "固定资产原值"));
-        seeds.add(new AccountSeed("累计折旧", "1602", "ASSET", assetGuid, false, "固定资产累计折旧"));
-
-        seeds.add(new AccountSeed("应付账款", "2202", "LIABILITY", liabilityGuid, false, "供应商应付"));
-        seeds.add(new AccountSeed("预收账款", "2203", "LIABILITY", liabilityGuid, false, "客户预收"));
-        seeds.add(new AccountSeed("应付职工薪酬", "2211", "LIABILITY", liabilityGuid, false, "工资社保公积金"));
-        seeds.add(new AccountSeed("应交税费", "2221", "LIABILITY", liabilityGuid, false, "各类税费应交"));
-
-        seeds.add(new AccountSeed("实收资本", "3001", "EQUITY", equityGuid, false, "投资者投入资本"));
-        seeds.add(new AccountSeed("资本公积", "3002", "EQUITY", equityGuid, false, "资本溢价等"));
-        seeds.add(new AccountSeed("留存收益", "3101", "EQUITY", equityGuid, false, "未分配利润"));
-
-        seeds.add(new AccountSeed("主营业务收入", "6001", "INCOME", incomeGuid, false, "主营产品/服务收入"));
-        seeds.add(new AccountSeed("其他业务收入", "6051", "INCOME", incomeGuid, false, "非主营业务收入"));
-
-        seeds.add(new AccountSeed("主营业务成本", "6401", "EXPENSE", expenseGuid, false, "对应主营收入的成本"));
-        seeds.add(new AccountSeed("销售费用", "6601", "EXPENSE", expenseGuid, false, "销售相关费用"));
-        seeds.add(new AccountSeed("管理费用", "6602", "EXPENSE", expenseGuid, false, "管理相关费用"));
-        seeds.add(new AccountSeed("财务费用", "6603", "EXPENSE", expenseGuid, false, "利息等财务成本"));
-
-        for (AccountSeed seed : seeds) {
-            insertAccount(UUID.randomUUID().toString(), bookGuid, seed.name, seed.code, seed.type, seed.parentGuid, seed.placeholder, seed.description, now);
-        }
-    }
-
-    private void insertAccount(String guid, String bookGuid, String name, String code, String type, String parentGuid, boolean placeholder, String description, LocalDateTime now) {
-        jdbcTemplate.update(
-                "INSERT INTO accounts (guid, book_guid, name, code, description, account_type, parent_guid, hidden, placeholder, created_at, updated_at) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?, ?, ?)",
-                guid,
-                bookGuid,
-                name,
-                code,
-                description,
-                type,
-                parentGuid,
-                placeholder ? 1 : 0,
-                now,
-                now
-        );
-    }
-
-    private static class AccountSeed {
-        final String name;
-        final String code;
-        final String type;
-        final String parentGuid;
-        final boolean placeholder;
-        final String description;
-
-        AccountSeed(String name, String code, String type, String parentGuid, boolean placeholder, String description) {
-            this.name = name;
-            this.code = code;
-            this.type = type;
-            this.parentGuid = parentGuid;
-            this.placeholder = placeholder;
-            this.description = description;
+            chartTemplateService.seedBook(bookGuid, null, ChartTemplateService.DEFAULT_TEMPLATE);
+        } else if (!accountRepository.existsByParentGuid(rootGuid)) {
+            chartTemplateService.seedBook(bookGuid, rootGuid, ChartTemplateService.DEFAULT_TEMPLATE);
         }
     }
 
@@ -433,4 +461,42 @@ public class AccountService {
         }, bookGuid);
         return map;
     }
+
+    private record RelatedRow(LocalDateTime date, String key, RelatedDocResponse doc) {
+    }
+
+    /** 归并游标：指向某个来源的当前行，按 (日期, 行键) 逆序出队 */
+    private record RelatedHead(List<RelatedRow> rows, int index) implements Comparable<RelatedHead> {
+
+        RelatedRow row() {
+            return rows.get(index);
+        }
+
+        @Override
+        public int compareTo(RelatedHead other) {
+            int byDate = other.row().date().compareTo(row().date());
+            return byDate != 0 ? byDate : other.row().key().compareTo(row().key());
+        }
+    }
+
+    /** 分页游标：上一页最后一行的 (日期, 行键)，对外以 Base64 编码 */
+    private record RelatedCursor(LocalDateTime date, String key) {
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((date + "|" + key).getBytes(StandardCharsets.UTF_8));
+        }
+
+        static RelatedCursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                return new RelatedCursor(LocalDateTime.parse(parts[0]), parts[1]);
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("cursor 无效");
+            }
+        }
+    }
 }
@@ -0,0 +1,325 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.AdmissionProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 准入控制：每个接口类别一条通道，限制总并发与单账本并发，超出的请求在通道内排队等待。
+ * 排队按账本做加权公平（起始时间公平队列）：每个账本有虚拟起始标签，每放行一次加 1/权重，
+ * 空闲后重新排队的账本从当前虚拟时间起算，因此单个账本的大量请求不会饿死其他账本。
+ * 排队已满或等待超过 max-wait-ms 的请求被拒绝，由调用方返回 429；后台任务不受这两项限制，一直排队到取得许可或被取消。
+ */
+@Service
+public class AdmissionGate {
+
+    /** 后台排队检查取消的间隔 */
+    private static final long CANCEL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    public enum RequestClass {
+        POSTING, REPORTING, EXPORT
+    }
+
+    private final AdmissionProperties properties;
+    private final Map<RequestClass, Lane> lanes = new EnumMap<>(RequestClass.class);
+
+    public AdmissionGate(AdmissionProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        lanes.put(RequestClass.POSTING, new Lane(RequestClass.POSTING, properties.getPosting(), registry));
+        lanes.put(RequestClass.REPORTING, new Lane(RequestClass.REPORTING, properties.getReporting(), registry));
+        lanes.put(RequestClass.EXPORT, new Lane(RequestClass.EXPORT, properties.getExport(), registry));
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 请求类别；返回 null 表示不受准入控制（普通查询）
+     */
+    public RequestClass classify(String path, boolean write) {
+        if (matches(properties.getExport(), path)) {
+            return RequestClass.EXPORT;
+        }
+        if (matches(properties.getReporting(), path)) {
+            return RequestClass.REPORTING;
+        }
+        return write ? RequestClass.POSTING : null;
+    }
+
+    /**
+     * 获取许可，排队满或等待超时返回 null。拿到的许可必须 release
+     */
+    public Permit acquire(RequestClass requestClass, String bookKey) {
+        return lanes.get(requestClass).acquire(bookKey, false, () -> false);
+    }
+
+    /**
+     * 后台任务获取许可：不受排队上限与 max-wait-ms 限制，不计入拒绝与超时；
+     * cancelled 返回 true 或线程被中断时放弃排队并返回 null
+     */
+    public Permit acquireBackground(RequestClass requestClass, String bookKey, BooleanSupplier cancelled) {
+        return lanes.get(requestClass).acquire(bookKey, true, cancelled);
+    }
+
+    public int queryTimeoutSeconds(RequestClass requestClass) {
+        return lanes.get(requestClass).limit.getQueryTimeoutSeconds();
+    }
+
+    /**
+     * 被拒绝时建议的重试间隔（秒）：按近期平均占用时长与排队长度估算
+     */
+    public long retryAfterSeconds(RequestClass requestClass) {
+        return lanes.get(requestClass).retryAfterSeconds();
+    }
+
+    private static boolean matches(AdmissionProperties.Limit limit, String path) {
+        if (limit.getPaths() == null) {
+            return false;
+        }
+        for (String prefix : limit.getPaths()) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double weightOf(String bookKey) {
+        Double weight = properties.getBookWeights().get(bookKey);
+        return weight == null || weight <= 0 ? 1.0 : weight;
+    }
+
+    /**
+     * 已获得的许可，release 可重复调用。park 暂时交还通道名额（如合并查询的等待者不做数据库工作），
+     * resume 按原账本重新排队取回，取不到返回 false
+     */
+    public static final class Permit {
+        private final Lane lane;
+        private BookState book;
+        private long grantedAt = System.nanoTime();
+        private boolean parked;
+        private boolean released;
+
+        private Permit(Lane lane, BookState book) {
+            this.lane = lane;
+            this.book = book;
+        }
+
+        public void park() {
+            synchronized (lane) {
+                if (released || parked) {
+                    return;
+                }
+                parked = true;
+                lane.release(book, System.nanoTime() - grantedAt);
+            }
+        }
+
+        public boolean resume() {
+            String bookKey;
+            synchronized (lane) {
+                if (!parked) {
+                    return !released;
+                }
+                bookKey = book.key;
+            }
+            Permit again = lane.acquire(bookKey, false, () -> false);
+            if (again == null) {
+                return false;
+            }
+            synchronized (lane) {
+                if (!released) {
+                    book = again.book;
+                    grantedAt = again.grantedAt;
+                    parked = false;
+                    return true;
+                }
+            }
+            // 等待期间请求已结束
+            again.release();
+            return false;
+        }
+
+        public void release() {
+            synchronized (lane) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                if (!parked) {
+                    lane.release(book, System.nanoTime() - grantedAt);
+                }
+            }
+        }
+    }
+
+    private static final class BookState {
+        final String key;
+        final double weight;
+        final Deque<Waiter> waiting = new ArrayDeque<>();
+        int running;
+        double tag;
+
+        BookState(String key, double weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Waiter {
+        boolean granted;
+    }
+
+    private final class Lane {
+        private final AdmissionProperties.Limit limit;
+        private final Map<String, BookState> books = new HashMap<>();
+        private final Timer admitted;
+        private final Timer rejected;
+        private final Timer timedOut;
+        private int running;
+        private int queued;
+        private double virtualTime;
+        private double holdMillis;
+
+        Lane(RequestClass requestClass, AdmissionProperties.Limit limit, MeterRegistry registry) {
+            this.limit = limit;
+            String name = requestClass.name().toLowerCase(Locale.ROOT);
+            this.admitted = waitTimer(registry, name, "admitted");
+            this.rejected = waitTimer(registry, name, "rejected");
+            this.timedOut = waitTimer(registry, name, "timeout");
+            Gauge.builder("ees.admission.active", this, lane -> lane.running)
+                    .tag("class", name)
+                    .register(registry);
+            Gauge.builder("ees.admission.queued", this, lane -> lane.queued)
+                    .tag("class", name)
+                    .register(registry);
+        }
+
+        private Timer waitTimer(MeterRegistry registry, String name, String outcome) {
+            return Timer.builder("ees.admission.wait")
+                    .description("准入排队时间")
+                    .tag("class", name)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+
+        Permit acquire(String bookKey, boolean background, BooleanSupplier cancelled) {
+            long start = System.nanoTime();
+            Waiter waiter;
+            BookState book;
+            synchronized (this) {
+                book = books.computeIfAbsent(bookKey, k -> new BookState(k, weightOf(k)));
+                if (running < limit.getPermits() && book.running < limit.getPerBook()) {
+                    // 有空闲许可时排队中的请求都受单账本并发限制，本账本没有排队者，直接放行
+                    book.tag = Math.max(book.tag, virtualTime);
+                    grant(book);
+                    admitted.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return new Permit(this, book);
+                }
+                if (!background && queued >= limit.getMaxQueue()) {
+                    forgetIfIdle(book);
+                    rejected.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return null;
+                }
+                if (book.waiting.isEmpty()) {
+                    book.tag = Math.max(book.tag, virtualTime);
+                }
+                waiter = new Waiter();
+                book.waiting.add(waiter);
+                queued++;
+                long deadline = start + TimeUnit.MILLISECONDS.toNanos(limit.getMaxWaitMs());
+                boolean interrupted = false;
+                while (!waiter.granted) {
+                    long remaining = background ? CANCEL_CHECK_NANOS : deadline - System.nanoTime();
+                    if (remaining <= 0 || interrupted || cancelled.getAsBoolean()) {
+                        break;
+                    }
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (!waiter.granted) {
+                    book.waiting.remove(waiter);
+                    queued--;
+                    forgetIfIdle(book);
+                    if (!background) {
+                        timedOut.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                    return null;
+                }
+            }
+            admitted.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return new Permit(this, book);
+        }
+
+        synchronized long retryAfterSeconds() {
+            double millis = holdMillis * (queued + 1) / Math.max(1, limit.getPermits());
+            return Math.max(1, (long) Math.ceil(millis / 1000));
+        }
+
+        /**
+         * 调用方须持有 this 锁
+         */
+        void release(BookState book, long heldNanos) {
+            running--;
+            book.running--;
+            double held = heldNanos / 1_000_000.0;
+            holdMillis = holdMillis == 0 ? held : holdMillis * 0.8 + held * 0.2;
+            dispatch();
+            forgetIfIdle(book);
+        }
+
+        private void dispatch() {
+            boolean any = false;
+            while (running < limit.getPermits()) {
+                BookState next = null;
+                for (BookState candidate : books.values()) {
+                    if (!candidate.waiting.isEmpty() && candidate.running < limit.getPerBook()
+                            && (next == null || candidate.tag < next.tag)) {
+                        next = candidate;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                next.waiting.poll().granted = true;
+                queued--;
+                grant(next);
+                any = true;
+            }
+            if (any) {
+                notifyAll();
+            }
+        }
+
+        private void grant(BookState book) {
+            running++;
+            book.running++;
+            virtualTime = book.tag;
+            book.tag += 1.0 / book.weight;
+        }
+
+        private void forgetIfIdle(BookState book) {
+            if (book.running == 0 && book.waiting.isEmpty()) {
+                books.remove(book.key, book);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.moon.backend.service;
 
+import com.moon.backend.config.ShardContext;
 import com.moon.backend.dto.AuthResponse;
 import com.moon.backend.dto.LoginRequest;
 import com.moon.backend.dto.RegisterRequest;
@@ -10,13 +11,11 @@ import com.moon.backend.repository.SysUserRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -26,10 +25,14 @@ public class AuthService {
 
     private final SysUserRepository userRepository;
     private final SysUserBookRepository userBookRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChartTemplateService chartTemplateService;
+    private final TokenService tokenService;
+    private final BookAccessCache bookAccessCache;
+    private final ShardDirectory shardDirectory;
 
-    @Transactional
     public AuthResponse register(RegisterRequest request) {
         if (userRepository.existsByUsername(request.getUsername())) {
             throw new IllegalArgumentException("用户名已存在");
@@ -37,17 +40,24 @@ public class AuthService {
 
         validateRegisterRequest(request);
 
-        SysUser sysUser = new SysUser();
-        sysUser.setUsername(request.getUsername());
-        sysUser.setPasswordHash(passwordEncoder.encode(request.getPassword()));
-        sysUser.setEnabled(true);
-        sysUser.setCreatedAt(LocalDateTime.now());
-        sysUser.setUpdatedAt(LocalDateTime.now());
-        SysUser savedUser = userRepository.save(sysUser);
-
-        // 注册新用户时始终为其创建并绑定独立账本，避免复用旧账本数据
-        String bookGuid = createDefaultBookForUser(savedUser.getId(), request);
-        return new AuthResponse(savedUser.getId(), savedUser.getUsername(), bookGuid);
+        // 哈希在事务外完成，排队等待期间不占用数据库连接
+        String passwordHash = passwordHasher.encode(request.getPassword());
+        return transactionTemplate.execute(status -> {
+            if (userRepository.existsByUsername(request.getUsername())) {
+                throw new IllegalArgumentException("用户名已存在");
+            }
+            SysUser sysUser = new SysUser();
+            sysUser.setUsername(request.getUsername());
+            sysUser.setPasswordHash(passwordHash);
+            sysUser.setEnabled(true);
+            sysUser.setCreatedAt(LocalDateTime.now());
+            sysUser.setUpdatedAt(LocalDateTime.now());
+            SysUser savedUser = userRepository.save(sysUser);
+
+            // 注册新用户时始终为其创建并绑定独立账本，避免复用旧账本数据
+            String bookGuid = createDefaultBookForUser(savedUser.getId(), request);
+            return authResponse(savedUser, bookGuid);
+        });
     }
 
     public AuthResponse login(LoginRequest request) {
@@ -61,12 +71,24 @@ public class AuthService {
             throw new IllegalStateException("账号已被禁用");
         }
 
-        if (!passwordEncoder.matches(request.getPassword(), user.getPasswordHash())) {
+        if (!passwordHasher.matches(request.getPassword(), user.getPasswordHash())) {
             throw new IllegalArgumentException("用户名或密码错误");
         }
+        passwordHasher.rehashIfNeeded(request.getPassword(), user.getPasswordHash(), newHash -> jdbcTemplate.update(
+                "UPDATE sys_users SET password_hash = ?, updated_at = ? WHERE id = ? AND password_hash = ?",
+                newHash,
+                LocalDateTime.now(),
+                user.getId(),
+                user.getPasswordHash()
+        ));
 
         String bookGuid = ensureBookBinding(user.getId(), null, false);
-        return new AuthResponse(user.getId(), user.getUsername(), bookGuid);
+        return authResponse(user, bookGuid);
+    }
+
+    private AuthResponse authResponse(SysUser user, String bookGuid) {
+        TokenService.IssuedToken token = tokenService.issue(user.getId());
+        return new AuthResponse(user.getId(), user.getUsername(), bookGuid, token.token(), token.expiresAt());
     }
 
     /**
@@ -137,6 +159,7 @@ public class AuthService {
                     bookGuid,
                     LocalDateTime.now()
             );
+            bookAccessCache.invalidate(userId);
         } catch (DataIntegrityViolationException ex) {
             // 如果 book_guid 已被其他用户占用则报错
             throw new IllegalStateException("账本已被其他用户占用，无法绑定", ex);
@@ -144,11 +167,11 @@ public class AuthService {
     }
 
     private boolean bookHasAccounts(String bookGuid) {
-        Integer count = jdbcTemplate.queryForObject(
+        Integer count = ShardContext.call(shardDirectory.shardOf(bookGuid), () -> jdbcTemplate.queryForObject(
                 "SELECT COUNT(1) FROM accounts WHERE book_guid = ?",
                 Integer.class,
                 bookGuid
-        );
+        ));
         return count != null && count > 0;
     }
 
@@ -171,7 +194,6 @@ public class AuthService {
 
     private String createDefaultBookForUser(Long userId, RegisterRequest request) {
         String bookGuid = UUID.randomUUID().toString();
-        String rootAccountGuid = UUID.randomUUID().toString();
         LocalDateTime now = LocalDateTime.now();
 
         Long registeredCapitalNum = request.getRegisteredCapitalNum();
@@ -181,134 +203,47 @@ public class AuthService {
             registeredCapitalDenom = 1L;
         }
 
-        String disableForeignKeys = "SET FOREIGN_KEY_CHECKS=0";
-        String enableForeignKeys = "SET FOREIGN_KEY_CHECKS=1";
-
-        try {
-            jdbcTemplate.execute(disableForeignKeys);
-            jdbcTemplate.update(
-                    "INSERT INTO books (guid, name, size, registered_capital_num, registered_capital_denom, root_account_guid, fiscal_year_start_month, fiscal_year_start_day, created_at, updated_at) " +
-                            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-                    bookGuid,
-                    request.getBookName(),
-                    request.getBookSize(),
-                    registeredCapitalNum,
-                    registeredCapitalDenom,
-                    rootAccountGuid,
-                    request.getFiscalYearStartMonth(),
-                    request.getFiscalYearStartDay(),
-                    now,
-                    now
-            );
-
-            // 根账户
-            jdbcTemplate.update(
-                    "INSERT INTO accounts (guid, book_guid, name, code, description, account_type, parent_guid, hidden, placeholder, created_at, updated_at) " +
-                            "VALUES (?, ?, ?, ?, ?, ?, NULL, 0, 1, ?, ?)",
-                    rootAccountGuid,
-                    bookGuid,
-                    "根账户",
-                    "0",
-                    "系统自动创建的根账户",
-                    "ASSET",
-                    now,
-                    now
-            );
-
-            // 默认总账科目及示例子科目
-            seedDefaultAccounts(bookGuid, rootAccountGuid, now);
-
-            jdbcTemplate.update(
-                    "INSERT INTO sys_user_books (user_id, book_guid, created_at) VALUES (?, ?, ?)",
-                    userId,
-                    bookGuid,
-                    now
-            );
-        } finally {
-            jdbcTemplate.execute(enableForeignKeys);
+        // main 上的 books 行用于登录绑定；账本数据写入负载最低的分片
+        insertBook(bookGuid, request, registeredCapitalNum, registeredCapitalDenom, now);
+        String shard = shardDirectory.allocate();
+        if (ShardContext.MAIN.equals(shard)) {
+            chartTemplateService.seedBook(bookGuid, null, request.getChartTemplate());
+        } else {
+            shardDirectory.assign(bookGuid, shard);
+            // 分片上的建账在独立事务中提交（当前事务的连接绑定在 main 上）
+            TransactionTemplate shardTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+            shardTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            Long capitalDenom = registeredCapitalDenom;
+            ShardContext.run(shard, () -> shardTemplate.executeWithoutResult(status -> {
+                insertBook(bookGuid, request, registeredCapitalNum, capitalDenom, now);
+                chartTemplateService.seedBook(bookGuid, null, request.getChartTemplate());
+            }));
         }
 
+        jdbcTemplate.update(
+                "INSERT INTO sys_user_books (user_id, book_guid, created_at) VALUES (?, ?, ?)",
+                userId,
+                bookGuid,
+                now
+        );
+        bookAccessCache.invalidate(userId);
         return bookGuid;
     }
 
-    private void seedDefaultAccounts(String bookGuid, String rootGuid, LocalDateTime now) {
-        // 总账科目
-        String assetGuid = UUID.randomUUID().toString();
-        String liabilityGuid = UUID.randomUUID().toString();
-        String equityGuid = UUID.randomUUID().toString();
-        String incomeGuid = UUID.randomUUID().toString();
-        String expenseGuid = UUID.randomUUID().toString();
-
-        insertAccount(assetGuid, bookGuid, "资产", "1", "ASSET", rootGuid, true, "资产类科目", now);
-        insertAccount(liabilityGuid, bookGuid, "负债", "2", "LIABILITY", rootGuid, true, "负债类科目", now);
-        insertAccount(equityGuid, bookGuid, "所有者权益", "3", "EQUITY", rootGuid, true, "权益类科目", now);
-        insertAccount(incomeGuid, bookGuid, "收入", "4", "INCOME", rootGuid, true, "收入类科目", now);
-        insertAccount(expenseGuid, bookGuid, "费用", "5", "EXPENSE", rootGuid, true, "费用类科目", now);
-
-        // 示例子科目
-        List<AccountSeed> seeds = new ArrayList<>();
-        seeds.add(new AccountSeed("现金", "1001", "ASSET", assetGuid, false, "库存现金"));
-        seeds.add(new AccountSeed("银行存款", "1002", "ASSET", assetGuid, false, "银行账户余额"));
-        seeds.add(new AccountSeed("应收账款", "1122", "ASSET", assetGuid, false, "客户应收"));
-        seeds.add(new AccountSeed("预付账款", "1123", "ASSET", assetGuid, false, "供应商预付款"));
-        seeds.add(new AccountSeed("存货", "1401", "ASSET", assetGuid, false, "原材料/库存商品"));
-        seeds.add(new AccountSeed("固定资产", "1601", "ASSET", assetGuid, false, "固定资产原值"));
-        seeds.add(new AccountSeed("累计折旧", "1602", "ASSET", assetGuid, false, "固定资产累计折旧"));
-
-        seeds.add(new AccountSeed("应付账款", "2202", "LIABILITY", liabilityGuid, false, "供应商应付"));
-        seeds.add(new AccountSeed("预收账款", "2203", "LIABILITY", liabilityGuid, false, "客户预收"));
-        seeds.add(new AccountSeed("应付职工薪酬", "2211", "LIABILITY", liabilityGuid, false, "工资社保公积金"));
-        seeds.add(new AccountSeed("应交税费", "2221", "LIABILITY", liabilityGuid, false, "各类税费应交"));
-
-        seeds.add(new AccountSeed("实收资本", "3001", "EQUITY", equityGuid, false, "投资者投入资本"));
-        seeds.add(new AccountSeed("资本公积", "3002", "EQUITY", equityGuid, false, "资本溢价等"));
-        seeds.add(new AccountSeed("留存收益", "3101", "EQUITY", equityGuid, false, "未分配利润"));
-
-        seeds.add(new AccountSeed("主营业务收入", "6001", "INCOME", incomeGuid, false, "主营产品/服务收入"));
-        seeds.add(new AccountSeed("其他业务收入", "6051", "INCOME", incomeGuid, false, "非主营业务收入"));
-
-        seeds.add(new AccountSeed("主营业务成本", "6401", "EXPENSE", expenseGuid, false, "对应主营收入的成本"));
-        seeds.add(new AccountSeed("销售费用", "6601", "EXPENSE", expenseGuid, false, "销售相关费用"));
-        seeds.add(new AccountSeed("管理费用", "6602", "EXPENSE", expenseGuid, false, "管理相关费用"));
-        seeds.add(new AccountSeed("财务费用", "6603", "EXPENSE", expenseGuid, false, "利息等财务成本"));
-
-        for (AccountSeed seed : seeds) {
-            insertAccount(UUID.randomUUID().toString(), bookGuid, seed.name, seed.code, seed.type, seed.parentGuid, seed.placeholder, seed.description, now);
-        }
-    }
-
-    private void insertAccount(String guid, String bookGuid, String name, String code, String type, String parentGuid, boolean placeholder, String description, LocalDateTime now) {
+    private void insertBook(String bookGuid, RegisterRequest request, Long registeredCapitalNum, Long registeredCapitalDenom, LocalDateTime now) {
+        // 根账户稍后由模板写入并回填
         jdbcTemplate.update(
-                "INSERT INTO accounts (guid, book_guid, name, code, description, account_type, parent_guid, hidden, placeholder, created_at, updated_at) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?, ?, ?)",
-                guid,
+                "INSERT INTO books (guid, name, size, registered_capital_num, registered_capital_denom, root_account_guid, fiscal_year_start_month, fiscal_year_start_day, created_at, updated_at) " +
+                        "VALUES (?, ?, ?, ?, ?, NULL, ?, ?, ?, ?)",
                 bookGuid,
-                name,
-                code,
-                description,
-                type,
-                parentGuid,
-                placeholder ? 1 : 0,
+                request.getBookName(),
+                request.getBookSize(),
+                registeredCapitalNum,
+                registeredCapitalDenom,
+                request.getFiscalYearStartMonth(),
+                request.getFiscalYearStartDay(),
                 now,
                 now
         );
     }
-
-    private static class AccountSeed {
-        final String name;
-        final String code;
-        final String type;
-        final String parentGuid;
-        final boolean placeholder;
-        final String description;
-
-        AccountSeed(String name, String code, String type, String parentGuid, boolean placeholder, String description) {
-            this.name = name;
-            this.code = code;
-            this.type = type;
-            this.parentGuid = parentGuid;
-            this.placeholder = placeholder;
-            this.description = description;
-        }
-    }
 }
@@ -0,0 +1,81 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.ShardContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 用户 -> 账本授权缓存（sys_user_books），按 LRU 淘汰，容量有上限。
+ * 绑定关系变化时由 AuthService 失效对应用户。
+ */
+@Service
+public class BookAccessCache {
+
+    private static final String NO_BOOK = "";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, String> cache;
+
+    public BookAccessCache(JdbcTemplate jdbcTemplate, @Value("${ees.auth.book-cache-size:10000}") int maxSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean canAccess(Long userId, String bookGuid) {
+        return bookGuid.equals(bookOf(userId));
+    }
+
+    /**
+     * 用户绑定的账本，未绑定返回 null。
+     */
+    public String bookOf(Long userId) {
+        String cached;
+        synchronized (cache) {
+            cached = cache.get(userId);
+        }
+        if (cached == null) {
+            // 用户与账本绑定只在 main 上
+            cached = ShardContext.call(ShardContext.MAIN, () -> jdbcTemplate.query(
+                    "SELECT book_guid FROM sys_user_books WHERE user_id = ? LIMIT 1",
+                    rs -> rs.next() ? rs.getString("book_guid") : NO_BOOK,
+                    userId
+            ));
+            synchronized (cache) {
+                cache.put(userId, cached);
+            }
+        }
+        return NO_BOOK.equals(cached) ? null : cached;
+    }
+
+    /**
+     * 失效用户的缓存；处于事务中时在提交后失效，避免并发请求重新加载到旧绑定。
+     */
+    public void invalidate(Long userId) {
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long userId) {
+        synchronized (cache) {
+            cache.remove(userId);
+        }
+    }
+}
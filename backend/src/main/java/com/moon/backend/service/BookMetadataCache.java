@@ -0,0 +1,114 @@
+package com.moon.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 账本元数据缓存：注册资本与常用一级科目（按名称）的 guid，按 LRU 淘汰。
+ * 科目新增/改名/删除或重新初始化科目表时由调用方失效对应账本。
+ */
+@Service
+public class BookMetadataCache {
+
+    /** 需要按名称定位的科目 */
+    private static final List<String> KNOWN_ACCOUNTS = List.of("资产", "所有者权益", "实收资本", "银行存款");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, BookMetadata> cache;
+
+    public BookMetadataCache(JdbcTemplate jdbcTemplate, @Value("${ees.books.metadata-cache-size:1000}") int maxSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BookMetadata> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 账本不存在时返回 null（不缓存）。
+     */
+    public BookMetadata get(String bookGuid) {
+        BookMetadata cached;
+        synchronized (cache) {
+            cached = cache.get(bookGuid);
+        }
+        if (cached != null) {
+            return cached;
+        }
+        BookMetadata loaded = load(bookGuid);
+        if (loaded != null) {
+            synchronized (cache) {
+                cache.put(bookGuid, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 失效账本缓存；处于事务中时在提交后再失效一次，避免并发请求重新加载到旧数据。
+     */
+    public void invalidate(String bookGuid) {
+        evict(bookGuid);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(bookGuid);
+                }
+            });
+        }
+    }
+
+    private void evict(String bookGuid) {
+        synchronized (cache) {
+            cache.remove(bookGuid);
+        }
+    }
+
+    private BookMetadata load(String bookGuid) {
+        BookMetadata book = jdbcTemplate.query(
+                "SELECT registered_capital_num, registered_capital_denom FROM books WHERE guid = ?",
+                rs -> rs.next()
+                        ? new BookMetadata(
+                                rs.getObject("registered_capital_num") != null ? rs.getLong("registered_capital_num") : null,
+                                rs.getObject("registered_capital_denom") != null ? rs.getLong("registered_capital_denom") : null,
+                                new HashMap<>())
+                        : null,
+                bookGuid
+        );
+        if (book == null) {
+            return null;
+        }
+        String placeholders = String.join(",", KNOWN_ACCOUNTS.stream().map(n -> "?").toList());
+        Object[] args = new Object[KNOWN_ACCOUNTS.size() + 1];
+        args[0] = bookGuid;
+        for (int i = 0; i < KNOWN_ACCOUNTS.size(); i++) {
+            args[i + 1] = KNOWN_ACCOUNTS.get(i);
+        }
+        jdbcTemplate.query(
+                "SELECT name, guid FROM accounts WHERE book_guid = ? AND name IN (" + placeholders + ") ORDER BY guid",
+                rs -> {
+                    book.accountGuids().putIfAbsent(rs.getString("name"), rs.getString("guid"));
+                },
+                args
+        );
+        return book;
+    }
+
+    public record BookMetadata(Long registeredCapitalNum, Long registeredCapitalDenom, Map<String, String> accountGuids) {
+
+        public String accountGuid(String name) {
+            return accountGuids.get(name);
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.ShardContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 账本在线迁移：
+ * 1. 记下源分片的稳定 seq，标记 COPYING，按主键分批把账本各表复制到目标分片（读写照常，归档暂停）；
+ * 2. 标记 MOVING 冻结写入，等待 drain-ms 并确认源分片上冻结前分配的 seq 均已稳定（在途事务已提交或回滚）；
+ * 3. 增量同步：凭证/分录按稳定 seq 之后的 ledger_changes 逐条补齐，其余表整表重抄并删除目标端多余行；
+ * 4. 在目标分片写入迁移标记（entity = BOOK，op = M），seq 高于源、目标两端已有的 seq：
+ *    按源分片 seq 保存游标的消费者一定能读到该标记，据此整本重新同步；
+ * 5. 切换目录到目标分片并解冻，再分批删除源分片上的数据（main 上保留 books 行）。
+ * 写入目标时关闭外键检查与变更流水触发器（会话变量，仅对当前连接生效）。任一步失败时恢复 ACTIVE 并清理目标端。
+ */
+@Slf4j
+@Service
+public class BookMoveService {
+
+    /** 迁移的表，按外键依赖排序；key 为空的表按账本整体复制（行数少） */
+    private static final List<BookTable> TABLES = List.of(
+            new BookTable("books", "books x", "x.guid = ?", "guid"),
+            new BookTable("accounts", "accounts x", "x.book_guid = ?", "guid"),
+            new BookTable("customers", "customers x", "x.book_guid = ?", "guid"),
+            new BookTable("employees", "employees x", "x.book_guid = ?", "guid"),
+            new BookTable("vendors", "vendors x", "x.book_guid = ?", "guid"),
+            new BookTable("owner", "owner x", "x.book_guid = ?", "guid"),
+            new BookTable("jobs", "jobs x", "x.book_guid = ?", "guid"),
+            new BookTable("taxtables", "taxtables x", "x.book_guid = ?", "guid"),
+            new BookTable("lots", "lots x", "x.book_guid = ?", "guid"),
+            new BookTable("transactions", "transactions x", "x.book_guid = ?", "guid"),
+            new BookTable("splits", "splits x JOIN transactions t ON t.guid = x.tx_guid AND t.post_date = x.post_date", "t.book_guid = ?", "guid"),
+            new BookTable("invoices", "invoices x", "x.book_guid = ?", "guid"),
+            new BookTable("orders", "orders x", "x.book_guid = ?", "guid"),
+            new BookTable("entries", "entries x", "x.book_guid = ?", "guid"),
+            new BookTable("taxable_entries", "taxable_entries x", "x.book_guid = ?", "guid"),
+            new BookTable("schedxactions", "schedxactions x", "x.book_guid = ?", "guid"),
+            new BookTable("recurrences", "recurrences x", "x.book_guid = ?", "guid"),
+            new BookTable("sx_transactions", "sx_transactions x", "x.book_guid = ?", "guid"),
+            new BookTable("sx_splits", "sx_splits x", "x.book_guid = ?", "guid"),
+            new BookTable("period_closes", "period_closes x", "x.book_guid = ?", "guid"),
+            new BookTable("account_opening_balances", "account_opening_balances x", "x.book_guid = ?", null),
+            new BookTable("tax_period_totals", "tax_period_totals x", "x.book_guid = ?", null),
+            new BookTable("tax_ledger_lines", "tax_ledger_lines x", "x.book_guid = ?", "guid"),
+            new BookTable("transactions_archive", "transactions_archive x", "x.book_guid = ?", "guid"),
+            new BookTable("splits_archive", "splits_archive x JOIN transactions_archive t ON t.guid = x.tx_guid AND t.post_date = x.post_date", "t.book_guid = ?", "guid"),
+            new BookTable("ledger_archives", "ledger_archives x", "x.book_guid = ?", null)
+    );
+
+    /** 由变更流水增量同步的表，其余表在冻结阶段整表重抄 */
+    private static final Map<String, String> CHANGE_TRACKED = Map.of("TRANSACTION", "transactions", "SPLIT", "splits");
+
+    /** 冻结期间不会变化的表（归档在迁移期间暂停） */
+    private static final Set<String> FROZEN_DURING_MOVE = Set.of("transactions_archive", "splits_archive", "ledger_archives");
+
+    private final ShardDirectory shardDirectory;
+    private final LedgerChangeService ledgerChangeService;
+    private final LedgerColumnStore ledgerColumnStore;
+    private final BookMetadataCache bookMetadataCache;
+    private final int batchSize;
+    private final long drainMillis;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public BookMoveService(ShardDirectory shardDirectory,
+                           LedgerChangeService ledgerChangeService,
+                           LedgerColumnStore ledgerColumnStore,
+                           BookMetadataCache bookMetadataCache,
+                           @Value("${ees.shards.move.batch-size:2000}") int batchSize,
+                           @Value("${ees.shards.move.drain-ms:10000}") long drainMillis) {
+        this.shardDirectory = shardDirectory;
+        this.ledgerChangeService = ledgerChangeService;
+        this.ledgerColumnStore = ledgerColumnStore;
+        this.bookMetadataCache = bookMetadataCache;
+        this.batchSize = batchSize;
+        this.drainMillis = drainMillis;
+    }
+
+    /**
+     * 把账本迁移到目标分片，同一时间只允许一个迁移任务
+     */
+    public MoveResult move(String bookGuid, String targetShard) {
+        if (!shardDirectory.isEnabled()) {
+            throw new IllegalStateException("未开启分片");
+        }
+        String sourceShard = shardDirectory.shardOf(bookGuid);
+        if (sourceShard.equals(targetShard)) {
+            throw new IllegalArgumentException("账本已在分片 " + targetShard);
+        }
+        if (shardDirectory.isRelocating(bookGuid)) {
+            throw new IllegalStateException("账本正在迁移");
+        }
+        Shard source = shard(sourceShard);
+        Shard target = shard(targetShard);
+        Integer exists = source.jdbc().queryForObject("SELECT COUNT(*) FROM books WHERE guid = ?", Integer.class, bookGuid);
+        if (exists == null || exists == 0) {
+            throw new IllegalArgumentException("账本不存在");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("已有迁移任务在执行");
+        }
+        long startedAt = System.currentTimeMillis();
+        try {
+            // 起点取稳定 seq 而非当前最大值：更小的 seq 可能属于尚未提交、复制时还看不到的事务
+            long startSeq = ledgerChangeService.stableSeq(source.jdbc());
+            shardDirectory.markStatus(bookGuid, ShardDirectory.COPYING);
+            long copied = 0;
+            for (BookTable table : TABLES) {
+                copied += copyTable(source, target, table, bookGuid);
+            }
+            log.info("账本 {} 已复制 {} 行到分片 {}，开始冻结", bookGuid, copied, targetShard);
+
+            shardDirectory.markStatus(bookGuid, ShardDirectory.MOVING);
+            long frozenAt = System.currentTimeMillis();
+            sleep(drainMillis);
+            awaitSettled(source);
+            long synced = syncChanges(source, target, bookGuid, startSeq);
+            for (BookTable table : TABLES) {
+                if (!CHANGE_TRACKED.containsValue(table.name()) && !FROZEN_DURING_MOVE.contains(table.name())) {
+                    synced += resyncTable(source, target, table, bookGuid);
+                }
+            }
+            publishMoveMarker(source, target, bookGuid);
+            shardDirectory.flip(bookGuid, targetShard);
+            long frozenMillis = System.currentTimeMillis() - frozenAt;
+            evictCaches(bookGuid);
+
+            purge(source, bookGuid, ShardContext.MAIN.equals(sourceShard));
+            long elapsed = System.currentTimeMillis() - startedAt;
+            log.info("账本 {} 已从 {} 迁移到 {}：复制 {} 行，增量 {} 行，冻结 {} ms，总耗时 {} ms",
+                    bookGuid, sourceShard, targetShard, copied, synced, frozenMillis, elapsed);
+            return new MoveResult(bookGuid, sourceShard, targetShard, copied, synced, frozenMillis, elapsed);
+        } catch (RuntimeException ex) {
+            log.warn("账本 {} 迁移失败，回滚到 {}", bookGuid, sourceShard, ex);
+            if (sourceShard.equals(shardDirectory.shardOf(bookGuid))) {
+                shardDirectory.markStatus(bookGuid, ShardDirectory.ACTIVE);
+                try {
+                    purge(target, bookGuid, ShardContext.MAIN.equals(targetShard));
+                } catch (RuntimeException cleanup) {
+                    log.warn("清理目标分片 {} 上的账本 {} 失败", targetShard, bookGuid, cleanup);
+                }
+            }
+            throw ex;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private long copyTable(Shard source, Shard target, BookTable table, String bookGuid) {
+        long copied = 0;
+        String after = "";
+        while (true) {
+            List<Map<String, Object>> rows = table.key() == null
+                    ? source.jdbc().queryForList("SELECT x.* FROM " + table.from() + " WHERE " + table.scope(), bookGuid)
+                    : source.jdbc().queryForList(
+                    "SELECT x.* FROM " + table.from() + " WHERE " + table.scope() + " AND x." + table.key() + " > ? ORDER BY x." + table.key() + " LIMIT ?",
+                    bookGuid, after, batchSize);
+            if (rows.isEmpty()) {
+                return copied;
+            }
+            upsert(target, table.name(), rows);
+            copied += rows.size();
+            if (table.key() == null || rows.size() < batchSize) {
+                return copied;
+            }
+            after = (String) rows.get(rows.size() - 1).get(table.key());
+        }
+    }
+
+    /**
+     * 凭证与分录：复制开始后有变更的行，源端存在则覆盖，不存在则在目标端删除
+     */
+    private long syncChanges(Shard source, Shard target, String bookGuid, long startSeq) {
+        long synced = 0;
+        for (Map.Entry<String, String> tracked : CHANGE_TRACKED.entrySet()) {
+            List<String> guids = source.jdbc().queryForList(
+                    "SELECT DISTINCT entity_guid FROM ledger_changes WHERE book_guid = ? AND entity = ? AND seq > ?",
+                    String.class, bookGuid, tracked.getKey(), startSeq);
+            String table = tracked.getValue();
+            for (int from = 0; from < guids.size(); from += batchSize) {
+                List<String> chunk = guids.subList(from, Math.min(guids.size(), from + batchSize));
+                String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+                List<Map<String, Object>> rows = source.jdbc().queryForList(
+                        "SELECT * FROM " + table + " WHERE guid IN (" + placeholders + ")", chunk.toArray());
+                Set<String> present = rows.stream().map(r -> (String) r.get("guid")).collect(Collectors.toSet());
+                List<Object> removed = chunk.stream().filter(g -> !present.contains(g)).collect(Collectors.toList());
+                upsert(target, table, rows);
+                if (!removed.isEmpty()) {
+                    deleteByKeys(target, table, removed);
+                }
+                synced += chunk.size();
+            }
+        }
+        return synced;
+    }
+
+    /**
+     * 冻结阶段整表重抄，并删除目标端在源端已不存在的行
+     */
+    private long resyncTable(Shard source, Shard target, BookTable table, String bookGuid) {
+        if (table.key() == null) {
+            List<Map<String, Object>> rows = source.jdbc().queryForList("SELECT x.* FROM " + table.from() + " WHERE " + table.scope(), bookGuid);
+            target.tx().executeWithoutResult(status -> withoutChecks(target.jdbc(), () -> {
+                target.jdbc().update("DELETE x FROM " + table.from() + " WHERE " + table.scope(), bookGuid);
+                insert(target.jdbc(), table.name(), rows);
+            }));
+            return rows.size();
+        }
+        long copied = copyTable(source, target, table, bookGuid);
+        String keysSql = "SELECT x." + table.key() + " FROM " + table.from() + " WHERE " + table.scope();
+        Set<String> sourceKeys = new HashSet<>(source.jdbc().queryForList(keysSql, String.class, bookGuid));
+        List<Object> extra = target.jdbc().queryForList(keysSql, String.class, bookGuid).stream()
+                .filter(key -> !sourceKeys.contains(key))
+                .collect(Collectors.toList());
+        for (int from = 0; from < extra.size(); from += batchSize) {
+            deleteByKeys(target, table.name(), extra.subList(from, Math.min(extra.size(), from + batchSize)));
+        }
+        return copied + extra.size();
+    }
+
+    /**
+     * 按依赖逆序分批删除账本在某分片上的数据；keepBook 为 true 时保留 books 行（main 上的目录用）
+     */
+    private void purge(Shard shard, String bookGuid, boolean keepBook) {
+        List<BookTable> reversed = new ArrayList<>(TABLES);
+        Collections.reverse(reversed);
+        for (BookTable table : reversed) {
+            if (keepBook && "books".equals(table.name())) {
+                continue;
+            }
+            if (table.key() == null) {
+                shard.tx().executeWithoutResult(status -> withoutChecks(shard.jdbc(),
+                        () -> shard.jdbc().update("DELETE x FROM " + table.from() + " WHERE " + table.scope(), bookGuid)));
+                continue;
+            }
+            while (true) {
+                List<Object> keys = new ArrayList<>(shard.jdbc().queryForList(
+                        "SELECT x." + table.key() + " FROM " + table.from() + " WHERE " + table.scope() + " LIMIT ?",
+                        String.class, bookGuid, batchSize));
+                if (keys.isEmpty()) {
+                    break;
+                }
+                deleteByKeys(shard, table.name(), keys);
+            }
+        }
+    }
+
+    private void upsert(Shard target, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        target.tx().executeWithoutResult(status -> withoutChecks(target.jdbc(), () -> insert(target.jdbc(), table, rows)));
+    }
+
+    private void insert(JdbcTemplate jdbc, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        String columnList = columns.stream().map(c -> "`" + c + "`").collect(Collectors.joining(", "));
+        String placeholders = String.join(", ", Collections.nCopies(columns.size(), "?"));
+        String updates = columns.stream().map(c -> "`" + c + "` = VALUES(`" + c + "`)").collect(Collectors.joining(", "));
+        List<Object[]> args = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Object[] values = new Object[columns.size()];
+            for (int i = 0; i < columns.size(); i++) {
+                values[i] = row.get(columns.get(i));
+            }
+            args.add(values);
+        }
+        jdbc.batchUpdate("INSERT INTO `" + table + "` (" + columnList + ") VALUES (" + placeholders + ") ON DUPLICATE KEY UPDATE " + updates, args);
+    }
+
+    private void deleteByKeys(Shard shard, String table, List<Object> keys) {
+        String placeholders = String.join(",", Collections.nCopies(keys.size(), "?"));
+        shard.tx().executeWithoutResult(status -> withoutChecks(shard.jdbc(),
+                () -> shard.jdbc().update("DELETE FROM `" + table + "` WHERE guid IN (" + placeholders + ")", keys.toArray())));
+    }
+
+    /**
+     * 须在事务内调用，保证会话变量与写入使用同一连接
+     */
+    private void withoutChecks(JdbcTemplate jdbc, Runnable action) {
+        jdbc.execute("SET FOREIGN_KEY_CHECKS = 0");
+        jdbc.execute("SET @ees_skip_changes = 1");
+        try {
+            action.run();
+        } finally {
+            jdbc.execute("SET @ees_skip_changes = NULL");
+            jdbc.execute("SET FOREIGN_KEY_CHECKS = 1");
+        }
+    }
+
+    /**
+     * 冻结后等待冻结前已分配的 seq 全部稳定，之后按 seq 增量同步不会漏掉提交较晚的写入；超时放弃迁移
+     */
+    private void awaitSettled(Shard source) {
+        long frozenSeq = maxSeq(source);
+        long deadline = System.currentTimeMillis() + drainMillis;
+        while (ledgerChangeService.stableSeq(source.jdbc()) < frozenSeq) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("源分片仍有未提交的写入，迁移已放弃");
+            }
+            sleep(100);
+        }
+    }
+
+    /**
+     * 显式指定 seq 插入，目标分片的自增计数随之越过该值；与并发写入撞号时重取
+     */
+    private void publishMoveMarker(Shard source, Shard target, String bookGuid) {
+        for (int attempt = 0; ; attempt++) {
+            long seq = Math.max(maxSeq(source), maxSeq(target)) + 1;
+            try {
+                target.jdbc().update(
+                        "INSERT INTO ledger_changes (seq, book_guid, entity, entity_guid, op) VALUES (?, ?, 'BOOK', ?, 'M')",
+                        seq, bookGuid, bookGuid);
+                return;
+            } catch (DuplicateKeyException ex) {
+                if (attempt >= 10) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    private long maxSeq(Shard shard) {
+        Long seq = shard.jdbc().queryForObject("SELECT COALESCE(MAX(seq), 0) FROM ledger_changes", Long.class);
+        return seq == null ? 0 : seq;
+    }
+
+    private void evictCaches(String bookGuid) {
+        ledgerColumnStore.evict(bookGuid);
+        bookMetadataCache.invalidate(bookGuid);
+    }
+
+    /**
+     * 分片的 JdbcTemplate 与事务模板（包内可见，单元测试替换为模拟对象）
+     */
+    Shard shard(String key) {
+        DataSource dataSource = shardDirectory.dataSources().get(key);
+        return new Shard(new JdbcTemplate(dataSource), new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("迁移被中断", ex);
+        }
+    }
+
+    private record BookTable(String name, String from, String scope, String key) {
+    }
+
+    record Shard(JdbcTemplate jdbc, TransactionTemplate tx) {
+    }
+
+    public record MoveResult(String bookGuid, String fromShard, String toShard, long copiedRows,
+                             long syncedRows, long frozenMillis, long elapsedMillis) {
+    }
+}
@@ -2,7 +2,6 @@ package com.moon.backend.service;
 
 import com.moon.backend.dto.CustomerRequest;
 import com.moon.backend.dto.EntryBatchRequest;
-import com.moon.backend.dto.EntryItemRequest;
 import com.moon.backend.dto.JobRequest;
 import com.moon.backend.dto.NameIdResponse;
 import com.moon.backend.dto.NameStatusResponse;
@@ -23,6 +22,7 @@ import java.util.UUID;
 public class BusinessService {
 
     private final JdbcTemplate jdbcTemplate;
+    private final EntryTaxService entryTaxService;
 
     @Transactional
     public String createVendor(VendorRequest request) {
@@ -110,6 +110,7 @@ public class BusinessService {
         return invoiceGuid;
     }
 
+    @Transactional(readOnly = true)
     public List<NameIdResponse> listVendors(String bookGuid) {
         return jdbcTemplate.query(
                 "SELECT guid, name FROM vendors WHERE book_guid = ?",
@@ -118,6 +119,7 @@ public class BusinessService {
         );
     }
 
+    @Transactional(readOnly = true)
     public List<NameIdResponse> listCustomers(String bookGuid) {
         return jdbcTemplate.query(
                 "SELECT guid, name FROM customers WHERE book_guid = ?",
@@ -126,6 +128,7 @@ public class BusinessService {
         );
     }
 
+    @Transactional(readOnly = true)
     public List<NameIdResponse> listEmployees(String bookGuid) {
         return jdbcTemplate.query(
                 "SELECT guid, name FROM employees WHERE book_guid = ?",
@@ -134,6 +137,7 @@ public class BusinessService {
         );
     }
 
+    @Transactional(readOnly = true)
     public List<NameIdResponse> listJobs(String bookGuid) {
         return jdbcTemplate.query(
                 "SELECT guid, name FROM jobs WHERE book_guid = ? AND active = 1",
@@ -159,6 +163,7 @@ public class BusinessService {
         return guid;
     }
 
+    @Transactional(readOnly = true)
     public List<NameIdResponse> listPurchaseOrders(String bookGuid, String status) {
         StringBuilder sql = new StringBuilder("SELECT guid, id AS name FROM orders WHERE book_guid = ? AND order_type = 'PURCHASE'");
         List<Object> args = new java.util.ArrayList<>();
@@ -174,6 +179,7 @@ public class BusinessService {
         );
     }
 
+    @Transactional(readOnly = true)
     public List<NameIdResponse> listSalesInvoices(String bookGuid, String status) {
         StringBuilder sql = new StringBuilder("SELECT guid, id AS name FROM invoices WHERE book_guid = ? AND invoice_type = 'SALES'");
         List<Object> args = new java.util.ArrayList<>();
@@ -189,6 +195,7 @@ public class BusinessService {
         );
     }
 
+    @Transactional(readOnly = true)
     public List<NameIdResponse> listPurchaseInvoices(String bookGuid) {
         return jdbcTemplate.query(
                 "SELECT guid, id AS name FROM invoices WHERE book_guid = ? AND invoice_type = 'PURCHASE'",
@@ -198,6 +205,7 @@ public class BusinessService {
     }
 
     /** 详细列表：供应商 */
+    @Transactional(readOnly = true)
     public List<NameStatusResponse> listVendorDetails(String bookGuid) {
         return jdbcTemplate.query(
                 "SELECT guid, name, notes, created_at FROM vendors WHERE book_guid = ? ORDER BY created_at DESC",
@@ -214,6 +222,7 @@ public class BusinessService {
     }
 
     /** 详细列表：客户 */
+    @Transactional(readOnly = true)
     public List<NameStatusResponse> listCustomerDetails(String bookGuid) {
         return jdbcTemplate.query(
                 "SELECT guid, name, notes, created_at FROM customers WHERE book_guid = ? ORDER BY created_at DESC",
@@ -230,6 +239,7 @@ public class BusinessService {
     }
 
     /** 详细列表：员工 */
+    @Transactional(readOnly = true)
     public List<NameStatusResponse> listEmployeeDetails(String bookGuid) {
         return jdbcTemplate.query(
                 "SELECT guid, name, notes, created_at FROM employees WHERE book_guid = ? ORDER BY created_at DESC",
@@ -246,6 +256,7 @@ public class BusinessService {
     }
 
     /** 详细列表：采购订单（含状态、付款状态） */
+    @Transactional(readOnly = true)
     public List<NameStatusResponse> listPurchaseOrdersDetail(String bookGuid) {
         String sql = """
                 SELECT o.guid,
@@ -285,6 +296,7 @@ public class BusinessService {
     }
 
     /** 详细列表：销售发票（含状态、收款状态） */
+    @Transactional(readOnly = true)
     public List<NameStatusResponse> listSalesInvoicesDetail(String bookGuid) {
         String sql = """
                 SELECT i.guid,
@@ -324,6 +336,7 @@ public class BusinessService {
     }
 
     /** 详细列表：员工报销/差旅（含支付状态） */
+    @Transactional(readOnly = true)
     public List<NameStatusResponse> listEmployeeExpensesDetail(String bookGuid) {
         String sql = """
                 SELECT t.guid,
@@ -364,56 +377,33 @@ public class BusinessService {
 
     @Transactional
     public void addOrderEntries(String orderGuid, EntryBatchRequest request) {
-        LocalDateTime now = LocalDateTime.now();
-        for (EntryItemRequest item : request.getItems()) {
-            jdbcTemplate.update(
-                    "INSERT INTO entries (guid, book_guid, invoice_guid, order_guid, job_guid, description, date, quantity_num, quantity_denom, price_num, price_denom, discount_num, discount_denom, account_guid, tax_table_guid, taxable, tax_included, tax_amount_num, tax_amount_denom, created_at, updated_at) " +
-                            "VALUES (?, ?, NULL, ?, NULL, ?, ?, 1, 1, ?, 100, NULL, NULL, ?, NULL, ?, ?, NULL, NULL, ?, ?)",
-                    UUID.randomUUID().toString(),
-                    request.getBookGuid(),
-                    orderGuid,
-                    item.getDescription(),
-                    now,
-                    item.getAmountCent(),
-                    item.getAccountGuid(),
-                    taxableFlag(item),
-                    taxIncludedFlag(item),
-                    now,
-                    now
-            );
+        String orderType = jdbcTemplate.query(
+                "SELECT order_type FROM orders WHERE guid = ? AND book_guid = ?",
+                rs -> rs.next() ? rs.getString(1) : null,
+                orderGuid,
+                request.getBookGuid()
+        );
+        if (orderType == null) {
+            throw new IllegalArgumentException("订单不存在");
         }
+        // 明细变化即单据内容变化，递增 version 使并发过账的校验失败
+        jdbcTemplate.update("UPDATE orders SET version = version + 1 WHERE guid = ?", orderGuid);
+        entryTaxService.insertEntries(request.getBookGuid(), null, orderGuid, "PURCHASE".equals(orderType) ? "INPUT" : "OUTPUT", request.getItems());
     }
 
     @Transactional
     public void addInvoiceEntries(String invoiceGuid, EntryBatchRequest request) {
-        LocalDateTime now = LocalDateTime.now();
-        for (EntryItemRequest item : request.getItems()) {
-            jdbcTemplate.update(
-                    "INSERT INTO entries (guid, book_guid, invoice_guid, order_guid, job_guid, description, date, quantity_num, quantity_denom, price_num, price_denom, discount_num, discount_denom, account_guid, tax_table_guid, taxable, tax_included, tax_amount_num, tax_amount_denom, created_at, updated_at) " +
-                            "VALUES (?, ?, ?, NULL, NULL, ?, ?, 1, 1, ?, 100, NULL, NULL, ?, NULL, ?, ?, NULL, NULL, ?, ?)",
-                    UUID.randomUUID().toString(),
-                    request.getBookGuid(),
-                    invoiceGuid,
-                    item.getDescription(),
-                    now,
-                    item.getAmountCent(),
-                    item.getAccountGuid(),
-                    taxableFlag(item),
-                    taxIncludedFlag(item),
-                    now,
-                    now
-            );
+        String invoiceType = jdbcTemplate.query(
+                "SELECT invoice_type FROM invoices WHERE guid = ? AND book_guid = ?",
+                rs -> rs.next() ? rs.getString(1) : null,
+                invoiceGuid,
+                request.getBookGuid()
+        );
+        if (invoiceType == null) {
+            throw new IllegalArgumentException("发票不存在");
         }
-    }
-
-    private int taxableFlag(EntryItemRequest item) {
-        Double rate = item.getTaxRatePercent();
-        return (rate != null && rate > 0) ? 1 : 0;
-    }
-
-    private int taxIncludedFlag(EntryItemRequest item) {
-        Boolean incl = item.getTaxIncluded();
-        return Boolean.TRUE.equals(incl) ? 1 : 0;
+        jdbcTemplate.update("UPDATE invoices SET version = version + 1 WHERE guid = ?", invoiceGuid);
+        entryTaxService.insertEntries(request.getBookGuid(), invoiceGuid, null, "SALES".equals(invoiceType) ? "OUTPUT" : "INPUT", request.getItems());
     }
 
     private void ensureOwner(String bookGuid, String ownerType, String vendorGuid, String customerGuid, String employeeGuid, String name) {
@@ -0,0 +1,203 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.ShardContext;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动及定期预热：按最近活跃度（transactions.enter_date）挑选账本，在有界后台线程池中
+ * 依次加载科目树（含余额与账本元数据）、往来单位/税率等参考数据和仪表盘汇总。
+ * 启动预热完成或超出时间预算前 ready 为 false，由 WarmupHealthIndicator 反映到 readiness。
+ */
+@Slf4j
+@Service
+public class CacheWarmupService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AccountService accountService;
+    private final DashboardService dashboardService;
+    private final BusinessService businessService;
+    private final TaxService taxService;
+    private final ShardDirectory shardDirectory;
+    private final ThreadPoolExecutor executor;
+
+    private final boolean enabled;
+    private final int maxBooks;
+    private final int recentDays;
+    private final long budgetMillis;
+
+    private final AtomicBoolean ready = new AtomicBoolean(false);
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger warmedBooks = new AtomicInteger();
+    private volatile int targetBooks;
+    private volatile long lastDurationMillis;
+
+    public CacheWarmupService(JdbcTemplate jdbcTemplate,
+                              AccountService accountService,
+                              DashboardService dashboardService,
+                              BusinessService businessService,
+                              TaxService taxService,
+                              ShardDirectory shardDirectory,
+                              @Value("${ees.warmup.enabled:true}") boolean enabled,
+                              @Value("${ees.warmup.books:50}") int maxBooks,
+                              @Value("${ees.warmup.recent-days:30}") int recentDays,
+                              @Value("${ees.warmup.budget-ms:60000}") long budgetMillis,
+                              @Value("${ees.warmup.threads:2}") int threads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.accountService = accountService;
+        this.dashboardService = dashboardService;
+        this.businessService = businessService;
+        this.taxService = taxService;
+        this.shardDirectory = shardDirectory;
+        this.enabled = enabled;
+        this.maxBooks = maxBooks;
+        this.recentDays = recentDays;
+        this.budgetMillis = budgetMillis;
+        AtomicInteger seq = new AtomicInteger();
+        // 每轮最多提交 books 个任务且不会重入，队列容量与之一致即可容纳一轮
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, maxBooks)), r -> {
+            Thread t = new Thread(r, "cache-warmup-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (!enabled) {
+            ready.set(true);
+            return;
+        }
+        Thread starter = new Thread(() -> {
+            warmUp();
+            ready.set(true);
+        }, "cache-warmup-startup");
+        starter.setDaemon(true);
+        starter.start();
+    }
+
+    /**
+     * 定期刷新热点账本，保持缓存与数据库缓冲池处于热状态
+     */
+    @Scheduled(initialDelayString = "${ees.warmup.interval-ms:900000}", fixedDelayString = "${ees.warmup.interval-ms:900000}")
+    public void refresh() {
+        if (enabled && ready.get()) {
+            warmUp();
+        }
+    }
+
+    public boolean isReady() {
+        return ready.get();
+    }
+
+    public int warmedBooks() {
+        return warmedBooks.get();
+    }
+
+    public int targetBooks() {
+        return targetBooks;
+    }
+
+    public long lastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    /**
+     * 预热一轮，返回在时间预算内完成的账本数；超出预算的任务被取消。
+     */
+    public int warmUp() {
+        if (!running.compareAndSet(false, true)) {
+            return 0;
+        }
+        long startedAt = System.currentTimeMillis();
+        try {
+            // 账本 -> 所在分片；各分片按活跃度依次取，总数不超过 books
+            Map<String, String> books = new LinkedHashMap<>();
+            shardDirectory.forEachShard(shard -> recentlyActiveBooks().forEach(bookGuid -> {
+                if (books.size() < maxBooks) {
+                    books.put(bookGuid, shard);
+                }
+            }));
+            targetBooks = books.size();
+            warmedBooks.set(0);
+            List<Future<?>> futures = new ArrayList<>(books.size());
+            books.forEach((bookGuid, shard) -> futures.add(executor.submit(() -> ShardContext.run(shard, () -> warmBook(bookGuid)))));
+            long deadline = startedAt + budgetMillis;
+            for (Future<?> future : futures) {
+                long remaining = deadline - System.currentTimeMillis();
+                try {
+                    future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ex) {
+                    future.cancel(true);
+                } catch (Exception ex) {
+                    // 单个账本失败不影响其他账本，warmBook 内已记录
+                }
+            }
+            lastDurationMillis = System.currentTimeMillis() - startedAt;
+            log.info("缓存预热完成：{}/{} 个账本，耗时 {} ms", warmedBooks.get(), books.size(), lastDurationMillis);
+            return warmedBooks.get();
+        } catch (RuntimeException ex) {
+            log.warn("缓存预热失败", ex);
+            return warmedBooks.get();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private List<String> recentlyActiveBooks() {
+        // post_date 条件用于分区裁剪，只扫描最近的分区
+        return jdbcTemplate.queryForList(
+                """
+                SELECT book_guid
+                  FROM transactions
+                 WHERE post_date >= ?
+                 GROUP BY book_guid
+                 ORDER BY MAX(enter_date) DESC
+                 LIMIT ?
+                """,
+                String.class,
+                LocalDate.now().minusDays(recentDays).atStartOfDay(),
+                maxBooks
+        );
+    }
+
+    private void warmBook(String bookGuid) {
+        try {
+            accountService.getAccountTree(bookGuid);
+            businessService.listVendors(bookGuid);
+            businessService.listCustomers(bookGuid);
+            businessService.listJobs(bookGuid);
+            taxService.listRates(bookGuid);
+            dashboardService.buildSummary(bookGuid);
+            warmedBooks.incrementAndGet();
+        } catch (RuntimeException ex) {
+            log.warn("账本 {} 预热失败", bookGuid, ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,153 @@
+package com.moon.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moon.backend.dto.ChartTemplateResponse;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 科目表模板：启动时从 chart-templates/templates.json 加载一次并常驻内存，
+ * 按父先子后展开为扁平列表。建账时整本科目用一条多行 INSERT 写入，外键检查保持开启。
+ */
+@Service
+@RequiredArgsConstructor
+public class ChartTemplateService {
+
+    public static final String DEFAULT_TEMPLATE = "SMALL_BUSINESS";
+
+    private static final String TEMPLATE_RESOURCE = "chart-templates/templates.json";
+    private static final String INSERT_ACCOUNTS =
+            "INSERT INTO accounts (guid, book_guid, name, code, description, account_type, parent_guid, hidden, placeholder, created_at, updated_at) VALUES ";
+    private static final String ROW_PLACEHOLDER = "(?, ?, ?, ?, ?, ?, ?, 0, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final BookMetadataCache bookMetadataCache;
+
+    private Map<String, Template> templates;
+
+    @PostConstruct
+    public void loadTemplates() {
+        templates = load();
+    }
+
+    public List<ChartTemplateResponse> listTemplates() {
+        List<ChartTemplateResponse> list = new ArrayList<>();
+        for (Template t : templates.values()) {
+            list.add(new ChartTemplateResponse(t.code(), t.name(), t.description(), t.accounts().size()));
+        }
+        return list;
+    }
+
+    /**
+     * 为账本写入根账户（rootGuid 为空时）及模板科目，返回根账户 guid。
+     * 根账户已存在时只在其下补建模板科目。
+     */
+    @Transactional
+    public String seedBook(String bookGuid, String rootGuid, String templateCode) {
+        Template template = template(templateCode);
+        LocalDateTime now = LocalDateTime.now();
+        boolean createRoot = rootGuid == null;
+        String root = createRoot ? UUID.randomUUID().toString() : rootGuid;
+
+        List<Object> args = new ArrayList<>((template.accounts().size() + 1) * 10);
+        if (createRoot) {
+            addRow(args, root, bookGuid, "根账户", "0", "系统自动创建的根账户", "ASSET", null, true, now);
+        }
+        // 模板已按父先子后排序，同一条 INSERT 内逐行校验外键时父科目总是已写入
+        Map<String, String> guidByCode = new LinkedHashMap<>();
+        for (TemplateAccount account : template.accounts()) {
+            String guid = UUID.randomUUID().toString();
+            guidByCode.put(account.code(), guid);
+            String parent = account.parentCode() == null ? root : guidByCode.get(account.parentCode());
+            addRow(args, guid, bookGuid, account.name(), account.code(), account.description(), account.type(), parent, account.placeholder(), now);
+        }
+        int rows = args.size() / 10;
+        jdbcTemplate.update(INSERT_ACCOUNTS + String.join(", ", Collections.nCopies(rows, ROW_PLACEHOLDER)), args.toArray());
+
+        if (createRoot) {
+            jdbcTemplate.update("UPDATE books SET root_account_guid = ?, updated_at = ? WHERE guid = ?", root, now, bookGuid);
+        }
+        bookMetadataCache.invalidate(bookGuid);
+        return root;
+    }
+
+    private Template template(String templateCode) {
+        String code = templateCode == null || templateCode.isBlank() ? DEFAULT_TEMPLATE : templateCode.toUpperCase(Locale.ROOT);
+        Template template = templates.get(code);
+        if (template == null) {
+            throw new IllegalArgumentException("科目表模板不存在: " + templateCode);
+        }
+        return template;
+    }
+
+    private void addRow(List<Object> args, String guid, String bookGuid, String name, String code, String description,
+                        String type, String parentGuid, boolean placeholder, LocalDateTime now) {
+        args.add(guid);
+        args.add(bookGuid);
+        args.add(name);
+        args.add(code);
+        args.add(description);
+        args.add(type);
+        args.add(parentGuid);
+        args.add(placeholder ? 1 : 0);
+        args.add(now);
+        args.add(now);
+    }
+
+    private Map<String, Template> load() {
+        List<TemplateDef> defs;
+        try (InputStream in = new ClassPathResource(TEMPLATE_RESOURCE).getInputStream()) {
+            defs = objectMapper.readValue(in, new TypeReference<List<TemplateDef>>() {
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException("科目表模板加载失败", ex);
+        }
+        Map<String, Template> map = new LinkedHashMap<>();
+        for (TemplateDef def : defs) {
+            List<TemplateAccount> flat = new ArrayList<>();
+            flatten(def.accounts(), null, flat);
+            map.put(def.code(), new Template(def.code(), def.name(), def.description(), List.copyOf(flat)));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private void flatten(List<AccountDef> defs, String parentCode, List<TemplateAccount> out) {
+        if (defs == null) {
+            return;
+        }
+        for (AccountDef def : defs) {
+            out.add(new TemplateAccount(def.code(), def.name(), def.type(), def.description(), parentCode, Boolean.TRUE.equals(def.placeholder())));
+            flatten(def.children(), def.code(), out);
+        }
+    }
+
+    private record Template(String code, String name, String description, List<TemplateAccount> accounts) {
+    }
+
+    private record TemplateAccount(String code, String name, String type, String description, String parentCode, boolean placeholder) {
+    }
+
+    private record TemplateDef(String code, String name, String description, List<AccountDef> accounts) {
+    }
+
+    private record AccountDef(String code, String name, String type, String description, Boolean placeholder, List<AccountDef> children) {
+    }
+}
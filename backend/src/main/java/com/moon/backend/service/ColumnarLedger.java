@@ -0,0 +1,182 @@
+package com.moon.backend.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单个账本的列式分录快照：科目/来源类型/往来单位/项目按字典编码为 int，日期为 epoch-day，金额为分。
+ * 只追加；写入方（LedgerColumnStore，持有账本锁）写完新行后整体发布 Columns，读取方无需加锁。
+ */
+final class ColumnarLedger {
+
+    /** 空值（无往来单位/项目等）的编码 */
+    static final int NULL_ID = 0;
+
+    /** 每行字节数：5 个 int 列 + 1 个 long 列 */
+    static final int BYTES_PER_ROW = 5 * Integer.BYTES + Long.BYTES;
+
+    final String bookGuid;
+    final Dictionary accounts = new Dictionary();
+    final Dictionary sourceTypes = new Dictionary();
+    final Dictionary owners = new Dictionary();
+    final Dictionary jobs = new Dictionary();
+
+    /** 加载快照时已包含、但 seq 大于加载起点的凭证，追赶变更时跳过 */
+    final Set<String> preloaded = ConcurrentHashMap.newKeySet();
+
+    volatile Map<String, String> accountTypes = Map.of();
+    volatile long seq;
+    volatile long refreshedAt;
+    /** 最近一次写入快照文件时的 seq，-1 表示尚未写入 */
+    volatile long persistedSeq = -1;
+
+    private volatile Columns columns = new Columns(new int[0], new int[0], new long[0], new int[0], new int[0], new int[0], 0, Integer.MAX_VALUE, Integer.MIN_VALUE);
+
+    ColumnarLedger(String bookGuid) {
+        this.bookGuid = bookGuid;
+    }
+
+    Columns columns() {
+        return columns;
+    }
+
+    long estimatedBytes() {
+        Columns current = columns;
+        return (long) current.account.length * BYTES_PER_ROW;
+    }
+
+    /**
+     * 追加一行（仅写入方调用），调用 publish 后对读取方可见。
+     */
+    void append(Builder builder, String accountGuid, int epochDay, long cents, String sourceType, String ownerGuid, String jobGuid) {
+        builder.ensureCapacity();
+        int i = builder.size++;
+        builder.account[i] = accounts.id(accountGuid);
+        builder.day[i] = epochDay;
+        builder.cents[i] = cents;
+        builder.source[i] = sourceTypes.id(sourceType);
+        builder.owner[i] = owners.id(ownerGuid);
+        builder.job[i] = jobs.id(jobGuid);
+        builder.minDay = Math.min(builder.minDay, epochDay);
+        builder.maxDay = Math.max(builder.maxDay, epochDay);
+    }
+
+    Builder builder() {
+        return new Builder(columns);
+    }
+
+    /**
+     * 从快照文件恢复的列直接发布
+     */
+    void restore(Columns restored) {
+        columns = restored;
+    }
+
+    void publish(Builder builder) {
+        columns = new Columns(builder.account, builder.day, builder.cents, builder.source, builder.owner, builder.job,
+                builder.size, builder.minDay, builder.maxDay);
+    }
+
+    /**
+     * 已发布的列；size 之后的位置可能正在被写入方填充，读取方只访问 [0, size)。
+     */
+    record Columns(int[] account, int[] day, long[] cents, int[] source, int[] owner, int[] job,
+                   int size, int minDay, int maxDay) {
+    }
+
+    /**
+     * 写入方的追加缓冲：容量足够时与已发布的列共用数组（只写 size 之后的位置），不足时扩容复制。
+     */
+    static final class Builder {
+        int[] account;
+        int[] day;
+        long[] cents;
+        int[] source;
+        int[] owner;
+        int[] job;
+        int size;
+        int minDay;
+        int maxDay;
+
+        private Builder(Columns from) {
+            account = from.account;
+            day = from.day;
+            cents = from.cents;
+            source = from.source;
+            owner = from.owner;
+            job = from.job;
+            size = from.size;
+            minDay = from.minDay;
+            maxDay = from.maxDay;
+        }
+
+        private void ensureCapacity() {
+            if (size < account.length) {
+                return;
+            }
+            int capacity = Math.max(1024, account.length + (account.length >> 1));
+            account = Arrays.copyOf(account, capacity);
+            day = Arrays.copyOf(day, capacity);
+            cents = Arrays.copyOf(cents, capacity);
+            source = Arrays.copyOf(source, capacity);
+            owner = Arrays.copyOf(owner, capacity);
+            job = Arrays.copyOf(job, capacity);
+        }
+    }
+
+    /**
+     * 只追加的字符串字典，编码 0 固定表示 null。
+     */
+    static final class Dictionary {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] names = new String[16];
+        private int size = 1;
+
+        int id(String value) {
+            if (value == null) {
+                return NULL_ID;
+            }
+            Integer existing = ids.get(value);
+            if (existing != null) {
+                return existing;
+            }
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+            }
+            int id = size++;
+            names[id] = value;
+            ids.put(value, id);
+            return id;
+        }
+
+        /**
+         * 查找编码，不存在返回 -1。
+         */
+        int find(String value) {
+            if (value == null) {
+                return NULL_ID;
+            }
+            return ids.getOrDefault(value, -1);
+        }
+
+        String name(int id) {
+            return names[id];
+        }
+
+        /**
+         * 已分配的编码数（含 null 的 0 号）
+         */
+        int count() {
+            return size;
+        }
+
+        /**
+         * 编码上界（不含），用于按编码建立过滤掩码
+         */
+        int capacity() {
+            return names.length;
+        }
+    }
+}
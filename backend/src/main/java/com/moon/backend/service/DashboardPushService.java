@@ -0,0 +1,213 @@
+package com.moon.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moon.backend.config.ReadRouting;
+import com.moon.backend.dto.DashboardDelta;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 仪表盘 SSE 推送：按账本维护订阅者（异步请求，不占用 Tomcat 线程），
+ * 每 interval-ms 从 ledger_changes 拉取一次已提交变更，有变更的账本重算一次汇总，
+ * 只推送变化的指标与单据状态，一个间隔内多次过账合并为一次推送。
+ * 指标基线按订阅者保存：每个连接只对比自己上次收到的指标，新订阅不影响其他连接的增量。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DashboardPushService {
+
+    private static final int SCAN_LIMIT = 5000;
+    private static final TypeReference<LinkedHashMap<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private final DashboardService dashboardService;
+    private final LedgerChangeService ledgerChangeService;
+    private final ReplicaPositionTracker replicaPositionTracker;
+    private final ShardDirectory shardDirectory;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    /** 各分片的变更流水游标（seq 按分片独立分配） */
+    private final Map<String, Long> cursors = new ConcurrentHashMap<>();
+    private long lastHeartbeat = System.currentTimeMillis();
+
+    @Value("${ees.push.timeout-ms:1800000}")
+    private long emitterTimeoutMillis;
+
+    @Value("${ees.push.heartbeat-ms:25000}")
+    private long heartbeatMillis;
+
+    /**
+     * 订阅账本推送，连接建立后先发送一次完整快照。
+     */
+    public SseEmitter subscribe(String bookGuid) {
+        Map<String, Object> snapshot = toMap(dashboardService.buildSummary(bookGuid));
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Channel channel = channels.computeIfAbsent(bookGuid, k -> new Channel());
+        channel.emitters.put(emitter, snapshot);
+        Runnable remove = () -> removeEmitter(bookGuid, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(ex -> remove.run());
+        try {
+            emitter.send(SseEmitter.event().name("snapshot").data(snapshot, MediaType.APPLICATION_JSON));
+        } catch (IOException ex) {
+            remove.run();
+        }
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${ees.push.interval-ms:1000}")
+    public void flush() {
+        if (channels.isEmpty()) {
+            // 无订阅者时不做任何推送计算，下次有订阅者时从最新序号开始
+            cursors.clear();
+            return;
+        }
+        shardDirectory.forEachShard(this::flushShard);
+        heartbeatIfDue();
+    }
+
+    private void flushShard(String shard) {
+        Long since = cursors.get(shard);
+        if (since == null) {
+            cursors.put(shard, ledgerChangeService.latestSeq());
+            return;
+        }
+        LedgerChangeService.ChangeBatch batch = ledgerChangeService.scan(since, SCAN_LIMIT);
+        long cursor = batch.nextSince();
+        cursors.put(shard, cursor);
+
+        Map<String, Set<String>> invoicesByBook = new HashMap<>();
+        Map<String, Set<String>> ordersByBook = new HashMap<>();
+        Set<String> dirtyBooks = new LinkedHashSet<>();
+        for (LedgerChangeService.ChangeRow row : batch.rows()) {
+            if (!channels.containsKey(row.bookGuid())) {
+                continue;
+            }
+            dirtyBooks.add(row.bookGuid());
+            if ("INVOICE".equals(row.entity())) {
+                invoicesByBook.computeIfAbsent(row.bookGuid(), k -> new LinkedHashSet<>()).add(row.entityGuid());
+            } else if ("ORDER".equals(row.entity())) {
+                ordersByBook.computeIfAbsent(row.bookGuid(), k -> new LinkedHashSet<>()).add(row.entityGuid());
+            }
+        }
+        for (String bookGuid : dirtyBooks) {
+            Channel channel = channels.get(bookGuid);
+            if (channel == null) {
+                continue;
+            }
+            try {
+                pushDelta(bookGuid, channel, cursor, invoicesByBook.getOrDefault(bookGuid, Set.of()), ordersByBook.getOrDefault(bookGuid, Set.of()));
+            } catch (RuntimeException ex) {
+                log.warn("账本 {} 推送失败", bookGuid, ex);
+            }
+        }
+    }
+
+    private void pushDelta(String bookGuid, Channel channel, long cursor, Set<String> invoiceGuids, Set<String> orderGuids) {
+        // 副本尚未应用到本批变更时改走主库，避免推送比变更更旧的汇总
+        Map<String, Object> kpis = toMap(replicaPositionTracker.covers(cursor)
+                ? dashboardService.buildSummary(bookGuid)
+                : ReadRouting.onPrimary(() -> dashboardService.buildSummary(bookGuid)));
+        List<DashboardDelta.DocumentStatus> documents = new ArrayList<>();
+        documents.addAll(documentStatuses("INVOICE", "SELECT guid, id, invoice_type AS doc_type, status FROM invoices WHERE guid IN (%s)", invoiceGuids));
+        documents.addAll(documentStatuses("ORDER", "SELECT guid, id, order_type AS doc_type, status FROM orders WHERE guid IN (%s)", orderGuids));
+        channel.emitters.forEach((emitter, previous) -> {
+            Map<String, Object> changed = new LinkedHashMap<>();
+            kpis.forEach((field, value) -> {
+                if (!Objects.equals(previous.get(field), value)) {
+                    changed.put(field, value);
+                }
+            });
+            if (changed.isEmpty() && documents.isEmpty()) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name("delta").id(String.valueOf(cursor))
+                        .data(new DashboardDelta(cursor, changed, documents), MediaType.APPLICATION_JSON));
+                // 连接已移除时不再放回
+                channel.emitters.replace(emitter, kpis);
+            } catch (IOException | IllegalStateException ex) {
+                removeEmitter(bookGuid, emitter);
+            }
+        });
+    }
+
+    private List<DashboardDelta.DocumentStatus> documentStatuses(String type, String sql, Set<String> guids) {
+        if (guids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(",", Collections.nCopies(guids.size(), "?"));
+        return jdbcTemplate.query(
+                sql.formatted(placeholders),
+                (rs, i) -> new DashboardDelta.DocumentStatus(
+                        type,
+                        rs.getString("guid"),
+                        rs.getString("id"),
+                        rs.getString("doc_type"),
+                        rs.getString("status")
+                ),
+                guids.toArray()
+        );
+    }
+
+    /**
+     * 定期发送注释行，避免空闲连接被代理断开，同时及时清理已断开的订阅者
+     */
+    private void heartbeatIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastHeartbeat < heartbeatMillis) {
+            return;
+        }
+        lastHeartbeat = now;
+        channels.forEach((bookGuid, channel) -> {
+            for (SseEmitter emitter : channel.emitters.keySet()) {
+                try {
+                    emitter.send(SseEmitter.event().comment("ping"));
+                } catch (IOException | IllegalStateException ex) {
+                    removeEmitter(bookGuid, emitter);
+                }
+            }
+        });
+    }
+
+    private void removeEmitter(String bookGuid, SseEmitter emitter) {
+        channels.computeIfPresent(bookGuid, (k, channel) -> {
+            channel.emitters.remove(emitter);
+            return channel.emitters.isEmpty() ? null : channel;
+        });
+    }
+
+    private Map<String, Object> toMap(Object summary) {
+        return objectMapper.convertValue(summary, MAP_TYPE);
+    }
+
+    /**
+     * 订阅者 -> 该连接最近收到的指标
+     */
+    private static final class Channel {
+        final Map<SseEmitter, Map<String, Object>> emitters = new ConcurrentHashMap<>();
+    }
+}
@@ -5,6 +5,7 @@ import com.moon.backend.dto.DashboardSummary;
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -19,6 +20,7 @@ public class DashboardService {
     private final JdbcTemplate jdbcTemplate;
     private final AccountService accountService;
 
+    @Transactional(readOnly = true)
     public DashboardSummary buildSummary(String bookGuid) {
         BigDecimal cash = queryCash(bookGuid);
         BigDecimal arOutstanding = safeAbs(queryBalanceByName(bookGuid, "应收账款"));
@@ -0,0 +1,120 @@
+package com.moon.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单据级并发控制：
+ * 1. 进程内按单据 guid 分段加锁，锁持有到事务结束，不同单据并行过账，不串行化整个账本；
+ * 2. invoices / orders 的 version 列做乐观校验，覆盖多节点部署下的并发修改。
+ * 调用方需处于事务中。
+ */
+@Service
+public class DocumentLocks {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final long waitMillis;
+
+    public DocumentLocks(JdbcTemplate jdbcTemplate,
+                         @Value("${ees.locks.stripes:1024}") int stripeCount,
+                         @Value("${ees.locks.wait-ms:5000}") long waitMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * 锁定发票并返回其 version 与过账状态；发票不存在返回 null。
+     * 读取后立即校验并递增 version，行锁持有到事务结束：之后本事务对发票的写入（开立 lot、结算状态）
+     * 也各自递增 version，其他节点的并发写入等待本事务完成后按新 version 校验。
+     */
+    public LockedInvoice lockInvoice(String invoiceGuid) {
+        lock(invoiceGuid);
+        LockedInvoice invoice = jdbcTemplate.query(
+                "SELECT version, post_txn_guid FROM invoices WHERE guid = ?",
+                rs -> rs.next() ? new LockedInvoice(rs.getLong("version"), rs.getString("post_txn_guid") != null) : null,
+                invoiceGuid
+        );
+        if (invoice != null) {
+            bumpInvoice(invoiceGuid, invoice.version());
+        }
+        return invoice;
+    }
+
+    public Long orderVersion(String orderGuid) {
+        return version("SELECT version FROM orders WHERE guid = ?", orderGuid);
+    }
+
+    /**
+     * 校验并递增发票 version，期间被其他节点修改过则抛出异常使事务回滚。
+     */
+    public void bumpInvoice(String invoiceGuid, Long expectedVersion) {
+        bump("UPDATE invoices SET version = version + 1 WHERE guid = ? AND version = ?", invoiceGuid, expectedVersion, "发票已被其他请求修改，请重试");
+    }
+
+    public void bumpOrder(String orderGuid, Long expectedVersion) {
+        bump("UPDATE orders SET version = version + 1 WHERE guid = ? AND version = ?", orderGuid, expectedVersion, "订单已被其他请求修改，请重试");
+    }
+
+    /**
+     * 获取单据所在分段的锁，事务完成（提交或回滚）后释放；同一线程可重入。
+     */
+    public void lock(String documentGuid) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("单据锁必须在事务中获取");
+        }
+        ReentrantLock lock = stripes[spread(documentGuid.hashCode()) & mask];
+        boolean acquired;
+        try {
+            // 限时等待：一个事务内锁多个单据时，分段冲突不会造成永久死锁
+            acquired = lock.tryLock(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待单据锁被中断", ex);
+        }
+        if (!acquired) {
+            throw new IllegalStateException("单据正在被其他请求处理，请稍后重试");
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+
+    private Long version(String sql, String guid) {
+        List<Long> versions = jdbcTemplate.queryForList(sql, Long.class, guid);
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+
+    private void bump(String sql, String guid, Long expectedVersion, String conflictMessage) {
+        if (expectedVersion == null) {
+            return;
+        }
+        if (jdbcTemplate.update(sql, guid, expectedVersion) == 0) {
+            throw new IllegalStateException(conflictMessage);
+        }
+    }
+
+    public record LockedInvoice(long version, boolean posted) {
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
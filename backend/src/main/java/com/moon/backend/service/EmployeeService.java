@@ -20,6 +20,7 @@ public class EmployeeService {
 
     private final JdbcTemplate jdbcTemplate;
     private final AccountRepository accountRepository;
+    private final PeriodCloseService periodCloseService;
 
     @Transactional
     public String createEmployee(EmployeeRequest request) {
@@ -72,6 +73,8 @@ public class EmployeeService {
                 .orElseThrow(() -> new IllegalStateException("未找到“应付职工薪酬”科目"));
 
         LocalDateTime now = LocalDateTime.now();
+        LocalDateTime postDate = request.getPostDate() != null ? request.getPostDate() : now;
+        periodCloseService.assertOpen(bookGuid, postDate);
         String txGuid = UUID.randomUUID().toString();
 
         jdbcTemplate.update(
@@ -80,15 +83,15 @@ public class EmployeeService {
                 txGuid,
                 bookGuid,
                 request.getExpenseNo(),
-                request.getPostDate() != null ? request.getPostDate() : now,
+                postDate,
                 now,
                 coalesce(request.getDescription(), "员工费用过账"),
                 "EMP_EXPENSE",
                 request.getEmployeeGuid()
         );
 
-        insertSplit(txGuid, expense.getGuid(), request.getAmountCent(), request.getDescription());
-        insertSplit(txGuid, payable.getGuid(), -request.getAmountCent(), request.getDescription());
+        insertSplit(txGuid, postDate, expense.getGuid(), request.getAmountCent(), request.getDescription());
+        insertSplit(txGuid, postDate, payable.getGuid(), -request.getAmountCent(), request.getDescription());
     }
 
     @Transactional
@@ -102,6 +105,8 @@ public class EmployeeService {
         Account cash = resolveCashAccount(bookGuid, request.getCashAccountName());
 
         LocalDateTime now = LocalDateTime.now();
+        LocalDateTime payDate = request.getPayDate() != null ? request.getPayDate() : now;
+        periodCloseService.assertOpen(bookGuid, payDate);
         String txGuid = UUID.randomUUID().toString();
 
         jdbcTemplate.update(
@@ -109,24 +114,25 @@ public class EmployeeService {
                         "VALUES (?, ?, NULL, ?, ?, ?, 'POSTED', ?, ?)",
                 txGuid,
                 bookGuid,
-                request.getPayDate() != null ? request.getPayDate() : now,
+                payDate,
                 now,
                 coalesce(request.getDescription(), "员工付款过账"),
                 "EMP_PAY",
                 coalesce(request.getExpenseGuid(), request.getEmployeeGuid())
         );
 
-        insertSplit(txGuid, payable.getGuid(), request.getAmountCent(), request.getDescription());
-        insertSplit(txGuid, cash.getGuid(), -request.getAmountCent(), request.getDescription());
+        insertSplit(txGuid, payDate, payable.getGuid(), request.getAmountCent(), request.getDescription());
+        insertSplit(txGuid, payDate, cash.getGuid(), -request.getAmountCent(), request.getDescription());
     }
 
-    private void insertSplit(String txGuid, String accountGuid, long cents, String memo) {
+    private void insertSplit(String txGuid, LocalDateTime postDate, String accountGuid, long cents, String memo) {
         LocalDateTime now = LocalDateTime.now();
         jdbcTemplate.update(
-                "INSERT INTO splits (guid, tx_guid, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
-                        "VALUES (?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, NULL)",
+                "INSERT INTO splits (guid, tx_guid, post_date, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
+                        "VALUES (?, ?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, NULL)",
                 UUID.randomUUID().toString(),
                 txGuid,
+                postDate,
                 accountGuid,
                 cents,
                 cents,
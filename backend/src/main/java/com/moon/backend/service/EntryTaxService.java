@@ -0,0 +1,182 @@
+package com.moon.backend.service;
+
+import com.moon.backend.dto.EntryItemRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 明细行税额预计算：写入 entries 时解析税表，算出税额（分）存入 entries.tax_amount_* 与 taxable_entries，
+ * 过账和税务报表直接汇总整数；税率变更时重算未过账（DRAFT）单据的明细行。
+ */
+@Service
+@RequiredArgsConstructor
+public class EntryTaxService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 批量写入发票/订单明细行，direction 为 OUTPUT（销售）或 INPUT（采购）。
+     */
+    public void insertEntries(String bookGuid, String invoiceGuid, String orderGuid, String direction, List<EntryItemRequest> items) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime docDate = documentDate(invoiceGuid, orderGuid, now);
+        Map<String, TaxTable> resolved = new HashMap<>();
+        List<Object[]> entryRows = new ArrayList<>();
+        List<Object[]> taxableRows = new ArrayList<>();
+        for (EntryItemRequest item : items) {
+            String entryGuid = UUID.randomUUID().toString();
+            TaxTable table = resolve(bookGuid, item, direction, resolved);
+            boolean included = Boolean.TRUE.equals(item.getTaxIncluded());
+            Long taxCents = table == null ? null : TaxMath.tax(item.getAmountCent(), table.rateNum(), table.rateDenom(), included);
+            entryRows.add(new Object[]{
+                    entryGuid,
+                    bookGuid,
+                    invoiceGuid,
+                    orderGuid,
+                    item.getDescription(),
+                    now,
+                    docDate,
+                    item.getAmountCent(),
+                    item.getAccountGuid(),
+                    table == null ? null : table.guid(),
+                    table != null ? 1 : 0,
+                    included ? 1 : 0,
+                    taxCents,
+                    taxCents == null ? null : 100L,
+                    now,
+                    now
+            });
+            if (table != null) {
+                taxableRows.add(new Object[]{UUID.randomUUID().toString(), bookGuid, entryGuid, table.guid(), taxCents});
+            }
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO entries (guid, book_guid, invoice_guid, order_guid, job_guid, description, date, doc_date, quantity_num, quantity_denom, price_num, price_denom, discount_num, discount_denom, account_guid, tax_table_guid, taxable, tax_included, tax_amount_num, tax_amount_denom, created_at, updated_at) " +
+                        "VALUES (?, ?, ?, ?, NULL, ?, ?, ?, 1, 1, ?, 100, NULL, NULL, ?, ?, ?, ?, ?, ?, ?, ?)",
+                entryRows
+        );
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO taxable_entries (guid, book_guid, entry_guid, tax_table_guid, tax_amount_num, tax_amount_denom) VALUES (?, ?, ?, ?, ?, 100)",
+                taxableRows
+        );
+    }
+
+    /**
+     * 所属单据的 date_opened，冗余到 entries.doc_date 供科目关联单据按日期分页
+     */
+    private LocalDateTime documentDate(String invoiceGuid, String orderGuid, LocalDateTime fallback) {
+        String sql = invoiceGuid != null
+                ? "SELECT date_opened FROM invoices WHERE guid = ?"
+                : "SELECT date_opened FROM orders WHERE guid = ?";
+        LocalDateTime opened = jdbcTemplate.query(
+                sql,
+                rs -> rs.next() && rs.getTimestamp(1) != null ? rs.getTimestamp(1).toLocalDateTime() : null,
+                invoiceGuid != null ? invoiceGuid : orderGuid
+        );
+        return opened != null ? opened : fallback;
+    }
+
+    /**
+     * 税率变更后重算该税表下未过账单据的明细行税额，返回重算行数。
+     */
+    @Transactional
+    public int recomputeForTaxTable(String taxTableGuid) {
+        List<Object[]> entryRows = new ArrayList<>();
+        List<Object[]> taxableRows = new ArrayList<>();
+        jdbcTemplate.query(
+                """
+                SELECT e.guid, e.quantity_num, e.quantity_denom, e.price_num, e.price_denom,
+                       e.discount_num, e.discount_denom, e.tax_included, tt.rate_num, tt.rate_denom
+                  FROM entries e
+                  JOIN taxtables tt ON e.tax_table_guid = tt.guid
+                  LEFT JOIN invoices i ON e.invoice_guid = i.guid
+                  LEFT JOIN orders o ON e.order_guid = o.guid
+                 WHERE e.tax_table_guid = ?
+                   AND COALESCE(i.status, o.status, 'DRAFT') = 'DRAFT'
+                """,
+                rs -> {
+                    long net = TaxMath.netCents(
+                            rs.getLong("quantity_num"),
+                            rs.getLong("quantity_denom"),
+                            rs.getLong("price_num"),
+                            rs.getLong("price_denom"),
+                            rs.getObject("discount_num") != null ? rs.getLong("discount_num") : null,
+                            rs.getObject("discount_denom") != null ? rs.getLong("discount_denom") : null
+                    );
+                    long tax = TaxMath.tax(net, rs.getLong("rate_num"), rs.getLong("rate_denom"), rs.getInt("tax_included") == 1);
+                    entryRows.add(new Object[]{tax, LocalDateTime.now(), rs.getString("guid")});
+                    taxableRows.add(new Object[]{tax, rs.getString("guid"), taxTableGuid});
+                },
+                taxTableGuid
+        );
+        jdbcTemplate.batchUpdate(
+                "UPDATE entries SET tax_amount_num = ?, tax_amount_denom = 100, updated_at = ? WHERE guid = ?",
+                entryRows
+        );
+        jdbcTemplate.batchUpdate(
+                "UPDATE taxable_entries SET tax_amount_num = ?, tax_amount_denom = 100 WHERE entry_guid = ? AND tax_table_guid = ?",
+                taxableRows
+        );
+        return entryRows.size();
+    }
+
+    /**
+     * 明细行税表：优先使用指定税表，否则按税率百分比匹配本账本同方向的启用税表；填了税率但没有匹配的税表时报错，不静默按免税处理。
+     */
+    private TaxTable resolve(String bookGuid, EntryItemRequest item, String direction, Map<String, TaxTable> resolved) {
+        if (item.getTaxTableGuid() != null && !item.getTaxTableGuid().isBlank()) {
+            TaxTable table = resolved.computeIfAbsent(item.getTaxTableGuid(), guid -> jdbcTemplate.query(
+                    "SELECT guid, direction, rate_num, rate_denom FROM taxtables WHERE guid = ? AND book_guid = ?",
+                    rs -> rs.next() ? new TaxTable(rs.getString("guid"), rs.getString("direction"), rs.getLong("rate_num"), rs.getLong("rate_denom")) : null,
+                    guid,
+                    bookGuid
+            ));
+            if (table == null) {
+                throw new IllegalArgumentException("税率不存在");
+            }
+            if (!direction.equalsIgnoreCase(table.direction())) {
+                throw new IllegalArgumentException("OUTPUT".equals(direction) ? "销售发票税表方向必须为 OUTPUT" : "采购发票税表方向必须为 INPUT");
+            }
+            return table;
+        }
+        if (!isPositive(item.getTaxRatePercent())) {
+            return null;
+        }
+        // 百分比最多两位小数（与税额试算一致）：rate_num / rate_denom = bp / 10000
+        long bp = TaxMath.percentToBasisPoints(item.getTaxRatePercent());
+        TaxTable table = resolved.computeIfAbsent(direction + ":" + bp, key -> jdbcTemplate.query(
+                """
+                SELECT guid, direction, rate_num, rate_denom
+                  FROM taxtables
+                 WHERE book_guid = ? AND direction = ? AND active = 1 AND rate_num * 10000 = ? * rate_denom
+                 ORDER BY name
+                 LIMIT 1
+                """,
+                rs -> rs.next() ? new TaxTable(rs.getString("guid"), rs.getString("direction"), rs.getLong("rate_num"), rs.getLong("rate_denom")) : null,
+                bookGuid,
+                direction,
+                bp
+        ));
+        if (table == null) {
+            throw new IllegalArgumentException("未找到税率为 " + BigDecimal.valueOf(item.getTaxRatePercent()).stripTrailingZeros().toPlainString() + "% 的启用税表");
+        }
+        return table;
+    }
+
+    private boolean isPositive(Double value) {
+        return value != null && value > 0;
+    }
+
+    private record TaxTable(String guid, String direction, long rateNum, long rateDenom) {
+    }
+}
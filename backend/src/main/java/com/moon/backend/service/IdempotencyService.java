@@ -0,0 +1,233 @@
+package com.moon.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 幂等键登记：内存 LRU 索引挡在 idempotency_keys 表之前。
+ * 同一进程内的并发重复请求等待首个请求完成后复用其响应；跨节点靠表主键判重，
+ * 对方尚未完成时返回 IN_PROGRESS。执行权带租约：超过 lease-ms 仍未完成的占位视为执行者已失联，
+ * 重试请求可接管；claimed_at 同时作为执行权凭证，失去执行权的请求不会覆盖结果。过期记录由定时任务清理。
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Entry> index;
+    private final Duration ttl;
+    private final long waitMillis;
+    private final Duration lease;
+
+    public IdempotencyService(JdbcTemplate jdbcTemplate,
+                              @Value("${ees.idempotency.cache-size:10000}") int cacheSize,
+                              @Value("${ees.idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${ees.idempotency.wait-ms:30000}") long waitMillis,
+                              @Value("${ees.idempotency.lease-ms:120000}") long leaseMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.waitMillis = waitMillis;
+        this.lease = Duration.ofMillis(leaseMillis);
+        this.index = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * 登记幂等键。返回 OWNER 时调用方执行请求，之后必须以该 Claim 调用 complete 或 abandon。
+     */
+    public Claim begin(String key, String requestHash) {
+        while (true) {
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            Entry fresh = new Entry(requestHash, now.plus(ttl), now, new CompletableFuture<>());
+            Entry existing;
+            synchronized (index) {
+                existing = index.get(key);
+                if (existing == null || existing.expiresAt.isBefore(now) || existing.isStale(now.minus(lease))) {
+                    index.put(key, fresh);
+                    existing = null;
+                }
+            }
+            if (existing != null) {
+                if (!existing.requestHash.equals(requestHash)) {
+                    return Claim.of(ClaimType.MISMATCH);
+                }
+                StoredResponse response;
+                try {
+                    response = existing.future.get(waitMillis, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException ex) {
+                    return Claim.of(ClaimType.IN_PROGRESS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return Claim.of(ClaimType.IN_PROGRESS);
+                } catch (ExecutionException ex) {
+                    continue;
+                }
+                if (response == null) {
+                    // 首个请求未产生可复用结果（已放弃），重新竞争执行权
+                    continue;
+                }
+                return new Claim(ClaimType.REPLAY, response, null);
+            }
+
+            Claim claim = claimInDb(key, fresh);
+            if (claim != null) {
+                return claim;
+            }
+        }
+    }
+
+    /**
+     * 保存首个请求的响应并唤醒等待中的重复请求；执行权已被接管时放弃保存。
+     */
+    public void complete(String key, Claim claim, StoredResponse response) {
+        int updated = jdbcTemplate.update(
+                "UPDATE idempotency_keys SET status_code = ?, content_type = ?, response_body = ? WHERE idem_key = ? AND claimed_at = ? AND status_code IS NULL",
+                response.status(),
+                response.contentType(),
+                response.body(),
+                key,
+                claim.claimedAt()
+        );
+        if (updated == 0) {
+            log.warn("幂等键 {} 的执行权已超过租约被接管，本次响应不保存", key);
+            return;
+        }
+        Entry entry = ownEntry(key, claim);
+        if (entry != null) {
+            entry.future.complete(response);
+        }
+    }
+
+    /**
+     * 首个请求的结果不应复用（5xx、并发冲突等）时释放幂等键，允许重试重新执行。
+     */
+    public void abandon(String key, Claim claim) {
+        jdbcTemplate.update(
+                "DELETE FROM idempotency_keys WHERE idem_key = ? AND claimed_at = ? AND status_code IS NULL",
+                key,
+                claim.claimedAt()
+        );
+        Entry entry = ownEntry(key, claim);
+        if (entry != null) {
+            synchronized (index) {
+                index.remove(key, entry);
+            }
+            entry.future.complete(null);
+        }
+    }
+
+    private Entry ownEntry(String key, Claim claim) {
+        synchronized (index) {
+            Entry entry = index.get(key);
+            return entry != null && entry.claimedAt.equals(claim.claimedAt()) ? entry : null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ees.idempotency.cleanup-interval-ms:600000}")
+    public void purgeExpired() {
+        int removed;
+        do {
+            removed = jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at < ? LIMIT 1000", LocalDateTime.now());
+        } while (removed == 1000);
+    }
+
+    /**
+     * 写入占位行取得执行权；主键冲突说明已由其他节点或更早请求登记，占位超过租约时接管。返回 null 表示需重试。
+     */
+    private Claim claimInDb(String key, Entry fresh) {
+        LocalDateTime now = fresh.claimedAt;
+        jdbcTemplate.update("DELETE FROM idempotency_keys WHERE idem_key = ? AND expires_at < ?", key, now);
+        try {
+            jdbcTemplate.update(
+                    "INSERT INTO idempotency_keys (idem_key, request_hash, status_code, content_type, response_body, claimed_at, created_at, expires_at) VALUES (?, ?, NULL, NULL, NULL, ?, ?, ?)",
+                    key,
+                    fresh.requestHash,
+                    now,
+                    now,
+                    fresh.expiresAt
+            );
+            return new Claim(ClaimType.OWNER, null, now);
+        } catch (DuplicateKeyException ex) {
+            Stored stored = jdbcTemplate.query(
+                    "SELECT request_hash, status_code, content_type, response_body, claimed_at FROM idempotency_keys WHERE idem_key = ?",
+                    rs -> rs.next()
+                            ? new Stored(rs.getString("request_hash"), rs.getObject("status_code") == null ? null
+                            : new StoredResponse(rs.getInt("status_code"), rs.getString("content_type"), rs.getBytes("response_body")),
+                            rs.getObject("claimed_at", LocalDateTime.class))
+                            : null,
+                    key
+            );
+            if (stored != null && stored.response == null && stored.requestHash.equals(fresh.requestHash)
+                    && (stored.claimedAt == null || stored.claimedAt.isBefore(now.minus(lease)))
+                    && takeOver(key, stored.claimedAt, now)) {
+                return new Claim(ClaimType.OWNER, null, now);
+            }
+            synchronized (index) {
+                index.remove(key, fresh);
+            }
+            if (stored == null) {
+                fresh.future.complete(null);
+                return null;
+            }
+            fresh.future.complete(stored.response);
+            if (!stored.requestHash.equals(fresh.requestHash)) {
+                return Claim.of(ClaimType.MISMATCH);
+            }
+            return stored.response == null ? Claim.of(ClaimType.IN_PROGRESS) : new Claim(ClaimType.REPLAY, stored.response, null);
+        }
+    }
+
+    public enum ClaimType {
+        OWNER, REPLAY, MISMATCH, IN_PROGRESS
+    }
+
+    /**
+     * 以原 claimed_at 为条件更新，多个重试请求同时接管时只有一个成功
+     */
+    private boolean takeOver(String key, LocalDateTime previousClaim, LocalDateTime now) {
+        int updated = previousClaim == null
+                ? jdbcTemplate.update("UPDATE idempotency_keys SET claimed_at = ? WHERE idem_key = ? AND status_code IS NULL AND claimed_at IS NULL", now, key)
+                : jdbcTemplate.update("UPDATE idempotency_keys SET claimed_at = ? WHERE idem_key = ? AND status_code IS NULL AND claimed_at = ?", now, key, previousClaim);
+        if (updated == 1) {
+            log.warn("幂等键 {} 的占位超过租约未完成，由重试请求接管执行", key);
+        }
+        return updated == 1;
+    }
+
+    public record Claim(ClaimType type, StoredResponse response, LocalDateTime claimedAt) {
+        static Claim of(ClaimType type) {
+            return new Claim(type, null, null);
+        }
+    }
+
+    public record StoredResponse(int status, String contentType, byte[] body) {
+    }
+
+    private record Stored(String requestHash, StoredResponse response, LocalDateTime claimedAt) {
+    }
+
+    private record Entry(String requestHash, LocalDateTime expiresAt, LocalDateTime claimedAt, CompletableFuture<StoredResponse> future) {
+
+        boolean isStale(LocalDateTime leaseStart) {
+            return !future.isDone() && claimedAt.isBefore(leaseStart);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.moon.backend.service;
+
+import com.moon.backend.dto.ChangeFeedResponse;
+import com.moon.backend.dto.LedgerChangeResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 变更流水拉取。seq 在插入时分配、提交顺序可能不同，较小的 seq 可能晚于较大的 seq 可见；
+ * 因此只返回到“水位线”为止：水位线之前的 seq 全部可见，或缺口已确认不属于任何未提交事务（回滚丢弃的 seq）。
+ * 缺口用 FOR SHARE NOWAIT 的加锁读判断：未提交的插入持有行锁，加锁读立即失败；事务结束后加锁读不再冲突。
+ * 慢事务提交前缺口一直保持，提交后即可见，不会因等待时间长短被跳过。
+ * entity = BOOK、op = M 表示账本已迁移到当前分片，迁移前的变更不会出现在此处，消费者应整本重新同步。
+ */
+@Service
+@RequiredArgsConstructor
+public class LedgerChangeService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${ees.changes.scan-limit:5000}")
+    private int scanLimit;
+
+    @Value("${ees.changes.max-limit:1000}")
+    private int maxLimit;
+
+    public ChangeFeedResponse changes(String bookGuid, long since, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit 必须大于 0");
+        }
+        int size = Math.min(limit, maxLimit);
+        Watermark mark = watermark(jdbcTemplate, since);
+        long watermark = mark.seq();
+        if (watermark <= since) {
+            return new ChangeFeedResponse(List.of(), since, false);
+        }
+        List<LedgerChangeResponse> rows = jdbcTemplate.query(
+                """
+                SELECT seq, entity, entity_guid, op, changed_at
+                  FROM ledger_changes
+                 WHERE book_guid = ? AND seq > ? AND seq <= ?
+                 ORDER BY seq
+                 LIMIT ?
+                """,
+                (rs, i) -> new LedgerChangeResponse(
+                        rs.getLong("seq"),
+                        rs.getString("entity"),
+                        rs.getString("entity_guid"),
+                        rs.getString("op"),
+                        rs.getTimestamp("changed_at").toLocalDateTime()
+                ),
+                bookGuid,
+                since,
+                watermark,
+                size + 1
+        );
+        boolean pageFull = rows.size() > size;
+        List<LedgerChangeResponse> page = pageFull ? new ArrayList<>(rows.subList(0, size)) : rows;
+        long next = pageFull ? page.get(page.size() - 1).getSeq() : watermark;
+        // 水位线受 scan-limit 截断时其后仍有已稳定的变更，即使本页没有该账本的记录
+        return new ChangeFeedResponse(page, next, pageFull || mark.truncated());
+    }
+
+    /**
+     * 全部账本的变更（到水位线为止），供服务端推送按批处理
+     */
+    public ChangeBatch scan(long since, int limit) {
+        long watermark = watermark(jdbcTemplate, since).seq();
+        if (watermark <= since) {
+            return new ChangeBatch(List.of(), since);
+        }
+        List<ChangeRow> rows = jdbcTemplate.query(
+                "SELECT seq, book_guid, entity, entity_guid, op FROM ledger_changes WHERE seq > ? AND seq <= ? ORDER BY seq LIMIT ?",
+                (rs, i) -> new ChangeRow(
+                        rs.getLong("seq"),
+                        rs.getString("book_guid"),
+                        rs.getString("entity"),
+                        rs.getString("entity_guid"),
+                        rs.getString("op")
+                ),
+                since,
+                watermark,
+                limit
+        );
+        long next = rows.size() == limit ? rows.get(rows.size() - 1).seq() : watermark;
+        return new ChangeBatch(rows, next);
+    }
+
+    /**
+     * 当前已提交的最大 seq
+     */
+    public long latestSeq() {
+        Long max = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(seq), 0) FROM ledger_changes", Long.class);
+        return max == null ? 0 : max;
+    }
+
+    /**
+     * 账本的数据版本：该账本最近一条变更的 seq，走 (book_guid, seq) 索引
+     */
+    public long bookVersion(String bookGuid) {
+        Long max = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(seq), 0) FROM ledger_changes WHERE book_guid = ?",
+                Long.class,
+                bookGuid
+        );
+        return max == null ? 0 : max;
+    }
+
+    /**
+     * 稳定序号：该 seq 及之前的变更均已可见（或缺口已视为回滚），可作为快照类消费者的追赶起点。
+     * 只检查最近 scan-limit 条，更早的缺口视为早已稳定。
+     */
+    public long stableSeq() {
+        return stableSeq(jdbcTemplate);
+    }
+
+    /**
+     * 在指定数据源（如只读副本）上计算稳定序号，即该库已完整应用到的变更位置
+     */
+    public long stableSeq(JdbcTemplate source) {
+        Long latest = source.queryForObject("SELECT COALESCE(MAX(seq), 0) FROM ledger_changes", Long.class);
+        return watermark(source, Math.max(0, (latest == null ? 0 : latest) - scanLimit)).seq();
+    }
+
+    /**
+     * 从 since 起扫描全局 seq，遇到仍被未提交事务占用的缺口即停止
+     */
+    private Watermark watermark(JdbcTemplate source, long since) {
+        List<Long> seqs = source.queryForList(
+                "SELECT seq FROM ledger_changes WHERE seq > ? ORDER BY seq LIMIT ?",
+                Long.class,
+                since,
+                scanLimit
+        );
+        long mark = since;
+        for (long seq : seqs) {
+            if (seq != mark + 1 && !gapSettled(source, mark, seq)) {
+                return new Watermark(mark, false);
+            }
+            mark = seq;
+        }
+        return new Watermark(mark, seqs.size() == scanLimit);
+    }
+
+    /**
+     * 缺口 (from, to) 内没有未提交的插入：加锁读不冲突即说明占用这些 seq 的事务均已结束，
+     * 已提交的行此时可见，其余为回滚丢弃。autocommit 下锁随语句释放。
+     */
+    private boolean gapSettled(JdbcTemplate source, long from, long to) {
+        try {
+            source.queryForList("SELECT seq FROM ledger_changes WHERE seq > ? AND seq < ? FOR SHARE NOWAIT", Long.class, from, to);
+            return true;
+        } catch (CannotAcquireLockException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * truncated：扫描到 scan-limit 仍未遇到未稳定缺口，水位线之后可能还有已稳定的变更
+     */
+    private record Watermark(long seq, boolean truncated) {
+    }
+
+    public record ChangeRow(long seq, String bookGuid, String entity, String entityGuid, String op) {
+    }
+
+    public record ChangeBatch(List<ChangeRow> rows, long nextSince) {
+    }
+}
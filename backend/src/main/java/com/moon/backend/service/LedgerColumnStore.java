@@ -0,0 +1,711 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.ReadRouting;
+import com.moon.backend.dto.ChangeFeedResponse;
+import com.moon.backend.dto.LedgerChangeResponse;
+import com.moon.backend.dto.LedgerPivotRequest;
+import com.moon.backend.dto.LedgerPivotResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * 按账本的列式分录快照（ees.columnar.enabled 开启时可用），供即席分析在内存中过滤/分组/求和：
+ * 1. 首次查询时从 splits/transactions（含归档表）加载；
+ * 2. 之后按 ledger_changes 追赶新过账的凭证（只追加），凭证被修改/删除时整本重建；
+ * 3. 所有快照按 LRU 淘汰，总大小不超过 memory-mb；单本即超出预算的账本在 over-budget-ttl-ms 内不再尝试加载；
+ * 4. 配置 snapshot-dir 时定期及停机时写入快照文件，启动时 mmap 读回，之后只需追赶文件 seq 之后的变更。
+ */
+@Slf4j
+@Service
+public class LedgerColumnStore {
+
+    private static final int DIM_BITS = 21;
+    private static final long DIM_MASK = (1L << DIM_BITS) - 1;
+    private static final int CHANGE_PAGE = 1000;
+    private static final String OVER_BUDGET = "账本分录过多，超出列式快照内存预算";
+
+    private static final String LOAD_SQL = """
+            SELECT s.account_guid, s.post_date, ROUND(s.value_num * 100 / NULLIF(s.value_denom, 0)) AS cents,
+                   t.source_type, i.owner_guid, i.job_guid
+              FROM %s s
+              JOIN %s t ON s.tx_guid = t.guid AND s.post_date = t.post_date
+              LEFT JOIN invoices i ON i.guid = t.source_guid
+             WHERE t.book_guid = ?%s
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LedgerChangeService ledgerChangeService;
+    private final LedgerPartitionService ledgerPartitionService;
+    private final TransactionTemplate snapshotTemplate;
+
+    private final Map<String, ColumnarLedger> books = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Object> bookLocks = new ConcurrentHashMap<>();
+    /** 超出内存预算的账本 -> 可再次尝试加载的时间 */
+    private final Map<String, Long> overBudget = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+    private final long memoryBudgetBytes;
+    private final int parallelThreshold;
+    private final long refreshMillis;
+    private final long overBudgetTtlMillis;
+    private final Path snapshotDir;
+
+    public LedgerColumnStore(JdbcTemplate jdbcTemplate,
+                             LedgerChangeService ledgerChangeService,
+                             LedgerPartitionService ledgerPartitionService,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${ees.columnar.enabled:false}") boolean enabled,
+                             @Value("${ees.columnar.memory-mb:256}") long memoryMb,
+                             @Value("${ees.columnar.parallel-threshold:200000}") int parallelThreshold,
+                             @Value("${ees.columnar.refresh-ms:1000}") long refreshMillis,
+                             @Value("${ees.columnar.over-budget-ttl-ms:600000}") long overBudgetTtlMillis,
+                             @Value("${ees.columnar.snapshot-dir:}") String snapshotDir) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ledgerChangeService = ledgerChangeService;
+        this.ledgerPartitionService = ledgerPartitionService;
+        // 分录与 ledger_changes 在同一一致性读视图中读取，才能判断哪些变更已包含在快照中
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.memoryBudgetBytes = memoryMb * 1024 * 1024;
+        this.parallelThreshold = parallelThreshold;
+        this.refreshMillis = refreshMillis;
+        this.overBudgetTtlMillis = overBudgetTtlMillis;
+        this.snapshotDir = snapshotDir == null || snapshotDir.isBlank() ? null : Path.of(snapshotDir);
+    }
+
+    /**
+     * 启动时读回快照文件（按最近修改优先，受内存预算限制），首个请求只需增量追赶。
+     */
+    @PostConstruct
+    public void restoreSnapshots() {
+        if (!enabled || snapshotDir == null || !Files.isDirectory(snapshotDir)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> list = Files.list(snapshotDir)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(LedgerSnapshotFiles.SUFFIX))
+                    .sorted(Comparator.comparingLong(LedgerColumnStore::lastModified).reversed())
+                    .toList();
+        } catch (IOException ex) {
+            log.warn("读取快照目录失败: {}", snapshotDir, ex);
+            return;
+        }
+        long total = 0;
+        for (Path file : files) {
+            try {
+                ColumnarLedger ledger = LedgerSnapshotFiles.read(file);
+                if (total + ledger.estimatedBytes() > memoryBudgetBytes) {
+                    break;
+                }
+                total += ledger.estimatedBytes();
+                synchronized (books) {
+                    books.put(ledger.bookGuid, ledger);
+                }
+                log.info("账本 {} 列式快照已从文件恢复：{} 行，seq {}", ledger.bookGuid, ledger.columns().size(), ledger.seq);
+            } catch (IOException | RuntimeException ex) {
+                log.warn("快照文件无效，已删除: {}", file, ex);
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    /**
+     * 定期把有变化的快照写入文件
+     */
+    @Scheduled(fixedDelayString = "${ees.columnar.snapshot-interval-ms:300000}")
+    public void persistSnapshots() {
+        if (!enabled || snapshotDir == null) {
+            return;
+        }
+        List<ColumnarLedger> ledgers;
+        synchronized (books) {
+            ledgers = new ArrayList<>(books.values());
+        }
+        for (ColumnarLedger ledger : ledgers) {
+            if (ledger.persistedSeq == ledger.seq) {
+                continue;
+            }
+            synchronized (bookLocks.computeIfAbsent(ledger.bookGuid, k -> new Object())) {
+                try {
+                    LedgerSnapshotFiles.write(snapshotDir, ledger);
+                    ledger.persistedSeq = ledger.seq;
+                } catch (IOException ex) {
+                    log.warn("账本 {} 快照写入失败", ledger.bookGuid, ex);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        persistSnapshots();
+    }
+
+    /**
+     * 各科目自 from（含，null 表示全部）起的发生额合计（分）；未启用或超出内存预算时返回空，由调用方回退到数据库汇总。
+     */
+    public Optional<Map<String, Long>> accountTotals(String bookGuid, LocalDate from) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        ColumnarLedger ledger;
+        try {
+            ledger = ledger(bookGuid);
+        } catch (IllegalStateException ex) {
+            return Optional.empty();
+        }
+        ColumnarLedger.Columns columns = ledger.columns();
+        int fromDay = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+        long[] totals = new long[ledger.accounts.capacity()];
+        int[] account = columns.account();
+        int[] day = columns.day();
+        long[] cents = columns.cents();
+        for (int i = 0; i < columns.size(); i++) {
+            if (day[i] >= fromDay) {
+                totals[account[i]] += cents[i];
+            }
+        }
+        Map<String, Long> result = new HashMap<>();
+        for (int id = 1; id < totals.length; id++) {
+            String guid = ledger.accounts.name(id);
+            if (guid != null) {
+                result.put(guid, totals[id]);
+            }
+        }
+        return Optional.of(result);
+    }
+
+    public LedgerPivotResponse pivot(LedgerPivotRequest request) {
+        List<Dimension> dimensions = parseDimensions(request.getGroupBy());
+        ColumnarLedger ledger = ledger(request.getBookGuid());
+        ColumnarLedger.Columns columns = ledger.columns();
+        Filter filter = compileFilter(ledger, columns, request);
+
+        LongAggregator totals = aggregate(columns, filter, dimensions);
+        List<LedgerPivotResponse.Row> rows = new ArrayList<>(totals.size);
+        totals.forEachSorted((key, cents, count) -> rows.add(new LedgerPivotResponse.Row(
+                decodeKey(ledger, columns, filter, dimensions, key),
+                BigDecimal.valueOf(cents, 2),
+                count
+        )));
+        return new LedgerPivotResponse(
+                dimensions.stream().map(Enum::name).toList(),
+                rows,
+                (long) columns.size(),
+                ledger.seq
+        );
+    }
+
+    /**
+     * 丢弃账本快照，下次查询时重新加载。
+     */
+    public void evict(String bookGuid) {
+        synchronized (books) {
+            books.remove(bookGuid);
+        }
+        if (snapshotDir != null) {
+            deleteQuietly(LedgerSnapshotFiles.fileOf(snapshotDir, bookGuid));
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // 下次启动会再次校验
+        }
+    }
+
+    private ColumnarLedger ledger(String bookGuid) {
+        if (!enabled) {
+            throw new IllegalStateException("列式快照未启用");
+        }
+        ColumnarLedger ledger;
+        synchronized (books) {
+            ledger = books.get(bookGuid);
+        }
+        if (ledger != null && System.currentTimeMillis() - ledger.refreshedAt < refreshMillis) {
+            return ledger;
+        }
+        if (ledger == null) {
+            assertWithinBudget(bookGuid);
+        }
+        synchronized (bookLocks.computeIfAbsent(bookGuid, k -> new Object())) {
+            synchronized (books) {
+                ledger = books.get(bookGuid);
+            }
+            // 起点 seq 取自主库，全量加载也须在主库上读，不能落到可能滞后的副本
+            if (ledger == null) {
+                ledger = ReadRouting.onPrimary(() -> load(bookGuid));
+            } else if (System.currentTimeMillis() - ledger.refreshedAt >= refreshMillis && !catchUp(ledger)) {
+                evict(bookGuid);
+                ledger = ReadRouting.onPrimary(() -> load(bookGuid));
+            }
+            return ledger;
+        }
+    }
+
+    private ColumnarLedger load(String bookGuid) {
+        long startedAt = System.currentTimeMillis();
+        long since = ledgerChangeService.stableSeq();
+        ColumnarLedger ledger = new ColumnarLedger(bookGuid);
+        boolean archived = ledgerPartitionService.archivedThrough(bookGuid).isPresent();
+        snapshotTemplate.executeWithoutResult(status -> {
+            ColumnarLedger.Builder builder = ledger.builder();
+            loadRows(ledger, builder, LOAD_SQL.formatted("splits", "transactions", ""), bookGuid);
+            if (archived) {
+                loadRows(ledger, builder, LOAD_SQL.formatted("splits_archive", "transactions_archive", ""), bookGuid);
+            }
+            ledger.publish(builder);
+            ledger.accountTypes = loadAccountTypes(bookGuid);
+            ledger.preloaded.addAll(jdbcTemplate.queryForList(
+                    "SELECT entity_guid FROM ledger_changes WHERE book_guid = ? AND entity = 'TRANSACTION' AND seq > ?",
+                    String.class,
+                    bookGuid,
+                    since
+            ));
+        });
+        ledger.seq = since;
+        ledger.refreshedAt = System.currentTimeMillis();
+
+        long bytes = ledger.estimatedBytes();
+        if (bytes > memoryBudgetBytes) {
+            overBudget.put(bookGuid, System.currentTimeMillis() + overBudgetTtlMillis);
+            log.info("账本 {} 列式快照约 {} KB，超出内存预算，{} ms 内不再加载", bookGuid, bytes / 1024, overBudgetTtlMillis);
+            throw new IllegalStateException(OVER_BUDGET);
+        }
+        synchronized (books) {
+            books.put(bookGuid, ledger);
+            long total = books.values().stream().mapToLong(ColumnarLedger::estimatedBytes).sum();
+            var it = books.entrySet().iterator();
+            while (total > memoryBudgetBytes && it.hasNext()) {
+                var eldest = it.next();
+                if (eldest.getKey().equals(bookGuid)) {
+                    continue;
+                }
+                total -= eldest.getValue().estimatedBytes();
+                it.remove();
+            }
+        }
+        log.info("账本 {} 列式快照已加载：{} 行，约 {} KB，耗时 {} ms",
+                bookGuid, ledger.columns().size(), bytes / 1024, System.currentTimeMillis() - startedAt);
+        return ledger;
+    }
+
+    /**
+     * 近期加载时已超出预算的账本直接回退，不再全量读取后丢弃
+     */
+    private void assertWithinBudget(String bookGuid) {
+        Long retryAt = overBudget.get(bookGuid);
+        if (retryAt == null) {
+            return;
+        }
+        if (retryAt > System.currentTimeMillis()) {
+            throw new IllegalStateException(OVER_BUDGET);
+        }
+        overBudget.remove(bookGuid, retryAt);
+    }
+
+    private void loadRows(ColumnarLedger ledger, ColumnarLedger.Builder builder, String sql, Object... args) {
+        jdbcTemplate.query(sql, rs -> {
+            ledger.append(
+                    builder,
+                    rs.getString("account_guid"),
+                    (int) rs.getTimestamp("post_date").toLocalDateTime().toLocalDate().toEpochDay(),
+                    rs.getLong("cents"),
+                    rs.getString("source_type"),
+                    rs.getString("owner_guid"),
+                    rs.getString("job_guid")
+            );
+        }, args);
+    }
+
+    private Map<String, String> loadAccountTypes(String bookGuid) {
+        Map<String, String> types = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT guid, account_type FROM accounts WHERE book_guid = ?",
+                rs -> {
+                    types.put(rs.getString("guid"), rs.getString("account_type"));
+                },
+                bookGuid
+        );
+        return types;
+    }
+
+    /**
+     * 按变更流水追加新凭证；遇到无法增量处理的变更（凭证修改/删除、分录删除）返回 false，由调用方重建。
+     */
+    private boolean catchUp(ColumnarLedger ledger) {
+        long since = ledger.seq;
+        Set<String> newTransactions = new LinkedHashSet<>();
+        boolean accountsChanged = false;
+        ChangeFeedResponse page;
+        do {
+            page = ledgerChangeService.changes(ledger.bookGuid, since, CHANGE_PAGE);
+            for (LedgerChangeResponse change : page.getChanges()) {
+                switch (change.getEntity()) {
+                    case "TRANSACTION" -> {
+                        if (!"I".equals(change.getOp())) {
+                            return false;
+                        }
+                        if (!ledger.preloaded.contains(change.getEntityGuid())) {
+                            newTransactions.add(change.getEntityGuid());
+                        }
+                    }
+                    case "SPLIT" -> {
+                        // 分录只随凭证一起写入，修改只涉及对账状态
+                        if ("D".equals(change.getOp())) {
+                            return false;
+                        }
+                    }
+                    case "ACCOUNT" -> accountsChanged = true;
+                    // 账本迁移到其他分片，之后的 seq 属于新分片
+                    case "BOOK" -> {
+                        return false;
+                    }
+                    default -> {
+                    }
+                }
+            }
+            since = page.getNextSince();
+        } while (Boolean.TRUE.equals(page.getHasMore()));
+
+        if (!newTransactions.isEmpty()) {
+            ColumnarLedger.Builder builder = ledger.builder();
+            List<String> guids = new ArrayList<>(newTransactions);
+            for (int from = 0; from < guids.size(); from += CHANGE_PAGE) {
+                List<String> chunk = guids.subList(from, Math.min(guids.size(), from + CHANGE_PAGE));
+                String predicate = " AND t.guid IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+                List<Object> args = new ArrayList<>();
+                args.add(ledger.bookGuid);
+                args.addAll(chunk);
+                loadRows(ledger, builder, LOAD_SQL.formatted("splits", "transactions", predicate), args.toArray());
+            }
+            ledger.publish(builder);
+        }
+        if (accountsChanged) {
+            ledger.accountTypes = loadAccountTypes(ledger.bookGuid);
+        }
+        ledger.seq = since;
+        ledger.refreshedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    private LongAggregator aggregate(ColumnarLedger.Columns columns, Filter filter, List<Dimension> dimensions) {
+        int size = columns.size();
+        if (size < parallelThreshold) {
+            return scan(columns, filter, dimensions, 0, size);
+        }
+        int chunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int chunkSize = (size + chunks - 1) / chunks;
+        return IntStream.range(0, chunks)
+                .parallel()
+                .mapToObj(c -> scan(columns, filter, dimensions, c * chunkSize, Math.min(size, (c + 1) * chunkSize)))
+                .reduce(LongAggregator::merge)
+                .orElseGet(LongAggregator::new);
+    }
+
+    private LongAggregator scan(ColumnarLedger.Columns columns, Filter filter, List<Dimension> dimensions, int from, int to) {
+        LongAggregator result = new LongAggregator();
+        int[] account = columns.account();
+        int[] day = columns.day();
+        long[] cents = columns.cents();
+        int[] source = columns.source();
+        int[] owner = columns.owner();
+        int[] job = columns.job();
+        for (int i = from; i < to; i++) {
+            if (day[i] < filter.fromDay || day[i] > filter.toDay
+                    || (filter.accounts != null && !filter.accounts[account[i]])
+                    || (filter.sources != null && !filter.sources[source[i]])
+                    || (filter.owners != null && !filter.owners[owner[i]])
+                    || (filter.jobs != null && !filter.jobs[job[i]])) {
+                continue;
+            }
+            long key = 0;
+            for (Dimension dimension : dimensions) {
+                int code = switch (dimension) {
+                    case ACCOUNT -> account[i];
+                    case ACCOUNT_TYPE -> filter.accountTypeOf[account[i]];
+                    case YEAR -> filter.yearOf(day[i]);
+                    case MONTH -> filter.monthOf(day[i]);
+                    case DAY -> day[i] - columns.minDay();
+                    case SOURCE_TYPE -> source[i];
+                    case OWNER -> owner[i];
+                    case JOB -> job[i];
+                };
+                key = (key << DIM_BITS) | code;
+            }
+            result.add(key, cents[i]);
+        }
+        return result;
+    }
+
+    private List<String> decodeKey(ColumnarLedger ledger, ColumnarLedger.Columns columns, Filter filter, List<Dimension> dimensions, long key) {
+        String[] values = new String[dimensions.size()];
+        for (int d = dimensions.size() - 1; d >= 0; d--) {
+            int code = (int) (key & DIM_MASK);
+            key >>>= DIM_BITS;
+            values[d] = switch (dimensions.get(d)) {
+                case ACCOUNT -> ledger.accounts.name(code);
+                case ACCOUNT_TYPE -> filter.typeNames.get(code);
+                case YEAR -> String.valueOf(code);
+                case MONTH -> String.format(Locale.ROOT, "%04d-%02d", code / 12, code % 12 + 1);
+                case DAY -> LocalDate.ofEpochDay((long) columns.minDay() + code).toString();
+                case SOURCE_TYPE -> ledger.sourceTypes.name(code);
+                case OWNER -> ledger.owners.name(code);
+                case JOB -> ledger.jobs.name(code);
+            };
+        }
+        return Arrays.asList(values);
+    }
+
+    private List<Dimension> parseDimensions(List<String> groupBy) {
+        if (groupBy == null) {
+            return List.of();
+        }
+        if (groupBy.size() > 3) {
+            throw new IllegalArgumentException("分组维度最多 3 个");
+        }
+        List<Dimension> dimensions = new ArrayList<>();
+        for (String name : groupBy) {
+            try {
+                dimensions.add(Dimension.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("不支持的分组维度: " + name);
+            }
+        }
+        return dimensions;
+    }
+
+    private Filter compileFilter(ColumnarLedger ledger, ColumnarLedger.Columns columns, LedgerPivotRequest request) {
+        Filter filter = new Filter();
+        filter.fromDay = request.getStartDate() == null ? Integer.MIN_VALUE : (int) request.getStartDate().toEpochDay();
+        filter.toDay = request.getEndDate() == null ? Integer.MAX_VALUE : (int) request.getEndDate().toEpochDay();
+
+        // 科目类别编码，同时用于 ACCOUNT_TYPE 分组与按类别过滤
+        Map<String, String> accountTypes = ledger.accountTypes;
+        int accountCapacity = ledger.accounts.capacity();
+        filter.accountTypeOf = new int[accountCapacity];
+        Map<String, Integer> typeIds = new HashMap<>();
+        filter.typeNames.add(null);
+        for (int id = 1; id < accountCapacity; id++) {
+            String guid = ledger.accounts.name(id);
+            String type = guid == null ? null : accountTypes.get(guid);
+            if (type != null) {
+                filter.accountTypeOf[id] = typeIds.computeIfAbsent(type, t -> {
+                    filter.typeNames.add(t);
+                    return filter.typeNames.size() - 1;
+                });
+            }
+        }
+
+        filter.accounts = mask(ledger.accounts, request.getAccountGuids());
+        if (request.getAccountTypes() != null && !request.getAccountTypes().isEmpty()) {
+            boolean[] byType = new boolean[accountCapacity];
+            for (int id = 1; id < accountCapacity; id++) {
+                String type = filter.typeNames.get(filter.accountTypeOf[id]);
+                byType[id] = type != null && request.getAccountTypes().contains(type)
+                        && (filter.accounts == null || filter.accounts[id]);
+            }
+            filter.accounts = byType;
+        }
+        filter.sources = mask(ledger.sourceTypes, request.getSourceTypes());
+        filter.owners = mask(ledger.owners, request.getOwnerGuids());
+        filter.jobs = mask(ledger.jobs, request.getJobGuids());
+        filter.buildCalendar(columns);
+        return filter;
+    }
+
+    private boolean[] mask(ColumnarLedger.Dictionary dictionary, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        boolean[] mask = new boolean[dictionary.capacity()];
+        for (String value : values) {
+            int id = dictionary.find(value);
+            if (id > 0) {
+                mask[id] = true;
+            }
+        }
+        return mask;
+    }
+
+    private enum Dimension {
+        ACCOUNT, ACCOUNT_TYPE, YEAR, MONTH, DAY, SOURCE_TYPE, OWNER, JOB
+    }
+
+    /**
+     * 编译后的过滤条件：各维度按字典编码建立掩码，null 表示不过滤。
+     */
+    private static final class Filter {
+        int fromDay;
+        int toDay;
+        boolean[] accounts;
+        boolean[] sources;
+        boolean[] owners;
+        boolean[] jobs;
+        int[] accountTypeOf;
+        final List<String> typeNames = new ArrayList<>();
+        private int calendarStart;
+        private int[] years = new int[0];
+        private int[] months = new int[0];
+
+        /**
+         * 快照日期范围内的 epoch-day -> 年/月查表，避免逐行构造 LocalDate
+         */
+        void buildCalendar(ColumnarLedger.Columns columns) {
+            if (columns.size() == 0) {
+                return;
+            }
+            calendarStart = columns.minDay();
+            int days = columns.maxDay() - columns.minDay() + 1;
+            years = new int[days];
+            months = new int[days];
+            LocalDate date = LocalDate.ofEpochDay(calendarStart);
+            for (int i = 0; i < days; i++, date = date.plusDays(1)) {
+                years[i] = date.getYear();
+                months[i] = date.getYear() * 12 + date.getMonthValue() - 1;
+            }
+        }
+
+        int yearOf(int epochDay) {
+            return years[epochDay - calendarStart];
+        }
+
+        int monthOf(int epochDay) {
+            return months[epochDay - calendarStart];
+        }
+    }
+
+    /**
+     * long 键 -> (金额分, 行数) 的开放寻址表，分组汇总时不对每行装箱。
+     */
+    private static final class LongAggregator {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = newKeys(64);
+        private long[] sums = new long[64];
+        private long[] counts = new long[64];
+        private int size;
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        void add(long key, long cents) {
+            add(key, cents, 1);
+        }
+
+        private void add(long key, long cents, long count) {
+            int mask = keys.length - 1;
+            int slot = (int) (mix(key) & mask);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+            }
+            sums[slot] += cents;
+            counts[slot] += count;
+            if (size * 2 > keys.length) {
+                grow();
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldSums = sums;
+            long[] oldCounts = counts;
+            keys = newKeys(oldKeys.length * 2);
+            sums = new long[oldKeys.length * 2];
+            counts = new long[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    add(oldKeys[i], oldSums[i], oldCounts[i]);
+                }
+            }
+        }
+
+        LongAggregator merge(LongAggregator other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != EMPTY) {
+                    add(other.keys[i], other.sums[i], other.counts[i]);
+                }
+            }
+            return this;
+        }
+
+        void forEachSorted(GroupConsumer consumer) {
+            long[] sorted = new long[size];
+            int n = 0;
+            for (long key : keys) {
+                if (key != EMPTY) {
+                    sorted[n++] = key;
+                }
+            }
+            Arrays.sort(sorted);
+            for (long key : sorted) {
+                int mask = keys.length - 1;
+                int slot = (int) (mix(key) & mask);
+                while (keys[slot] != key) {
+                    slot = (slot + 1) & mask;
+                }
+                consumer.accept(key, sums[slot], counts[slot]);
+            }
+        }
+
+        private static long mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return h ^ (h >>> 32);
+        }
+    }
+
+    @FunctionalInterface
+    private interface GroupConsumer {
+        void accept(long key, long cents, long count);
+    }
+}
@@ -0,0 +1,325 @@
+package com.moon.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 总账分区维护与归档：
+ * 1. transactions / splits 按年度 RANGE 分区，提前从 pmax 拆出下一年度分区；
+ * 2. 已结账年度（保留最近 keep-closed-years 个）按月迁入压缩归档表，报表层按归档边界合并查询。
+ * 含未关闭 lot 分录的凭证不归档，保证未清项仍在热表中。
+ * 多节点同时执行维护时，分区拆分与每个账本年度的归档先用 GET_LOCK 领取，未领到的节点跳过；
+ * 归档边界按 boundary-ttl-ms 缓存，登记边界后等待一个 TTL 再搬运，保证各节点的报表已开始合并查询归档表。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LedgerPartitionService {
+
+    private static final String[] LEDGER_TABLES = {"transactions", "splits"};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardDirectory shardDirectory;
+
+    private final Map<String, Boundary> archivedThroughCache = new ConcurrentHashMap<>();
+
+    @Value("${ees.ledger.archive.enabled:false}")
+    private boolean archiveEnabled;
+
+    @Value("${ees.ledger.archive.keep-closed-years:1}")
+    private int keepClosedYears;
+
+    /**
+     * 归档边界的缓存时长，即其他节点开始归档后本节点报表感知边界的最大延迟
+     */
+    @Value("${ees.ledger.archive.boundary-ttl-ms:5000}")
+    private long boundaryTtlMillis;
+
+    @Scheduled(cron = "${ees.ledger.maintenance-cron:0 30 2 * * *}")
+    public void maintain() {
+        try {
+            shardDirectory.forEachShard(shard -> {
+                // 分区拆分是 DDL，同一分片只由一个节点执行
+                withLock("ees_partitions", () -> ensurePartitions(LocalDate.now().getYear() + 1));
+                if (archiveEnabled) {
+                    archiveClosedYears();
+                }
+            });
+        } catch (RuntimeException ex) {
+            log.warn("总账分区维护失败", ex);
+        }
+    }
+
+    /**
+     * 保证分区覆盖到指定年度（含）；表未分区时跳过。
+     */
+    public void ensurePartitions(int throughYear) {
+        for (String table : LEDGER_TABLES) {
+            List<String> names = jdbcTemplate.queryForList(
+                    """
+                    SELECT PARTITION_NAME
+                      FROM information_schema.PARTITIONS
+                     WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL
+                    """,
+                    String.class,
+                    table
+            );
+            if (!names.contains("pmax")) {
+                continue;
+            }
+            int maxYear = names.stream()
+                    .filter(n -> n.matches("p\\d{4}"))
+                    .mapToInt(n -> Integer.parseInt(n.substring(1)))
+                    .max()
+                    .orElse(LocalDate.now().getYear() - 1);
+            for (int year = maxYear + 1; year <= throughYear; year++) {
+                // pmax 通常为空，拆分只涉及元数据
+                jdbcTemplate.execute("ALTER TABLE `" + table + "` REORGANIZE PARTITION `pmax` INTO (" +
+                        "PARTITION `p" + year + "` VALUES LESS THAN ('" + (year + 1) + "-01-01'), " +
+                        "PARTITION `pmax` VALUES LESS THAN (MAXVALUE))");
+                log.info("已为 {} 新增分区 p{}", table, year);
+            }
+        }
+    }
+
+    /**
+     * 归档所有满足保留策略的已结账年度（包括上次中断的年度），返回归档的年度数。
+     */
+    public int archiveClosedYears() {
+        List<ArchiveTarget> targets = jdbcTemplate.query(
+                """
+                SELECT pc.book_guid, pc.fiscal_year, pc.period_start, pc.period_end
+                  FROM period_closes pc
+                  LEFT JOIN ledger_archives la ON la.book_guid = pc.book_guid AND la.fiscal_year = pc.fiscal_year
+                 WHERE (la.book_guid IS NULL OR la.status <> 'DONE')
+                   AND pc.fiscal_year <= (SELECT MAX(p2.fiscal_year) FROM period_closes p2 WHERE p2.book_guid = pc.book_guid) - ?
+                 ORDER BY pc.book_guid, pc.fiscal_year
+                """,
+                (rs, i) -> new ArchiveTarget(
+                        rs.getString("book_guid"),
+                        rs.getInt("fiscal_year"),
+                        rs.getDate("period_start").toLocalDate(),
+                        rs.getDate("period_end").toLocalDate()
+                ),
+                keepClosedYears
+        );
+        int archived = 0;
+        for (ArchiveTarget target : targets) {
+            // 迁移中的账本跳过，搬运不记变更流水，迁移的增量同步无法感知
+            if (shardDirectory.isRelocating(target.bookGuid())) {
+                continue;
+            }
+            if (withLock("ees_archive:" + target.bookGuid() + ":" + target.fiscalYear(), () -> archiveYear(target))) {
+                archived++;
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * 已归档的截止日（含），该日及之前的分录可能位于归档表。
+     */
+    public Optional<LocalDate> archivedThrough(String bookGuid) {
+        long now = System.currentTimeMillis();
+        Boundary cached = archivedThroughCache.get(bookGuid);
+        if (cached != null && now - cached.loadedAt() < boundaryTtlMillis) {
+            return cached.through();
+        }
+        Optional<LocalDate> through = jdbcTemplate.query(
+                "SELECT MAX(period_end) AS period_end FROM ledger_archives WHERE book_guid = ?",
+                rs -> rs.next() && rs.getDate("period_end") != null
+                        ? Optional.of(rs.getDate("period_end").toLocalDate())
+                        : Optional.<LocalDate>empty(),
+                bookGuid
+        );
+        archivedThroughCache.put(bookGuid, new Boundary(through, now));
+        return through;
+    }
+
+    /**
+     * 在独立连接上持有 MySQL 命名锁执行 action（锁随会话释放，跨越 action 内的多个事务）；锁已被其他节点持有时不执行，返回 false。
+     */
+    private boolean withLock(String name, Runnable action) {
+        Boolean done = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            if (!namedLock(connection, "SELECT GET_LOCK(?, 0)", name)) {
+                return false;
+            }
+            try {
+                action.run();
+            } finally {
+                namedLock(connection, "SELECT RELEASE_LOCK(?)", name);
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(done);
+    }
+
+    private static boolean namedLock(Connection connection, String sql, String name) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void archiveYear(ArchiveTarget target) {
+        // 领取前其他节点可能刚完成该年度
+        List<String> states = jdbcTemplate.queryForList(
+                "SELECT status FROM ledger_archives WHERE book_guid = ? AND fiscal_year = ?",
+                String.class,
+                target.bookGuid(), target.fiscalYear()
+        );
+        if (states.contains("DONE")) {
+            return;
+        }
+        // 先登记归档边界（ARCHIVING），迁移过程中报表即同时查询热表与归档表，数据不会“消失”；
+        // 中断后重跑时记录已存在，各月迁移是独立事务，已迁走的行不会重复迁移
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                """
+                INSERT INTO ledger_archives (book_guid, fiscal_year, period_start, period_end, status, tx_count, split_count, archived_at)
+                VALUES (?, ?, ?, ?, 'ARCHIVING', 0, 0, ?)
+                ON DUPLICATE KEY UPDATE archived_at = VALUES(archived_at)
+                """,
+                target.bookGuid(),
+                target.fiscalYear(),
+                target.periodStart(),
+                target.periodEnd(),
+                LocalDateTime.now()
+        ));
+        archivedThroughCache.remove(target.bookGuid());
+        // 其他节点缓存的边界最多滞后一个 TTL，等其过期后再搬运，报表不会漏掉已迁入归档表的分录
+        pauseForBoundaryVisibility();
+
+        // 按月分批迁移，控制单个事务大小
+        for (LocalDate from = target.periodStart(); !from.isAfter(target.periodEnd()); from = from.plusMonths(1)) {
+            LocalDate to = from.plusMonths(1).isAfter(target.periodEnd()) ? target.periodEnd().plusDays(1) : from.plusMonths(1);
+            LocalDateTime start = from.atStartOfDay();
+            LocalDateTime end = to.atStartOfDay();
+            transactionTemplate.execute(status -> moveRange(target.bookGuid(), start, end));
+        }
+        // 计数按归档表统计，包含中断前已迁移的部分
+        LocalDateTime rangeStart = target.periodStart().atStartOfDay();
+        LocalDateTime rangeEnd = target.periodEnd().plusDays(1).atStartOfDay();
+        Integer txCount = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM transactions_archive WHERE book_guid = ? AND post_date >= ? AND post_date < ?",
+                Integer.class,
+                target.bookGuid(), rangeStart, rangeEnd
+        );
+        Integer splitCount = jdbcTemplate.queryForObject(
+                """
+                SELECT COUNT(*)
+                  FROM splits_archive s
+                  JOIN transactions_archive ta ON s.tx_guid = ta.guid AND s.post_date = ta.post_date
+                 WHERE ta.book_guid = ? AND ta.post_date >= ? AND ta.post_date < ?
+                """,
+                Integer.class,
+                target.bookGuid(), rangeStart, rangeEnd
+        );
+        jdbcTemplate.update(
+                "UPDATE ledger_archives SET status = 'DONE', tx_count = ?, split_count = ?, archived_at = ? WHERE book_guid = ? AND fiscal_year = ?",
+                txCount,
+                splitCount,
+                LocalDateTime.now(),
+                target.bookGuid(),
+                target.fiscalYear()
+        );
+        log.info("账本 {} 的 {} 年度已归档：凭证 {}，分录 {}", target.bookGuid(), target.fiscalYear(), txCount, splitCount);
+    }
+
+    private void pauseForBoundaryVisibility() {
+        try {
+            Thread.sleep(boundaryTtlMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("归档被中断", ex);
+        }
+    }
+
+    private int[] moveRange(String bookGuid, LocalDateTime start, LocalDateTime end) {
+        // 归档搬运不是业务变更，关闭 ledger_changes 触发器记录（会话变量，仅对当前连接生效）
+        jdbcTemplate.execute("SET @ees_skip_changes = 1");
+        try {
+            return moveRangeRows(bookGuid, start, end);
+        } finally {
+            jdbcTemplate.execute("SET @ees_skip_changes = NULL");
+        }
+    }
+
+    private int[] moveRangeRows(String bookGuid, LocalDateTime start, LocalDateTime end) {
+        int txCount = jdbcTemplate.update(
+                """
+                INSERT INTO transactions_archive (guid, book_guid, num, post_date, enter_date, description, doc_status, source_type, source_guid)
+                SELECT t.guid, t.book_guid, t.num, t.post_date, t.enter_date, t.description, t.doc_status, t.source_type, t.source_guid
+                  FROM transactions t
+                 WHERE t.book_guid = ?
+                   AND t.post_date >= ? AND t.post_date < ?
+                   AND NOT EXISTS (
+                        SELECT 1 FROM splits s JOIN lots l ON s.lot_guid = l.guid
+                         WHERE s.tx_guid = t.guid AND s.post_date = t.post_date AND l.is_closed = 0
+                   )
+                """,
+                bookGuid, start, end
+        );
+        if (txCount == 0) {
+            return new int[]{0, 0};
+        }
+        int splitCount = jdbcTemplate.update(
+                """
+                INSERT INTO splits_archive (guid, tx_guid, post_date, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid)
+                SELECT s.guid, s.tx_guid, s.post_date, s.account_guid, s.value_num, s.value_denom, s.quantity_num, s.quantity_denom, s.memo, s.action, s.reconcile_state, s.reconcile_date, s.lot_guid
+                  FROM splits s
+                  JOIN transactions_archive ta ON s.tx_guid = ta.guid AND s.post_date = ta.post_date
+                 WHERE ta.book_guid = ?
+                   AND ta.post_date >= ? AND ta.post_date < ?
+                   AND s.post_date >= ? AND s.post_date < ?
+                """,
+                bookGuid, start, end, start, end
+        );
+        jdbcTemplate.update(
+                """
+                DELETE s FROM splits s
+                  JOIN transactions_archive ta ON s.tx_guid = ta.guid AND s.post_date = ta.post_date
+                 WHERE ta.book_guid = ?
+                   AND ta.post_date >= ? AND ta.post_date < ?
+                   AND s.post_date >= ? AND s.post_date < ?
+                """,
+                bookGuid, start, end, start, end
+        );
+        jdbcTemplate.update(
+                """
+                DELETE t FROM transactions t
+                  JOIN transactions_archive ta ON t.guid = ta.guid AND t.post_date = ta.post_date
+                 WHERE ta.book_guid = ?
+                   AND ta.post_date >= ? AND ta.post_date < ?
+                   AND t.post_date >= ? AND t.post_date < ?
+                """,
+                bookGuid, start, end, start, end
+        );
+        return new int[]{txCount, splitCount};
+    }
+
+    private record Boundary(Optional<LocalDate> through, long loadedAt) {
+    }
+
+    private record ArchiveTarget(String bookGuid, int fiscalYear, LocalDate periodStart, LocalDate periodEnd) {
+    }
+}
@@ -0,0 +1,193 @@
+package com.moon.backend.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 列式快照的二进制文件格式（大端）：
+ * <pre>
+ * magic "EESL" | version | seq | rows | minDay | maxDay | bookGuid
+ * | 4 个字典（科目/来源/往来单位/项目）| 科目类别 | preloaded 凭证
+ * | account[] | day[] | cents[] | source[] | owner[] | job[] | CRC32
+ * </pre>
+ * 写入先落临时文件再原子改名；读取时整体 mmap，校验 CRC 后批量拷贝到数组。
+ */
+final class LedgerSnapshotFiles {
+
+    static final String SUFFIX = ".snap";
+
+    private static final int MAGIC = 0x4545534C;
+    private static final int VERSION = 1;
+
+    private LedgerSnapshotFiles() {
+    }
+
+    static Path fileOf(Path dir, String bookGuid) {
+        return dir.resolve(bookGuid + SUFFIX);
+    }
+
+    /**
+     * 写入快照；调用方须持有账本写锁，保证 seq 与各列一致。
+     */
+    static void write(Path dir, ColumnarLedger ledger) throws IOException {
+        Files.createDirectories(dir);
+        Path target = fileOf(dir, ledger.bookGuid);
+        Path tmp = dir.resolve(ledger.bookGuid + SUFFIX + ".tmp");
+        ColumnarLedger.Columns columns = ledger.columns();
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(tmp);
+             CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(ledger.seq);
+            out.writeInt(columns.size());
+            out.writeInt(columns.minDay());
+            out.writeInt(columns.maxDay());
+            writeString(out, ledger.bookGuid);
+            writeDictionary(out, ledger.accounts);
+            writeDictionary(out, ledger.sourceTypes);
+            writeDictionary(out, ledger.owners);
+            writeDictionary(out, ledger.jobs);
+            Map<String, String> types = ledger.accountTypes;
+            out.writeInt(types.size());
+            for (Map.Entry<String, String> entry : types.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+            out.writeInt(ledger.preloaded.size());
+            for (String guid : ledger.preloaded) {
+                writeString(out, guid);
+            }
+            int rows = columns.size();
+            writeInts(out, columns.account(), rows);
+            writeInts(out, columns.day(), rows);
+            for (int i = 0; i < rows; i++) {
+                out.writeLong(columns.cents()[i]);
+            }
+            writeInts(out, columns.source(), rows);
+            writeInts(out, columns.owner(), rows);
+            writeInts(out, columns.job(), rows);
+            out.flush();
+            // CRC 本身不计入校验
+            new DataOutputStream(file).writeLong(crc.getValue());
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取快照；格式版本不符或校验失败时抛出 IOException，由调用方删除文件后按需全量加载。
+     */
+    static ColumnarLedger read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < Long.BYTES + 32) {
+                throw new IOException("快照文件过短: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, (int) (length - Long.BYTES)));
+            if (crc.getValue() != buffer.getLong((int) (length - Long.BYTES))) {
+                throw new IOException("快照文件校验失败: " + file);
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("快照文件格式不支持: " + file);
+            }
+            long seq = buffer.getLong();
+            int rows = buffer.getInt();
+            int minDay = buffer.getInt();
+            int maxDay = buffer.getInt();
+            ColumnarLedger ledger = new ColumnarLedger(readString(buffer));
+            readDictionary(buffer, ledger.accounts);
+            readDictionary(buffer, ledger.sourceTypes);
+            readDictionary(buffer, ledger.owners);
+            readDictionary(buffer, ledger.jobs);
+            int typeCount = buffer.getInt();
+            Map<String, String> types = new HashMap<>(typeCount * 2);
+            for (int i = 0; i < typeCount; i++) {
+                types.put(readString(buffer), readString(buffer));
+            }
+            ledger.accountTypes = types;
+            int preloaded = buffer.getInt();
+            for (int i = 0; i < preloaded; i++) {
+                ledger.preloaded.add(readString(buffer));
+            }
+            int[] account = readInts(buffer, rows);
+            int[] day = readInts(buffer, rows);
+            long[] cents = new long[rows];
+            buffer.asLongBuffer().get(cents);
+            buffer.position(buffer.position() + rows * Long.BYTES);
+            int[] source = readInts(buffer, rows);
+            int[] owner = readInts(buffer, rows);
+            int[] job = readInts(buffer, rows);
+            ledger.restore(new ColumnarLedger.Columns(account, day, cents, source, owner, job, rows, minDay, maxDay));
+            ledger.seq = seq;
+            ledger.persistedSeq = seq;
+            return ledger;
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int rows) throws IOException {
+        for (int i = 0; i < rows; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int rows) {
+        int[] values = new int[rows];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + rows * Integer.BYTES);
+        return values;
+    }
+
+    private static void writeDictionary(DataOutputStream out, ColumnarLedger.Dictionary dictionary) throws IOException {
+        int count = dictionary.count();
+        out.writeInt(count);
+        for (int id = 1; id < count; id++) {
+            writeString(out, dictionary.name(id));
+        }
+    }
+
+    private static void readDictionary(ByteBuffer buffer, ColumnarLedger.Dictionary dictionary) throws IOException {
+        int count = buffer.getInt();
+        for (int id = 1; id < count; id++) {
+            if (dictionary.id(readString(buffer)) != id) {
+                throw new IOException("快照字典损坏");
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,236 @@
+package com.moon.backend.service;
+
+import com.moon.backend.dto.OpenItemResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 往来未清项（lot）：发票过账开立 lot，收付款按指定发票或先进先出核销到 lot，
+ * 余额为 0 时关闭。账龄、对账单、未清发票只查未关闭的 lot，规模随未清项而非历史增长。
+ * 调用方需处于事务中。
+ */
+@Service
+@RequiredArgsConstructor
+public class LotService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 发票过账时开立 lot 并回写 invoices.lot_guid；发票已有未关闭的 lot 时沿用。
+     */
+    public String openInvoiceLot(String bookGuid, String accountGuid, String invoiceGuid, String title) {
+        List<String> existing = jdbcTemplate.queryForList(
+                "SELECT l.guid FROM invoices i JOIN lots l ON i.lot_guid = l.guid WHERE i.guid = ? AND l.is_closed = 0",
+                String.class,
+                invoiceGuid
+        );
+        if (!existing.isEmpty()) {
+            return existing.get(0);
+        }
+        String lotGuid = UUID.randomUUID().toString();
+        jdbcTemplate.update(
+                "INSERT INTO lots (guid, book_guid, account_guid, is_closed, closed_date, title) VALUES (?, ?, ?, 0, NULL, ?)",
+                lotGuid,
+                bookGuid,
+                accountGuid,
+                title
+        );
+        jdbcTemplate.update("UPDATE invoices SET lot_guid = ?, version = version + 1 WHERE guid = ?", lotGuid, invoiceGuid);
+        return lotGuid;
+    }
+
+    /**
+     * 核销分配：先核销指定发票的 lot，剩余按发票过账时间先进先出核销该往来单位的其他未清 lot。
+     * 返回 lotGuid -> 核销金额（分，正数）；无法分配的部分（预收/预付）以 null 为键返回。
+     */
+    public Map<String, Long> allocate(String bookGuid, String accountGuid, String invoiceGuid, String ownerGuid, long cents) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (ownerGuid == null && invoiceGuid != null) {
+            List<String> owners = jdbcTemplate.queryForList("SELECT owner_guid FROM invoices WHERE guid = ?", String.class, invoiceGuid);
+            ownerGuid = owners.isEmpty() ? null : owners.get(0);
+        }
+
+        List<String> candidates = new ArrayList<>();
+        if (ownerGuid != null) {
+            // 锁定候选 lot 及其发票，防止并发收付款重复核销同一未清项、并发修改被先进先出核销的发票
+            candidates.addAll(jdbcTemplate.queryForList(
+                    """
+                    SELECT l.guid
+                      FROM lots l
+                      JOIN invoices i ON i.lot_guid = l.guid
+                     WHERE l.book_guid = ?
+                       AND l.is_closed = 0
+                       AND l.account_guid = ?
+                       AND i.owner_guid = ?
+                     ORDER BY (i.guid = ?) DESC, COALESCE(i.date_posted, i.date_opened), i.guid
+                       FOR UPDATE OF l, i
+                    """,
+                    String.class,
+                    bookGuid,
+                    accountGuid,
+                    ownerGuid,
+                    invoiceGuid
+            ));
+        } else if (invoiceGuid != null) {
+            candidates.addAll(jdbcTemplate.queryForList(
+                    "SELECT l.guid FROM lots l JOIN invoices i ON i.lot_guid = l.guid WHERE i.guid = ? AND l.is_closed = 0 FOR UPDATE OF l, i",
+                    String.class,
+                    invoiceGuid
+            ));
+        }
+
+        Map<String, Long> open = openBalances(candidates);
+        long remaining = cents;
+        for (String lotGuid : candidates) {
+            if (remaining <= 0) {
+                break;
+            }
+            long openCents = Math.abs(open.getOrDefault(lotGuid, 0L));
+            if (openCents == 0) {
+                continue;
+            }
+            long applied = Math.min(openCents, remaining);
+            result.put(lotGuid, applied);
+            remaining -= applied;
+        }
+        if (remaining > 0) {
+            result.put(null, remaining);
+        }
+        return result;
+    }
+
+    public String customerOwner(String bookGuid, String customerGuid) {
+        return findOwner("SELECT guid FROM owner WHERE book_guid = ? AND customer_guid = ? LIMIT 1", bookGuid, customerGuid);
+    }
+
+    public String vendorOwner(String bookGuid, String vendorGuid) {
+        return findOwner("SELECT guid FROM owner WHERE book_guid = ? AND vendor_guid = ? LIMIT 1", bookGuid, vendorGuid);
+    }
+
+    /**
+     * 余额归零的 lot 置为关闭，并将对应发票标记为已结清。
+     */
+    public void closeSettledLots(Collection<String> lotGuids, LocalDateTime closedDate) {
+        List<String> settled = new ArrayList<>();
+        openBalances(lotGuids).forEach((lotGuid, balance) -> {
+            if (balance == 0) {
+                settled.add(lotGuid);
+            }
+        });
+        if (settled.isEmpty()) {
+            return;
+        }
+        String placeholders = String.join(",", Collections.nCopies(settled.size(), "?"));
+        List<Object> args = new ArrayList<>();
+        args.add(closedDate);
+        args.addAll(settled);
+        jdbcTemplate.update("UPDATE lots SET is_closed = 1, closed_date = ? WHERE guid IN (" + placeholders + ")", args.toArray());
+        jdbcTemplate.update("UPDATE invoices SET status = 'APPROVED', version = version + 1 WHERE lot_guid IN (" + placeholders + ")", settled.toArray());
+    }
+
+    /**
+     * 未清发票列表（含账龄区间），只扫描未关闭的 lot。
+     */
+    @Transactional(readOnly = true)
+    public List<OpenItemResponse> listOpenItems(String bookGuid, String ownerType, String ownerGuid, LocalDate asOf) {
+        LocalDate today = asOf == null ? LocalDate.now() : asOf;
+        return jdbcTemplate.query(
+                """
+                SELECT l.guid AS lot_guid, i.guid AS invoice_guid, i.id AS invoice_no,
+                       o.guid AS owner_guid, o.name AS owner_name, i.date_posted, i.due_date,
+                       SUM(CASE WHEN s.tx_guid = i.post_txn_guid THEN ROUND(s.value_num * 100 / NULLIF(s.value_denom, 0)) ELSE 0 END) AS original_cents,
+                       SUM(ROUND(s.value_num * 100 / NULLIF(s.value_denom, 0))) AS open_cents
+                  FROM lots l
+                  JOIN invoices i ON i.lot_guid = l.guid
+                  JOIN owner o ON i.owner_guid = o.guid
+                  JOIN splits s ON s.lot_guid = l.guid
+                 WHERE l.book_guid = ?
+                   AND l.is_closed = 0
+                   AND o.owner_type = ?
+                   AND (? IS NULL OR o.guid = ?)
+                 GROUP BY l.guid, i.guid, i.id, o.guid, o.name, i.date_posted, i.due_date
+                 ORDER BY o.name, COALESCE(i.due_date, i.date_posted)
+                """,
+                (rs, i) -> {
+                    LocalDate due = rs.getTimestamp("due_date") != null
+                            ? rs.getTimestamp("due_date").toLocalDateTime().toLocalDate()
+                            : (rs.getTimestamp("date_posted") != null ? rs.getTimestamp("date_posted").toLocalDateTime().toLocalDate() : today);
+                    long overdue = Math.max(0, ChronoUnit.DAYS.between(due, today));
+                    return new OpenItemResponse(
+                            rs.getString("lot_guid"),
+                            rs.getString("invoice_guid"),
+                            rs.getString("invoice_no"),
+                            rs.getString("owner_guid"),
+                            rs.getString("owner_name"),
+                            rs.getTimestamp("date_posted") == null ? null : rs.getTimestamp("date_posted").toLocalDateTime(),
+                            rs.getTimestamp("due_date") == null ? null : rs.getTimestamp("due_date").toLocalDateTime(),
+                            Math.abs(rs.getLong("original_cents")),
+                            Math.abs(rs.getLong("open_cents")),
+                            overdue,
+                            bucket(overdue)
+                    );
+                },
+                bookGuid,
+                ownerType,
+                ownerGuid,
+                ownerGuid
+        );
+    }
+
+    private Map<String, Long> openBalances(Collection<String> lotGuids) {
+        Map<String, Long> map = new HashMap<>();
+        if (lotGuids.isEmpty()) {
+            return map;
+        }
+        for (String lotGuid : lotGuids) {
+            map.put(lotGuid, 0L);
+        }
+        String placeholders = String.join(",", Collections.nCopies(lotGuids.size(), "?"));
+        jdbcTemplate.query(
+                "SELECT lot_guid, SUM(ROUND(value_num * 100 / NULLIF(value_denom, 0))) AS cents FROM splits WHERE lot_guid IN (" + placeholders + ") GROUP BY lot_guid",
+                rs -> {
+                    map.put(rs.getString("lot_guid"), rs.getLong("cents"));
+                },
+                lotGuids.toArray()
+        );
+        return map;
+    }
+
+    private String findOwner(String sql, String bookGuid, String partyGuid) {
+        List<String> owners = jdbcTemplate.queryForList(sql, String.class, bookGuid, partyGuid);
+        if (owners.isEmpty()) {
+            throw new IllegalArgumentException("往来单位不存在");
+        }
+        return owners.get(0);
+    }
+
+    private String bucket(long overdueDays) {
+        if (overdueDays <= 0) {
+            return "CURRENT";
+        }
+        if (overdueDays <= 30) {
+            return "1-30";
+        }
+        if (overdueDays <= 60) {
+            return "31-60";
+        }
+        if (overdueDays <= 90) {
+            return "61-90";
+        }
+        return "90+";
+    }
+}
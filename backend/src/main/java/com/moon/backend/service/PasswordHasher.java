@@ -0,0 +1,122 @@
+package com.moon.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * BCrypt 计算隔离到独立的有界线程池：线程数限制认证占用的 CPU，队列满时立即拒绝
+ * （RejectedExecutionException，控制器返回 429），登录高峰不会拖慢记账请求。
+ */
+@Slf4j
+@Service
+public class PasswordHasher {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final long waitMillis;
+    private final Timer encodeTimer;
+    private final Timer matchTimer;
+    private final Counter rejected;
+
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          MeterRegistry meterRegistry,
+                          @Value("${ees.auth.hash.threads:2}") int threads,
+                          @Value("${ees.auth.hash.queue-capacity:64}") int queueCapacity,
+                          @Value("${ees.auth.hash.wait-ms:5000}") long waitMillis) {
+        this.passwordEncoder = passwordEncoder;
+        this.waitMillis = waitMillis;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "password-hash-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        Gauge.builder("ees.auth.hash.queue", executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("ees.auth.hash.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        this.encodeTimer = Timer.builder("ees.auth.hash.duration").tag("op", "encode").register(meterRegistry);
+        this.matchTimer = Timer.builder("ees.auth.hash.duration").tag("op", "matches").register(meterRegistry);
+        this.rejected = Counter.builder("ees.auth.hash.rejected").register(meterRegistry);
+    }
+
+    public String encode(String rawPassword) {
+        return await(() -> encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    public boolean matches(String rawPassword, String hash) {
+        Boolean ok = await(() -> matchTimer.record(() -> passwordEncoder.matches(rawPassword, hash)));
+        return Boolean.TRUE.equals(ok);
+    }
+
+    /**
+     * 哈希强度调整后，登录成功时在后台用新强度重算并回调保存；队列已满则跳过，下次登录再升级。
+     */
+    public void rehashIfNeeded(String rawPassword, String hash, Consumer<String> store) {
+        if (!passwordEncoder.upgradeEncoding(hash)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    store.accept(encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+                } catch (RuntimeException ex) {
+                    log.warn("密码哈希升级失败", ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+        }
+    }
+
+    private <T> T await(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw ex;
+        }
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            rejected.increment();
+            throw new RejectedExecutionException("密码校验排队超时", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("密码校验被中断", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException("密码校验失败", ex.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
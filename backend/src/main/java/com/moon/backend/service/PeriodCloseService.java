@@ -0,0 +1,283 @@
+package com.moon.backend.service;
+
+import com.moon.backend.dto.PeriodCloseResponse;
+import com.moon.backend.entity.Account;
+import com.moon.backend.entity.Book;
+import com.moon.backend.repository.AccountRepository;
+import com.moon.backend.repository.BookRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 年度结账：结转损益到“留存收益”，生成下一年度期初余额，并锁定已结账期间。
+ * 已结账期间不可再过账，因此期初余额和结账记录可以长期缓存（仅用于报表等读取）。
+ * 过账校验不信任缓存：在过账事务内以共享锁读取账本行与结账记录，与结账的排他锁互斥，其他节点的结账也立即生效。
+ */
+@Service
+@RequiredArgsConstructor
+public class PeriodCloseService {
+
+    public static final String SOURCE_YEAR_CLOSE = "YEAR_CLOSE";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BookRepository bookRepository;
+    private final AccountRepository accountRepository;
+
+    private final Map<String, Optional<ClosedPeriod>> lastCloseCache = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Long>> openingCache = new ConcurrentHashMap<>();
+
+    /**
+     * 结账：要求年度已结束，且按年度顺序结账。
+     */
+    @Transactional
+    public PeriodCloseResponse closeFiscalYear(String bookGuid, int fiscalYear) {
+        // 锁定账本行，串行化同一账本的结账操作
+        jdbcTemplate.query("SELECT guid FROM books WHERE guid = ? FOR UPDATE", rs -> null, bookGuid);
+        Book book = bookRepository.findById(bookGuid)
+                .orElseThrow(() -> new IllegalArgumentException("账本不存在"));
+
+        LocalDate start = fiscalYearStart(book, fiscalYear);
+        LocalDate end = fiscalYearStart(book, fiscalYear + 1).minusDays(1);
+        if (!end.isBefore(LocalDate.now())) {
+            throw new IllegalStateException("会计年度尚未结束，不能结账");
+        }
+
+        Optional<ClosedPeriod> last = loadLastClose(bookGuid);
+        if (last.isPresent()) {
+            if (last.get().fiscalYear() >= fiscalYear) {
+                throw new IllegalStateException("该会计年度已结账");
+            }
+            if (last.get().fiscalYear() != fiscalYear - 1) {
+                throw new IllegalStateException("请先结账 " + (last.get().fiscalYear() + 1) + " 年度");
+            }
+        }
+
+        // 截至年末的累计余额（分）：上次结账期初 + 之后发生额
+        Map<String, Long> balances = new HashMap<>(last.map(p -> openingBalances(bookGuid, p.fiscalYear() + 1)).orElse(Map.of()));
+        sumSplits(bookGuid, last.map(p -> p.periodEnd().plusDays(1)).orElse(null), end)
+                .forEach((guid, cents) -> balances.merge(guid, cents, Long::sum));
+
+        Map<String, String> typeByAccount = new HashMap<>();
+        for (Account account : accountRepository.findByBookGuid(bookGuid)) {
+            typeByAccount.put(account.getGuid(), account.getAccountType());
+        }
+
+        // 结转：收入/费用科目余额清零，差额计入留存收益
+        Map<String, Long> closingSplits = new HashMap<>();
+        long retained = 0;
+        for (Map.Entry<String, Long> entry : balances.entrySet()) {
+            String type = typeByAccount.get(entry.getKey());
+            if (entry.getValue() != 0 && ("INCOME".equals(type) || "EXPENSE".equals(type))) {
+                closingSplits.put(entry.getKey(), -entry.getValue());
+                retained += entry.getValue();
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        String closingTxGuid = null;
+        if (!closingSplits.isEmpty()) {
+            Account retainedEarnings = accountRepository.findFirstByBookGuidAndName(bookGuid, "留存收益")
+                    .orElseThrow(() -> new IllegalStateException("未找到“留存收益”科目"));
+            closingSplits.merge(retainedEarnings.getGuid(), retained, Long::sum);
+
+            closingTxGuid = UUID.randomUUID().toString();
+            LocalDateTime closingDate = end.atTime(23, 59, 59);
+            jdbcTemplate.update(
+                    "INSERT INTO transactions (guid, book_guid, num, post_date, enter_date, description, doc_status, source_type, source_guid) " +
+                            "VALUES (?, ?, ?, ?, ?, ?, 'POSTED', ?, NULL)",
+                    closingTxGuid,
+                    bookGuid,
+                    "CLOSE-" + fiscalYear,
+                    closingDate,
+                    now,
+                    fiscalYear + " 年度结转损益",
+                    SOURCE_YEAR_CLOSE
+            );
+            for (Map.Entry<String, Long> entry : closingSplits.entrySet()) {
+                insertSplit(closingTxGuid, closingDate, entry.getKey(), entry.getValue(), "结转损益");
+                balances.merge(entry.getKey(), entry.getValue(), Long::sum);
+            }
+        }
+
+        List<Object[]> openingRows = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : balances.entrySet()) {
+            if (entry.getValue() != 0) {
+                openingRows.add(new Object[]{bookGuid, fiscalYear + 1, entry.getKey(), entry.getValue()});
+            }
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO account_opening_balances (book_guid, fiscal_year, account_guid, balance_num, balance_denom) VALUES (?, ?, ?, ?, 100)",
+                openingRows
+        );
+        jdbcTemplate.update(
+                "INSERT INTO period_closes (guid, book_guid, fiscal_year, period_start, period_end, closing_tx_guid, closed_at) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                UUID.randomUUID().toString(),
+                bookGuid,
+                fiscalYear,
+                start,
+                end,
+                closingTxGuid,
+                now
+        );
+
+        evictAfterCommit(bookGuid);
+        return new PeriodCloseResponse(fiscalYear, start, end, closingTxGuid, now);
+    }
+
+    public List<PeriodCloseResponse> listCloses(String bookGuid) {
+        return jdbcTemplate.query(
+                "SELECT fiscal_year, period_start, period_end, closing_tx_guid, closed_at FROM period_closes WHERE book_guid = ? ORDER BY fiscal_year DESC",
+                (rs, i) -> new PeriodCloseResponse(
+                        rs.getInt("fiscal_year"),
+                        rs.getDate("period_start").toLocalDate(),
+                        rs.getDate("period_end").toLocalDate(),
+                        rs.getString("closing_tx_guid"),
+                        rs.getTimestamp("closed_at").toLocalDateTime()
+                ),
+                bookGuid
+        );
+    }
+
+    /**
+     * 过账前校验：凭证日期不能落在已结账期间。须在过账事务内调用，共享锁持有到事务结束。
+     */
+    public void assertOpen(String bookGuid, LocalDateTime postDate) {
+        Optional<ClosedPeriod> last = lockedLastClose(bookGuid);
+        if (last.isPresent() && postDate != null && !postDate.toLocalDate().isAfter(last.get().periodEnd())) {
+            throw new IllegalStateException("会计期间已结账（截至 " + last.get().periodEnd() + "），不能过账");
+        }
+    }
+
+    public Optional<ClosedPeriod> lastClose(String bookGuid) {
+        return lastCloseCache.computeIfAbsent(bookGuid, this::loadLastClose);
+    }
+
+    /**
+     * 写入前读取最近结账：账本行 FOR SHARE 使并发结账等待本事务结束，结账记录用锁定读取以读到最新提交，不经过缓存。
+     */
+    public Optional<ClosedPeriod> lockedLastClose(String bookGuid) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("结账校验须在过账事务内执行");
+        }
+        jdbcTemplate.query("SELECT guid FROM books WHERE guid = ? FOR SHARE", rs -> null, bookGuid);
+        return jdbcTemplate.query(
+                "SELECT fiscal_year, period_end FROM period_closes WHERE book_guid = ? ORDER BY fiscal_year DESC LIMIT 1 FOR SHARE",
+                rs -> rs.next()
+                        ? Optional.of(new ClosedPeriod(rs.getInt("fiscal_year"), rs.getDate("period_end").toLocalDate()))
+                        : Optional.<ClosedPeriod>empty(),
+                bookGuid
+        );
+    }
+
+    /**
+     * 指定年度的期初余额（分），由上一年度结账生成；结账后不再变化，可常驻缓存。
+     */
+    public Map<String, Long> openingBalances(String bookGuid, int fiscalYear) {
+        return openingCache.computeIfAbsent(bookGuid + ":" + fiscalYear, key -> {
+            Map<String, Long> map = new HashMap<>();
+            jdbcTemplate.query(
+                    "SELECT account_guid, balance_num, balance_denom FROM account_opening_balances WHERE book_guid = ? AND fiscal_year = ?",
+                    rs -> {
+                        long denom = rs.getLong("balance_denom");
+                        long cents = denom == 100 ? rs.getLong("balance_num") : rs.getLong("balance_num") * 100 / (denom == 0 ? 1 : denom);
+                        map.put(rs.getString("account_guid"), cents);
+                    },
+                    bookGuid,
+                    fiscalYear
+            );
+            return Map.copyOf(map);
+        });
+    }
+
+    public LocalDate fiscalYearStart(Book book, int fiscalYear) {
+        int month = book.getFiscalYearStartMonth() == null ? 1 : book.getFiscalYearStartMonth();
+        int day = book.getFiscalYearStartDay() == null ? 1 : book.getFiscalYearStartDay();
+        LocalDate firstOfMonth = LocalDate.of(fiscalYear, month, 1);
+        return firstOfMonth.withDayOfMonth(Math.min(day, firstOfMonth.lengthOfMonth()));
+    }
+
+    private Optional<ClosedPeriod> loadLastClose(String bookGuid) {
+        return jdbcTemplate.query(
+                "SELECT fiscal_year, period_end FROM period_closes WHERE book_guid = ? ORDER BY fiscal_year DESC LIMIT 1",
+                rs -> rs.next()
+                        ? Optional.of(new ClosedPeriod(rs.getInt("fiscal_year"), rs.getDate("period_end").toLocalDate()))
+                        : Optional.<ClosedPeriod>empty(),
+                bookGuid
+        );
+    }
+
+    private Map<String, Long> sumSplits(String bookGuid, LocalDate from, LocalDate to) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT s.account_guid,
+                       SUM(ROUND(s.value_num * 100 / NULLIF(s.value_denom, 0))) AS cents
+                  FROM splits s
+                  JOIN transactions t ON s.tx_guid = t.guid
+                 WHERE t.book_guid = ?
+                   AND t.post_date < ?
+                   AND s.post_date < ?
+                """);
+        List<Object> args = new ArrayList<>();
+        args.add(bookGuid);
+        args.add(to.plusDays(1).atStartOfDay());
+        args.add(to.plusDays(1).atStartOfDay());
+        if (from != null) {
+            sql.append(" AND t.post_date >= ? AND s.post_date >= ? ");
+            args.add(from.atStartOfDay());
+            args.add(from.atStartOfDay());
+        }
+        sql.append(" GROUP BY s.account_guid");
+        Map<String, Long> map = new HashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            map.put(rs.getString("account_guid"), rs.getLong("cents"));
+        }, args.toArray());
+        return map;
+    }
+
+    private void insertSplit(String txGuid, LocalDateTime postDate, String accountGuid, long cents, String memo) {
+        jdbcTemplate.update(
+                "INSERT INTO splits (guid, tx_guid, post_date, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
+                        "VALUES (?, ?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, NULL)",
+                UUID.randomUUID().toString(),
+                txGuid,
+                postDate,
+                accountGuid,
+                cents,
+                cents,
+                memo
+        );
+    }
+
+    private void evictAfterCommit(String bookGuid) {
+        Runnable evict = () -> lastCloseCache.remove(bookGuid);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict.run();
+                }
+            });
+        } else {
+            evict.run();
+        }
+    }
+
+    /**
+     * 最近一次结账的年度与截止日（含）。
+     */
+    public record ClosedPeriod(int fiscalYear, LocalDate periodEnd) {
+    }
+}
@@ -0,0 +1,284 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.QueryScope;
+import com.moon.backend.config.ReadRouting;
+import com.moon.backend.config.ShardContext;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 组提交过账管道（ees.posting.group-commit.enabled 开启时生效）：
+ * 同一账本的过账请求进入无锁队列，由单个写线程每 max-delay-ms 或 batch-size 条合并为一个数据库事务提交，
+ * 提交后再完成各调用方的 future。每条过账在批事务连接上的独立 JDBC 保存点内执行，单条失败只回滚到自身的保存点，不影响同批其他过账
+ * （Hibernate 的 JpaDialect 不支持 NESTED 传播，因此直接使用连接保存点）。
+ * 过账逻辑仍是各服务的 @Transactional 方法，在管道事务中以 REQUIRED 方式加入，加入方失败不标记批事务只回滚（见 PostingTransactionConfig）；
+ * 调用线程的分片、读路由与查询范围随过账带到写线程。
+ * 写线程每轮只处理一批，账本仍有积压时重新排到线程池队尾，避免单个繁忙账本长期占住写线程。
+ * 等待超时时尚未开始的过账直接撤销（QueueTimeout），已开始的过账结果待定（InDoubt）。
+ */
+@Slf4j
+@Service
+public class PostingPipeline {
+
+    private static final int QUEUED = 0;
+    private static final int STARTED = 1;
+    private static final int ABANDONED = 2;
+
+    private final TransactionTemplate batchTemplate;
+    private final DataSource dataSource;
+    private final Map<String, BookQueue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService writers;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final long waitMillis;
+
+    public PostingPipeline(PlatformTransactionManager transactionManager,
+                           DataSource dataSource,
+                           @Value("${ees.posting.group-commit.enabled:false}") boolean enabled,
+                           @Value("${ees.posting.group-commit.batch-size:64}") int batchSize,
+                           @Value("${ees.posting.group-commit.max-delay-ms:2}") long maxDelayMs,
+                           @Value("${ees.posting.group-commit.writer-threads:4}") int writerThreads,
+                           @Value("${ees.posting.group-commit.wait-ms:30000}") long waitMillis) {
+        this.batchTemplate = new TransactionTemplate(transactionManager);
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.waitMillis = waitMillis;
+        AtomicInteger seq = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread t = new Thread(r, "posting-writer-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 执行一次过账；未开启组提交时直接在调用线程执行。异常按原样抛出给调用方。
+     */
+    public void post(String bookGuid, Runnable posting) {
+        if (!enabled) {
+            posting.run();
+            return;
+        }
+        if (bookGuid == null || bookGuid.isBlank()) {
+            throw new IllegalArgumentException("bookGuid 不能为空");
+        }
+        Pending pending = new Pending(posting, ShardContext.current(), ReadRouting.isPrimaryForced(), QueryScope.current());
+        BookQueue queue = queues.computeIfAbsent(bookGuid, k -> new BookQueue());
+        queue.items.offer(pending);
+        if (queue.draining.compareAndSet(false, true)) {
+            writers.execute(() -> drain(queue));
+        }
+        await(pending);
+    }
+
+    /**
+     * 处理一批后即返回，由 reschedule 决定是否再次排队
+     */
+    private void drain(BookQueue queue) {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        try {
+            // 凑批：不足一批时短暂等待更多请求到达
+            if (queue.items.size() < batchSize && maxDelayNanos > 0) {
+                LockSupport.parkNanos(maxDelayNanos);
+            }
+            Pending next;
+            while (batch.size() < batchSize && (next = queue.items.poll()) != null) {
+                // 调用方已超时撤销的过账不再执行
+                if (next.state.compareAndSet(QUEUED, STARTED)) {
+                    batch.add(next);
+                }
+            }
+            if (!batch.isEmpty()) {
+                // 同一账本的过账位于同一分片（迁移冻结期间不接受写入）
+                ShardContext.run(batch.get(0).shard, () -> commit(batch));
+            }
+        } catch (RuntimeException ex) {
+            log.error("过账管道异常", ex);
+            batch.forEach(pending -> pending.future.completeExceptionally(ex));
+        } finally {
+            reschedule(queue);
+        }
+    }
+
+    private void reschedule(BookQueue queue) {
+        if (queue.items.isEmpty()) {
+            queue.draining.set(false);
+            // 释放标记后若又有新请求且无人接手，继续处理
+            if (queue.items.isEmpty() || !queue.draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+        try {
+            writers.execute(() -> drain(queue));
+        } catch (RejectedExecutionException ex) {
+            // 应用关闭中，剩余过账由调用方等待超时处理
+            queue.draining.set(false);
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        List<Pending> succeeded = new ArrayList<>(batch.size());
+        try {
+            batchTemplate.executeWithoutResult(status -> {
+                // 批事务已绑定的连接，服务内的 JdbcTemplate 写入同样走这条连接
+                Connection connection = DataSourceUtils.getConnection(dataSource);
+                try {
+                    for (Pending pending : batch) {
+                        Savepoint savepoint = savepoint(connection);
+                        try {
+                            pending.runInCallerContext();
+                        } catch (RuntimeException ex) {
+                            rollbackTo(connection, savepoint);
+                            pending.future.completeExceptionally(ex);
+                            continue;
+                        }
+                        release(connection, savepoint);
+                        succeeded.add(pending);
+                    }
+                } finally {
+                    DataSourceUtils.releaseConnection(connection, dataSource);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // 提交失败：同批已执行的过账全部回滚
+            for (Pending pending : succeeded) {
+                pending.future.completeExceptionally(ex);
+            }
+            return;
+        }
+        for (Pending pending : succeeded) {
+            pending.future.complete(null);
+        }
+    }
+
+    private static Savepoint savepoint(Connection connection) {
+        try {
+            return connection.setSavepoint();
+        } catch (SQLException ex) {
+            throw new TransactionSystemException("创建过账保存点失败", ex);
+        }
+    }
+
+    private static void rollbackTo(Connection connection, Savepoint savepoint) {
+        try {
+            connection.rollback(savepoint);
+        } catch (SQLException ex) {
+            // 无法撤销单条过账时整批回滚，避免失败过账的部分写入随批提交
+            throw new TransactionSystemException("回滚过账保存点失败", ex);
+        }
+    }
+
+    private static void release(Connection connection, Savepoint savepoint) {
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLException ex) {
+            log.debug("释放过账保存点失败", ex);
+        }
+    }
+
+    private void await(Pending pending) {
+        try {
+            pending.future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException("过账失败", ex.getCause());
+        } catch (TimeoutException ex) {
+            if (pending.state.compareAndSet(QUEUED, ABANDONED)) {
+                throw new QueueTimeout();
+            }
+            // 已开始执行的过账仍可能提交，调用方应按单据状态确认结果
+            throw new InDoubt();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("过账被中断", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdown();
+    }
+
+    private static final class BookQueue {
+        final Queue<Pending> items = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean draining = new AtomicBoolean();
+    }
+
+    private static final class Pending {
+        final Runnable posting;
+        final String shard;
+        final boolean primaryForced;
+        final QueryScope scope;
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pending(Runnable posting, String shard, boolean primaryForced, QueryScope scope) {
+            this.posting = posting;
+            this.shard = shard;
+            this.primaryForced = primaryForced;
+            this.scope = scope;
+        }
+
+        void runInCallerContext() {
+            boolean previousRouting = primaryForced ? ReadRouting.forcePrimary() : ReadRouting.isPrimaryForced();
+            QueryScope previousScope = QueryScope.attach(scope);
+            try {
+                posting.run();
+            } finally {
+                QueryScope.restore(previousScope);
+                ReadRouting.restore(previousRouting);
+            }
+        }
+    }
+
+    /**
+     * 排队超时且尚未执行，过账已撤销，可直接重试
+     */
+    public static final class QueueTimeout extends RuntimeException {
+        public QueueTimeout() {
+            super("过账排队超时，未执行，请稍后重试");
+        }
+    }
+
+    /**
+     * 等待超时时过账已开始执行，结果待定，调用方应按单据状态确认
+     */
+    public static final class InDoubt extends RuntimeException {
+        public InDoubt() {
+            super("过账处理中，请稍后确认单据状态");
+        }
+    }
+}
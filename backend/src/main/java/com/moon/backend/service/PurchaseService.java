@@ -24,6 +24,10 @@ public class PurchaseService {
 
     private final AccountRepository accountRepository;
     private final JdbcTemplate jdbcTemplate;
+    private final PeriodCloseService periodCloseService;
+    private final LotService lotService;
+    private final TaxLedgerService taxLedgerService;
+    private final DocumentLocks documentLocks;
 
     /**
      * 采购发票过账：按 entries 汇总（数量/折扣/含税），借费用/库存+进项税，贷应付。
@@ -34,6 +38,11 @@ public class PurchaseService {
         long cents;
         Map<String, Long> baseByAccount;
         Map<String, Long> taxByAccount;
+        Map<String, TaxLedgerService.TaxLine> taxByTable = Map.of();
+        if (hasText(request.getInvoiceGuid())) {
+            lockForPosting(request.getInvoiceGuid());
+        }
+        Long orderVersion = hasText(request.getOrderGuid()) ? documentLocks.orderVersion(request.getOrderGuid()) : null;
         if (hasText(request.getInvoiceGuid())) {
             InvoiceCalc calc = loadInvoiceCalc(bookGuid, request.getInvoiceGuid());
             if (calc.totalCents <= 0) {
@@ -42,6 +51,7 @@ public class PurchaseService {
             cents = calc.totalCents;
             baseByAccount = calc.baseByAccount;
             taxByAccount = calc.taxByAccount;
+            taxByTable = calc.taxByTable;
         } else {
             // 直接根据输入金额+借方科目过账
             cents = request.getAmountCent() == null ? 0 : request.getAmountCent();
@@ -58,6 +68,7 @@ public class PurchaseService {
                 .orElseThrow(() -> new IllegalStateException("未找到“应付账款”科目或指定科目"));
 
         LocalDateTime now = request.getPostDate() != null ? request.getPostDate() : LocalDateTime.now();
+        periodCloseService.assertOpen(bookGuid, now);
         String txGuid = UUID.randomUUID().toString();
 
         jdbcTemplate.update(
@@ -74,28 +85,36 @@ public class PurchaseService {
         );
 
         for (Map.Entry<String, Long> entry : baseByAccount.entrySet()) {
-            insertSplit(txGuid, entry.getKey(), entry.getValue(), request.getDescription());
+            insertSplit(txGuid, now, entry.getKey(), entry.getValue(), request.getDescription());
         }
         for (Map.Entry<String, Long> entry : taxByAccount.entrySet()) {
-            insertSplit(txGuid, entry.getKey(), entry.getValue(), "进项税额");
+            insertSplit(txGuid, now, entry.getKey(), entry.getValue(), "进项税额");
+        }
+        if (!taxByTable.isEmpty()) {
+            taxLedgerService.record(bookGuid, txGuid, now, invoiceOwner(request.getInvoiceGuid()), taxByTable.values());
         }
-        insertSplit(txGuid, ap.getGuid(), -cents, request.getDescription());
+        // 贷：应付账款，关联发票时开立未清项 lot
+        String lotGuid = hasText(request.getInvoiceGuid())
+                ? lotService.openInvoiceLot(bookGuid, ap.getGuid(), request.getInvoiceGuid(), coalesce(request.getInvoiceNo(), request.getDescription()))
+                : null;
+        insertSplit(txGuid, now, ap.getGuid(), -cents, request.getDescription(), lotGuid);
 
         if (hasText(request.getInvoiceGuid())) {
             jdbcTemplate.update(
-                    "UPDATE invoices SET status = 'POSTED', post_txn_guid = ? WHERE guid = ?",
+                    "UPDATE invoices SET status = 'POSTED', post_txn_guid = ?, version = version + 1 WHERE guid = ?",
                     txGuid,
                     request.getInvoiceGuid()
             );
             jdbcTemplate.update(
-                    "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?) WHERE guid = ?",
+                    "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?), version = version + 1 WHERE guid = ?",
                     " | 已过账金额分:" + cents,
                     request.getInvoiceGuid()
             );
             updateInvoiceSettlement(bookGuid, request.getInvoiceGuid(), "LIABILITY", cents);
         }
         if (hasText(request.getOrderGuid())) {
-            jdbcTemplate.update("UPDATE orders SET status = 'POSTED' WHERE guid = ?", request.getOrderGuid());
+            documentLocks.bumpOrder(request.getOrderGuid(), orderVersion);
+            jdbcTemplate.update("UPDATE orders SET status = 'POSTED', version = version + 1 WHERE guid = ?", request.getOrderGuid());
         }
     }
 
@@ -115,6 +134,11 @@ public class PurchaseService {
         Account cash = resolveCashAccount(bookGuid, request.getCashAccountName());
 
         LocalDateTime now = request.getPayDate() != null ? request.getPayDate() : LocalDateTime.now();
+        periodCloseService.assertOpen(bookGuid, now);
+        // 锁定被核销的发票，防止并发收付款同时读取结算状态
+        if (hasText(request.getInvoiceGuid())) {
+            documentLocks.lockInvoice(request.getInvoiceGuid());
+        }
         String txGuid = UUID.randomUUID().toString();
 
         jdbcTemplate.update(
@@ -130,34 +154,57 @@ public class PurchaseService {
                 coalesce(coalesce(request.getOrderGuid(), request.getInvoiceGuid()), request.getPayNo())
         );
 
-        insertSplit(txGuid, ap.getGuid(), cents, request.getDescription());
-        insertSplit(txGuid, cash.getGuid(), -cents, request.getDescription());
+        // 借：应付账款，按指定发票/先进先出拆分到各未清 lot
+        String ownerGuid = hasText(request.getVendorGuid()) ? lotService.vendorOwner(bookGuid, request.getVendorGuid()) : null;
+        Map<String, Long> allocations = lotService.allocate(bookGuid, ap.getGuid(), hasText(request.getInvoiceGuid()) ? request.getInvoiceGuid() : null, ownerGuid, cents);
+        for (Map.Entry<String, Long> entry : allocations.entrySet()) {
+            insertSplit(txGuid, now, ap.getGuid(), entry.getValue(), request.getDescription(), entry.getKey());
+        }
+        insertSplit(txGuid, now, cash.getGuid(), -cents, request.getDescription());
 
         if (hasText(request.getInvoiceGuid())) {
             jdbcTemplate.update(
-                    "UPDATE invoices SET status = 'APPROVED' WHERE guid = ?",
+                    "UPDATE invoices SET status = 'APPROVED', version = version + 1 WHERE guid = ?",
                     request.getInvoiceGuid()
             );
             jdbcTemplate.update(
-                    "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?) WHERE guid = ?",
+                    "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?), version = version + 1 WHERE guid = ?",
                     " | 已支付金额分:" + cents,
                     request.getInvoiceGuid()
             );
             updateInvoiceSettlement(bookGuid, request.getInvoiceGuid(), "LIABILITY", null);
         }
+        allocations.remove(null);
+        lotService.closeSettledLots(allocations.keySet(), now);
+    }
+
+    /**
+     * 锁定待过账发票并拒绝重复过账
+     */
+    private void lockForPosting(String invoiceGuid) {
+        DocumentLocks.LockedInvoice invoice = documentLocks.lockInvoice(invoiceGuid);
+        if (invoice != null && invoice.posted()) {
+            throw new IllegalStateException("发票已过账，不能重复过账");
+        }
     }
 
-    private void insertSplit(String txGuid, String accountGuid, long cents, String memo) {
+    private void insertSplit(String txGuid, LocalDateTime postDate, String accountGuid, long cents, String memo) {
+        insertSplit(txGuid, postDate, accountGuid, cents, memo, null);
+    }
+
+    private void insertSplit(String txGuid, LocalDateTime postDate, String accountGuid, long cents, String memo, String lotGuid) {
         LocalDateTime now = LocalDateTime.now();
         jdbcTemplate.update(
-                "INSERT INTO splits (guid, tx_guid, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
-                        "VALUES (?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, NULL)",
+                "INSERT INTO splits (guid, tx_guid, post_date, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
+                        "VALUES (?, ?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, ?)",
                 UUID.randomUUID().toString(),
                 txGuid,
+                postDate,
                 accountGuid,
                 cents,
                 cents,
-                memo
+                memo,
+                lotGuid
         );
     }
 
@@ -189,6 +236,11 @@ public class PurchaseService {
         return (v == null || v.isBlank()) ? def : v;
     }
 
+    private String invoiceOwner(String invoiceGuid) {
+        List<String> owners = jdbcTemplate.queryForList("SELECT owner_guid FROM invoices WHERE guid = ?", String.class, invoiceGuid);
+        return owners.isEmpty() ? null : owners.get(0);
+    }
+
     private boolean hasText(String v) {
         return v != null && !v.isBlank();
     }
@@ -216,12 +268,12 @@ public class PurchaseService {
         }
         String newStatus = (settled != null && settled >= total) ? "APPROVED" : "POSTED";
         jdbcTemplate.update(
-                "UPDATE invoices SET status = ? WHERE guid = ?",
+                "UPDATE invoices SET status = ?, version = version + 1 WHERE guid = ?",
                 newStatus,
                 invoiceGuid
         );
         jdbcTemplate.update(
-                "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?) WHERE guid = ?",
+                "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?), version = version + 1 WHERE guid = ?",
                 " | 已结算金额分:" + (settled == null ? 0 : settled),
                 invoiceGuid
         );
@@ -242,6 +294,8 @@ public class PurchaseService {
                        e.tax_table_guid,
                        e.taxable,
                        e.tax_included,
+                       e.tax_amount_num,
+                       e.tax_amount_denom,
                        tt.rate_num,
                        tt.rate_denom,
                        tt.payable_account_guid,
@@ -261,6 +315,8 @@ public class PurchaseService {
                         rs.getString("tax_table_guid"),
                         rs.getInt("taxable"),
                         rs.getInt("tax_included"),
+                        rs.getObject("tax_amount_num") != null ? rs.getLong("tax_amount_num") : null,
+                        rs.getObject("tax_amount_denom") != null ? rs.getLong("tax_amount_denom") : null,
                         rs.getObject("rate_num") != null ? rs.getLong("rate_num") : null,
                         rs.getObject("rate_denom") != null ? rs.getLong("rate_denom") : null,
                         rs.getString("payable_account_guid"),
@@ -276,6 +332,7 @@ public class PurchaseService {
 
         Map<String, Long> baseByAccount = new HashMap<>();
         Map<String, Long> taxByAccount = new HashMap<>();
+        Map<String, TaxLedgerService.TaxLine> taxByTable = new HashMap<>();
         long totalCents = 0;
 
         for (InvoiceLine line : lines) {
@@ -303,7 +360,11 @@ public class PurchaseService {
 
             BigDecimal base;
             BigDecimal tax = BigDecimal.ZERO;
-            if (taxable) {
+            if (taxable && line.taxAmountNum != null) {
+                // 明细写入时已预计算税额
+                tax = toDecimal(line.taxAmountNum, line.taxAmountDenom);
+                base = (line.taxIncluded != null && line.taxIncluded == 1) ? net.subtract(tax) : net;
+            } else if (taxable) {
                 if (line.taxIncluded != null && line.taxIncluded == 1) {
                     base = net.divide(BigDecimal.ONE.add(rate), 2, RoundingMode.HALF_UP);
                     tax = net.subtract(base);
@@ -322,9 +383,14 @@ public class PurchaseService {
                 taxByAccount.merge(line.payableAccountGuid, taxCents, Long::sum);
             }
             totalCents += baseCents + taxCents;
+            if (taxable) {
+                taxByTable.merge(line.taxTableGuid,
+                        new TaxLedgerService.TaxLine(line.taxTableGuid, line.direction.toUpperCase(), baseCents, taxCents),
+                        (a, b) -> a.plus(b.baseCents(), b.taxCents()));
+            }
         }
 
-        return new InvoiceCalc(baseByAccount, taxByAccount, totalCents);
+        return new InvoiceCalc(baseByAccount, taxByAccount, taxByTable, totalCents);
     }
 
     private BigDecimal toDecimal(Long num, Long denom) {
@@ -339,7 +405,8 @@ public class PurchaseService {
         return amount.multiply(BigDecimal.valueOf(100)).setScale(0, RoundingMode.HALF_UP).longValue();
     }
 
-    private record InvoiceCalc(Map<String, Long> baseByAccount, Map<String, Long> taxByAccount, long totalCents) {
+    private record InvoiceCalc(Map<String, Long> baseByAccount, Map<String, Long> taxByAccount,
+                               Map<String, TaxLedgerService.TaxLine> taxByTable, long totalCents) {
     }
 
     private record InvoiceLine(
@@ -353,6 +420,8 @@ public class PurchaseService {
             String taxTableGuid,
             Integer taxable,
             Integer taxIncluded,
+            Long taxAmountNum,
+            Long taxAmountDenom,
             Long rateNum,
             Long rateDenom,
             String payableAccountGuid,
@@ -0,0 +1,111 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.QueryScope;
+import com.moon.backend.config.ReadRouting;
+import com.moon.backend.dto.AccountNodeResponse;
+import com.moon.backend.dto.BalanceSheetResponse;
+import com.moon.backend.dto.CashFlowResponse;
+import com.moon.backend.dto.DashboardSummary;
+import com.moon.backend.dto.ProfitLossResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 报表类重查询的请求合并入口（控制器与报表任务调用）：同一账本、相同参数、相同账本版本的并发请求只计算一次。
+ * 账本版本取 ledger_changes 中该账本最大 seq，有新的写入即换 key，写入后的请求不会拿到写入前开始的结果；
+ * 是否强制主库也计入 key，读己之写的请求不与可能走副本的计算合并。
+ * 合并在事务之外进行，等待者不占用连接，也在等待期间交还准入许可（不做数据库工作），leader 被放弃需要重新计算时再排队取回；
+ * 服务内部的相互调用（如报表内取科目树）不经过这里。
+ */
+@Service
+public class ReadCoalescer {
+
+    private final ReportService reportService;
+    private final DashboardService dashboardService;
+    private final AccountService accountService;
+    private final LedgerChangeService ledgerChangeService;
+    private final boolean enabled;
+
+    private final SingleFlight<Key, ProfitLossResponse> profitLoss;
+    private final SingleFlight<Key, BalanceSheetResponse> balanceSheets;
+    private final SingleFlight<Key, CashFlowResponse> cashFlows;
+    private final SingleFlight<Key, DashboardSummary> dashboards;
+    private final SingleFlight<Key, List<AccountNodeResponse>> accountTrees;
+
+    public ReadCoalescer(ReportService reportService,
+                         DashboardService dashboardService,
+                         AccountService accountService,
+                         LedgerChangeService ledgerChangeService,
+                         @Value("${ees.single-flight.enabled:true}") boolean enabled,
+                         @Value("${ees.single-flight.wait-ms:30000}") long waitMillis) {
+        this.reportService = reportService;
+        this.dashboardService = dashboardService;
+        this.accountService = accountService;
+        this.ledgerChangeService = ledgerChangeService;
+        this.enabled = enabled;
+        // leader 的客户端断开导致查询取消时，等待者自行重新计算
+        Predicate<RuntimeException> abandoned = ex -> ex instanceof QueryScope.Cancelled;
+        this.profitLoss = new SingleFlight<>(waitMillis, abandoned);
+        this.balanceSheets = new SingleFlight<>(waitMillis, abandoned);
+        this.cashFlows = new SingleFlight<>(waitMillis, abandoned);
+        this.dashboards = new SingleFlight<>(waitMillis, abandoned);
+        this.accountTrees = new SingleFlight<>(waitMillis, abandoned);
+    }
+
+    public ProfitLossResponse profitLoss(String bookGuid, LocalDate start, LocalDate end) {
+        return coalesce(profitLoss, bookGuid, List.of(start, end), () -> reportService.profitLoss(bookGuid, start, end));
+    }
+
+    public BalanceSheetResponse balanceSheet(String bookGuid, LocalDate asOf) {
+        return coalesce(balanceSheets, bookGuid, List.of(asOf), () -> reportService.balanceSheet(bookGuid, asOf));
+    }
+
+    public CashFlowResponse cashFlowNet(String bookGuid, LocalDate start, LocalDate end) {
+        return coalesce(cashFlows, bookGuid, List.of(start, end), () -> reportService.cashFlowNet(bookGuid, start, end));
+    }
+
+    public DashboardSummary dashboardSummary(String bookGuid) {
+        return coalesce(dashboards, bookGuid, List.of(), () -> dashboardService.buildSummary(bookGuid));
+    }
+
+    public List<AccountNodeResponse> accountTree(String bookGuid) {
+        return coalesce(accountTrees, bookGuid, List.of(), () -> accountService.getAccountTree(bookGuid));
+    }
+
+    private <V> V coalesce(SingleFlight<Key, V> flight, String bookGuid, List<Object> params, Supplier<V> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Key key = new Key(bookGuid, params, ledgerChangeService.bookVersion(bookGuid), ReadRouting.isPrimaryForced());
+        return flight.execute(key, loader, parking());
+    }
+
+    private static SingleFlight.Parking parking() {
+        QueryScope scope = QueryScope.current();
+        AdmissionGate.Permit permit = scope == null ? null : scope.permit();
+        if (permit == null) {
+            return SingleFlight.Parking.NONE;
+        }
+        return new SingleFlight.Parking() {
+            @Override
+            public void park() {
+                permit.park();
+            }
+
+            @Override
+            public void resume() {
+                if (!permit.resume()) {
+                    throw new SingleFlight.Busy("系统繁忙，请稍后重试");
+                }
+            }
+        };
+    }
+
+    private record Key(String bookGuid, List<Object> params, long version, boolean primary) {
+    }
+}
@@ -0,0 +1,72 @@
+package com.moon.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+
+/**
+ * 副本已应用位置：定期在副本上计算 ledger_changes 的稳定序号（该序号及之前的变更均已复制到副本）。
+ * 客户端携带的账本版本不超过该位置时，副本可满足读己之写；轮询失败或位置过旧时视为副本不可用，读请求回退主库。
+ */
+@Slf4j
+@Service
+public class ReplicaPositionTracker {
+
+    private final JdbcTemplate replica;
+    private final ObjectProvider<LedgerChangeService> ledgerChangeService;
+    private final long maxStaleMillis;
+
+    private volatile long appliedSeq = -1;
+    private volatile long checkedAt;
+
+    public ReplicaPositionTracker(@Qualifier("replicaDataSource") ObjectProvider<DataSource> replicaDataSource,
+                                  ObjectProvider<LedgerChangeService> ledgerChangeService,
+                                  @Value("${ees.replica.max-stale-ms:5000}") long maxStaleMillis) {
+        DataSource dataSource = replicaDataSource.getIfAvailable();
+        this.replica = dataSource == null ? null : new JdbcTemplate(dataSource);
+        this.ledgerChangeService = ledgerChangeService;
+        this.maxStaleMillis = maxStaleMillis;
+    }
+
+    @Scheduled(fixedDelayString = "${ees.replica.position-poll-ms:500}")
+    public void poll() {
+        if (replica == null) {
+            return;
+        }
+        try {
+            appliedSeq = ledgerChangeService.getObject().stableSeq(replica);
+            checkedAt = System.currentTimeMillis();
+        } catch (DataAccessException ex) {
+            if (appliedSeq >= 0) {
+                log.warn("副本位置查询失败，读请求回退主库", ex);
+            }
+            appliedSeq = -1;
+        }
+    }
+
+    public boolean isEnabled() {
+        return replica != null;
+    }
+
+    public boolean isReplicaHealthy() {
+        return replica != null && appliedSeq >= 0 && System.currentTimeMillis() - checkedAt <= maxStaleMillis;
+    }
+
+    /**
+     * 副本是否已包含指定账本版本（ledger_changes.seq）之前的全部变更
+     */
+    public boolean covers(long version) {
+        return isReplicaHealthy() && appliedSeq >= version;
+    }
+
+    public long appliedSeq() {
+        return appliedSeq;
+    }
+}
@@ -0,0 +1,378 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.QueryScope;
+import com.moon.backend.config.ShardContext;
+import com.moon.backend.dto.ReportJobRequest;
+import com.moon.backend.dto.ReportJobResponse;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步报表任务：提交后立即返回任务号，客户端轮询状态与结果。
+ * <ul>
+ *     <li>有界线程池执行，队列满时拒绝；同一账本同时执行的任务不超过 per-book，其余在账本队列中等待；</li>
+ *     <li>参数完全相同的任务在排队或执行中时直接返回已有任务；</li>
+ *     <li>执行前在准入控制的 REPORTING 通道排队，与同步报表共享总并发与单账本并发；</li>
+ *     <li>取消为协作式：未开始的任务不再执行，执行中的任务取消正在执行的语句、中断线程并丢弃结果；</li>
+ *     <li>结束的任务保留 result-ttl-ms 后清理；任务数或线程池队列达到上限时拒绝（429），客户端稍后重试。</li>
+ * </ul>
+ * 任务状态只保存在受理节点的内存中，不跨节点共享：多节点部署时查询与取消须路由到提交任务的节点
+ * （负载均衡按 bookGuid 做会话保持），节点重启后未完成的任务丢失，客户端按“任务不存在”重新提交。
+ */
+@Slf4j
+@Service
+public class ReportJobService {
+
+    private static final Set<String> TYPES = Set.of("PL", "BS", "CF", "TRIAL_BALANCE", "OPEN_ITEMS", "AGING");
+
+    private final ReadCoalescer readCoalescer;
+    private final LotService lotService;
+    private final AgingService agingService;
+    private final AdmissionGate admissionGate;
+    private final ThreadPoolExecutor executor;
+
+    private final int perBook;
+    private final int maxJobs;
+    private final long ttlMillis;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<Spec, Job> inFlight = new HashMap<>();
+    private final Map<String, BookSlot> slots = new HashMap<>();
+
+    public ReportJobService(ReadCoalescer readCoalescer,
+                            LotService lotService,
+                            AgingService agingService,
+                            AdmissionGate admissionGate,
+                            @Value("${ees.reports.jobs.threads:4}") int threads,
+                            @Value("${ees.reports.jobs.queue-capacity:64}") int queueCapacity,
+                            @Value("${ees.reports.jobs.per-book:2}") int perBook,
+                            @Value("${ees.reports.jobs.max-jobs:1000}") int maxJobs,
+                            @Value("${ees.reports.jobs.result-ttl-ms:600000}") long ttlMillis) {
+        this.readCoalescer = readCoalescer;
+        this.lotService = lotService;
+        this.agingService = agingService;
+        this.admissionGate = admissionGate;
+        this.perBook = Math.max(1, perBook);
+        this.maxJobs = maxJobs;
+        this.ttlMillis = ttlMillis;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+            Thread t = new Thread(r, "report-job-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public ReportJobResponse submit(ReportJobRequest request) {
+        Spec spec = Spec.of(request);
+        synchronized (this) {
+            Job existing = inFlight.get(spec);
+            if (existing != null) {
+                return existing.view();
+            }
+            if (jobs.size() >= maxJobs) {
+                purgeExpired();
+                if (jobs.size() >= maxJobs) {
+                    throw new Rejected("报表任务过多，请稍后重试");
+                }
+            }
+            Job job = new Job(UUID.randomUUID().toString(), spec, ShardContext.current());
+            BookSlot slot = slots.computeIfAbsent(spec.bookGuid(), k -> new BookSlot());
+            if (slot.running < perBook) {
+                try {
+                    start(job, slot);
+                } catch (Rejected ex) {
+                    releaseIfIdle(spec.bookGuid(), slot);
+                    throw ex;
+                }
+            } else {
+                slot.waiting.add(job);
+            }
+            jobs.put(job.id, job);
+            inFlight.put(spec, job);
+            return job.view();
+        }
+    }
+
+    public ReportJobResponse get(String jobId, String bookGuid) {
+        return find(jobId, bookGuid).view();
+    }
+
+    public ReportJobResponse cancel(String jobId, String bookGuid) {
+        Job job = find(jobId, bookGuid);
+        synchronized (this) {
+            if (job.isFinished()) {
+                return job.view();
+            }
+            job.status = Status.CANCELLED;
+            job.finishedAt = LocalDateTime.now();
+            job.expiresAt = System.currentTimeMillis() + ttlMillis;
+            inFlight.remove(job.spec, job);
+            BookSlot slot = slots.get(job.spec.bookGuid());
+            if (slot != null && slot.waiting.remove(job)) {
+                releaseIfIdle(job.spec.bookGuid(), slot);
+            }
+            QueryScope scope = job.scope;
+            if (scope != null) {
+                scope.cancel();
+            }
+            Thread worker = job.worker;
+            if (worker != null) {
+                worker.interrupt();
+            }
+            return job.view();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ees.reports.jobs.cleanup-interval-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> job.isFinished() && job.expiresAt <= now);
+    }
+
+    private Job find(String jobId, String bookGuid) {
+        Job job = jobs.get(jobId);
+        if (job == null || !job.spec.bookGuid().equals(bookGuid)) {
+            throw new IllegalArgumentException("报表任务不存在或已过期");
+        }
+        return job;
+    }
+
+    /**
+     * 调用方须持有 this 锁
+     */
+    private void start(Job job, BookSlot slot) {
+        slot.running++;
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException ex) {
+            slot.running--;
+            throw new Rejected("报表任务队列已满，请稍后重试");
+        }
+    }
+
+    private void run(Job job) {
+        AdmissionGate.Permit permit = null;
+        try {
+            synchronized (this) {
+                if (job.isFinished()) {
+                    return;
+                }
+                job.worker = Thread.currentThread();
+            }
+            // 与同步报表共用 REPORTING 通道的并发名额，排队期间任务保持 QUEUED，取消会中断等待
+            permit = admit(job);
+            Object result = null;
+            String error = null;
+            QueryScope scope = new QueryScope("report-job", 0, permit);
+            if (permit == null && admissionGate.isEnabled()) {
+                error = "报表任务排队被中断";
+            }
+            synchronized (this) {
+                if (error == null && !job.isFinished()) {
+                    job.status = Status.RUNNING;
+                    job.startedAt = LocalDateTime.now();
+                    job.scope = scope;
+                }
+            }
+            if (job.status == Status.RUNNING) {
+                QueryScope previous = QueryScope.attach(scope);
+                try {
+                    result = ShardContext.call(job.shard, () -> execute(job.spec));
+                } catch (RuntimeException ex) {
+                    error = ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage();
+                    if (job.status != Status.CANCELLED) {
+                        log.warn("报表任务 {} 执行失败", job.id, ex);
+                    }
+                } finally {
+                    QueryScope.restore(previous);
+                }
+            }
+            synchronized (this) {
+                job.worker = null;
+                job.scope = null;
+                // 取消后中断标记不应影响线程池中的下一个任务
+                Thread.interrupted();
+                if (!job.isFinished()) {
+                    job.result = error == null ? result : null;
+                    job.error = error;
+                    job.status = error == null ? Status.SUCCEEDED : Status.FAILED;
+                    job.finishedAt = LocalDateTime.now();
+                    job.expiresAt = System.currentTimeMillis() + ttlMillis;
+                }
+                inFlight.remove(job.spec, job);
+            }
+        } finally {
+            if (permit != null) {
+                permit.release();
+            }
+            completeSlot(job.spec.bookGuid());
+        }
+    }
+
+    /**
+     * 获取 REPORTING 许可：后台任务不受排队上限与等待时长限制，阻塞排队直到拿到许可或任务被取消。准入关闭时返回 null
+     */
+    private AdmissionGate.Permit admit(Job job) {
+        if (!admissionGate.isEnabled()) {
+            return null;
+        }
+        return admissionGate.acquireBackground(AdmissionGate.RequestClass.REPORTING, job.spec.bookGuid(), job::isFinished);
+    }
+
+    private synchronized void completeSlot(String bookGuid) {
+        BookSlot slot = slots.get(bookGuid);
+        if (slot == null) {
+            return;
+        }
+        slot.running--;
+        Job next;
+        while ((next = slot.waiting.poll()) != null) {
+            if (next.isFinished()) {
+                continue;
+            }
+            try {
+                start(next, slot);
+                break;
+            } catch (Rejected ex) {
+                next.status = Status.FAILED;
+                next.error = ex.getMessage();
+                next.finishedAt = LocalDateTime.now();
+                next.expiresAt = System.currentTimeMillis() + ttlMillis;
+                inFlight.remove(next.spec, next);
+            }
+        }
+        releaseIfIdle(bookGuid, slot);
+    }
+
+    private void releaseIfIdle(String bookGuid, BookSlot slot) {
+        if (slot.running == 0 && slot.waiting.isEmpty()) {
+            slots.remove(bookGuid);
+        }
+    }
+
+    private Object execute(Spec spec) {
+        return switch (spec.type()) {
+            case "PL" -> readCoalescer.profitLoss(spec.bookGuid(), spec.start(), spec.end());
+            case "BS" -> readCoalescer.balanceSheet(spec.bookGuid(), spec.asOf());
+            case "CF" -> readCoalescer.cashFlowNet(spec.bookGuid(), spec.start(), spec.end());
+            case "TRIAL_BALANCE" -> readCoalescer.accountTree(spec.bookGuid());
+            case "OPEN_ITEMS" -> lotService.listOpenItems(spec.bookGuid(), spec.ownerType(), spec.ownerGuid(), spec.asOf());
+            case "AGING" -> agingService.report(spec.bookGuid(), spec.ownerType(), spec.ownerGuid());
+            default -> throw new IllegalArgumentException("不支持的报表类型：" + spec.type());
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    /**
+     * 规范化后的报表参数，用于去重
+     */
+    private record Spec(String bookGuid, String type, LocalDate start, LocalDate end, LocalDate asOf,
+                        String ownerType, String ownerGuid) {
+
+        static Spec of(ReportJobRequest request) {
+            String type = request.getType().trim().toUpperCase(Locale.ROOT);
+            if (!TYPES.contains(type)) {
+                throw new IllegalArgumentException("不支持的报表类型：" + request.getType());
+            }
+            return switch (type) {
+                case "PL", "CF" -> {
+                    if (request.getStart() == null || request.getEnd() == null) {
+                        throw new IllegalArgumentException("start 和 end 不能为空");
+                    }
+                    if (request.getEnd().isBefore(request.getStart())) {
+                        throw new IllegalArgumentException("结束日期不能早于开始日期");
+                    }
+                    yield new Spec(request.getBookGuid(), type, request.getStart(), request.getEnd(), null, null, null);
+                }
+                case "BS" -> {
+                    if (request.getAsOf() == null) {
+                        throw new IllegalArgumentException("asOf 不能为空");
+                    }
+                    yield new Spec(request.getBookGuid(), type, null, null, request.getAsOf(), null, null);
+                }
+                case "OPEN_ITEMS", "AGING" -> {
+                    String ownerType = request.getOwnerType() == null ? "CUSTOMER" : request.getOwnerType().trim().toUpperCase(Locale.ROOT);
+                    if (!"CUSTOMER".equals(ownerType) && !"VENDOR".equals(ownerType)) {
+                        throw new IllegalArgumentException("ownerType 只能是 CUSTOMER 或 VENDOR");
+                    }
+                    // 账龄汇总不按截止日计算
+                    LocalDate asOf = "AGING".equals(type) ? null : request.getAsOf();
+                    yield new Spec(request.getBookGuid(), type, null, null, asOf, ownerType, request.getOwnerGuid());
+                }
+                default -> new Spec(request.getBookGuid(), type, null, null, null, null, null);
+            };
+        }
+    }
+
+    /**
+     * 任务数或线程池队列已达上限，稍后重试即可
+     */
+    public static final class Rejected extends RuntimeException {
+        public Rejected(String message) {
+            super(message);
+        }
+    }
+
+    private static final class BookSlot {
+        int running;
+        final Deque<Job> waiting = new ArrayDeque<>();
+    }
+
+    private static final class Job {
+        final String id;
+        final Spec spec;
+        final String shard;
+        final LocalDateTime submittedAt = LocalDateTime.now();
+        volatile Status status = Status.QUEUED;
+        volatile LocalDateTime startedAt;
+        volatile LocalDateTime finishedAt;
+        volatile String error;
+        volatile Object result;
+        volatile Thread worker;
+        volatile QueryScope scope;
+        volatile long expiresAt = Long.MAX_VALUE;
+
+        Job(String id, Spec spec, String shard) {
+            this.id = id;
+            this.spec = spec;
+            this.shard = shard;
+        }
+
+        boolean isFinished() {
+            return status == Status.SUCCEEDED || status == Status.FAILED || status == Status.CANCELLED;
+        }
+
+        ReportJobResponse view() {
+            return new ReportJobResponse(id, spec.type(), status.name(), submittedAt, startedAt, finishedAt, error, result);
+        }
+    }
+}
@@ -8,15 +8,18 @@ import com.moon.backend.dto.ProfitLossResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,7 +28,10 @@ public class ReportService {
 
     private final JdbcTemplate jdbcTemplate;
     private final AccountService accountService;
+    private final PeriodCloseService periodCloseService;
+    private final LedgerPartitionService ledgerPartitionService;
 
+    @Transactional(readOnly = true)
     public ProfitLossResponse profitLoss(String bookGuid, LocalDate start, LocalDate end) {
         List<AccountBalance> balances = queryBalances(bookGuid, start, end);
         Map<String, BigDecimal> income = new HashMap<>();
@@ -71,6 +77,7 @@ public class ReportService {
         return new ProfitLossResponse(incomeItems, expenseItems, totalIncome, totalExpense, netProfit, incomeTree, expenseTree);
     }
 
+    @Transactional(readOnly = true)
     public BalanceSheetResponse balanceSheet(String bookGuid, LocalDate asOf) {
         try {
             // 使用账户树直接分组展示
@@ -96,6 +103,7 @@ public class ReportService {
         }
     }
 
+    @Transactional(readOnly = true)
     public CashFlowResponse cashFlowNet(String bookGuid, LocalDate start, LocalDate end) {
         List<AccountBalance> beginBalances = queryBalances(bookGuid, null, start.minusDays(1));
         List<AccountBalance> periodBalances = queryBalances(bookGuid, start, end);
@@ -121,26 +129,80 @@ public class ReportService {
     }
 
     private List<AccountBalance> queryBalances(String bookGuid, LocalDate start, LocalDate end) {
+        // 累计余额：截止日晚于最近结账日时，从结账生成的期初余额出发，只扫描之后的分录
+        Optional<PeriodCloseService.ClosedPeriod> lastClose = start == null ? periodCloseService.lastClose(bookGuid) : Optional.empty();
+        if (lastClose.isPresent() && (end == null || end.isAfter(lastClose.get().periodEnd()))) {
+            Map<String, AccountBalance> merged = new LinkedHashMap<>();
+            jdbcTemplate.query(
+                    """
+                    SELECT a.guid, a.name, a.account_type, ob.balance_num, ob.balance_denom
+                      FROM account_opening_balances ob
+                      JOIN accounts a ON ob.account_guid = a.guid
+                     WHERE ob.book_guid = ? AND ob.fiscal_year = ?
+                    """,
+                    rs -> {
+                        long denom = rs.getLong("balance_denom");
+                        BigDecimal amt = BigDecimal.valueOf(rs.getLong("balance_num"))
+                                .divide(BigDecimal.valueOf(denom == 0 ? 1 : denom), 2, RoundingMode.HALF_UP);
+                        merged.put(rs.getString("guid"), new AccountBalance(rs.getString("guid"), rs.getString("name"), rs.getString("account_type"), amt));
+                    },
+                    bookGuid,
+                    lastClose.get().fiscalYear() + 1
+            );
+            for (AccountBalance ab : sumSplits(bookGuid, lastClose.get().periodEnd().plusDays(1), end, false)) {
+                merged.merge(ab.guid, ab, (a, b) -> new AccountBalance(a.guid, a.name, a.type, a.amount.add(b.amount)));
+            }
+            return new ArrayList<>(merged.values());
+        }
+        // 期间发生额不含年度结转凭证，避免损益被结账分录冲零
+        return sumSplits(bookGuid, start, end, start != null);
+    }
+
+    private List<AccountBalance> sumSplits(String bookGuid, LocalDate start, LocalDate end, boolean excludeClosing) {
+        List<AccountBalance> hot = sumSplits("transactions", "splits", bookGuid, start, end, excludeClosing);
+        // 区间触及已归档年度时合并归档表
+        Optional<LocalDate> archivedThrough = ledgerPartitionService.archivedThrough(bookGuid);
+        if (archivedThrough.isEmpty() || (start != null && start.isAfter(archivedThrough.get()))) {
+            return hot;
+        }
+        Map<String, AccountBalance> merged = new LinkedHashMap<>();
+        for (AccountBalance ab : hot) {
+            merged.put(ab.guid, ab);
+        }
+        for (AccountBalance ab : sumSplits("transactions_archive", "splits_archive", bookGuid, start, end, excludeClosing)) {
+            merged.merge(ab.guid, ab, (a, b) -> new AccountBalance(a.guid, a.name, a.type, a.amount.add(b.amount)));
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    private List<AccountBalance> sumSplits(String txTable, String splitTable, String bookGuid, LocalDate start, LocalDate end, boolean excludeClosing) {
         StringBuilder sql = new StringBuilder("""
                 SELECT a.guid,
                        a.name,
                        a.account_type,
                        SUM(CAST(s.value_num AS DECIMAL(18,4)) / NULLIF(s.value_denom,0)) AS amount
-                  FROM splits s
-                  JOIN transactions t ON s.tx_guid = t.guid
+                  FROM %s s
+                  JOIN %s t ON s.tx_guid = t.guid
                   JOIN accounts a ON s.account_guid = a.guid
                  WHERE t.book_guid = ?
-                """);
+                """.formatted(splitTable, txTable));
         List<Object> args = new ArrayList<>();
         args.add(bookGuid);
+        // s.post_date 冗余条件用于分区裁剪
         if (start != null) {
-            sql.append(" AND t.post_date >= ? ");
+            sql.append(" AND t.post_date >= ? AND s.post_date >= ? ");
+            args.add(start.atStartOfDay());
             args.add(start.atStartOfDay());
         }
         if (end != null) {
-            sql.append(" AND t.post_date <= ? ");
+            sql.append(" AND t.post_date <= ? AND s.post_date <= ? ");
+            args.add(end.plusDays(1).atStartOfDay().minusNanos(1));
             args.add(end.plusDays(1).atStartOfDay().minusNanos(1));
         }
+        if (excludeClosing) {
+            sql.append(" AND (t.source_type IS NULL OR t.source_type <> ?) ");
+            args.add(PeriodCloseService.SOURCE_YEAR_CLOSE);
+        }
         sql.append(" GROUP BY a.guid, a.name, a.account_type");
 
         return jdbcTemplate.query(sql.toString(), (rs, i) -> {
@@ -149,6 +211,7 @@ public class ReportService {
                 amt = BigDecimal.ZERO;
             }
             return new AccountBalance(
+                    rs.getString("guid"),
                     rs.getString("name"),
                     rs.getString("account_type"),
                     amt.setScale(2, RoundingMode.HALF_UP)
@@ -181,7 +244,7 @@ public class ReportService {
         return sum.setScale(2, RoundingMode.HALF_UP);
     }
 
-    private record AccountBalance(String name, String type, BigDecimal amount) {
+    private record AccountBalance(String guid, String name, String type, BigDecimal amount) {
     }
 
     private AccountNodeResponse findTop(List<AccountNodeResponse> roots, String type) {
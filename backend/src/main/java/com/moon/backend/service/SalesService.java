@@ -24,6 +24,10 @@ public class SalesService {
 
     private final AccountRepository accountRepository;
     private final JdbcTemplate jdbcTemplate;
+    private final PeriodCloseService periodCloseService;
+    private final LotService lotService;
+    private final TaxLedgerService taxLedgerService;
+    private final DocumentLocks documentLocks;
 
     /**
      * 销售发票过账：按 entries 汇总（数量/折扣/含税），贷收入+销项税，借应收。
@@ -34,6 +38,7 @@ public class SalesService {
         if (!hasText(request.getInvoiceGuid())) {
             throw new IllegalArgumentException("请先选择待过账的销售发票");
         }
+        lockForPosting(request.getInvoiceGuid());
         Account ar = resolveByName(bookGuid, "应收账款")
                 .or(() -> resolveByName(bookGuid, request.getReceivableAccountName()))
                 .orElseThrow(() -> new IllegalStateException("未找到“应收账款”科目或指定科目"));
@@ -50,11 +55,13 @@ public class SalesService {
         long cents = request.getAmountCent() == null ? 0 : request.getAmountCent();
         Map<String, Long> baseByAccount = new HashMap<>();
         Map<String, Long> taxByAccount = new HashMap<>();
+        Map<String, TaxLedgerService.TaxLine> taxByTable = Map.of();
 
         if (calc != null && calc.totalCents > 0) {
             cents = calc.totalCents;
             baseByAccount = calc.baseByAccount;
             taxByAccount = calc.taxByAccount;
+            taxByTable = calc.taxByTable;
         } else {
             if (cents <= 0) {
                 throw new IllegalArgumentException("金额必须大于 0");
@@ -65,6 +72,7 @@ public class SalesService {
         }
 
         LocalDateTime now = request.getPostDate() != null ? request.getPostDate() : LocalDateTime.now();
+        periodCloseService.assertOpen(bookGuid, now);
         String txGuid = UUID.randomUUID().toString();
         jdbcTemplate.update(
                 "INSERT INTO transactions (guid, book_guid, num, post_date, enter_date, description, doc_status, source_type, source_guid) " +
@@ -79,25 +87,31 @@ public class SalesService {
                 request.getInvoiceGuid()
         );
 
-        // 借：应收账款 = 含税总额
-        insertSplit(txGuid, ar.getGuid(), cents, request.getDescription());
+        // 借：应收账款 = 含税总额，关联发票时开立未清项 lot
+        String lotGuid = hasText(request.getInvoiceGuid())
+                ? lotService.openInvoiceLot(bookGuid, ar.getGuid(), request.getInvoiceGuid(), coalesce(request.getInvoiceNo(), request.getDescription()))
+                : null;
+        insertSplit(txGuid, now, ar.getGuid(), cents, request.getDescription(), lotGuid);
         // 贷：收入科目（按行汇总）
         for (Map.Entry<String, Long> entry : baseByAccount.entrySet()) {
-            insertSplit(txGuid, entry.getKey(), -entry.getValue(), request.getDescription());
+            insertSplit(txGuid, now, entry.getKey(), -entry.getValue(), request.getDescription());
         }
         // 贷：销项税
         for (Map.Entry<String, Long> entry : taxByAccount.entrySet()) {
-            insertSplit(txGuid, entry.getKey(), -entry.getValue(), "销项税额");
+            insertSplit(txGuid, now, entry.getKey(), -entry.getValue(), "销项税额");
+        }
+        if (!taxByTable.isEmpty()) {
+            taxLedgerService.record(bookGuid, txGuid, now, invoiceOwner(request.getInvoiceGuid()), taxByTable.values());
         }
 
         if (request.getInvoiceGuid() != null && !request.getInvoiceGuid().isBlank()) {
             jdbcTemplate.update(
-                    "UPDATE invoices SET status = 'POSTED', post_txn_guid = ? WHERE guid = ?",
+                    "UPDATE invoices SET status = 'POSTED', post_txn_guid = ?, version = version + 1 WHERE guid = ?",
                     txGuid,
                     request.getInvoiceGuid()
             );
             jdbcTemplate.update(
-                    "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?) WHERE guid = ?",
+                    "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?), version = version + 1 WHERE guid = ?",
                     " | 已过账金额分:" + cents,
                     request.getInvoiceGuid()
             );
@@ -120,6 +134,11 @@ public class SalesService {
         Account cash = resolveCashAccount(bookGuid, request.getCashAccountName());
 
         LocalDateTime now = request.getReceiptDate() != null ? request.getReceiptDate() : LocalDateTime.now();
+        periodCloseService.assertOpen(bookGuid, now);
+        // 锁定被核销的发票，防止并发收付款同时读取结算状态
+        if (hasText(request.getInvoiceGuid())) {
+            documentLocks.lockInvoice(request.getInvoiceGuid());
+        }
         String txGuid = UUID.randomUUID().toString();
         jdbcTemplate.update(
                 "INSERT INTO transactions (guid, book_guid, num, post_date, enter_date, description, doc_status, source_type, source_guid) " +
@@ -134,34 +153,57 @@ public class SalesService {
                 request.getInvoiceGuid() != null ? request.getInvoiceGuid() : request.getReceiptNo()
         );
 
-        insertSplit(txGuid, cash.getGuid(), cents, request.getDescription());
-        insertSplit(txGuid, ar.getGuid(), -cents, request.getDescription());
+        insertSplit(txGuid, now, cash.getGuid(), cents, request.getDescription());
+        // 贷：应收账款，按指定发票/先进先出拆分到各未清 lot
+        String ownerGuid = hasText(request.getCustomerGuid()) ? lotService.customerOwner(bookGuid, request.getCustomerGuid()) : null;
+        Map<String, Long> allocations = lotService.allocate(bookGuid, ar.getGuid(), hasText(request.getInvoiceGuid()) ? request.getInvoiceGuid() : null, ownerGuid, cents);
+        for (Map.Entry<String, Long> entry : allocations.entrySet()) {
+            insertSplit(txGuid, now, ar.getGuid(), -entry.getValue(), request.getDescription(), entry.getKey());
+        }
 
         if (hasText(request.getInvoiceGuid())) {
             jdbcTemplate.update(
-                    "UPDATE invoices SET status = 'APPROVED' WHERE guid = ?",
+                    "UPDATE invoices SET status = 'APPROVED', version = version + 1 WHERE guid = ?",
                     request.getInvoiceGuid()
             );
             jdbcTemplate.update(
-                    "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?) WHERE guid = ?",
+                    "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?), version = version + 1 WHERE guid = ?",
                     " | 已收款金额分:" + cents,
                     request.getInvoiceGuid()
             );
             updateInvoiceSettlement(bookGuid, request.getInvoiceGuid(), "ASSET", null);
         }
+        allocations.remove(null);
+        lotService.closeSettledLots(allocations.keySet(), now);
+    }
+
+    /**
+     * 锁定待过账发票并拒绝重复过账
+     */
+    private void lockForPosting(String invoiceGuid) {
+        DocumentLocks.LockedInvoice invoice = documentLocks.lockInvoice(invoiceGuid);
+        if (invoice != null && invoice.posted()) {
+            throw new IllegalStateException("发票已过账，不能重复过账");
+        }
+    }
+
+    private void insertSplit(String txGuid, LocalDateTime postDate, String accountGuid, long cents, String memo) {
+        insertSplit(txGuid, postDate, accountGuid, cents, memo, null);
     }
 
-    private void insertSplit(String txGuid, String accountGuid, long cents, String memo) {
+    private void insertSplit(String txGuid, LocalDateTime postDate, String accountGuid, long cents, String memo, String lotGuid) {
         LocalDateTime now = LocalDateTime.now();
         jdbcTemplate.update(
-                "INSERT INTO splits (guid, tx_guid, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
-                        "VALUES (?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, NULL)",
+                "INSERT INTO splits (guid, tx_guid, post_date, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
+                        "VALUES (?, ?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, ?)",
                 UUID.randomUUID().toString(),
                 txGuid,
+                postDate,
                 accountGuid,
                 cents,
                 cents,
-                memo
+                memo,
+                lotGuid
         );
     }
 
@@ -182,6 +224,11 @@ public class SalesService {
         return (v == null || v.isBlank()) ? def : v;
     }
 
+    private String invoiceOwner(String invoiceGuid) {
+        List<String> owners = jdbcTemplate.queryForList("SELECT owner_guid FROM invoices WHERE guid = ?", String.class, invoiceGuid);
+        return owners.isEmpty() ? null : owners.get(0);
+    }
+
     private boolean hasText(String v) {
         return v != null && !v.isBlank();
     }
@@ -206,12 +253,12 @@ public class SalesService {
         }
         String newStatus = (settled != null && settled >= total) ? "APPROVED" : "POSTED";
         jdbcTemplate.update(
-                "UPDATE invoices SET status = ? WHERE guid = ?",
+                "UPDATE invoices SET status = ?, version = version + 1 WHERE guid = ?",
                 newStatus,
                 invoiceGuid
         );
         jdbcTemplate.update(
-                "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?) WHERE guid = ?",
+                "UPDATE invoices SET notes = CONCAT(COALESCE(notes,''), ?), version = version + 1 WHERE guid = ?",
                 " | 已结算金额分:" + (settled == null ? 0 : settled),
                 invoiceGuid
         );
@@ -232,6 +279,8 @@ public class SalesService {
                        e.tax_table_guid,
                        e.taxable,
                        e.tax_included,
+                       e.tax_amount_num,
+                       e.tax_amount_denom,
                        tt.rate_num,
                        tt.rate_denom,
                        tt.payable_account_guid,
@@ -251,6 +300,8 @@ public class SalesService {
                         rs.getString("tax_table_guid"),
                         rs.getInt("taxable"),
                         rs.getInt("tax_included"),
+                        rs.getObject("tax_amount_num") != null ? rs.getLong("tax_amount_num") : null,
+                        rs.getObject("tax_amount_denom") != null ? rs.getLong("tax_amount_denom") : null,
                         rs.getObject("rate_num") != null ? rs.getLong("rate_num") : null,
                         rs.getObject("rate_denom") != null ? rs.getLong("rate_denom") : null,
                         rs.getString("payable_account_guid"),
@@ -266,6 +317,7 @@ public class SalesService {
 
         Map<String, Long> baseByAccount = new HashMap<>();
         Map<String, Long> taxByAccount = new HashMap<>();
+        Map<String, TaxLedgerService.TaxLine> taxByTable = new HashMap<>();
         long totalCents = 0;
 
         for (InvoiceLine line : lines) {
@@ -298,7 +350,11 @@ public class SalesService {
 
             BigDecimal base;
             BigDecimal tax = BigDecimal.ZERO;
-            if (taxable) {
+            if (taxable && line.taxAmountNum != null) {
+                // 明细写入时已预计算税额
+                tax = toDecimal(line.taxAmountNum, line.taxAmountDenom);
+                base = (line.taxIncluded != null && line.taxIncluded == 1) ? net.subtract(tax) : net;
+            } else if (taxable) {
                 if (line.taxIncluded != null && line.taxIncluded == 1) {
                     base = net.divide(BigDecimal.ONE.add(rate), 2, RoundingMode.HALF_UP);
                     tax = net.subtract(base);
@@ -317,9 +373,14 @@ public class SalesService {
                 taxByAccount.merge(line.payableAccountGuid, taxCents, Long::sum);
             }
             totalCents += baseCents + taxCents;
+            if (taxable) {
+                taxByTable.merge(line.taxTableGuid,
+                        new TaxLedgerService.TaxLine(line.taxTableGuid, line.direction.toUpperCase(), baseCents, taxCents),
+                        (a, b) -> a.plus(b.baseCents(), b.taxCents()));
+            }
         }
 
-        return new InvoiceCalc(baseByAccount, taxByAccount, totalCents);
+        return new InvoiceCalc(baseByAccount, taxByAccount, taxByTable, totalCents);
     }
 
     private BigDecimal toDecimal(Long num, Long denom) {
@@ -334,7 +395,8 @@ public class SalesService {
         return amount.multiply(BigDecimal.valueOf(100)).setScale(0, RoundingMode.HALF_UP).longValue();
     }
 
-    private record InvoiceCalc(Map<String, Long> baseByAccount, Map<String, Long> taxByAccount, long totalCents) {
+    private record InvoiceCalc(Map<String, Long> baseByAccount, Map<String, Long> taxByAccount,
+                               Map<String, TaxLedgerService.TaxLine> taxByTable, long totalCents) {
     }
 
     private record InvoiceLine(
@@ -348,6 +410,8 @@ public class SalesService {
             String taxTableGuid,
             Integer taxable,
             Integer taxIncluded,
+            Long taxAmountNum,
+            Long taxAmountDenom,
             Long rateNum,
             Long rateDenom,
             String payableAccountGuid,
@@ -0,0 +1,439 @@
+package com.moon.backend.service;
+
+import com.moon.backend.dto.ScheduleRequest;
+import com.moon.backend.dto.ScheduleResponse;
+import com.moon.backend.dto.ScheduleSplitRequest;
+import com.moon.backend.entity.Account;
+import com.moon.backend.repository.AccountRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 定时凭证：按 schedxactions / recurrences 周期生成凭证（房租、工资计提、折旧等）。
+ * 到期计划用 FOR UPDATE SKIP LOCKED 分批领取，多节点同时运行互不重复；
+ * 停机期间错过的期次在下次运行时一次补齐，凭证和分录均批量写入。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ScheduledTransactionService {
+
+    public static final String SOURCE_SCHEDULED = "SCHEDULED";
+
+    private static final Set<String> FREQS = Set.of("ONCE", "DAILY", "WEEKLY", "MONTHLY", "YEARLY");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AccountRepository accountRepository;
+    private final PeriodCloseService periodCloseService;
+    private final ShardDirectory shardDirectory;
+
+    @Value("${ees.scheduler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ees.scheduler.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * 单个计划每次运行最多补齐的期次，防止异常配置（如 DAILY 起始于多年前）一次写入过多
+     */
+    @Value("${ees.scheduler.max-catch-up:400}")
+    private int maxCatchUp;
+
+    @Transactional
+    public ScheduleResponse createSchedule(ScheduleRequest request) {
+        String freq = request.getFreq().trim().toUpperCase(Locale.ROOT);
+        if (!FREQS.contains(freq)) {
+            throw new IllegalArgumentException("不支持的频率：" + request.getFreq());
+        }
+        int interval = request.getInterval() == null ? 1 : request.getInterval();
+        if (request.getEndDate() != null && request.getEndDate().isBefore(request.getStartDate())) {
+            throw new IllegalArgumentException("截止时间不能早于开始时间");
+        }
+        parseMonthDay(request.getByMonthDay());
+
+        long total = 0;
+        for (ScheduleSplitRequest split : request.getSplits()) {
+            if (split.getAmountCent() == 0) {
+                throw new IllegalArgumentException("分录金额不能为 0");
+            }
+            Account account = accountRepository.findById(split.getAccountGuid())
+                    .orElseThrow(() -> new IllegalArgumentException("科目不存在"));
+            if (!request.getBookGuid().equals(account.getBookGuid())) {
+                throw new IllegalArgumentException("科目不属于当前账本");
+            }
+            total += split.getAmountCent();
+        }
+        if (total != 0) {
+            throw new IllegalArgumentException("借贷不平衡");
+        }
+
+        String sxGuid = UUID.randomUUID().toString();
+        jdbcTemplate.update(
+                "INSERT INTO schedxactions (guid, book_guid, name, enabled, start_date, end_date, last_occur, next_occur, notes) VALUES (?, ?, ?, 1, ?, ?, NULL, ?, ?)",
+                sxGuid,
+                request.getBookGuid(),
+                request.getName(),
+                request.getStartDate(),
+                request.getEndDate(),
+                request.getStartDate(),
+                request.getNotes()
+        );
+        jdbcTemplate.update(
+                "INSERT INTO recurrences (guid, book_guid, sx_guid, freq, interval_val, by_day, by_month_day) VALUES (?, ?, ?, ?, ?, NULL, ?)",
+                UUID.randomUUID().toString(),
+                request.getBookGuid(),
+                sxGuid,
+                freq,
+                interval,
+                request.getByMonthDay()
+        );
+        String sxTxGuid = UUID.randomUUID().toString();
+        jdbcTemplate.update(
+                "INSERT INTO sx_transactions (guid, book_guid, sx_guid, description) VALUES (?, ?, ?, ?)",
+                sxTxGuid,
+                request.getBookGuid(),
+                sxGuid,
+                StringUtils.hasText(request.getDescription()) ? request.getDescription() : request.getName()
+        );
+        List<Object[]> splitRows = new ArrayList<>();
+        for (ScheduleSplitRequest split : request.getSplits()) {
+            splitRows.add(new Object[]{
+                    UUID.randomUUID().toString(),
+                    request.getBookGuid(),
+                    sxTxGuid,
+                    split.getAccountGuid(),
+                    split.getAmountCent(),
+                    split.getAmountCent(),
+                    split.getMemo()
+            });
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO sx_splits (guid, book_guid, sx_tx_guid, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action) VALUES (?, ?, ?, ?, ?, 100, ?, 100, ?, NULL)",
+                splitRows
+        );
+
+        return new ScheduleResponse(sxGuid, request.getName(), true, freq, interval, request.getByMonthDay(),
+                request.getStartDate(), request.getEndDate(), null, request.getStartDate());
+    }
+
+    public List<ScheduleResponse> listSchedules(String bookGuid) {
+        return jdbcTemplate.query(
+                """
+                SELECT sx.guid, sx.name, sx.enabled, sx.start_date, sx.end_date, sx.last_occur, sx.next_occur,
+                       r.freq, r.interval_val, r.by_month_day
+                  FROM schedxactions sx
+                  LEFT JOIN recurrences r ON r.sx_guid = sx.guid
+                 WHERE sx.book_guid = ?
+                 ORDER BY sx.next_occur IS NULL, sx.next_occur, sx.name
+                """,
+                (rs, i) -> new ScheduleResponse(
+                        rs.getString("guid"),
+                        rs.getString("name"),
+                        rs.getBoolean("enabled"),
+                        rs.getString("freq"),
+                        rs.getObject("interval_val") == null ? null : rs.getInt("interval_val"),
+                        rs.getString("by_month_day"),
+                        toLocalDateTime(rs.getTimestamp("start_date")),
+                        toLocalDateTime(rs.getTimestamp("end_date")),
+                        toLocalDateTime(rs.getTimestamp("last_occur")),
+                        toLocalDateTime(rs.getTimestamp("next_occur"))
+                ),
+                bookGuid
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${ees.scheduler.poll-interval-ms:60000}", initialDelayString = "${ees.scheduler.initial-delay-ms:30000}")
+    public void runScheduled() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            runDueOnAllShards();
+        } catch (RuntimeException ex) {
+            log.warn("定时凭证生成失败", ex);
+        }
+    }
+
+    /**
+     * 依次处理每个分片上的到期计划，返回生成的凭证总数
+     */
+    public int runDueOnAllShards() {
+        int[] created = {0};
+        shardDirectory.forEachShard(shard -> created[0] += runDue());
+        return created[0];
+    }
+
+    /**
+     * 处理当前分片上所有到期计划，返回生成的凭证数。每批在独立事务中领取、生成并推进，批内失败整体回滚。
+     */
+    public int runDue() {
+        return runDue(null);
+    }
+
+    /**
+     * 只处理指定账本的到期计划（手动触发，调用方须已切换到账本所在分片）
+     */
+    public int runDueForBook(String bookGuid) {
+        if (bookGuid == null || bookGuid.isBlank()) {
+            throw new IllegalArgumentException("bookGuid 不能为空");
+        }
+        return runDue(bookGuid);
+    }
+
+    private int runDue(String onlyBook) {
+        LocalDateTime now = LocalDateTime.now();
+        // 迁移冻结中的账本暂不生成，解冻后由下一轮补上
+        Set<String> moving = shardDirectory.frozenBooks();
+        if (onlyBook != null && moving.contains(onlyBook)) {
+            return 0;
+        }
+        int created = 0;
+        while (true) {
+            BatchResult result = transactionTemplate.execute(status -> processBatch(now, moving, onlyBook));
+            if (result == null) {
+                break;
+            }
+            created += result.transactions();
+            if (result.claimed() < batchSize) {
+                break;
+            }
+        }
+        return created;
+    }
+
+    private BatchResult processBatch(LocalDateTime now, Set<String> excludedBooks, String onlyBook) {
+        // 只锁 schedxactions 行；已被其他节点锁住的计划直接跳过
+        Map<String, DueSchedule> due = new LinkedHashMap<>();
+        List<Object> args = new ArrayList<>();
+        args.add(now);
+        args.addAll(excludedBooks);
+        String excludeClause = excludedBooks.isEmpty()
+                ? ""
+                : "AND sx.book_guid NOT IN (" + String.join(", ", Collections.nCopies(excludedBooks.size(), "?")) + ")";
+        if (onlyBook != null) {
+            excludeClause += " AND sx.book_guid = ?";
+            args.add(onlyBook);
+        }
+        args.add(batchSize);
+        jdbcTemplate.query(
+                """
+                SELECT sx.guid, sx.book_guid, sx.name, sx.start_date, sx.end_date, sx.next_occur,
+                       r.freq, r.interval_val, r.by_month_day
+                  FROM schedxactions sx
+                  LEFT JOIN recurrences r ON r.sx_guid = sx.guid
+                 WHERE sx.enabled = 1
+                   AND sx.next_occur <= ?
+                   %s
+                 ORDER BY sx.next_occur
+                 LIMIT ?
+                 FOR UPDATE OF sx SKIP LOCKED
+                """.formatted(excludeClause),
+                rs -> {
+                    due.putIfAbsent(rs.getString("guid"), new DueSchedule(
+                            rs.getString("guid"),
+                            rs.getString("book_guid"),
+                            rs.getString("name"),
+                            rs.getTimestamp("start_date").toLocalDateTime(),
+                            toLocalDateTime(rs.getTimestamp("end_date")),
+                            rs.getTimestamp("next_occur").toLocalDateTime(),
+                            rs.getString("freq") == null ? "ONCE" : rs.getString("freq").toUpperCase(Locale.ROOT),
+                            rs.getObject("interval_val") == null ? 1 : Math.max(1, rs.getInt("interval_val")),
+                            rs.getString("by_month_day")
+                    ));
+                },
+                args.toArray()
+        );
+        if (due.isEmpty()) {
+            return new BatchResult(0, 0);
+        }
+
+        Map<String, Map<String, TemplateTx>> templates = loadTemplates(due.keySet());
+
+        List<Object[]> txRows = new ArrayList<>();
+        List<Object[]> splitRows = new ArrayList<>();
+        List<Object[]> scheduleRows = new ArrayList<>();
+        for (DueSchedule sx : due.values()) {
+            Map<String, TemplateTx> txs = templates.getOrDefault(sx.guid(), Collections.emptyMap());
+            Optional<LocalDate> closedUntil = periodCloseService.lockedLastClose(sx.bookGuid())
+                    .map(PeriodCloseService.ClosedPeriod::periodEnd);
+
+            LocalDateTime cursor = sx.nextOccur();
+            LocalDateTime last = null;
+            int count = 0;
+            while (cursor != null && !cursor.isAfter(now) && withinEnd(cursor, sx.endDate()) && count < maxCatchUp) {
+                LocalDateTime occur = cursor;
+                // 已结账期间不再补记，仅推进期次
+                boolean closed = closedUntil.isPresent() && !occur.toLocalDate().isAfter(closedUntil.get());
+                if (!closed) {
+                    for (TemplateTx tx : txs.values()) {
+                        String txGuid = UUID.randomUUID().toString();
+                        txRows.add(new Object[]{
+                                txGuid,
+                                sx.bookGuid(),
+                                occur,
+                                now,
+                                StringUtils.hasText(tx.description()) ? tx.description() : sx.name(),
+                                SOURCE_SCHEDULED,
+                                sx.guid()
+                        });
+                        for (TemplateSplit split : tx.splits()) {
+                            splitRows.add(new Object[]{
+                                    UUID.randomUUID().toString(),
+                                    txGuid,
+                                    occur,
+                                    split.accountGuid(),
+                                    split.valueNum(),
+                                    split.valueDenom(),
+                                    split.quantityNum(),
+                                    split.quantityDenom(),
+                                    split.memo(),
+                                    split.action()
+                            });
+                        }
+                    }
+                }
+                last = occur;
+                cursor = nextOccurrence(occur, sx);
+                count++;
+            }
+
+            boolean stillEnabled = cursor != null && withinEnd(cursor, sx.endDate());
+            scheduleRows.add(new Object[]{last, cursor, stillEnabled, sx.guid()});
+        }
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO transactions (guid, book_guid, num, post_date, enter_date, description, doc_status, source_type, source_guid) " +
+                        "VALUES (?, ?, NULL, ?, ?, ?, 'POSTED', ?, ?)",
+                txRows
+        );
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO splits (guid, tx_guid, post_date, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 'N', NULL, NULL)",
+                splitRows
+        );
+        jdbcTemplate.batchUpdate(
+                "UPDATE schedxactions SET last_occur = COALESCE(?, last_occur), next_occur = ?, enabled = ? WHERE guid = ?",
+                scheduleRows
+        );
+        return new BatchResult(due.size(), txRows.size());
+    }
+
+    private Map<String, Map<String, TemplateTx>> loadTemplates(Set<String> sxGuids) {
+        String placeholders = String.join(",", Collections.nCopies(sxGuids.size(), "?"));
+        Map<String, Map<String, TemplateTx>> map = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                """
+                SELECT st.sx_guid, st.guid AS sx_tx_guid, st.description,
+                       ss.account_guid, ss.value_num, ss.value_denom, ss.quantity_num, ss.quantity_denom, ss.memo, ss.action
+                  FROM sx_transactions st
+                  JOIN sx_splits ss ON ss.sx_tx_guid = st.guid
+                 WHERE st.sx_guid IN (%s)
+                 ORDER BY st.sx_guid, st.guid
+                """.formatted(placeholders),
+                rs -> {
+                    String description = rs.getString("description");
+                    TemplateTx tx = map.computeIfAbsent(rs.getString("sx_guid"), k -> new LinkedHashMap<>())
+                            .computeIfAbsent(rs.getString("sx_tx_guid"), k -> new TemplateTx(description, new ArrayList<>()));
+                    tx.splits().add(new TemplateSplit(
+                            rs.getString("account_guid"),
+                            rs.getLong("value_num"),
+                            rs.getLong("value_denom"),
+                            rs.getLong("quantity_num"),
+                            rs.getLong("quantity_denom"),
+                            rs.getString("memo"),
+                            rs.getString("action")
+                    ));
+                },
+                sxGuids.toArray()
+        );
+        return map;
+    }
+
+    /**
+     * 按频率推进一期；ONCE 返回 null 表示计划结束。
+     */
+    private LocalDateTime nextOccurrence(LocalDateTime current, DueSchedule sx) {
+        return switch (sx.freq()) {
+            case "DAILY" -> current.plusDays(sx.interval());
+            case "WEEKLY" -> current.plusWeeks(sx.interval());
+            case "MONTHLY" -> {
+                // 未指定固定日时以开始日期的“日”为锚点，避免 31 日经过 2 月后漂移到 28 日
+                LocalDateTime next = current.plusMonths(sx.interval());
+                Integer day = parseMonthDay(sx.byMonthDay());
+                if (day == null) {
+                    day = sx.startDate().getDayOfMonth();
+                }
+                LocalDate date = next.toLocalDate();
+                int target = day < 0 ? date.lengthOfMonth() : Math.min(day, date.lengthOfMonth());
+                yield next.withDayOfMonth(target);
+            }
+            case "YEARLY" -> current.plusYears(sx.interval());
+            default -> null;
+        };
+    }
+
+    /**
+     * 解析按月固定日：1-31，-1 / L 表示月末；为空返回 null。
+     */
+    private Integer parseMonthDay(String byMonthDay) {
+        if (!StringUtils.hasText(byMonthDay)) {
+            return null;
+        }
+        String value = byMonthDay.trim();
+        if ("L".equalsIgnoreCase(value) || "-1".equals(value)) {
+            return -1;
+        }
+        try {
+            int day = Integer.parseInt(value);
+            if (day < 1 || day > 31) {
+                throw new IllegalArgumentException("按月固定日须为 1-31 或 -1");
+            }
+            return day;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("按月固定日须为 1-31 或 -1");
+        }
+    }
+
+    private boolean withinEnd(LocalDateTime occur, LocalDateTime endDate) {
+        return endDate == null || !occur.isAfter(endDate);
+    }
+
+    private LocalDateTime toLocalDateTime(Timestamp ts) {
+        return ts == null ? null : ts.toLocalDateTime();
+    }
+
+    private record DueSchedule(String guid, String bookGuid, String name, LocalDateTime startDate, LocalDateTime endDate, LocalDateTime nextOccur,
+                               String freq, int interval, String byMonthDay) {
+    }
+
+    private record TemplateTx(String description, List<TemplateSplit> splits) {
+    }
+
+    private record TemplateSplit(String accountGuid, long valueNum, long valueDenom, long quantityNum, long quantityDenom,
+                                 String memo, String action) {
+    }
+
+    private record BatchResult(int claimed, int transactions) {
+    }
+}
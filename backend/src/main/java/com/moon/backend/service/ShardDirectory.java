@@ -0,0 +1,232 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.ShardContext;
+import com.moon.backend.config.ShardDataSources;
+import com.moon.backend.config.ShardProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 账本分片目录：book_shards 记录账本所在分片（无记录即 main），按 LRU 缓存 ttl-ms（多节点下迁移状态的可见延迟）。
+ * 目录始终直接读写 main 主库，不受当前 ShardContext 与副本路由影响。未开启分片时所有账本都在 main。
+ */
+@Slf4j
+@Service
+public class ShardDirectory {
+
+    public static final String ACTIVE = "ACTIVE";
+    /** 迁移复制阶段：读写照常，归档等不记变更流水的搬运暂停 */
+    public static final String COPYING = "COPYING";
+    /** 迁移冻结阶段：拒绝写入 */
+    public static final String MOVING = "MOVING";
+
+    private final ShardDataSources shardDataSources;
+    private final JdbcTemplate directory;
+    private final Map<String, Placement> cache;
+    private final long ttlMillis;
+
+    public ShardDirectory(ShardProperties properties,
+                          ObjectProvider<ShardDataSources> shardDataSources,
+                          @Value("${ees.shards.directory-cache-size:10000}") int maxSize,
+                          @Value("${ees.shards.directory-ttl-ms:5000}") long ttlMillis) {
+        this.shardDataSources = properties.isEnabled() ? shardDataSources.getIfAvailable() : null;
+        this.directory = this.shardDataSources == null ? null : new JdbcTemplate(this.shardDataSources.get(ShardContext.MAIN));
+        this.ttlMillis = ttlMillis;
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Placement> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public List<String> shardKeys() {
+        return isEnabled() ? List.copyOf(shardDataSources.all().keySet()) : List.of(ShardContext.MAIN);
+    }
+
+    public String shardOf(String bookGuid) {
+        return placement(bookGuid).shardKey();
+    }
+
+    /**
+     * 迁移冻结阶段，拒绝写入
+     */
+    public boolean isFrozen(String bookGuid) {
+        return MOVING.equals(placement(bookGuid).status());
+    }
+
+    /**
+     * 迁移进行中（复制或冻结阶段）
+     */
+    public boolean isRelocating(String bookGuid) {
+        return !ACTIVE.equals(placement(bookGuid).status());
+    }
+
+    /**
+     * 处于迁移冻结阶段的账本，后台任务跳过这些账本的写入
+     */
+    public Set<String> frozenBooks() {
+        if (!isEnabled()) {
+            return Set.of();
+        }
+        return Set.copyOf(directory.queryForList("SELECT book_guid FROM book_shards WHERE status = ?", String.class, MOVING));
+    }
+
+    /**
+     * 依次在每个分片上执行（设置 ShardContext），单个分片失败不影响其余分片
+     */
+    public void forEachShard(Consumer<String> action) {
+        for (String shard : shardKeys()) {
+            try {
+                ShardContext.run(shard, () -> action.accept(shard));
+            } catch (RuntimeException ex) {
+                if (!isEnabled()) {
+                    throw ex;
+                }
+                log.warn("分片 {} 上的任务失败", shard, ex);
+            }
+        }
+    }
+
+    /**
+     * 为新账本选择负载最低的分片：按分片 splits 表估算行数，其次按账本数
+     */
+    public String allocate() {
+        if (!isEnabled()) {
+            return ShardContext.MAIN;
+        }
+        return loads().stream()
+                .min(Comparator.comparingLong(ShardLoad::splitRows).thenComparingLong(ShardLoad::books))
+                .map(ShardLoad::shardKey)
+                .orElse(ShardContext.MAIN);
+    }
+
+    public List<ShardLoad> loads() {
+        Map<String, Long> books = new HashMap<>();
+        if (isEnabled()) {
+            directory.query("SELECT shard_key, COUNT(*) AS books FROM book_shards GROUP BY shard_key",
+                    rs -> {
+                        books.put(rs.getString("shard_key"), rs.getLong("books"));
+                    });
+            Long total = directory.queryForObject("SELECT COUNT(*) FROM books", Long.class);
+            long assigned = books.values().stream().mapToLong(Long::longValue).sum() - books.getOrDefault(ShardContext.MAIN, 0L);
+            books.put(ShardContext.MAIN, (total == null ? 0 : total) - assigned);
+        }
+        List<ShardLoad> loads = new ArrayList<>();
+        for (String shard : shardKeys()) {
+            long splitRows = -1;
+            if (isEnabled()) {
+                try {
+                    Long rows = new JdbcTemplate(shardDataSources.get(shard)).queryForObject(
+                            "SELECT COALESCE(SUM(TABLE_ROWS), 0) FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME IN ('splits', 'splits_archive')",
+                            Long.class
+                    );
+                    splitRows = rows == null ? 0 : rows;
+                } catch (RuntimeException ex) {
+                    // 不可达的分片不参与分配
+                    log.warn("分片 {} 负载查询失败", shard, ex);
+                    splitRows = Long.MAX_VALUE;
+                }
+            }
+            loads.add(new ShardLoad(shard, books.getOrDefault(shard, 0L), splitRows));
+        }
+        return loads;
+    }
+
+    /**
+     * 登记新账本所在分片（main 不登记）
+     */
+    public void assign(String bookGuid, String shardKey) {
+        if (!isEnabled() || ShardContext.MAIN.equals(shardKey)) {
+            return;
+        }
+        shardDataSources.get(shardKey);
+        directory.update(
+                "INSERT INTO book_shards (book_guid, shard_key, status, updated_at) VALUES (?, ?, ?, ?)",
+                bookGuid, shardKey, ACTIVE, LocalDateTime.now()
+        );
+        evict(bookGuid);
+    }
+
+    void markStatus(String bookGuid, String status) {
+        String current = shardOf(bookGuid);
+        directory.update(
+                """
+                INSERT INTO book_shards (book_guid, shard_key, status, updated_at) VALUES (?, ?, ?, ?)
+                ON DUPLICATE KEY UPDATE status = VALUES(status), updated_at = VALUES(updated_at)
+                """,
+                bookGuid, current, status, LocalDateTime.now()
+        );
+        evict(bookGuid);
+    }
+
+    void flip(String bookGuid, String shardKey) {
+        directory.update(
+                "UPDATE book_shards SET shard_key = ?, status = ?, updated_at = ? WHERE book_guid = ?",
+                shardKey, ACTIVE, LocalDateTime.now(), bookGuid
+        );
+        evict(bookGuid);
+    }
+
+    ShardDataSources dataSources() {
+        if (!isEnabled()) {
+            throw new IllegalStateException("未开启分片");
+        }
+        return shardDataSources;
+    }
+
+    private Placement placement(String bookGuid) {
+        if (!isEnabled() || bookGuid == null || bookGuid.isBlank()) {
+            return Placement.MAIN;
+        }
+        Placement cached;
+        synchronized (cache) {
+            cached = cache.get(bookGuid);
+        }
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadedAt() < ttlMillis) {
+            return cached;
+        }
+        Placement loaded = directory.query(
+                "SELECT shard_key, status FROM book_shards WHERE book_guid = ?",
+                rs -> rs.next()
+                        ? new Placement(rs.getString("shard_key"), rs.getString("status"), now)
+                        : new Placement(ShardContext.MAIN, ACTIVE, now),
+                bookGuid
+        );
+        synchronized (cache) {
+            cache.put(bookGuid, loaded);
+        }
+        return loaded;
+    }
+
+    private void evict(String bookGuid) {
+        synchronized (cache) {
+            cache.remove(bookGuid);
+        }
+    }
+
+    public record ShardLoad(String shardKey, long books, long splitRows) {
+    }
+
+    private record Placement(String shardKey, String status, long loadedAt) {
+        static final Placement MAIN = new Placement(ShardContext.MAIN, ACTIVE, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,120 @@
+package com.moon.backend.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并：同一 key 的并发调用只有第一个（leader）真正执行，其余调用等待并共享结果或异常。
+ * 只合并进行中的调用，完成即移除，不缓存结果；等待超过 waitMillis 的调用报错返回，不影响 leader。
+ * leader 因自身请求被放弃（abandoned 判定的异常）而失败时，等待者重新发起而不是共享该异常。
+ * 等待者在等待前调用 Parking.park 让出占用的资源（如准入许可），转为 leader 重新计算前 resume 取回。
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long waitMillis;
+    private final Predicate<RuntimeException> abandoned;
+
+    public SingleFlight(long waitMillis) {
+        this(waitMillis, ex -> false);
+    }
+
+    public SingleFlight(long waitMillis, Predicate<RuntimeException> abandoned) {
+        this.waitMillis = waitMillis;
+        this.abandoned = abandoned;
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        return execute(key, loader, Parking.NONE);
+    }
+
+    public V execute(K key, Supplier<V> loader, Parking parking) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing;
+        while ((existing = inFlight.putIfAbsent(key, mine)) != null) {
+            parking.park();
+            try {
+                return await(existing);
+            } catch (RuntimeException ex) {
+                if (!abandoned.test(ex)) {
+                    throw ex;
+                }
+            }
+            // leader 被放弃，取回资源后再尝试成为 leader
+            parking.resume();
+        }
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new Busy();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("查询被中断");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 等待者在等待期间让出的资源；resume 取不回时抛出异常，本次调用失败
+     */
+    public interface Parking {
+
+        Parking NONE = new Parking() {
+            @Override
+            public void park() {
+            }
+
+            @Override
+            public void resume() {
+            }
+        };
+
+        void park();
+
+        void resume();
+    }
+
+    /**
+     * 等待相同查询的结果超时，leader 仍在执行；调用方应稍后重试（503 + Retry-After）
+     */
+    public static final class Busy extends RuntimeException {
+        public Busy() {
+            this("相同查询正在执行，请稍后重试");
+        }
+
+        public Busy(String message) {
+            super(message);
+        }
+    }
+}
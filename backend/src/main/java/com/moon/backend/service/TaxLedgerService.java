@@ -0,0 +1,172 @@
+package com.moon.backend.service;
+
+import com.moon.backend.dto.TaxLedgerLineResponse;
+import com.moon.backend.dto.TaxReportResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * 增值税申报数据：过账时按 月份 × 税表 × 往来单位 增量累加到 tax_period_totals，
+ * 并记录 tax_ledger_lines 供钻取。报表只读汇总表，不扫描 splits。
+ */
+@Service
+@RequiredArgsConstructor
+public class TaxLedgerService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 记录一张凭证的税额，需与过账处于同一事务。ownerGuid 可为空。
+     */
+    public void record(String bookGuid, String txGuid, LocalDateTime postDate, String ownerGuid, Collection<TaxLine> lines) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        int period = periodOf(postDate);
+        String owner = ownerGuid == null ? "" : ownerGuid;
+        List<Object[]> lineRows = new ArrayList<>();
+        List<Object[]> totalRows = new ArrayList<>();
+        for (TaxLine line : lines) {
+            lineRows.add(new Object[]{
+                    UUID.randomUUID().toString(), bookGuid, period, line.taxTableGuid(), owner, line.direction(),
+                    txGuid, postDate, line.baseCents(), line.taxCents()
+            });
+            totalRows.add(new Object[]{
+                    bookGuid, period, line.taxTableGuid(), owner, line.direction(), line.baseCents(), line.taxCents()
+            });
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO tax_ledger_lines (guid, book_guid, period_month, tax_table_guid, owner_guid, direction, tx_guid, post_date, base_cents, tax_cents) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                lineRows
+        );
+        jdbcTemplate.batchUpdate(
+                """
+                INSERT INTO tax_period_totals (book_guid, period_month, tax_table_guid, owner_guid, direction, base_cents, tax_cents, tx_count)
+                VALUES (?, ?, ?, ?, ?, ?, ?, 1)
+                ON DUPLICATE KEY UPDATE base_cents = base_cents + VALUES(base_cents),
+                                        tax_cents = tax_cents + VALUES(tax_cents),
+                                        tx_count = tx_count + 1
+                """,
+                totalRows
+        );
+    }
+
+    /**
+     * 申报汇总，from/to 为 yyyyMM（含）。byOwner 为 true 时按往来单位展开。
+     */
+    public TaxReportResponse report(String bookGuid, int from, int to, boolean byOwner) {
+        String ownerCols = byOwner ? "t.owner_guid, o.name" : "'' AS owner_guid, NULL AS name";
+        String groupCols = byOwner ? ", t.owner_guid, o.name" : "";
+        List<TaxReportResponse.Row> rows = jdbcTemplate.query(
+                """
+                SELECT t.period_month, t.tax_table_guid, tt.name AS table_name, t.direction, %s,
+                       SUM(t.base_cents) AS base_cents, SUM(t.tax_cents) AS tax_cents, SUM(t.tx_count) AS tx_count
+                  FROM tax_period_totals t
+                  JOIN taxtables tt ON t.tax_table_guid = tt.guid
+                  LEFT JOIN owner o ON t.owner_guid = o.guid
+                 WHERE t.book_guid = ?
+                   AND t.period_month BETWEEN ? AND ?
+                 GROUP BY t.period_month, t.tax_table_guid, tt.name, t.direction%s
+                 ORDER BY t.period_month, t.direction DESC, tt.name
+                """.formatted(ownerCols, groupCols),
+                (rs, i) -> new TaxReportResponse.Row(
+                        rs.getInt("period_month"),
+                        rs.getString("tax_table_guid"),
+                        rs.getString("table_name"),
+                        rs.getString("direction"),
+                        emptyToNull(rs.getString("owner_guid")),
+                        rs.getString("name"),
+                        rs.getLong("base_cents"),
+                        rs.getLong("tax_cents"),
+                        rs.getInt("tx_count")
+                ),
+                bookGuid,
+                from,
+                to
+        );
+
+        Map<Integer, long[]> byPeriod = new TreeMap<>();
+        for (TaxReportResponse.Row row : rows) {
+            long[] sums = byPeriod.computeIfAbsent(row.getPeriod(), k -> new long[2]);
+            if ("OUTPUT".equalsIgnoreCase(row.getDirection())) {
+                sums[0] += row.getTaxCent();
+            } else {
+                sums[1] += row.getTaxCent();
+            }
+        }
+        List<TaxReportResponse.PeriodTotal> totals = new ArrayList<>();
+        byPeriod.forEach((period, sums) -> totals.add(new TaxReportResponse.PeriodTotal(period, sums[0], sums[1], sums[0] - sums[1])));
+        return new TaxReportResponse(rows, totals);
+    }
+
+    /**
+     * 钻取：某期间某税表（可选往来单位）的凭证明细。
+     */
+    public List<TaxLedgerLineResponse> lines(String bookGuid, int period, String taxTableGuid, String ownerGuid) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT l.tx_guid, COALESCE(tx.num, ta.num) AS num, COALESCE(tx.description, ta.description) AS description,
+                       l.post_date, tt.name AS table_name, l.direction,
+                       o.name AS owner_name, l.base_cents, l.tax_cents
+                  FROM tax_ledger_lines l
+                  LEFT JOIN transactions tx ON l.tx_guid = tx.guid AND l.post_date = tx.post_date
+                  LEFT JOIN transactions_archive ta ON l.tx_guid = ta.guid AND l.post_date = ta.post_date
+                  JOIN taxtables tt ON l.tax_table_guid = tt.guid
+                  LEFT JOIN owner o ON l.owner_guid = o.guid
+                 WHERE l.book_guid = ?
+                   AND l.period_month = ?
+                """);
+        List<Object> args = new ArrayList<>();
+        args.add(bookGuid);
+        args.add(period);
+        if (taxTableGuid != null && !taxTableGuid.isBlank()) {
+            sql.append(" AND l.tax_table_guid = ? ");
+            args.add(taxTableGuid);
+        }
+        if (ownerGuid != null) {
+            sql.append(" AND l.owner_guid = ? ");
+            args.add(ownerGuid);
+        }
+        sql.append(" ORDER BY l.post_date, l.tx_guid");
+        return jdbcTemplate.query(sql.toString(),
+                (rs, i) -> new TaxLedgerLineResponse(
+                        rs.getString("tx_guid"),
+                        rs.getString("num"),
+                        rs.getString("description"),
+                        rs.getTimestamp("post_date").toLocalDateTime(),
+                        rs.getString("table_name"),
+                        rs.getString("direction"),
+                        rs.getString("owner_name"),
+                        rs.getLong("base_cents"),
+                        rs.getLong("tax_cents")
+                ),
+                args.toArray());
+    }
+
+    public static int periodOf(LocalDateTime date) {
+        return date.getYear() * 100 + date.getMonthValue();
+    }
+
+    private String emptyToNull(String v) {
+        return (v == null || v.isEmpty()) ? null : v;
+    }
+
+    /**
+     * 按税表汇总的单张凭证税额（分）
+     */
+    public record TaxLine(String taxTableGuid, String direction, long baseCents, long taxCents) {
+
+        public TaxLine plus(long base, long tax) {
+            return new TaxLine(taxTableGuid, direction, baseCents + base, taxCents + tax);
+        }
+    }
+}
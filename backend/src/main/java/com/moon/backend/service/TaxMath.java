@@ -0,0 +1,93 @@
+package com.moon.backend.service;
+
+import java.math.BigDecimal;
+
+/**
+ * 税额整数运算（分），四舍五入（HALF_UP），不经过浮点。
+ */
+public final class TaxMath {
+
+    private TaxMath() {
+    }
+
+    /**
+     * num / denom 四舍五入到整数，denom 必须为正。
+     */
+    public static long roundHalfUp(long num, long denom) {
+        if (denom <= 0) {
+            throw new IllegalArgumentException("分母必须为正数");
+        }
+        long q = Math.floorDiv(num, denom);
+        long r = Math.floorMod(num, denom);
+        if (num >= 0) {
+            return r * 2 >= denom ? q + 1 : q;
+        }
+        // 负数按绝对值舍入，保持与正数对称
+        return -roundHalfUp(-num, denom);
+    }
+
+    /**
+     * 百分比税率转为基点（rate_num / 10000），最多两位小数，超出精度报错而不是截断
+     */
+    public static long percentToBasisPoints(double percent) {
+        try {
+            return BigDecimal.valueOf(percent).movePointRight(2).longValueExact();
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("税率最多保留两位小数");
+        }
+    }
+
+    /**
+     * 不含税金额的税额：net * rate
+     */
+    public static long taxExclusive(long netCents, long rateNum, long rateDenom) {
+        return roundHalfUp(Math.multiplyExact(netCents, rateNum), rateDenom);
+    }
+
+    /**
+     * 含税金额拆分出的税额：net - net / (1 + rate)
+     */
+    public static long taxInclusive(long grossCents, long rateNum, long rateDenom) {
+        long base = roundHalfUp(Math.multiplyExact(grossCents, rateDenom), Math.addExact(rateDenom, rateNum));
+        return grossCents - base;
+    }
+
+    public static long tax(long amountCents, long rateNum, long rateDenom, boolean included) {
+        return included ? taxInclusive(amountCents, rateNum, rateDenom) : taxExclusive(amountCents, rateNum, rateDenom);
+    }
+
+    /**
+     * 批量计算（列式）：金额须非负，结果写入 baseOut / taxOut。
+     * 循环内只做整数运算，不分配对象。
+     */
+    public static void calculate(long[] amounts, long[] rateNums, long[] rateDenoms, boolean[] included,
+                                 long[] baseOut, long[] taxOut) {
+        for (int i = 0; i < amounts.length; i++) {
+            long amount = amounts[i];
+            long num = rateNums[i];
+            long denom = rateDenoms[i];
+            if (included != null && included[i]) {
+                long base = roundHalfUp(Math.multiplyExact(amount, denom), Math.addExact(denom, num));
+                baseOut[i] = base;
+                taxOut[i] = amount - base;
+            } else {
+                taxOut[i] = roundHalfUp(Math.multiplyExact(amount, num), denom);
+                baseOut[i] = amount;
+            }
+        }
+    }
+
+    /**
+     * 明细行净额（分）：数量 × 单价 − 折扣
+     */
+    public static long netCents(long qtyNum, long qtyDenom, long priceNum, long priceDenom, Long discountNum, Long discountDenom) {
+        long gross = roundHalfUp(Math.multiplyExact(Math.multiplyExact(qtyNum, priceNum), 100L),
+                Math.multiplyExact(safeDenom(qtyDenom), safeDenom(priceDenom)));
+        long discount = discountNum == null ? 0 : roundHalfUp(Math.multiplyExact(discountNum, 100L), safeDenom(discountDenom));
+        return gross - discount;
+    }
+
+    private static long safeDenom(Long denom) {
+        return (denom == null || denom == 0) ? 1L : denom;
+    }
+}
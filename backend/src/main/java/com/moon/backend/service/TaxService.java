@@ -1,5 +1,7 @@
 package com.moon.backend.service;
 
+import com.moon.backend.dto.TaxBatchCalcRequest;
+import com.moon.backend.dto.TaxBatchCalcResponse;
 import com.moon.backend.dto.TaxCalcRequest;
 import com.moon.backend.dto.TaxCalcResponse;
 import com.moon.backend.dto.TaxPostRequest;
@@ -15,7 +17,13 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -24,7 +32,11 @@ public class TaxService {
 
     private final JdbcTemplate jdbcTemplate;
     private final AccountRepository accountRepository;
+    private final PeriodCloseService periodCloseService;
+    private final EntryTaxService entryTaxService;
+    private final TaxLedgerService taxLedgerService;
 
+    @Transactional(readOnly = true)
     public List<TaxRateResponse> listRates(String bookGuid) {
         return jdbcTemplate.query(
                 "SELECT guid, name, direction, rate_num, rate_denom, payable_account_guid, description, active " +
@@ -45,8 +57,8 @@ public class TaxService {
     @Transactional
     public String createRate(TaxRateRequest request) {
         String guid = UUID.randomUUID().toString();
-        long rateNum = request.getRatePercent().longValue();
-        long rateDenom = 100L;
+        long rateNum = TaxMath.percentToBasisPoints(request.getRatePercent());
+        long rateDenom = 10000L;
         jdbcTemplate.update(
                 "INSERT INTO taxtables (guid, book_guid, name, direction, rate_num, rate_denom, payable_account_guid, description, active) " +
                         "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 1)",
@@ -62,6 +74,29 @@ public class TaxService {
         return guid;
     }
 
+    /**
+     * 修改税率：同步重算该税表下未过账单据的明细行税额，返回重算行数。
+     */
+    @Transactional
+    public int updateRate(String guid, TaxRateRequest request) {
+        int updated = jdbcTemplate.update(
+                "UPDATE taxtables SET name = ?, direction = ?, rate_num = ?, rate_denom = ?, payable_account_guid = ?, description = ? " +
+                        "WHERE guid = ? AND book_guid = ?",
+                request.getName(),
+                request.getDirection().toUpperCase(),
+                TaxMath.percentToBasisPoints(request.getRatePercent()),
+                10000L,
+                request.getPayableAccountGuid(),
+                request.getDescription(),
+                guid,
+                request.getBookGuid()
+        );
+        if (updated == 0) {
+            throw new IllegalArgumentException("税率不存在");
+        }
+        return entryTaxService.recomputeForTaxTable(guid);
+    }
+
     public TaxCalcResponse calculate(TaxCalcRequest request) {
         double rate = request.getRatePercent() != null ? request.getRatePercent() : loadRatePercent(request.getTaxTableGuid());
         long base = request.getAmountCent();
@@ -70,6 +105,58 @@ public class TaxService {
         return new TaxCalcResponse(base, tax, total, rate, null);
     }
 
+    /**
+     * 批量计算：每个税表只查询一次，逐行用整数运算，结果按列返回。
+     */
+    public TaxBatchCalcResponse calculateBatch(TaxBatchCalcRequest request) {
+        long[] amounts = request.getAmountCent();
+        int n = amounts.length;
+        String[] guids = request.getTaxTableGuid();
+        double[] percents = request.getRatePercent();
+        boolean[] included = request.getTaxIncluded();
+        if ((guids != null && guids.length != n) || (percents != null && percents.length != n)
+                || (included != null && included.length != n)) {
+            throw new IllegalArgumentException("各列长度必须与金额列一致");
+        }
+
+        Map<String, long[]> rates = guids == null ? Map.of() : loadRates(request.getBookGuid(), guids);
+        long[] rateNums = new long[n];
+        long[] rateDenoms = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (amounts[i] <= 0) {
+                throw new IllegalArgumentException("第 " + (i + 1) + " 行金额必须大于 0");
+            }
+            String guid = guids == null ? null : guids[i];
+            if (guid != null && !guid.isBlank()) {
+                long[] rate = rates.get(guid);
+                if (rate == null) {
+                    throw new IllegalArgumentException("第 " + (i + 1) + " 行税率不存在");
+                }
+                rateNums[i] = rate[0];
+                rateDenoms[i] = rate[1];
+            } else if (percents != null) {
+                // 百分比最多两位小数，按基点计算
+                rateNums[i] = TaxMath.percentToBasisPoints(percents[i]);
+                rateDenoms[i] = 10000L;
+            } else {
+                throw new IllegalArgumentException("第 " + (i + 1) + " 行缺少税率");
+            }
+        }
+
+        long[] base = new long[n];
+        long[] tax = new long[n];
+        TaxMath.calculate(amounts, rateNums, rateDenoms, included, base, tax);
+        long[] total = new long[n];
+        long sumBase = 0;
+        long sumTax = 0;
+        for (int i = 0; i < n; i++) {
+            total[i] = base[i] + tax[i];
+            sumBase += base[i];
+            sumTax += tax[i];
+        }
+        return new TaxBatchCalcResponse(base, tax, total, sumBase, sumTax, sumBase + sumTax);
+    }
+
     @Transactional
     public String postTax(TaxPostRequest request) {
         // 校验基础科目和税额挂账科目
@@ -97,6 +184,7 @@ public class TaxService {
         String cashGuid = resolveCashAccount(request.getBookGuid(), request.getCashAccountGuid());
 
         LocalDateTime now = request.getPostDate() != null ? request.getPostDate() : LocalDateTime.now();
+        periodCloseService.assertOpen(request.getBookGuid(), now);
         String txGuid = UUID.randomUUID().toString();
         jdbcTemplate.update(
                 "INSERT INTO transactions (guid, book_guid, num, post_date, enter_date, description, doc_status, source_type, source_guid) " +
@@ -110,14 +198,16 @@ public class TaxService {
         );
 
         if ("INPUT".equalsIgnoreCase(direction)) {
-            insertSplit(txGuid, baseAccount.getGuid(), base, request.getDescription());
-            insertSplit(txGuid, payableAccountGuid, tax, "进项税额");
-            insertSplit(txGuid, cashGuid, -total, "付款");
+            insertSplit(txGuid, now, baseAccount.getGuid(), base, request.getDescription());
+            insertSplit(txGuid, now, payableAccountGuid, tax, "进项税额");
+            insertSplit(txGuid, now, cashGuid, -total, "付款");
         } else {
-            insertSplit(txGuid, cashGuid, total, "收款");
-            insertSplit(txGuid, baseAccount.getGuid(), -base, request.getDescription());
-            insertSplit(txGuid, payableAccountGuid, -tax, "销项税额");
+            insertSplit(txGuid, now, cashGuid, total, "收款");
+            insertSplit(txGuid, now, baseAccount.getGuid(), -base, request.getDescription());
+            insertSplit(txGuid, now, payableAccountGuid, -tax, "销项税额");
         }
+        taxLedgerService.record(request.getBookGuid(), txGuid, now, null,
+                List.of(new TaxLedgerService.TaxLine(request.getTaxTableGuid(), direction.toUpperCase(), base, tax)));
         return txGuid;
     }
 
@@ -133,13 +223,14 @@ public class TaxService {
                 .orElseThrow(() -> new IllegalStateException("未找到“银行存款”科目"));
     }
 
-    private void insertSplit(String txGuid, String accountGuid, long cents, String memo) {
+    private void insertSplit(String txGuid, LocalDateTime postDate, String accountGuid, long cents, String memo) {
         LocalDateTime now = LocalDateTime.now();
         jdbcTemplate.update(
-                "INSERT INTO splits (guid, tx_guid, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
-                        "VALUES (?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, NULL)",
+                "INSERT INTO splits (guid, tx_guid, post_date, account_guid, value_num, value_denom, quantity_num, quantity_denom, memo, action, reconcile_state, reconcile_date, lot_guid) " +
+                        "VALUES (?, ?, ?, ?, ?, 100, ?, 100, ?, NULL, 'N', NULL, NULL)",
                 UUID.randomUUID().toString(),
                 txGuid,
+                postDate,
                 accountGuid,
                 cents,
                 cents,
@@ -159,6 +250,34 @@ public class TaxService {
         return value;
     }
 
+    private Map<String, long[]> loadRates(String bookGuid, String[] guids) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String guid : guids) {
+            if (guid != null && !guid.isBlank()) {
+                distinct.add(guid);
+            }
+        }
+        Map<String, long[]> map = new HashMap<>();
+        if (distinct.isEmpty()) {
+            return map;
+        }
+        List<Object> args = new ArrayList<>();
+        args.add(bookGuid);
+        args.addAll(distinct);
+        jdbcTemplate.query(
+                "SELECT guid, rate_num, rate_denom FROM taxtables WHERE book_guid = ? AND guid IN (" +
+                        String.join(",", Collections.nCopies(distinct.size(), "?")) + ")",
+                rs -> {
+                    long denom = rs.getLong("rate_denom");
+                    if (denom > 0) {
+                        map.put(rs.getString("guid"), new long[]{rs.getLong("rate_num"), denom});
+                    }
+                },
+                args.toArray()
+        );
+        return map;
+    }
+
     private long calcTax(long base, double ratePercent) {
         BigDecimal tax = BigDecimal.valueOf(base).multiply(BigDecimal.valueOf(ratePercent))
                 .divide(BigDecimal.valueOf(100), 0, RoundingMode.HALF_UP);
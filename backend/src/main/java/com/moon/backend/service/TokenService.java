@@ -0,0 +1,97 @@
+package com.moon.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * 无状态访问令牌：userId.过期秒数.HMAC-SHA256 签名（base64url）。
+ * 校验只做一次 HMAC 计算，不查库。未配置密钥时每次启动随机生成，重启后旧令牌失效。
+ */
+@Slf4j
+@Service
+public class TokenService {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+
+    public TokenService(@Value("${ees.auth.token-secret:}") String secret,
+                        @Value("${ees.auth.token-ttl-minutes:720}") long ttlMinutes) {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            log.warn("未配置 ees.auth.token-secret，使用随机密钥，重启后需重新登录");
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.ttlSeconds = ttlMinutes * 60;
+    }
+
+    public IssuedToken issue(Long userId) {
+        long expiresAt = Instant.now().getEpochSecond() + ttlSeconds;
+        String payload = userId + "." + expiresAt;
+        return new IssuedToken(payload + "." + ENCODER.encodeToString(sign(payload)), Instant.ofEpochSecond(expiresAt));
+    }
+
+    /**
+     * 校验令牌，返回 userId；签名错误、格式错误或已过期返回 null。
+     */
+    public Long verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int sig = token.lastIndexOf('.');
+        int dot = token.indexOf('.');
+        if (dot <= 0 || sig <= dot) {
+            return null;
+        }
+        String payload = token.substring(0, sig);
+        byte[] actual;
+        try {
+            actual = DECODER.decode(token.substring(sig + 1));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(sign(payload), actual)) {
+            return null;
+        }
+        try {
+            long expiresAt = Long.parseLong(payload.substring(dot + 1));
+            if (expiresAt < Instant.now().getEpochSecond()) {
+                return null;
+            }
+            return Long.parseLong(payload.substring(0, dot));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            // Mac 非线程安全，按次创建；相对 HMAC 计算本身开销很小
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("令牌签名失败", ex);
+        }
+    }
+
+    public record IssuedToken(String token, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,97 @@
+-- ----------------------------
+-- 总账变更流水（outbox）：由触发器在业务写入的同一事务内追加，seq 单调递增，
+-- 下游按 seq 增量拉取。会话变量 @ees_skip_changes 非空时不记录（归档迁移等内部搬运）
+-- ----------------------------
+CREATE TABLE `ledger_changes`  (
+  `seq` bigint NOT NULL AUTO_INCREMENT,
+  `book_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `entity` varchar(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `entity_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `op` char(1) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `changed_at` datetime(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`seq`) USING BTREE,
+  INDEX `idx_ledger_changes_book_seq`(`book_guid` ASC, `seq` ASC) USING BTREE,
+  INDEX `idx_ledger_changes_time`(`changed_at` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Dynamic;
+
+
+-- ----------------------------
+-- Triggers of transactions
+-- ----------------------------
+CREATE TRIGGER `trg_transactions_changes_insert` AFTER INSERT ON `transactions` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'TRANSACTION', NEW.guid, 'I' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_transactions_changes_update` AFTER UPDATE ON `transactions` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'TRANSACTION', NEW.guid, 'U' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_transactions_changes_delete` AFTER DELETE ON `transactions` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT OLD.book_guid, 'TRANSACTION', OLD.guid, 'D' FROM DUAL WHERE @ees_skip_changes IS NULL;
+
+-- ----------------------------
+-- Triggers of accounts
+-- ----------------------------
+CREATE TRIGGER `trg_accounts_changes_insert` AFTER INSERT ON `accounts` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'ACCOUNT', NEW.guid, 'I' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_accounts_changes_update` AFTER UPDATE ON `accounts` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'ACCOUNT', NEW.guid, 'U' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_accounts_changes_delete` AFTER DELETE ON `accounts` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT OLD.book_guid, 'ACCOUNT', OLD.guid, 'D' FROM DUAL WHERE @ees_skip_changes IS NULL;
+
+-- ----------------------------
+-- Triggers of invoices
+-- ----------------------------
+CREATE TRIGGER `trg_invoices_changes_insert` AFTER INSERT ON `invoices` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'INVOICE', NEW.guid, 'I' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_invoices_changes_update` AFTER UPDATE ON `invoices` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'INVOICE', NEW.guid, 'U' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_invoices_changes_delete` AFTER DELETE ON `invoices` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT OLD.book_guid, 'INVOICE', OLD.guid, 'D' FROM DUAL WHERE @ees_skip_changes IS NULL;
+
+-- ----------------------------
+-- Triggers of orders
+-- ----------------------------
+CREATE TRIGGER `trg_orders_changes_insert` AFTER INSERT ON `orders` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'ORDER', NEW.guid, 'I' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_orders_changes_update` AFTER UPDATE ON `orders` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'ORDER', NEW.guid, 'U' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_orders_changes_delete` AFTER DELETE ON `orders` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT OLD.book_guid, 'ORDER', OLD.guid, 'D' FROM DUAL WHERE @ees_skip_changes IS NULL;
+
+-- ----------------------------
+-- Triggers of owner
+-- ----------------------------
+CREATE TRIGGER `trg_owner_changes_insert` AFTER INSERT ON `owner` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'OWNER', NEW.guid, 'I' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_owner_changes_update` AFTER UPDATE ON `owner` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT NEW.book_guid, 'OWNER', NEW.guid, 'U' FROM DUAL WHERE @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_owner_changes_delete` AFTER DELETE ON `owner` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT OLD.book_guid, 'OWNER', OLD.guid, 'D' FROM DUAL WHERE @ees_skip_changes IS NULL;
+
+-- ----------------------------
+-- Triggers of splits
+-- ----------------------------
+CREATE TRIGGER `trg_splits_changes_insert` AFTER INSERT ON `splits` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT t.book_guid, 'SPLIT', NEW.guid, 'I' FROM `transactions` t
+   WHERE t.guid = NEW.tx_guid AND t.post_date = NEW.post_date AND @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_splits_changes_update` AFTER UPDATE ON `splits` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT t.book_guid, 'SPLIT', NEW.guid, 'U' FROM `transactions` t
+   WHERE t.guid = NEW.tx_guid AND t.post_date = NEW.post_date AND @ees_skip_changes IS NULL;
+CREATE TRIGGER `trg_splits_changes_delete` AFTER DELETE ON `splits` FOR EACH ROW
+  INSERT INTO `ledger_changes` (`book_guid`, `entity`, `entity_guid`, `op`)
+  SELECT t.book_guid, 'SPLIT', OLD.guid, 'D' FROM `transactions` t
+   WHERE t.guid = OLD.tx_guid AND t.post_date = OLD.post_date AND @ees_skip_changes IS NULL;
@@ -0,0 +1,12 @@
+-- ----------------------------
+-- 明细行冗余所属单据日期（发票/订单 date_opened，单据创建后不再修改），
+-- 科目关联单据按 (account_guid, doc_date) 索引逆序分页，无需回表排序
+-- ----------------------------
+ALTER TABLE `entries` ADD COLUMN `doc_date` datetime NULL DEFAULT NULL AFTER `date`;
+UPDATE `entries` e JOIN `invoices` i ON e.invoice_guid = i.guid SET e.doc_date = i.date_opened;
+UPDATE `entries` e JOIN `orders` o ON e.order_guid = o.guid SET e.doc_date = o.date_opened;
+UPDATE `entries` SET `doc_date` = COALESCE(`date`, `created_at`, NOW()) WHERE `doc_date` IS NULL;
+ALTER TABLE `entries` MODIFY COLUMN `doc_date` datetime NOT NULL;
+
+ALTER TABLE `entries`
+  ADD INDEX `idx_entries_account_doc_date`(`account_guid` ASC, `doc_date` ASC) USING BTREE;
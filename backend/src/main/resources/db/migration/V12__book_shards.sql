@@ -0,0 +1,13 @@
+-- ----------------------------
+-- 账本分片目录（仅在主库 main 上使用）：没有记录的账本位于 main。
+-- 各分片库使用同一套表结构；books 行在 main 与所在分片各保留一份（main 用于登录绑定与目录）。
+-- status 为 MOVING 表示账本正在迁移的冻结阶段，写请求返回 503
+-- ----------------------------
+CREATE TABLE `book_shards`  (
+  `book_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `shard_key` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `status` varchar(16) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL DEFAULT 'ACTIVE',
+  `updated_at` datetime NOT NULL,
+  PRIMARY KEY (`book_guid`) USING BTREE,
+  INDEX `idx_book_shards_shard`(`shard_key` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Dynamic;
@@ -0,0 +1,6 @@
+-- ----------------------------
+-- 归档进度：ARCHIVING 表示年度归档已开始但未完成（进程中断时由下一次维护继续），DONE 为已完成。
+-- 已有记录均为完成的归档
+-- ----------------------------
+ALTER TABLE `ledger_archives`
+  ADD COLUMN `status` varchar(16) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL DEFAULT 'DONE' AFTER `period_end`;
@@ -0,0 +1,8 @@
+-- ----------------------------
+-- 幂等键租约：claimed_at 为当前执行者取得执行权的时间（毫秒精度，同时用作执行权凭证）。
+-- status_code 为空且 claimed_at 超过 lease-ms 视为执行者已失联，重试请求可接管执行
+-- ----------------------------
+ALTER TABLE `idempotency_keys`
+  ADD COLUMN `claimed_at` datetime(3) NULL DEFAULT NULL AFTER `response_body`;
+
+UPDATE `idempotency_keys` SET `claimed_at` = `created_at` WHERE `claimed_at` IS NULL;
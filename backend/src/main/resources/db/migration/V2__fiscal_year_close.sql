@@ -0,0 +1,29 @@
+-- ----------------------------
+-- 年度结账：结账记录与下一年度期初余额
+-- ----------------------------
+CREATE TABLE `period_closes`  (
+  `guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `book_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `fiscal_year` int NOT NULL,
+  `period_start` date NOT NULL,
+  `period_end` date NOT NULL,
+  `closing_tx_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL,
+  `closed_at` datetime NOT NULL,
+  PRIMARY KEY (`guid`) USING BTREE,
+  UNIQUE INDEX `uk_period_closes_book_year`(`book_guid` ASC, `fiscal_year` ASC) USING BTREE,
+  INDEX `idx_period_closes_end`(`book_guid` ASC, `period_end` ASC) USING BTREE,
+  CONSTRAINT `fk_period_closes_book` FOREIGN KEY (`book_guid`) REFERENCES `books` (`guid`) ON DELETE RESTRICT ON UPDATE RESTRICT,
+  CONSTRAINT `fk_period_closes_tx` FOREIGN KEY (`closing_tx_guid`) REFERENCES `transactions` (`guid`) ON DELETE RESTRICT ON UPDATE RESTRICT
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Dynamic;
+
+CREATE TABLE `account_opening_balances`  (
+  `book_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `fiscal_year` int NOT NULL,
+  `account_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `balance_num` bigint NOT NULL,
+  `balance_denom` bigint NOT NULL,
+  PRIMARY KEY (`book_guid`, `fiscal_year`, `account_guid`) USING BTREE,
+  INDEX `idx_opening_balances_account`(`account_guid` ASC) USING BTREE,
+  CONSTRAINT `fk_opening_balances_book` FOREIGN KEY (`book_guid`) REFERENCES `books` (`guid`) ON DELETE RESTRICT ON UPDATE RESTRICT,
+  CONSTRAINT `fk_opening_balances_account` FOREIGN KEY (`account_guid`) REFERENCES `accounts` (`guid`) ON DELETE RESTRICT ON UPDATE RESTRICT
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Dynamic;
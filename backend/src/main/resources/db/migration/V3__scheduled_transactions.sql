@@ -0,0 +1,4 @@
+-- ----------------------------
+-- 定时凭证：按 (enabled, next_occur) 领取到期计划
+-- ----------------------------
+ALTER TABLE `schedxactions` ADD INDEX `idx_sx_due`(`enabled` ASC, `next_occur` ASC) USING BTREE;
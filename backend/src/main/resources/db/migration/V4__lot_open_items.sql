@@ -0,0 +1,5 @@
+-- ----------------------------
+-- 往来未清项：按账本 + 关闭状态 + 科目查询未清 lot
+-- ----------------------------
+ALTER TABLE `lots` DROP INDEX `idx_lots_closed`;
+ALTER TABLE `lots` ADD INDEX `idx_lots_closed`(`book_guid` ASC, `is_closed` ASC, `account_guid` ASC) USING BTREE;
@@ -0,0 +1,39 @@
+-- ----------------------------
+-- 税务汇总：按月 + 税表 + 往来单位增量维护，过账时同事务写入
+-- owner_guid 无往来单位时为空串（主键列不可为 NULL）
+-- ----------------------------
+CREATE TABLE `tax_period_totals`  (
+  `book_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `period_month` int NOT NULL,
+  `tax_table_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `owner_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL DEFAULT '',
+  `direction` varchar(10) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `base_cents` bigint NOT NULL DEFAULT 0,
+  `tax_cents` bigint NOT NULL DEFAULT 0,
+  `tx_count` int NOT NULL DEFAULT 0,
+  PRIMARY KEY (`book_guid`, `period_month`, `tax_table_guid`, `owner_guid`) USING BTREE,
+  INDEX `idx_tax_totals_table`(`tax_table_guid` ASC) USING BTREE,
+  CONSTRAINT `fk_tax_totals_book` FOREIGN KEY (`book_guid`) REFERENCES `books` (`guid`) ON DELETE RESTRICT ON UPDATE RESTRICT,
+  CONSTRAINT `fk_tax_totals_table` FOREIGN KEY (`tax_table_guid`) REFERENCES `taxtables` (`guid`) ON DELETE RESTRICT ON UPDATE RESTRICT
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Dynamic;
+
+-- ----------------------------
+-- 税务明细：汇总行向下钻取到凭证
+-- ----------------------------
+CREATE TABLE `tax_ledger_lines`  (
+  `guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `book_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `period_month` int NOT NULL,
+  `tax_table_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `owner_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL DEFAULT '',
+  `direction` varchar(10) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `tx_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `post_date` datetime NOT NULL,
+  `base_cents` bigint NOT NULL,
+  `tax_cents` bigint NOT NULL,
+  PRIMARY KEY (`guid`) USING BTREE,
+  INDEX `idx_tax_lines_period`(`book_guid` ASC, `period_month` ASC, `tax_table_guid` ASC, `owner_guid` ASC) USING BTREE,
+  INDEX `idx_tax_lines_tx`(`tx_guid` ASC) USING BTREE,
+  CONSTRAINT `fk_tax_lines_book` FOREIGN KEY (`book_guid`) REFERENCES `books` (`guid`) ON DELETE RESTRICT ON UPDATE RESTRICT,
+  CONSTRAINT `fk_tax_lines_tx` FOREIGN KEY (`tx_guid`) REFERENCES `transactions` (`guid`) ON DELETE RESTRICT ON UPDATE RESTRICT
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Dynamic;
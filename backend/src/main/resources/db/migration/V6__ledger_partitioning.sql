@@ -0,0 +1,97 @@
+-- ----------------------------
+-- 总账分区：transactions / splits 按 post_date 年度 RANGE COLUMNS 分区
+-- MySQL 分区表不支持外键，且所有唯一键必须包含分区列：
+--   1. 删除分区表自身及引用它们的外键（引用完整性由应用写入路径保证）
+--   2. splits 冗余 post_date，主键改为 (guid, post_date)
+-- ----------------------------
+ALTER TABLE `invoices` DROP FOREIGN KEY `fk_invoices_post_txn`;
+ALTER TABLE `period_closes` DROP FOREIGN KEY `fk_period_closes_tx`;
+ALTER TABLE `tax_ledger_lines` DROP FOREIGN KEY `fk_tax_lines_tx`;
+ALTER TABLE `splits`
+  DROP FOREIGN KEY `fk_splits_tx`,
+  DROP FOREIGN KEY `fk_splits_account`,
+  DROP FOREIGN KEY `fk_splits_lot`,
+  DROP FOREIGN KEY `fk_splits_reconcile`;
+ALTER TABLE `transactions`
+  DROP FOREIGN KEY `fk_tx_book`,
+  DROP FOREIGN KEY `fk_tx_status`;
+
+ALTER TABLE `splits` ADD COLUMN `post_date` datetime NULL DEFAULT NULL AFTER `tx_guid`;
+UPDATE `splits` s JOIN `transactions` t ON s.tx_guid = t.guid SET s.post_date = t.post_date;
+ALTER TABLE `splits` MODIFY COLUMN `post_date` datetime NOT NULL;
+
+ALTER TABLE `transactions`
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`guid`, `post_date`) USING BTREE,
+  ADD INDEX `idx_tx_book_date`(`book_guid` ASC, `post_date` ASC) USING BTREE;
+ALTER TABLE `splits`
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`guid`, `post_date`) USING BTREE,
+  ADD INDEX `idx_splits_account_date`(`account_guid` ASC, `post_date` ASC) USING BTREE;
+
+-- 之后年度的分区由 LedgerPartitionService 从 pmax 中拆分
+ALTER TABLE `transactions` PARTITION BY RANGE COLUMNS(`post_date`) (
+  PARTITION `p_hist` VALUES LESS THAN ('2024-01-01'),
+  PARTITION `p2024` VALUES LESS THAN ('2025-01-01'),
+  PARTITION `p2025` VALUES LESS THAN ('2026-01-01'),
+  PARTITION `p2026` VALUES LESS THAN ('2027-01-01'),
+  PARTITION `p2027` VALUES LESS THAN ('2028-01-01'),
+  PARTITION `pmax` VALUES LESS THAN (MAXVALUE)
+);
+ALTER TABLE `splits` PARTITION BY RANGE COLUMNS(`post_date`) (
+  PARTITION `p_hist` VALUES LESS THAN ('2024-01-01'),
+  PARTITION `p2024` VALUES LESS THAN ('2025-01-01'),
+  PARTITION `p2025` VALUES LESS THAN ('2026-01-01'),
+  PARTITION `p2026` VALUES LESS THAN ('2027-01-01'),
+  PARTITION `p2027` VALUES LESS THAN ('2028-01-01'),
+  PARTITION `pmax` VALUES LESS THAN (MAXVALUE)
+);
+
+-- ----------------------------
+-- 归档：已结账年度迁入压缩表，报表层按归档边界同时查询热表与归档表
+-- ----------------------------
+CREATE TABLE `transactions_archive`  (
+  `guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `book_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `num` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL,
+  `post_date` datetime NOT NULL,
+  `enter_date` datetime NULL DEFAULT NULL,
+  `description` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL,
+  `doc_status` varchar(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL DEFAULT 'POSTED',
+  `source_type` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL,
+  `source_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL,
+  PRIMARY KEY (`guid`, `post_date`) USING BTREE,
+  INDEX `idx_tx_archive_book_date`(`book_guid` ASC, `post_date` ASC) USING BTREE,
+  INDEX `idx_tx_archive_source`(`source_type` ASC, `source_guid` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Compressed KEY_BLOCK_SIZE = 8;
+
+CREATE TABLE `splits_archive`  (
+  `guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `tx_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `post_date` datetime NOT NULL,
+  `account_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `value_num` bigint NOT NULL,
+  `value_denom` bigint NOT NULL,
+  `quantity_num` bigint NOT NULL,
+  `quantity_denom` bigint NOT NULL,
+  `memo` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL,
+  `action` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL,
+  `reconcile_state` char(1) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL DEFAULT 'N',
+  `reconcile_date` datetime NULL DEFAULT NULL,
+  `lot_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL,
+  PRIMARY KEY (`guid`, `post_date`) USING BTREE,
+  INDEX `idx_splits_archive_tx`(`tx_guid` ASC) USING BTREE,
+  INDEX `idx_splits_archive_account_date`(`account_guid` ASC, `post_date` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Compressed KEY_BLOCK_SIZE = 8;
+
+CREATE TABLE `ledger_archives`  (
+  `book_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `fiscal_year` int NOT NULL,
+  `period_start` date NOT NULL,
+  `period_end` date NOT NULL,
+  `tx_count` int NOT NULL DEFAULT 0,
+  `split_count` int NOT NULL DEFAULT 0,
+  `archived_at` datetime NOT NULL,
+  PRIMARY KEY (`book_guid`, `fiscal_year`) USING BTREE,
+  CONSTRAINT `fk_ledger_archives_book` FOREIGN KEY (`book_guid`) REFERENCES `books` (`guid`) ON DELETE RESTRICT ON UPDATE RESTRICT
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Dynamic;
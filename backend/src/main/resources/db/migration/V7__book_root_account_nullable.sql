@@ -0,0 +1,5 @@
+-- ----------------------------
+-- 账本与根科目互相引用：先建账本（root_account_guid 为空），再按父先子后批量写入科目，
+-- 最后回填根科目，全程无需关闭外键检查
+-- ----------------------------
+ALTER TABLE `books` MODIFY COLUMN `root_account_guid` char(36) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL;
@@ -0,0 +1,5 @@
+-- ----------------------------
+-- 单据乐观锁版本号：过账/结算时按 version 条件更新，防止多节点并发重复过账
+-- ----------------------------
+ALTER TABLE `invoices` ADD COLUMN `version` int NOT NULL DEFAULT 0;
+ALTER TABLE `orders` ADD COLUMN `version` int NOT NULL DEFAULT 0;
@@ -0,0 +1,15 @@
+-- ----------------------------
+-- 幂等键：记录带 Idempotency-Key 的写请求结果，重试时直接返回原响应
+-- status_code 为空表示首个请求仍在执行
+-- ----------------------------
+CREATE TABLE `idempotency_keys`  (
+  `idem_key` varchar(160) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `request_hash` char(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL,
+  `status_code` int NULL DEFAULT NULL,
+  `content_type` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL,
+  `response_body` mediumblob NULL,
+  `created_at` datetime NOT NULL,
+  `expires_at` datetime NOT NULL,
+  PRIMARY KEY (`idem_key`) USING BTREE,
+  INDEX `idx_idempotency_expires`(`expires_at` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci ROW_FORMAT = Dynamic;
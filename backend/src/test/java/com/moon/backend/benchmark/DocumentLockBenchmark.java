@@ -0,0 +1,97 @@
+package com.moon.backend.benchmark;
+
+import com.moon.backend.service.DocumentLocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单据锁争用对比（4 线程，每次“过账”在锁内等待 100µs 模拟数据库往返，不访问数据库）：
+ * distinctDocuments —— 每个线程过账不同单据，吞吐应随线程数线性增长；
+ * sameDocument —— 所有线程争用同一单据，退化为串行；
+ * bookWideLock —— 整本账一把锁的对照组。
+ * 运行：mvn test-compile 后执行本类 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class DocumentLockBenchmark {
+
+    private static final long IO_NANOS = 100_000;
+
+    private final DocumentLocks documentLocks = new DocumentLocks(null, 1024, 5_000);
+    private final ReentrantLock bookLock = new ReentrantLock();
+    private final String sharedGuid = UUID.randomUUID().toString();
+
+    @State(Scope.Thread)
+    public static class ThreadDocument {
+        String guid;
+
+        @Setup
+        public void setUp() {
+            guid = UUID.randomUUID().toString();
+        }
+    }
+
+    @Benchmark
+    public void distinctDocuments(ThreadDocument doc) {
+        post(doc.guid);
+    }
+
+    @Benchmark
+    public void sameDocument() {
+        post(sharedGuid);
+    }
+
+    @Benchmark
+    public void bookWideLock() {
+        bookLock.lock();
+        try {
+            LockSupport.parkNanos(IO_NANOS);
+        } finally {
+            bookLock.unlock();
+        }
+    }
+
+    /**
+     * 模拟一次事务：开启同步、加单据锁、执行、提交后释放
+     */
+    private void post(String documentGuid) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            documentLocks.lock(documentGuid);
+            LockSupport.parkNanos(IO_NANOS);
+            for (TransactionSynchronization sync : TransactionSynchronizationManager.getSynchronizations()) {
+                sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DocumentLockBenchmark.class.getSimpleName()).build()).run();
+    }
+}
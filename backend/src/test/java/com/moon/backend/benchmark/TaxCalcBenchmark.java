@@ -0,0 +1,83 @@
+package com.moon.backend.benchmark;
+
+import com.moon.backend.dto.TaxBatchCalcRequest;
+import com.moon.backend.dto.TaxBatchCalcResponse;
+import com.moon.backend.dto.TaxCalcRequest;
+import com.moon.backend.dto.TaxCalcResponse;
+import com.moon.backend.service.TaxService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 逐行 calculate 与列式 calculateBatch 对比（按税率百分比计算，不访问数据库）。
+ * 运行：mvn test-compile 后执行本类 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaxCalcBenchmark {
+
+    @Param({"1000", "10000"})
+    private int lines;
+
+    private final TaxService taxService = new TaxService(null, null, null, null, null);
+
+    private long[] amounts;
+    private double[] percents;
+    private TaxBatchCalcRequest batchRequest;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        double[] rates = {3, 6, 9, 13};
+        amounts = new long[lines];
+        percents = new double[lines];
+        for (int i = 0; i < lines; i++) {
+            amounts[i] = 100 + random.nextInt(10_000_000);
+            percents[i] = rates[random.nextInt(rates.length)];
+        }
+        batchRequest = new TaxBatchCalcRequest();
+        batchRequest.setBookGuid("bench");
+        batchRequest.setAmountCent(amounts);
+        batchRequest.setRatePercent(percents);
+    }
+
+    @Benchmark
+    public void perCall(Blackhole bh) {
+        for (int i = 0; i < lines; i++) {
+            TaxCalcRequest request = new TaxCalcRequest();
+            request.setAmountCent(amounts[i]);
+            request.setRatePercent(percents[i]);
+            TaxCalcResponse response = taxService.calculate(request);
+            bh.consume(response.getTotalCent());
+        }
+    }
+
+    @Benchmark
+    public TaxBatchCalcResponse batch() {
+        return taxService.calculateBatch(batchRequest);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TaxCalcBenchmark.class.getSimpleName()).build()).run();
+    }
+}
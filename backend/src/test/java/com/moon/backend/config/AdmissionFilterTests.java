@@ -0,0 +1,78 @@
+package com.moon.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moon.backend.service.AdmissionGate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 异步受控请求：超时或连接出错时取消语句且不写响应，请求结束才归还许可
+ */
+class AdmissionFilterTests {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final Statement statement = mock(Statement.class);
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/reports/pl");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private AdmissionFilter filter;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        filter = new AdmissionFilter(new AdmissionGate(new AdmissionProperties(), registry), new ObjectMapper());
+        request.setAsyncSupported(true);
+        request.setParameter("bookGuid", "book");
+        filter.doFilter(request, response, (req, res) -> {
+            req.startAsync();
+            QueryScope.current().register(statement);
+        });
+    }
+
+    @Test
+    void asyncTimeoutCancelsStatementWithoutTouchingResponse() throws Exception {
+        for (AsyncListener listener : asyncContext().getListeners()) {
+            listener.onTimeout(null);
+        }
+
+        verify(statement).cancel();
+        assertThat(scope().isCancelled()).isTrue();
+        // 状态码仍由超时处理决定
+        assertThat(response.isCommitted()).isFalse();
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(active()).as("请求结束前保留许可").isEqualTo(1);
+    }
+
+    @Test
+    void completedRequestReleasesPermitWithoutCancelling() throws Exception {
+        for (AsyncListener listener : asyncContext().getListeners()) {
+            listener.onComplete(null);
+        }
+
+        verify(statement, never()).cancel();
+        assertThat(active()).isZero();
+    }
+
+    private MockAsyncContext asyncContext() {
+        return (MockAsyncContext) request.getAsyncContext();
+    }
+
+    private QueryScope scope() {
+        return (QueryScope) request.getAttribute(QueryScope.ATTR);
+    }
+
+    private double active() {
+        return registry.get("ees.admission.active").tag("class", "reporting").gauge().value();
+    }
+}
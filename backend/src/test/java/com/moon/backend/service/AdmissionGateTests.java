@@ -0,0 +1,178 @@
+package com.moon.backend.service;
+
+import com.moon.backend.config.AdmissionProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 准入控制：单账本并发上限、排队满与等待超时拒绝、按账本公平放行、许可的让出与取回、后台任务的阻塞排队
+ */
+class AdmissionGateTests {
+
+    private static final AdmissionGate.RequestClass POSTING = AdmissionGate.RequestClass.POSTING;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void perBookLimitLeavesRoomForOtherBooks() {
+        AdmissionGate gate = gate(2, 1, 10, 50);
+        AdmissionGate.Permit a = gate.acquire(POSTING, "A");
+
+        assertThat(gate.acquire(POSTING, "A")).as("同一账本超过 per-book 排队至超时").isNull();
+        assertThat(gate.acquire(POSTING, "B")).as("其他账本直接放行").isNotNull();
+        a.release();
+    }
+
+    @Test
+    void fullQueueIsRejectedImmediately() {
+        AdmissionGate gate = gate(1, 1, 0, 5_000);
+        gate.acquire(POSTING, "A");
+
+        long start = System.nanoTime();
+        assertThat(gate.acquire(POSTING, "B")).isNull();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+    }
+
+    @Test
+    void queuedBookIsNotStarvedByBusyBook() throws Exception {
+        AdmissionGate gate = gate(1, 1, 10, 5_000);
+        AdmissionGate.Permit holder = gate.acquire(POSTING, "A");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiters.add(pool.submit(() -> admitAndRecord(gate, "A", order)));
+        }
+        awaitQueued(3);
+        waiters.add(pool.submit(() -> admitAndRecord(gate, "B", order)));
+        awaitQueued(4);
+
+        holder.release();
+        for (Future<?> waiter : waiters) {
+            waiter.get(5, TimeUnit.SECONDS);
+        }
+
+        // B 晚于 A 的三个请求到达，但 A 已用掉一份额度，B 先放行
+        assertThat(order).containsExactly("B", "A", "A", "A");
+    }
+
+    @Test
+    void parkedPermitFreesSlotUntilResumed() throws Exception {
+        AdmissionGate gate = gate(1, 1, 10, 5_000);
+        AdmissionGate.Permit follower = gate.acquire(POSTING, "A");
+
+        follower.park();
+        AdmissionGate.Permit other = gate.acquire(POSTING, "B");
+        assertThat(other).as("让出的名额可被其他请求使用").isNotNull();
+
+        Future<Boolean> resumed = pool.submit(follower::resume);
+        awaitQueued(1);
+        other.release();
+
+        assertThat(resumed.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(active()).isEqualTo(1);
+        follower.release();
+        follower.release();
+        assertThat(active()).isZero();
+    }
+
+    @Test
+    void releaseOfParkedPermitDoesNotFreeTwice() {
+        AdmissionGate gate = gate(1, 1, 10, 50);
+        AdmissionGate.Permit parked = gate.acquire(POSTING, "A");
+        parked.park();
+        AdmissionGate.Permit other = gate.acquire(POSTING, "B");
+
+        parked.release();
+
+        assertThat(active()).isEqualTo(1);
+        assertThat(gate.acquire(POSTING, "C")).as("B 仍占用唯一的名额").isNull();
+        other.release();
+    }
+
+    @Test
+    void backgroundAcquireWaitsPastFullQueueWithoutRejection() throws Exception {
+        AdmissionGate gate = gate(1, 1, 0, 50);
+        AdmissionGate.Permit holder = gate.acquire(POSTING, "A");
+
+        Future<AdmissionGate.Permit> background = pool.submit(() -> gate.acquireBackground(POSTING, "B", () -> false));
+        awaitQueued(1);
+        // 超过 max-wait-ms 仍在排队
+        Thread.sleep(200);
+        assertThat(background.isDone()).isFalse();
+
+        holder.release();
+        AdmissionGate.Permit permit = background.get(5, TimeUnit.SECONDS);
+        assertThat(permit).isNotNull();
+        permit.release();
+        assertThat(waits("rejected")).isZero();
+        assertThat(waits("timeout")).isZero();
+    }
+
+    @Test
+    void cancelledBackgroundAcquireLeavesQueue() throws Exception {
+        AdmissionGate gate = gate(1, 1, 0, 50);
+        AdmissionGate.Permit holder = gate.acquire(POSTING, "A");
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        Future<AdmissionGate.Permit> background = pool.submit(() -> gate.acquireBackground(POSTING, "B", cancelled::get));
+        awaitQueued(1);
+        cancelled.set(true);
+
+        assertThat(background.get(5, TimeUnit.SECONDS)).isNull();
+        assertThat(gauge("ees.admission.queued")).isZero();
+        holder.release();
+        assertThat(active()).isZero();
+    }
+
+    private AdmissionGate gate(int permits, int perBook, int maxQueue, long maxWaitMs) {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setPosting(new AdmissionProperties.Limit(permits, perBook, maxQueue, maxWaitMs, 0, new ArrayList<>()));
+        return new AdmissionGate(properties, registry);
+    }
+
+    private static void admitAndRecord(AdmissionGate gate, String book, List<String> order) {
+        AdmissionGate.Permit permit = gate.acquire(POSTING, book);
+        assertThat(permit).isNotNull();
+        order.add(book);
+        permit.release();
+    }
+
+    private void awaitQueued(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gauge("ees.admission.queued") < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(gauge("ees.admission.queued")).isEqualTo(count);
+    }
+
+    private long waits(String outcome) {
+        return registry.get("ees.admission.wait").tag("class", "posting").tag("outcome", outcome).timer().count();
+    }
+
+    private int active() {
+        return (int) gauge("ees.admission.active");
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).tag("class", "posting").gauge().value();
+    }
+}
@@ -0,0 +1,95 @@
+package com.moon.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 账本迁移的增量追赶：起点取复制前的稳定 seq，冻结后按该起点补齐凭证，目标端写入迁移标记后才切换目录
+ */
+class BookMoveServiceTests {
+
+    private static final String BOOK = "book-1";
+
+    private final ShardDirectory shardDirectory = mock(ShardDirectory.class);
+    private final LedgerChangeService ledgerChangeService = mock(LedgerChangeService.class);
+    private final JdbcTemplate sourceJdbc = mock(JdbcTemplate.class);
+    private final JdbcTemplate targetJdbc = mock(JdbcTemplate.class);
+
+    @BeforeEach
+    void setUp() {
+        when(shardDirectory.isEnabled()).thenReturn(true);
+        when(shardDirectory.shardOf(BOOK)).thenReturn("main");
+        when(sourceJdbc.queryForObject(startsWith("SELECT COUNT(*) FROM books"), eq(Integer.class), any(Object[].class))).thenReturn(1);
+        when(sourceJdbc.queryForObject(startsWith("SELECT COALESCE(MAX(seq), 0)"), eq(Long.class))).thenReturn(50L);
+        when(targetJdbc.queryForObject(startsWith("SELECT COALESCE(MAX(seq), 0)"), eq(Long.class))).thenReturn(7L);
+    }
+
+    @Test
+    void catchUpStartsFromStableSeqTakenBeforeCopying() {
+        when(ledgerChangeService.stableSeq(sourceJdbc)).thenReturn(42L, 50L);
+        when(sourceJdbc.queryForList(startsWith("SELECT DISTINCT entity_guid"), eq(String.class), eq(BOOK), eq("TRANSACTION"), eq(42L)))
+                .thenReturn(List.of("tx-kept", "tx-deleted"));
+        when(sourceJdbc.queryForList(startsWith("SELECT * FROM transactions WHERE guid IN"), any(Object[].class)))
+                .thenReturn(List.of(Map.of("guid", "tx-kept", "book_guid", BOOK)));
+
+        BookMoveService.MoveResult result = service(0).move(BOOK, "shard1");
+
+        assertThat(result.toShard()).isEqualTo("shard1");
+        InOrder order = inOrder(ledgerChangeService, shardDirectory, targetJdbc);
+        order.verify(ledgerChangeService).stableSeq(sourceJdbc);
+        order.verify(shardDirectory).markStatus(BOOK, ShardDirectory.COPYING);
+        order.verify(shardDirectory).markStatus(BOOK, ShardDirectory.MOVING);
+        // 源端仍存在的凭证覆盖到目标端，已删除的在目标端删除
+        order.verify(targetJdbc).batchUpdate(startsWith("INSERT INTO `transactions`"), anyList());
+        order.verify(targetJdbc).update(startsWith("DELETE FROM `transactions`"), eq("tx-deleted"));
+        // 迁移标记的 seq 高于两端已有的 seq，写入后才切换目录
+        order.verify(targetJdbc).update(startsWith("INSERT INTO ledger_changes"), eq(51L), eq(BOOK), eq(BOOK));
+        order.verify(shardDirectory).flip(BOOK, "shard1");
+    }
+
+    @Test
+    void unsettledSourceAbortsMoveAndReactivatesBook() {
+        when(ledgerChangeService.stableSeq(sourceJdbc)).thenReturn(42L);
+
+        assertThatThrownBy(() -> service(50).move(BOOK, "shard1"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("未提交");
+
+        verify(shardDirectory).markStatus(BOOK, ShardDirectory.ACTIVE);
+        verify(shardDirectory, never()).flip(anyString(), anyString());
+        verify(targetJdbc, never()).update(startsWith("INSERT INTO ledger_changes"), any(Object[].class));
+    }
+
+    private BookMoveService service(long drainMillis) {
+        TransactionTemplate tx = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        BookMoveService.Shard source = new BookMoveService.Shard(sourceJdbc, tx);
+        BookMoveService.Shard target = new BookMoveService.Shard(targetJdbc, tx);
+        return new BookMoveService(shardDirectory, ledgerChangeService, mock(LedgerColumnStore.class),
+                mock(BookMetadataCache.class), 100, drainMillis) {
+            @Override
+            Shard shard(String key) {
+                return "main".equals(key) ? source : target;
+            }
+        };
+    }
+}
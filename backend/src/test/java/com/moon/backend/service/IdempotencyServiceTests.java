@@ -0,0 +1,93 @@
+package com.moon.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 幂等键：同进程重复请求复用首次响应、跨节点按表记录重放、放弃后允许重新执行
+ */
+class IdempotencyServiceTests {
+
+    private static final byte[] BODY = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private IdempotencyService service;
+
+    @BeforeEach
+    void setUp() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(1);
+        service = new IdempotencyService(jdbcTemplate, 100, 24, 200, 120_000);
+    }
+
+    @Test
+    void duplicateAfterCompletionReplaysStoredResponse() {
+        IdempotencyService.Claim owner = service.begin("1:k", "hash");
+        assertThat(owner.type()).isEqualTo(IdempotencyService.ClaimType.OWNER);
+
+        service.complete("1:k", owner, new IdempotencyService.StoredResponse(200, "application/json", BODY));
+
+        IdempotencyService.Claim replay = service.begin("1:k", "hash");
+        assertThat(replay.type()).isEqualTo(IdempotencyService.ClaimType.REPLAY);
+        assertThat(replay.response().status()).isEqualTo(200);
+        assertThat(replay.response().body()).isEqualTo(BODY);
+    }
+
+    @Test
+    void sameKeyWithDifferentBodyIsMismatch() {
+        service.begin("1:k", "hash");
+
+        assertThat(service.begin("1:k", "other").type()).isEqualTo(IdempotencyService.ClaimType.MISMATCH);
+    }
+
+    @Test
+    void abandonedKeyCanBeClaimedAgain() {
+        IdempotencyService.Claim first = service.begin("1:k", "hash");
+        service.abandon("1:k", first);
+
+        assertThat(service.begin("1:k", "hash").type()).isEqualTo(IdempotencyService.ClaimType.OWNER);
+    }
+
+    @Test
+    void unfinishedDuplicateReportsInProgress() {
+        service.begin("1:k", "hash");
+
+        assertThat(service.begin("1:k", "hash").type()).isEqualTo(IdempotencyService.ClaimType.IN_PROGRESS);
+    }
+
+    @Test
+    void responseStoredByAnotherNodeIsReplayed() throws Exception {
+        when(jdbcTemplate.update(startsWith("INSERT INTO idempotency_keys"), any(Object[].class)))
+                .thenThrow(new DuplicateKeyException("idem_key"));
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true);
+        when(rs.getString("request_hash")).thenReturn("hash");
+        when(rs.getObject("status_code")).thenReturn(201);
+        when(rs.getInt("status_code")).thenReturn(201);
+        when(rs.getString("content_type")).thenReturn("application/json");
+        when(rs.getBytes("response_body")).thenReturn(BODY);
+        when(rs.getObject("claimed_at", LocalDateTime.class)).thenReturn(LocalDateTime.now().minusSeconds(5));
+        when(jdbcTemplate.query(startsWith("SELECT request_hash"), any(ResultSetExtractor.class), eq("1:k")))
+                .thenAnswer(inv -> inv.<ResultSetExtractor<?>>getArgument(1).extractData(rs));
+
+        IdempotencyService.Claim claim = service.begin("1:k", "hash");
+
+        assertThat(claim.type()).isEqualTo(IdempotencyService.ClaimType.REPLAY);
+        assertThat(claim.response().status()).isEqualTo(201);
+        assertThat(claim.response().body()).isEqualTo(BODY);
+    }
+}
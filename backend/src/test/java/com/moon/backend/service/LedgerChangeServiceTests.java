@@ -0,0 +1,117 @@
+package com.moon.backend.service;
+
+import com.moon.backend.dto.ChangeFeedResponse;
+import com.moon.backend.dto.LedgerChangeResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 变更流水分页：水位线停在未提交事务占用的缺口前，翻页游标与 hasMore 的计算
+ */
+class LedgerChangeServiceTests {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final LedgerChangeService service = new LedgerChangeService(jdbcTemplate);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "scanLimit", 10);
+        ReflectionTestUtils.setField(service, "maxLimit", 3);
+    }
+
+    @Test
+    void watermarkStopsBeforeGapHeldByOpenTransaction() {
+        globalSeqs(1L, 2L, 4L, 5L);
+        when(jdbcTemplate.queryForList(contains("FOR SHARE NOWAIT"), eq(Long.class), any(Object[].class)))
+                .thenThrow(new CannotAcquireLockException("seq 3 locked"));
+        bookRows(change(1), change(2));
+
+        ChangeFeedResponse page = service.changes("book", 0, 3);
+
+        assertThat(page.getChanges()).extracting(LedgerChangeResponse::getSeq).containsExactly(1L, 2L);
+        assertThat(page.getNextSince()).isEqualTo(2L);
+        assertThat(page.getHasMore()).isFalse();
+        verify(jdbcTemplate).query(contains("WHERE book_guid = ?"), any(RowMapper.class), eq("book"), eq(0L), eq(2L), eq(4));
+    }
+
+    @Test
+    void settledGapDoesNotHoldWatermark() {
+        globalSeqs(1L, 2L, 4L, 5L);
+        when(jdbcTemplate.queryForList(contains("FOR SHARE NOWAIT"), eq(Long.class), any(Object[].class)))
+                .thenReturn(List.of());
+        bookRows(change(4), change(5));
+
+        ChangeFeedResponse page = service.changes("book", 0, 3);
+
+        assertThat(page.getNextSince()).isEqualTo(5L);
+        assertThat(page.getHasMore()).isFalse();
+    }
+
+    @Test
+    void fullPageResumesAfterLastReturnedSeq() {
+        globalSeqs(1L, 2L, 3L, 4L, 5L);
+        bookRows(change(1), change(2), change(3), change(4));
+
+        ChangeFeedResponse page = service.changes("book", 0, 3);
+
+        assertThat(page.getChanges()).extracting(LedgerChangeResponse::getSeq).containsExactly(1L, 2L, 3L);
+        assertThat(page.getNextSince()).isEqualTo(3L);
+        assertThat(page.getHasMore()).isTrue();
+    }
+
+    @Test
+    void truncatedScanReportsMoreEvenWithoutRowsForBook() {
+        globalSeqs(LongStream.rangeClosed(1, 10).boxed().toArray(Long[]::new));
+        bookRows();
+
+        ChangeFeedResponse page = service.changes("book", 0, 3);
+
+        assertThat(page.getChanges()).isEmpty();
+        assertThat(page.getNextSince()).isEqualTo(10L);
+        assertThat(page.getHasMore()).isTrue();
+    }
+
+    @Test
+    void nothingNewReturnsSameCursor() {
+        globalSeqs();
+
+        ChangeFeedResponse page = service.changes("book", 7, 3);
+
+        assertThat(page.getChanges()).isEmpty();
+        assertThat(page.getNextSince()).isEqualTo(7L);
+        assertThat(page.getHasMore()).isFalse();
+        verify(jdbcTemplate, never()).query(contains("WHERE book_guid = ?"), any(RowMapper.class), any(Object[].class));
+    }
+
+    private void globalSeqs(Long... seqs) {
+        when(jdbcTemplate.queryForList(contains("ORDER BY seq LIMIT ?"), eq(Long.class), any(Object[].class)))
+                .thenReturn(List.of(seqs));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bookRows(LedgerChangeResponse... rows) {
+        when(jdbcTemplate.query(contains("WHERE book_guid = ?"), any(RowMapper.class), any(Object[].class)))
+                .thenReturn(List.of(rows));
+    }
+
+    private static LedgerChangeResponse change(long seq) {
+        return new LedgerChangeResponse(seq, "TRANSACTION", "tx-" + seq, "I", LocalDateTime.now());
+    }
+}
@@ -0,0 +1,85 @@
+package com.moon.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 组提交：同批中单条过账失败只回滚到自身保存点，其余过账随批事务提交
+ */
+class PostingPipelineTests {
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final DataSource dataSource = mock(DataSource.class);
+    private final Connection connection = mock(Connection.class);
+    private final List<Savepoint> savepoints = new ArrayList<>();
+    private final ExecutorService pool = Executors.newFixedThreadPool(3);
+    private PostingPipeline pipeline;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TransactionStatus status = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.setSavepoint()).thenAnswer(inv -> {
+            Savepoint savepoint = mock(Savepoint.class);
+            savepoints.add(savepoint);
+            return savepoint;
+        });
+        // 凑批等待足够长，三条过账进入同一批
+        pipeline = new PostingPipeline(transactionManager, dataSource, true, 3, 500, 1, 5_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+        pipeline.shutdown();
+    }
+
+    @Test
+    void failedPostingRollsBackOnlyItsSavepoint() throws Exception {
+        List<String> posted = new ArrayList<>();
+        Future<?> first = pool.submit(() -> pipeline.post("book", () -> posted.add("first")));
+        Future<?> failing = pool.submit(() -> pipeline.post("book", () -> {
+            throw new IllegalArgumentException("科目不存在");
+        }));
+        Future<?> third = pool.submit(() -> pipeline.post("book", () -> posted.add("third")));
+
+        first.get(5, TimeUnit.SECONDS);
+        third.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> failing.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("科目不存在");
+
+        assertThat(posted).containsExactlyInAnyOrder("first", "third");
+        assertThat(savepoints).hasSize(3);
+        verify(connection, times(1)).rollback(any(Savepoint.class));
+        verify(connection, times(2)).releaseSavepoint(any(Savepoint.class));
+        // 一个批事务，提交而非回滚
+        verify(transactionManager, times(1)).getTransaction(any());
+        verify(transactionManager).commit(any());
+        verify(transactionManager, never()).rollback(any());
+    }
+}
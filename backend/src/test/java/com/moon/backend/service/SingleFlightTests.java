@@ -0,0 +1,158 @@
+package com.moon.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 请求合并：并发相同 key 只计算一次，等待超时报 Busy，leader 被放弃时等待者取回资源后重新计算
+ */
+class SingleFlightTests {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+    private final CountDownLatch leaderStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseLeader = new CountDownLatch(1);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CountingParking parking = new CountingParking();
+
+    @AfterEach
+    void tearDown() {
+        releaseLeader.countDown();
+        pool.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(5_000);
+        Future<Integer> leader = pool.submit(() -> flight.execute("k", blockingLoad(7)));
+        leaderStarted.await(5, TimeUnit.SECONDS);
+
+        List<Future<Integer>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followers.add(pool.submit(() -> flight.execute("k", blockingLoad(-1), parking)));
+        }
+        parking.awaitParked(3);
+        releaseLeader.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo(7);
+        for (Future<Integer> follower : followers) {
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo(7);
+        }
+        assertThat(loads.get()).isEqualTo(1);
+        // 共享到结果的等待者不需要取回许可
+        assertThat(parking.resumed.get()).isZero();
+        assertThat(flight.inFlight()).isZero();
+    }
+
+    @Test
+    void followerGivesUpWithBusyWhileLeaderRuns() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(50);
+        pool.submit(() -> flight.execute("k", blockingLoad(7)));
+        leaderStarted.await(5, TimeUnit.SECONDS);
+
+        assertThatThrownBy(() -> flight.execute("k", () -> 8, parking)).isInstanceOf(SingleFlight.Busy.class);
+        assertThat(parking.parked.get()).isEqualTo(1);
+    }
+
+    @Test
+    void leaderFailureIsSharedWithFollowers() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(5_000);
+        Future<Integer> leader = pool.submit(() -> flight.execute("k", () -> {
+            leaderStarted.countDown();
+            await(releaseLeader);
+            throw new IllegalArgumentException("参数错误");
+        }));
+        leaderStarted.await(5, TimeUnit.SECONDS);
+        Future<Integer> follower = pool.submit(() -> flight.execute("k", () -> 8, parking));
+        parking.awaitParked(1);
+        releaseLeader.countDown();
+
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void abandonedLeaderMakesFollowerResumeAndRecompute() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(5_000, ex -> ex instanceof Abandoned);
+        pool.submit(() -> flight.execute("k", () -> {
+            leaderStarted.countDown();
+            await(releaseLeader);
+            throw new Abandoned();
+        }));
+        leaderStarted.await(5, TimeUnit.SECONDS);
+        Future<Integer> follower = pool.submit(() -> flight.execute("k", () -> {
+            loads.incrementAndGet();
+            return 9;
+        }, parking));
+        parking.awaitParked(1);
+        releaseLeader.countDown();
+
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo(9);
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(parking.resumed.get()).isEqualTo(1);
+    }
+
+    @Test
+    void finishedCallsAreNotCached() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(5_000);
+
+        flight.execute("k", loads::incrementAndGet);
+        flight.execute("k", loads::incrementAndGet);
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    private Supplier<Integer> blockingLoad(int value) {
+        return () -> {
+            loads.incrementAndGet();
+            leaderStarted.countDown();
+            await(releaseLeader);
+            return value;
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Abandoned extends RuntimeException {
+    }
+
+    private static final class CountingParking implements SingleFlight.Parking {
+        final AtomicInteger parked = new AtomicInteger();
+        final AtomicInteger resumed = new AtomicInteger();
+
+        @Override
+        public void park() {
+            parked.incrementAndGet();
+        }
+
+        @Override
+        public void resume() {
+            resumed.incrementAndGet();
+        }
+
+        void awaitParked(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (parked.get() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+    }
+}
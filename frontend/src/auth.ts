@@ -0,0 +1,51 @@
+const TOKEN_KEY = 'auth_token'
+const apiBase = import.meta.env.VITE_API_BASE ?? 'http://localhost:8080'
+
+// 令牌失效（401）时派发，App 据此退出登录
+export const UNAUTHORIZED_EVENT = 'ees:unauthorized'
+
+export const getToken = () => localStorage.getItem(TOKEN_KEY) ?? ''
+
+export const setToken = (token: string) => {
+  if (token) {
+    localStorage.setItem(TOKEN_KEY, token)
+  } else {
+    localStorage.removeItem(TOKEN_KEY)
+  }
+}
+
+export const clearToken = () => localStorage.removeItem(TOKEN_KEY)
+
+const requestUrl = (input: RequestInfo | URL) => {
+  if (typeof input === 'string') return input
+  if (input instanceof URL) return input.href
+  return input.url
+}
+
+const isApiRequest = (url: string) => url.startsWith('/api/') || url.startsWith(`${apiBase}/api/`)
+
+const isAuthRequest = (url: string) => url.startsWith('/api/auth/') || url.startsWith(`${apiBase}/api/auth/`)
+
+/**
+ * 为发往后端 /api 的请求统一附加 Authorization: Bearer，各组件继续直接使用 fetch。
+ */
+export const installAuthFetch = () => {
+  const originalFetch = window.fetch.bind(window)
+  window.fetch = async (input: RequestInfo | URL, init?: RequestInit) => {
+    const url = requestUrl(input)
+    const token = getToken()
+    if (!isApiRequest(url) || isAuthRequest(url) || !token) {
+      return originalFetch(input, init)
+    }
+    const headers = new Headers(init?.headers ?? (input instanceof Request ? input.headers : undefined))
+    if (!headers.has('Authorization')) {
+      headers.set('Authorization', `Bearer ${token}`)
+    }
+    const response = await originalFetch(input, { ...init, headers })
+    if (response.status === 401) {
+      clearToken()
+      window.dispatchEvent(new Event(UNAUTHORIZED_EVENT))
+    }
+    return response
+  }
+}
@@ -1,5 +1,8 @@
 import { createApp } from 'vue'
 import './style.css'
 import App from './App.vue'
+import { installAuthFetch } from './auth'
+
+installAuthFetch()
 
 createApp(App).mount('#app')